@@ -0,0 +1,176 @@
+package com.lightbend.akka.sample;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The spawning of {@link ActorHierarchyExperiments} and the recursive stopping of {@link ActorPostStopExperiments}
+ * at fleet scale, to size how many devices a JVM can hold and churn:
+ * <ul>
+ * <li>spawn rate: one parent spawns all its children in a single message, like a device group registering devices,
+ * measured until every child has started</li>
+ * <li>memory per idle actor: heap growth over the started children, after a full GC</li>
+ * <li>stop propagation: from telling the root to stop until its PostStop, which runs after all descendants stopped,
+ * for a wide tree (one parent, many children) and a deep chain</li>
+ * </ul>
+ * Arguments: children of the wide tree, depth of the chain, rounds.
+ */
+public class ActorChurnBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        final int width = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        final int depth = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        final int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        final ActorSystem<Spawn> system = ActorSystem.create(Behaviors.setup(context -> Behaviors.receive(Spawn.class)
+                .onMessage(Spawn.class, message -> {
+                    message.spawned.complete(context.spawnAnonymous(message.behavior));
+                    return Behaviors.same();
+                })
+                .build()), "churn-benchmark");
+
+        try {
+            // the first round warms up
+            for (int round = 0; round <= rounds; round++) {
+                final String label = round == 0 ? "warm-up" : "round " + round;
+
+                final long heapBefore = usedHeapAfterGc();
+                final Tree wide = spawn(system, width, 1);
+                final double spawnSeconds = wide.awaitStarted();
+                final double bytesPerActor = (usedHeapAfterGc() - heapBefore) / (double) wide.nodes;
+                final double wideStopMillis = wide.stop();
+
+                final Tree deep = spawn(system, 1, depth);
+                deep.awaitStarted();
+                final double deepStopMillis = deep.stop();
+
+                System.out.printf("%s: spawned=%d spawns/s=%.0f bytes/idle actor=%.0f "
+                                + "stop wide(%d children)=%.1fms stop deep(depth %d)=%.1fms%n",
+                        label, wide.nodes, wide.nodes / spawnSeconds, bytesPerActor,
+                        width, wideStopMillis, depth, deepStopMillis);
+            }
+        } finally {
+            system.terminate();
+        }
+    }
+
+    private static Tree spawn(final ActorSystem<Spawn> system, final int fanOut, final int depth) throws Exception {
+        // fanOut children on every level down to depth, plus the root
+        long nodes = 1;
+        long level = 1;
+        for (int i = 0; i < depth; i++) {
+            level *= fanOut;
+            nodes += level;
+        }
+        final Tree tree = new Tree(nodes);
+
+        final CompletableFuture<ActorRef<String>> root = new CompletableFuture<>();
+        tree.startNanos = System.nanoTime();
+        system.tell(new Spawn(TreeNode.create(fanOut, depth, tree, true), root));
+        tree.root = root.get();
+        return tree;
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    static final class Spawn {
+
+        final Behavior<String> behavior;
+        final CompletableFuture<ActorRef<String>> spawned;
+
+        Spawn(final Behavior<String> behavior, final CompletableFuture<ActorRef<String>> spawned) {
+            this.behavior = behavior;
+            this.spawned = spawned;
+        }
+    }
+
+    private static final class Tree {
+
+        final long nodes;
+        final CountDownLatch started;
+        final CountDownLatch rootStopped = new CountDownLatch(1);
+        long startNanos;
+        ActorRef<String> root;
+
+        Tree(final long nodes) {
+            this.nodes = nodes;
+            this.started = new CountDownLatch((int) nodes);
+        }
+
+        double awaitStarted() throws InterruptedException {
+            started.await();
+            return (System.nanoTime() - startNanos) / 1e9;
+        }
+
+        double stop() throws InterruptedException {
+            final long stopNanos = System.nanoTime();
+            root.tell("stop");
+            rootStopped.await();
+            return (System.nanoTime() - stopNanos) / 1e6;
+        }
+    }
+
+    /**
+     * Spawns {@code fanOut} children down to {@code depth} levels on start, like StartStopActor1, and stops with
+     * all of them on "stop".
+     */
+    static final class TreeNode extends AbstractBehavior<String> {
+
+        static Behavior<String> create(final int fanOut, final int depth, final Tree tree, final boolean root) {
+            return Behaviors.setup(context -> new TreeNode(context, fanOut, depth, tree, root));
+        }
+
+        private final Tree tree;
+        private final boolean root;
+
+        private TreeNode(final ActorContext<String> context, final int fanOut, final int depth, final Tree tree,
+                         final boolean root) {
+            super(context);
+            this.tree = tree;
+            this.root = root;
+            if (depth > 0) {
+                for (int i = 0; i < fanOut; i++) {
+                    context.spawnAnonymous(create(fanOut, depth - 1, tree, false));
+                }
+            }
+            tree.started.countDown();
+        }
+
+        @Override
+        public Receive<String> createReceive() {
+            return newReceiveBuilder()
+                    .onMessageEquals("stop", Behaviors::stopped)
+                    .onSignal(PostStop.class, signal -> onPostStop())
+                    .build();
+        }
+
+        private Behavior<String> onPostStop() {
+            if (root) {
+                tree.rootStopped.countDown();
+            }
+            return this;
+        }
+    }
+}
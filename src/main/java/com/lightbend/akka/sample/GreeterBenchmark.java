@@ -0,0 +1,226 @@
+package com.lightbend.akka.sample;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.javadsl.*;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The Greeter/GreeterBot ping-pong as a messaging benchmark: N bots each play ping-pong with their own
+ * {@link Greeter}, one greeting in flight per pair. A bot spawns its greeter and stops it when it stops itself. Reports round-trip latency percentiles and messages per second
+ * for each dispatcher configuration, every configuration in a fresh actor system, after a warm-up round.
+ * <p>
+ * Arguments: pairs, round trips per pair, comma separated configurations out of {@link #CONFIGURATIONS} (default all).
+ */
+public class GreeterBenchmark {
+
+    static final Map<String, String> CONFIGURATIONS = new LinkedHashMap<>();
+
+    static {
+        CONFIGURATIONS.put("default", "");
+        CONFIGURATIONS.put("throughput-1", "akka.actor.default-dispatcher.throughput = 1");
+        CONFIGURATIONS.put("throughput-100", "akka.actor.default-dispatcher.throughput = 100");
+        CONFIGURATIONS.put("thread-pool", "akka.actor.default-dispatcher.executor = thread-pool-executor\n"
+                + "akka.actor.default-dispatcher.thread-pool-executor.fixed-pool-size = "
+                + Runtime.getRuntime().availableProcessors());
+        CONFIGURATIONS.put("affinity", "akka.actor.default-dispatcher.executor = affinity-pool-executor");
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        // Greeter logs every greeting at info level, which would dominate any measurement
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        final int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        final int roundTrips = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        final List<String> configurations = args.length > 2
+                ? Arrays.asList(args[2].split(","))
+                : new ArrayList<>(CONFIGURATIONS.keySet());
+
+        for (final String name : configurations) {
+            final String overrides = CONFIGURATIONS.get(name);
+            if (overrides == null) {
+                throw new IllegalArgumentException("Unknown configuration " + name + ", known are " + CONFIGURATIONS.keySet());
+            }
+            final Config config = ConfigFactory.parseString(overrides).withFallback(ConfigFactory.load());
+            final ActorSystem<Run> system = ActorSystem.create(Behaviors.setup(context -> Behaviors.receive(Run.class)
+                    .onMessage(Run.class, message -> onRun(context, message))
+                    .build()), "greeter-benchmark", config);
+            try {
+                run(system, pairs, Math.max(1, roundTrips / 10));
+                final Result result = run(system, pairs, roundTrips);
+                System.out.printf("configuration=%s pairs=%d messages/s=%.0f round trip %s%n",
+                        name, pairs, result.messagesPerSecond, result.latency.summaryMillis());
+            } finally {
+                system.terminate();
+                system.getWhenTerminated().toCompletableFuture().join();
+            }
+        }
+    }
+
+    private static Result run(final ActorSystem<Run> system, final int pairs, final int roundTrips)
+            throws InterruptedException {
+
+        final List<Latencies> latencies = new ArrayList<>();
+        for (int i = 0; i < pairs; i++) {
+            latencies.add(new Latencies(roundTrips));
+        }
+        final CountDownLatch done = new CountDownLatch(pairs);
+
+        final long start = System.nanoTime();
+        system.tell(new Run(roundTrips, latencies, done));
+        done.await();
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        // the latch makes the bots' latencies visible here
+        return new Result(2.0 * pairs * roundTrips / seconds, Latencies.merge(latencies));
+    }
+
+    private static Behavior<Run> onRun(final ActorContext<Run> context, final Run message) {
+        for (final Latencies latencies : message.latencies) {
+            context.spawnAnonymous(Bot.create(message.roundTrips, latencies, message.done));
+        }
+        return Behaviors.same();
+    }
+
+    static final class Run {
+
+        final int roundTrips;
+        final List<Latencies> latencies;
+        final CountDownLatch done;
+
+        Run(final int roundTrips, final List<Latencies> latencies, final CountDownLatch done) {
+            this.roundTrips = roundTrips;
+            this.latencies = latencies;
+            this.done = done;
+        }
+    }
+
+    private static final class Result {
+
+        final double messagesPerSecond;
+        final Latencies latency;
+
+        Result(final double messagesPerSecond, final Latencies latency) {
+            this.messagesPerSecond = messagesPerSecond;
+            this.latency = latency;
+        }
+    }
+
+    /**
+     * Round trip times in nanoseconds. A run knows how many round trips each bot makes, so every one of them is
+     * kept and percentiles are exact.
+     */
+    static final class Latencies {
+
+        private final long[] nanos;
+        private int count;
+
+        Latencies(final int capacity) {
+            this.nanos = new long[capacity];
+        }
+
+        void record(final long value) {
+            nanos[count++] = value;
+        }
+
+        static Latencies merge(final List<Latencies> all) {
+            final Latencies merged = new Latencies(all.stream().mapToInt(latencies -> latencies.count).sum());
+            for (final Latencies latencies : all) {
+                System.arraycopy(latencies.nanos, 0, merged.nanos, merged.count, latencies.count);
+                merged.count += latencies.count;
+            }
+            Arrays.sort(merged.nanos, 0, merged.count);
+            return merged;
+        }
+
+        /**
+         * One line summary in milliseconds, of latencies sorted by {@link #merge}.
+         */
+        String summaryMillis() {
+            long sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += nanos[i];
+            }
+            return String.format("count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms",
+                    count, count == 0 ? 0 : sum / 1e6 / count, percentile(50) / 1e6, percentile(90) / 1e6,
+                    percentile(99) / 1e6, percentile(99.9) / 1e6, count == 0 ? 0 : nanos[count - 1] / 1e6);
+        }
+
+        private long percentile(final double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            return nanos[Math.max(0, (int) Math.ceil(percentile / 100 * count) - 1)];
+        }
+    }
+
+    /**
+     * {@link GreeterBot} without the logging, timing each round trip to its greeter.
+     */
+    static final class Bot extends AbstractBehavior<Greeter.Greeted> {
+
+        static final String WHOM = "benchmark";
+
+        static Behavior<Greeter.Greeted> create(final int max, final Latencies latency, final CountDownLatch done) {
+            return Behaviors.setup(context -> new Bot(context, max, latency, done));
+        }
+
+        private final int max;
+        private final Latencies latency;
+        private final CountDownLatch done;
+        private int greetingCounter;
+        private long sentNanos;
+
+        private Bot(final ActorContext<Greeter.Greeted> context, final int max, final Latencies latency,
+                    final CountDownLatch done) {
+            super(context);
+            this.max = max;
+            this.latency = latency;
+            this.done = done;
+            // a child of the bot, so it stops together with it
+            final ActorRef<Greeter.Greet> greeter = context.spawn(Greeter.create(), "greeter");
+            this.sentNanos = System.nanoTime();
+            greeter.tell(new Greeter.Greet(WHOM, context.getSelf()));
+        }
+
+        @Override
+        public Receive<Greeter.Greeted> createReceive() {
+            return newReceiveBuilder()
+                    .onMessage(Greeter.Greeted.class, this::onGreeted)
+                    .onSignal(PostStop.class, signal -> onPostStop())
+                    .build();
+        }
+
+        private Behavior<Greeter.Greeted> onGreeted(final Greeter.Greeted message) {
+            final long now = System.nanoTime();
+            latency.record(now - sentNanos);
+            greetingCounter++;
+            if (greetingCounter == max) {
+                return Behaviors.stopped();
+            }
+            sentNanos = now;
+            message.from.tell(new Greeter.Greet(message.whom, getContext().getSelf()));
+            return this;
+        }
+
+        private Behavior<Greeter.Greeted> onPostStop() {
+            // the greeter has stopped by now, so the next run starts without actors left over from this one
+            done.countDown();
+            return this;
+        }
+    }
+}
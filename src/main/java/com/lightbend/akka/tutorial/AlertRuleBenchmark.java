@@ -0,0 +1,74 @@
+package com.lightbend.akka.tutorial;
+
+import com.lightbend.akka.tutorial.model.AlertRule;
+import com.lightbend.akka.tutorial.util.IntervalIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Cost per reading of finding the alert rules a device enters or leaves, the way {@link DeviceGroupActor} does with
+ * an {@link IntervalIndex} of rule bounds against checking every rule. Devices wander in steps of 0.1 degrees around
+ * 20, rules are thresholds spread between 0 and 40.
+ * <p>
+ * Arguments: rules, readings.
+ */
+public class AlertRuleBenchmark {
+
+    public static void main(String[] args) {
+
+        final int ruleCount = BenchmarkSupport.intArg(args, 0, 10_000);
+        final int readings = BenchmarkSupport.intArg(args, 1, 200_000);
+
+        final Random random = new Random(42);
+        final List<AlertRule> rules = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            final double threshold = Math.round(random.nextDouble() * 400) / 10.0;
+            rules.add(random.nextBoolean() ? AlertRule.above("rule" + i, threshold) : AlertRule.below("rule" + i, threshold));
+        }
+        final IntervalIndex<AlertRule> index = IntervalIndex.of(rules, rule -> rule.low, rule -> rule.high);
+
+        final double[] values = new double[readings + 1];
+        values[0] = 20;
+        for (int i = 1; i <= readings; i++) {
+            values[i] = Math.round(values[i - 1] * 10 + random.nextInt(3) - 1) / 10.0;
+        }
+
+        for (int round = 0; round < 3; round++) {
+            final boolean warmUp = round < 2;
+
+            final long scanStart = System.nanoTime();
+            long scanned = 0;
+            for (int i = 1; i <= readings; i++) {
+                for (final AlertRule rule : rules) {
+                    if (rule.matches(values[i - 1]) != rule.matches(values[i])) {
+                        scanned++;
+                    }
+                }
+            }
+            final long scanNanos = System.nanoTime() - scanStart;
+
+            final long indexStart = System.nanoTime();
+            final long[] indexed = new long[1];
+            for (int i = 1; i <= readings; i++) {
+                final double previous = values[i - 1];
+                final double value = values[i];
+                index.forEachWithBoundIn(Math.min(previous, value), Math.max(previous, value), rule -> {
+                    if (rule.matches(previous) != rule.matches(value)) {
+                        indexed[0]++;
+                    }
+                });
+            }
+            final long indexNanos = System.nanoTime() - indexStart;
+
+            if (scanned != indexed[0]) {
+                throw new IllegalStateException("Scan found " + scanned + " transitions, the index " + indexed[0]);
+            }
+            if (!warmUp) {
+                System.out.printf("%,d rules  %,d readings  %,d transitions  scan %.0f ns/reading  index %.0f ns/reading%n",
+                        ruleCount, readings, scanned, (double) scanNanos / readings, (double) indexNanos / readings);
+            }
+        }
+    }
+}
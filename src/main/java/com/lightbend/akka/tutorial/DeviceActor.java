@@ -8,6 +8,9 @@ import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import com.lightbend.akka.tutorial.util.DedupWindow;
+import com.lightbend.akka.tutorial.util.Deadlines;
+import com.typesafe.config.Config;
 
 import java.util.Optional;
 import java.util.UUID;
@@ -39,13 +42,22 @@ public class DeviceActor extends AbstractBehavior<DeviceActor.Command> {
         }
     }
 
+    /**
+     * Dropped without an answer when it is dequeued after {@code deadlineMillis}, see {@link Deadlines}.
+     */
     public static final class ReadTemperature implements Command {
 
         final UUID requestId;
+        final long deadlineMillis;
         final ActorRef<RespondTemperature> replyTo;
 
         public ReadTemperature(final UUID requestId, final ActorRef<RespondTemperature> replyTo) {
+            this(requestId, Deadlines.NONE, replyTo);
+        }
+
+        public ReadTemperature(final UUID requestId, final long deadlineMillis, final ActorRef<RespondTemperature> replyTo) {
             this.requestId = requestId;
+            this.deadlineMillis = deadlineMillis;
             this.replyTo = replyTo;
         }
     }
@@ -63,25 +75,136 @@ public class DeviceActor extends AbstractBehavior<DeviceActor.Command> {
         }
     }
 
+    /**
+     * Asks for the recorded readings with {@code fromMillis <= timestamp < toMillis}, see {@link DeviceHistory}.
+     */
+    public static final class ReadHistory implements Command {
+
+        final UUID requestId;
+        final long fromMillis;
+        final long toMillis;
+        final ActorRef<RespondHistory> replyTo;
+
+        public ReadHistory(final UUID requestId, final long fromMillis, final long toMillis,
+                           final ActorRef<RespondHistory> replyTo) {
+            this.requestId = requestId;
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            this.replyTo = replyTo;
+        }
+    }
+
+    /**
+     * Readings oldest first, {@code values[i]} recorded at {@code timestamps[i]}. Empty when {@code iot.history} is
+     * disabled.
+     */
+    public static final class RespondHistory implements Command {
+
+        final UUID requestId;
+        final String deviceId;
+        final long[] timestamps;
+        final double[] values;
+
+        public RespondHistory(final UUID requestId, final String deviceId, final long[] timestamps, final double[] values) {
+            this.requestId = requestId;
+            this.deviceId = deviceId;
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+    }
+
     public static enum Passivate implements Command {
         INSTANCE
     }
 
+    /**
+     * Sets (or clears, when empty) the listener told about every reading that differs from the previous one, or about
+     * every reading at all with {@code everyReading}. A listener set after none was tells the last reading right
+     * away, it missed the readings before.
+     */
+    public static final class PublishChanges implements Command {
+
+        final Optional<ActorRef<TemperatureChanged>> listener;
+        final boolean everyReading;
+
+        public PublishChanges(final Optional<ActorRef<TemperatureChanged>> listener) {
+            this(listener, false);
+        }
+
+        public PublishChanges(final Optional<ActorRef<TemperatureChanged>> listener, final boolean everyReading) {
+            this.listener = listener;
+            this.everyReading = everyReading;
+        }
+    }
+
+    public static final class TemperatureChanged implements Command {
+
+        final String deviceId;
+        final double value;
+
+        public TemperatureChanged(final String deviceId, final double value) {
+            this.deviceId = deviceId;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Fails the device, for tests of its supervision.
+     */
+    enum InjectFailure implements Command {
+        INSTANCE
+    }
+
+    /**
+     * Survives restarts, see {@link DeviceSupervision}.
+     */
+    private static final class State {
+        final Optional<DeviceHistory> history;
+        // ids of the latest readings, a gateway retrying one after a timeout gets it acknowledged again
+        final DedupWindow recentRecords;
+        Optional<Double> lastTemperatureReading = Optional.empty();
+        Optional<ActorRef<TemperatureChanged>> changeListener = Optional.empty();
+        boolean publishEveryReading;
+        boolean started;
+
+        State(final Optional<DeviceHistory> history, final DedupWindow recentRecords) {
+            this.history = history;
+            this.recentRecords = recentRecords;
+        }
+    }
+
     private final String groupId;
     private final String deviceId;
-
-    private Optional<Double> lastTemperatureReading = Optional.empty();
+    private final State state;
+    private final RecordDeduplication dedup;
 
     public static Behavior<Command> create(final String groupId, final String deviceId) {
-        return Behaviors.setup(context -> new DeviceActor(context, groupId, deviceId));
+        return Behaviors.setup(context -> {
+            final Config historyConfig = context.getSystem().settings().config().getConfig("iot.history");
+            final State state = new State(historyConfig.getBoolean("enabled")
+                    ? Optional.of(DeviceHistory.fromConfig(historyConfig,
+                            HistoryStorage.get(context.getSystem()).store(), groupId + '/' + deviceId))
+                    : Optional.empty(),
+                    RecordDeduplication.get(context.getSystem()).newDeviceWindow());
+            return Behaviors.supervise(Behaviors.<Command>setup(supervised -> new DeviceActor(supervised, groupId, deviceId, state)))
+                    .onFailure(DeviceSupervision.restartWithBackoff(context.getSystem()));
+        });
     }
 
-    private DeviceActor(final ActorContext<Command> context, final String groupId, final String deviceId) {
+    private DeviceActor(final ActorContext<Command> context, final String groupId, final String deviceId,
+                        final State state) {
         super(context);
         this.groupId = groupId;
         this.deviceId = deviceId;
+        this.state = state;
+        this.dedup = RecordDeduplication.get(context.getSystem());
 
-        context.getLog().info("Device actor {}-{} started!", groupId, deviceId);
+        if (state.started) {
+            context.getLog().info("Device actor {}-{} restarted!", groupId, deviceId);
+        } else {
+            state.started = true;
+            context.getLog().info("Device actor {}-{} started!", groupId, deviceId);
+        }
     }
 
     @Override
@@ -89,7 +212,10 @@ public class DeviceActor extends AbstractBehavior<DeviceActor.Command> {
         return newReceiveBuilder()
                 .onMessage(RecordTemperature.class, this::onRecordTemperature)
                 .onMessage(ReadTemperature.class, this::onReadTemperature)
+                .onMessage(ReadHistory.class, this::onReadHistory)
+                .onMessage(PublishChanges.class, this::onPublishChanges)
                 .onMessageEquals(Passivate.INSTANCE, this::onPassivate)
+                .onMessageEquals(InjectFailure.INSTANCE, this::onInjectFailure)
                 .onSignal(PostStop.class, this::onPostStop)
                 .build();
     }
@@ -99,22 +225,65 @@ public class DeviceActor extends AbstractBehavior<DeviceActor.Command> {
         return Behaviors.stopped();
     }
 
+    private Behavior<Command> onInjectFailure() {
+        throw new IllegalStateException("Injected failure of device " + groupId + "-" + deviceId);
+    }
+
     private Behavior<Command> onRecordTemperature(final RecordTemperature message) {
 
+        if (!state.recentRecords.add(message.requestId)) {
+            dedup.deviceDuplicate();
+            message.replyTo.tell(new RecordTemperatureCompleted(message.requestId));
+            return Behaviors.same();
+        }
+
         getContext().getLog().info("Recorded temperature reading {} for request id {}.", message.value, message.requestId);
 
-        this.lastTemperatureReading = Optional.of(message.value);
+        if (state.changeListener.isPresent() && (state.publishEveryReading
+                || !state.lastTemperatureReading.isPresent() || state.lastTemperatureReading.get() != message.value)) {
+            state.changeListener.get().tell(new TemperatureChanged(this.deviceId, message.value));
+        }
+
+        state.lastTemperatureReading = Optional.of(message.value);
+        if (state.history.isPresent()) {
+            state.history.get().record(System.currentTimeMillis(), message.value);
+        }
         message.replyTo.tell(new RecordTemperatureCompleted(message.requestId));
 
         return Behaviors.same();
     }
 
+    private Behavior<Command> onPublishChanges(final PublishChanges message) {
+        if (!state.changeListener.isPresent() && message.listener.isPresent() && state.lastTemperatureReading.isPresent()) {
+            message.listener.get().tell(new TemperatureChanged(this.deviceId, state.lastTemperatureReading.get()));
+        }
+        state.changeListener = message.listener;
+        state.publishEveryReading = message.everyReading;
+        return Behaviors.same();
+    }
+
     private Behavior<Command> onReadTemperature(final ReadTemperature message) {
-        message.replyTo.tell(new RespondTemperature(message.requestId, this.deviceId, lastTemperatureReading));
+        if (Deadlines.passed(message.deadlineMillis)) {
+            // the query gave up on this device already, nobody would read the answer
+            return Behaviors.same();
+        }
+        message.replyTo.tell(new RespondTemperature(message.requestId, this.deviceId, state.lastTemperatureReading));
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onReadHistory(final ReadHistory message) {
+        if (!state.history.isPresent()) {
+            message.replyTo.tell(new RespondHistory(message.requestId, this.deviceId, new long[0], new double[0]));
+            return Behaviors.same();
+        }
+
+        final DeviceHistory.Samples samples = state.history.get().read(message.fromMillis, message.toMillis);
+        message.replyTo.tell(new RespondHistory(message.requestId, this.deviceId, samples.timestamps(), samples.values()));
         return Behaviors.same();
     }
 
     private Behavior<Command> onPostStop(final Signal signal) {
+        state.history.ifPresent(DeviceHistory::closeOpenBlock);
         getContext().getLog().info("Device actor {}-{} stopped!", groupId, deviceId);
         return Behaviors.same();
     }
@@ -8,13 +8,26 @@ import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import com.lightbend.akka.tutorial.model.AlertRule;
+import com.lightbend.akka.tutorial.model.DeviceNotAvailable;
+import com.lightbend.akka.tutorial.model.Temperature;
+import com.lightbend.akka.tutorial.model.TemperatureNotAvailable;
 import com.lightbend.akka.tutorial.model.TemperatureReading;
+import com.lightbend.akka.tutorial.util.Deadlines;
+import com.lightbend.akka.tutorial.util.PersistentSortedMap;
 
 import java.time.Duration;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class DeviceGroupActor extends AbstractBehavior<DeviceGroupActor.Command> {
 
@@ -37,11 +50,24 @@ public class DeviceGroupActor extends AbstractBehavior<DeviceGroupActor.Command>
 
         final UUID requestId;
         final String groupId;
+        final Optional<String> afterDeviceId;
+        final int limit;
         final ActorRef<ReplyDeviceList> replyTo;
 
         RequestDeviceList(final UUID requestId, final String groupId, final ActorRef<ReplyDeviceList> replyTo) {
+            this(requestId, groupId, Optional.empty(), Integer.MAX_VALUE, replyTo);
+        }
+
+        /**
+         * Requests a single page of at most {@code limit} device ids, in ascending order, starting right after
+         * {@code afterDeviceId} (or from the beginning when empty).
+         */
+        RequestDeviceList(final UUID requestId, final String groupId, final Optional<String> afterDeviceId,
+                          final int limit, final ActorRef<ReplyDeviceList> replyTo) {
             this.requestId = requestId;
             this.groupId = groupId;
+            this.afterDeviceId = afterDeviceId;
+            this.limit = limit;
             this.replyTo = replyTo;
         }
     }
@@ -50,22 +76,50 @@ public class DeviceGroupActor extends AbstractBehavior<DeviceGroupActor.Command>
 
         final UUID requestId;
         final Set<String> deviceIds;
+        final Optional<String> nextCursor;
 
         ReplyDeviceList(final UUID requestId, final Set<String> deviceIds) {
+            this(requestId, deviceIds, Optional.empty());
+        }
+
+        ReplyDeviceList(final UUID requestId, final Set<String> deviceIds, final Optional<String> nextCursor) {
             this.requestId = requestId;
             this.deviceIds = deviceIds;
+            this.nextCursor = nextCursor;
         }
     }
 
+    /**
+     * Answered within the query timeout of the group, with {@link com.lightbend.akka.tutorial.model.DeviceTimedOut}
+     * for the devices that did not answer. A request still queued at {@code deadlineMillis} (see {@link Deadlines}),
+     * in the manager, the group or its devices, is dropped without an answer: the sender gave up on it.
+     */
     public static final class RequestAllTemperatures implements DeviceGroupActor.Command, DeviceManagerActor.Command {
 
         final UUID requestId;
         final String groupId;
+        final Set<String> tags;
+        final long deadlineMillis;
         final ActorRef<DeviceGroupActor.RespondAllTemperatures> replyTo;
 
         public RequestAllTemperatures(final UUID requestId, final String groupId, final ActorRef<RespondAllTemperatures> replyTo) {
+            this(requestId, groupId, Collections.emptySet(), replyTo);
+        }
+
+        /**
+         * Only queries the devices registered with all of the given tags.
+         */
+        public RequestAllTemperatures(final UUID requestId, final String groupId, final Set<String> tags,
+                                      final ActorRef<RespondAllTemperatures> replyTo) {
+            this(requestId, groupId, tags, Deadlines.NONE, replyTo);
+        }
+
+        public RequestAllTemperatures(final UUID requestId, final String groupId, final Set<String> tags,
+                                      final long deadlineMillis, final ActorRef<RespondAllTemperatures> replyTo) {
             this.requestId = requestId;
             this.groupId = groupId;
+            this.tags = tags;
+            this.deadlineMillis = deadlineMillis;
             this.replyTo = replyTo;
         }
     }
@@ -81,21 +135,437 @@ public class DeviceGroupActor extends AbstractBehavior<DeviceGroupActor.Command>
         }
     }
 
+    /**
+     * Records a batch of readings, {@code values[i]} belonging to {@code deviceIds[i]}, registering unknown devices
+     * on the way. {@link TemperaturesRecorded} is sent once every device has acknowledged its readings.
+     * <p>
+     * A batch sent again with the same {@code requestId}, like a retry after a timeout, is not recorded twice: it is
+     * acknowledged right away, or together with the first one when that is still being recorded. See
+     * {@link RecordDeduplication}.
+     */
+    public static final class RecordTemperatures implements DeviceGroupActor.Command, DeviceManagerActor.Command {
+
+        final UUID requestId;
+        final String groupId;
+        final String[] deviceIds;
+        final double[] values;
+        final ActorRef<TemperaturesRecorded> replyTo;
+
+        public RecordTemperatures(final UUID requestId, final String groupId, final String[] deviceIds,
+                                  final double[] values, final ActorRef<TemperaturesRecorded> replyTo) {
+            this.requestId = requestId;
+            this.groupId = groupId;
+            this.deviceIds = deviceIds;
+            this.values = values;
+            this.replyTo = replyTo;
+        }
+    }
+
+    public static final class TemperaturesRecorded implements DeviceGroupActor.Command {
+
+        final UUID requestId;
+        final int count;
+
+        public TemperaturesRecorded(final UUID requestId, final int count) {
+            this.requestId = requestId;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Subscribes to the readings of the group: from now on {@code subscriber} gets a {@link TemperatureChanges} with
+     * the devices whose reading changed, at most once per {@code minEmitInterval}. Changes in between are conflated,
+     * only the latest reading of each device is sent. Subscribing again only updates the interval.
+     */
+    public static final class SubscribeTemperatures implements DeviceGroupActor.Command, DeviceManagerActor.Command {
+
+        final String groupId;
+        final ActorRef<TemperatureChanges> subscriber;
+        final Duration minEmitInterval;
+
+        public SubscribeTemperatures(final String groupId, final ActorRef<TemperatureChanges> subscriber,
+                                     final Duration minEmitInterval) {
+            this.groupId = groupId;
+            this.subscriber = subscriber;
+            this.minEmitInterval = minEmitInterval;
+        }
+    }
+
+    public static final class UnsubscribeTemperatures implements DeviceGroupActor.Command, DeviceManagerActor.Command {
+
+        final String groupId;
+        final ActorRef<TemperatureChanges> subscriber;
+
+        public UnsubscribeTemperatures(final String groupId, final ActorRef<TemperatureChanges> subscriber) {
+            this.groupId = groupId;
+            this.subscriber = subscriber;
+        }
+    }
+
+    public static final class TemperatureChanges implements DeviceGroupActor.Command {
+
+        final String groupId;
+        final Map<String, TemperatureReading> changesByDeviceId;
+
+        public TemperatureChanges(final String groupId, final Map<String, TemperatureReading> changesByDeviceId) {
+            this.groupId = groupId;
+            this.changesByDeviceId = changesByDeviceId;
+        }
+    }
+
+    /**
+     * Asks for the readings that changed after {@code version}, the version of a previous response (or 0 for
+     * everything). Answered with {@link TemperaturesNotModified} when nothing changed.
+     */
+    public static final class RequestTemperaturesSince implements DeviceGroupActor.Command, DeviceManagerActor.Command {
+
+        final UUID requestId;
+        final String groupId;
+        final long version;
+        final ActorRef<TemperaturesSinceResponse> replyTo;
+
+        public RequestTemperaturesSince(final UUID requestId, final String groupId, final long version,
+                                        final ActorRef<TemperaturesSinceResponse> replyTo) {
+            this.requestId = requestId;
+            this.groupId = groupId;
+            this.version = version;
+            this.replyTo = replyTo;
+        }
+    }
+
+    public interface TemperaturesSinceResponse {
+    }
+
+    /**
+     * Readings that changed up to {@code version}, with {@link DeviceNotAvailable} for devices that stopped. When
+     * {@code fullSnapshot} is set the requested version was unknown or too old and the map holds every device of the
+     * group, so it replaces what the client has instead of being merged into it.
+     */
+    public static final class RespondTemperaturesSince implements TemperaturesSinceResponse, DeviceGroupActor.Command {
+
+        final UUID requestId;
+        final long version;
+        final boolean fullSnapshot;
+        final Map<String, TemperatureReading> changesByDeviceId;
+
+        public RespondTemperaturesSince(final UUID requestId, final long version, final boolean fullSnapshot,
+                                        final Map<String, TemperatureReading> changesByDeviceId) {
+            this.requestId = requestId;
+            this.version = version;
+            this.fullSnapshot = fullSnapshot;
+            this.changesByDeviceId = changesByDeviceId;
+        }
+    }
+
+    public static final class TemperaturesNotModified implements TemperaturesSinceResponse, DeviceGroupActor.Command {
+
+        final UUID requestId;
+        final long version;
+
+        public TemperaturesNotModified(final UUID requestId, final long version) {
+            this.requestId = requestId;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Adds {@code rule} to the group, replacing the rule with the same id. From then on {@code listener} gets a
+     * {@link DeviceAlert} whenever a device of the group starts or stops matching the rule. Readings are checked as
+     * they are recorded, against only the rules whose bounds they cross.
+     */
+    public static final class AddAlertRule implements DeviceGroupActor.Command, DeviceManagerActor.Command {
+
+        final String groupId;
+        final AlertRule rule;
+        final ActorRef<DeviceAlert> listener;
+
+        public AddAlertRule(final String groupId, final AlertRule rule, final ActorRef<DeviceAlert> listener) {
+            this.groupId = groupId;
+            this.rule = rule;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Removes the rule, its listener is told about every device that stops firing because of it.
+     */
+    public static final class RemoveAlertRule implements DeviceGroupActor.Command, DeviceManagerActor.Command {
+
+        final String groupId;
+        final String ruleId;
+
+        public RemoveAlertRule(final String groupId, final String ruleId) {
+            this.groupId = groupId;
+            this.ruleId = ruleId;
+        }
+    }
+
+    /**
+     * A device started ({@code firing}) or stopped matching an alert rule. {@code value} is the reading it did so at,
+     * NaN when the device or the rule went away.
+     */
+    public static final class DeviceAlert implements DeviceGroupActor.Command {
+
+        final String groupId;
+        final String deviceId;
+        final String ruleId;
+        final boolean firing;
+        final double value;
+
+        public DeviceAlert(final String groupId, final String deviceId, final String ruleId, final boolean firing,
+                           final double value) {
+            this.groupId = groupId;
+            this.deviceId = deviceId;
+            this.ruleId = ruleId;
+            this.firing = firing;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            DeviceAlert that = (DeviceAlert) o;
+            return firing == that.firing &&
+                    Double.compare(that.value, value) == 0 &&
+                    groupId.equals(that.groupId) &&
+                    deviceId.equals(that.deviceId) &&
+                    ruleId.equals(that.ruleId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(groupId, deviceId, ruleId, firing, value);
+        }
+
+        @Override
+        public String toString() {
+            return "DeviceAlert{" +
+                    "groupId='" + groupId + '\'' +
+                    ", deviceId='" + deviceId + '\'' +
+                    ", ruleId='" + ruleId + '\'' +
+                    ", firing=" + firing +
+                    ", value=" + value +
+                    '}';
+        }
+    }
+
+    private enum PublishTopTemperatures implements Command {
+        INSTANCE
+    }
+
+    private static final class WrappedTemperatureChanged implements Command {
+        final DeviceActor.TemperatureChanged change;
+
+        WrappedTemperatureChanged(final DeviceActor.TemperatureChanged change) {
+            this.change = change;
+        }
+    }
+
+    private static final class EmitChanges implements Command {
+        final ActorRef<TemperatureChanges> subscriber;
+
+        EmitChanges(final ActorRef<TemperatureChanges> subscriber) {
+            this.subscriber = subscriber;
+        }
+    }
+
+    private static final class Subscription {
+        final ActorRef<TemperatureChanges> subscriber;
+        long minEmitIntervalNanos;
+        long lastEmitNanos;
+        boolean emitScheduled;
+        Map<String, TemperatureReading> pending = new HashMap<>();
+
+        Subscription(final ActorRef<TemperatureChanges> subscriber, final long minEmitIntervalNanos) {
+            this.subscriber = subscriber;
+            this.minEmitIntervalNanos = minEmitIntervalNanos;
+            this.lastEmitNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Also the key of its timer, see {@link GroupAlerts}.
+     */
+    static final class SustainedAlertDue implements Command {
+        final String deviceId;
+        final String ruleId;
+
+        SustainedAlertDue(final String deviceId, final String ruleId) {
+            this.deviceId = deviceId;
+            this.ruleId = ruleId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SustainedAlertDue that = (SustainedAlertDue) o;
+            return deviceId.equals(that.deviceId) && ruleId.equals(that.ruleId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(deviceId, ruleId);
+        }
+    }
+
+    private static final class WrappedRecordTemperatureCompleted implements Command {
+        final DeviceActor.RecordTemperatureCompleted response;
+
+        WrappedRecordTemperatureCompleted(final DeviceActor.RecordTemperatureCompleted response) {
+            this.response = response;
+        }
+    }
+
+    /**
+     * Fails the group, for tests and benchmarks of its supervision.
+     */
+    enum InjectFailure implements Command {
+        INSTANCE
+    }
+
+    /**
+     * What the devices tell the group about, see {@link #updateDevicePublishing()}.
+     */
+    private enum DevicePublishing {
+        // nothing needs the readings, devices keep them to themselves
+        OFF,
+        CHANGES,
+        // while there are alert rules, rates have to drop back to 0 once the temperature holds
+        EVERY_READING
+    }
+
+    /**
+     * Everything the group knows about its devices. Created once per group actor and handed to every incarnation of
+     * its behavior, so a restart after a failure keeps the devices (which are not stopped either), their tags,
+     * readings and versions, the subscriptions, alert rules and acknowledgements still to collect.
+     */
+    private static final class State {
+        final Optional<AtomicReference<PersistentSortedMap<String, TemperatureReading>>> readModelSnapshot;
+        final PendingRecords pendingRecords;
+        final ReadingVersions versions = new ReadingVersions();
+        final DeviceTags tags = new DeviceTags();
+        final TopTemperatures top;
+        final GroupAlerts alerts;
+        final Map<ActorRef<TemperatureChanges>, Subscription> subscriptionBySubscriber = new HashMap<>();
+        PersistentSortedMap<String, ActorRef<DeviceActor.Command>> deviceActorById = PersistentSortedMap.empty();
+        DevicePublishing devicePublishing = DevicePublishing.OFF;
+        // set by the first RequestTemperaturesSince, from then on the versions have to be kept up to date
+        boolean versionsRead;
+        // RegisterDevice and RecordTemperatures handled so far, see PartitionedDeviceGroupActor.DeviceRemoved
+        long routedMessages;
+        boolean started;
+
+        State(final String groupId,
+              final Optional<AtomicReference<PersistentSortedMap<String, TemperatureReading>>> readModelSnapshot,
+              final RecordDeduplication dedup, final int topSize) {
+            this.readModelSnapshot = readModelSnapshot;
+            this.pendingRecords = new PendingRecords(dedup);
+            this.top = new TopTemperatures(groupId, topSize);
+            this.alerts = new GroupAlerts(groupId, tags);
+        }
+    }
+
     private final String groupId;
     private final Duration queryTimeout;
-    private final Map<String, ActorRef<DeviceActor.Command>> deviceActorById;
+    private final State state;
+    private final TimerScheduler<Command> timers;
+    private final ActorRef<DeviceActor.RecordTemperatureCompleted> recordCompletedAdapter;
+    private final ActorRef<DeviceActor.TemperatureChanged> temperatureChangedAdapter;
 
     public static Behavior<Command> create(final String groupId, final Duration queryTimeout) {
-        return Behaviors.setup(context -> new DeviceGroupActor(context, groupId, queryTimeout));
+        return create(groupId, queryTimeout, Optional.empty());
+    }
+
+    /**
+     * @param topListener when present, gets the hottest devices of the group (see {@code iot.top-temperatures})
+     *                    whenever they change, at most once per publish interval
+     */
+    public static Behavior<Command> create(final String groupId, final Duration queryTimeout,
+                                           final Optional<ActorRef<DeviceManagerActor.GroupTopTemperatures>> topListener) {
+        return Behaviors.setup(context -> {
+            final TemperatureReadModel readModel = TemperatureReadModel.get(context.getSystem());
+            return supervised(context, groupId, queryTimeout, topListener,
+                    readModel.enabled() ? Optional.of(readModel.register(groupId)) : Optional.empty(), Optional.empty());
+        });
+    }
+
+    /**
+     * One partition of a group split by {@link PartitionedDeviceGroupActor}. The partitions of a group share its read
+     * model snapshot and tell {@code removedListener} about every device that stopped.
+     */
+    static Behavior<Command> createPartition(final String groupId, final Duration queryTimeout,
+                                             final Optional<ActorRef<DeviceManagerActor.GroupTopTemperatures>> topListener,
+                                             final Optional<AtomicReference<PersistentSortedMap<String, TemperatureReading>>> readModelSnapshot,
+                                             final ActorRef<PartitionedDeviceGroupActor.DeviceRemoved> removedListener) {
+        return Behaviors.setup(context -> supervised(context, groupId, queryTimeout, topListener, readModelSnapshot,
+                Optional.of(removedListener)));
+    }
+
+    private static Behavior<Command> supervised(final ActorContext<Command> context, final String groupId,
+                                                final Duration queryTimeout,
+                                                final Optional<ActorRef<DeviceManagerActor.GroupTopTemperatures>> topListener,
+                                                final Optional<AtomicReference<PersistentSortedMap<String, TemperatureReading>>> readModelSnapshot,
+                                                final Optional<ActorRef<PartitionedDeviceGroupActor.DeviceRemoved>> removedListener) {
+        final State state = new State(groupId, readModelSnapshot, RecordDeduplication.get(context.getSystem()),
+                context.getSystem().settings().config().getInt("iot.top-temperatures.size"));
+
+        // restarts keep the device actors, the state above still tracks them
+        return Behaviors.supervise(Behaviors.<Command>setup(supervised -> Behaviors.withTimers(timers ->
+                new DeviceGroupActor(supervised, timers, groupId, queryTimeout, topListener, removedListener, state))))
+                .onFailure(DeviceSupervision.restartWithBackoff(context.getSystem()).withStopChildren(false));
     }
 
-    private DeviceGroupActor(final ActorContext<Command> context, final String groupId, final Duration queryTimeout) {
+    private final Optional<ActorRef<DeviceManagerActor.GroupTopTemperatures>> topListener;
+    private final Optional<ActorRef<PartitionedDeviceGroupActor.DeviceRemoved>> removedListener;
+    private final Optional<ReadingsExporter> exporter;
+    private final Duration topPublishInterval;
+    private boolean topPublishScheduled;
+
+    private DeviceGroupActor(final ActorContext<Command> context, final TimerScheduler<Command> timers,
+                             final String groupId, final Duration queryTimeout,
+                             final Optional<ActorRef<DeviceManagerActor.GroupTopTemperatures>> topListener,
+                             final Optional<ActorRef<PartitionedDeviceGroupActor.DeviceRemoved>> removedListener,
+                             final State state) {
         super(context);
+        this.timers = timers;
+        this.topListener = topListener;
+        this.removedListener = removedListener;
+        this.exporter = ReadingsExport.get(context.getSystem()).exporter();
+        this.topPublishInterval = context.getSystem().settings().config().getDuration("iot.top-temperatures.publish-interval");
         this.groupId = groupId;
         this.queryTimeout = queryTimeout;
-        this.deviceActorById = new HashMap<>();
+        this.state = state;
+        this.recordCompletedAdapter =
+                context.messageAdapter(DeviceActor.RecordTemperatureCompleted.class, WrappedRecordTemperatureCompleted::new);
+        this.temperatureChangedAdapter =
+                context.messageAdapter(DeviceActor.TemperatureChanged.class, WrappedTemperatureChanged::new);
+
+        if (state.started) {
+            recoverScheduledWork();
+            context.getLog().info("DeviceGroup {} restarted with {} devices!", groupId, state.deviceActorById.size());
+        } else {
+            state.started = true;
+            updateDevicePublishing();
+            context.getLog().info("DeviceGroup {} started!", groupId);
+        }
+    }
 
-        context.getLog().info("DeviceGroup {} started!", groupId);
+    /**
+     * Timers do not survive a restart, so whatever they were going to emit goes out now.
+     */
+    private void recoverScheduledWork() {
+        for (final Subscription subscription : state.subscriptionBySubscriber.values()) {
+            subscription.emitScheduled = false;
+            if (!subscription.pending.isEmpty()) {
+                emit(subscription);
+            }
+        }
+        if (topListener.isPresent()) {
+            onPublishTopTemperatures();
+        }
+        state.alerts.restartSustainedTimers(timers);
     }
 
     @Override
@@ -104,13 +574,27 @@ public class DeviceGroupActor extends AbstractBehavior<DeviceGroupActor.Command>
                 .onMessage(DeviceManagerActor.RegisterDevice.class, this::onRegisterDevice)
                 .onMessage(RequestDeviceList.class, this::onRequestDeviceList)
                 .onMessage(RequestAllTemperatures.class, this::onRequestAllTemperatures)
+                .onMessage(RecordTemperatures.class, this::onRecordTemperatures)
+                .onMessage(WrappedRecordTemperatureCompleted.class, this::onRecordTemperatureCompleted)
+                .onMessage(SubscribeTemperatures.class, this::onSubscribeTemperatures)
+                .onMessage(UnsubscribeTemperatures.class, this::onUnsubscribeTemperatures)
+                .onMessage(WrappedTemperatureChanged.class, this::onTemperatureChanged)
+                .onMessage(EmitChanges.class, this::onEmitChanges)
+                .onMessageEquals(PublishTopTemperatures.INSTANCE, this::onPublishTopTemperatures)
+                .onMessage(RequestTemperaturesSince.class, this::onRequestTemperaturesSince)
+                .onMessage(AddAlertRule.class, this::onAddAlertRule)
+                .onMessage(RemoveAlertRule.class, this::onRemoveAlertRule)
+                .onMessage(SustainedAlertDue.class, this::onSustainedAlertDue)
                 .onMessage(DeviceTerminated.class, this::onTerminate)
+                .onMessageEquals(InjectFailure.INSTANCE, this::onInjectFailure)
                 .onSignal(PostStop.class, this::onPostStop)
                 .build();
     }
 
     private Behavior<Command> onRegisterDevice(final DeviceManagerActor.RegisterDevice message) {
 
+        state.routedMessages++;
+
         if (!this.groupId.equals(message.groupId)) {
             getContext().getLog().info("Ignoring RegisterDevice request for group {}. " +
                     "This actor handles only group {}!", message.groupId, this.groupId);
@@ -118,23 +602,74 @@ public class DeviceGroupActor extends AbstractBehavior<DeviceGroupActor.Command>
             return Behaviors.same();
         }
 
-        if (this.deviceActorById.containsKey(message.deviceId)) {
-            message.replyTo.tell(new DeviceManagerActor.DeviceRegistered(deviceActorById.get(message.deviceId)));
+        if (!message.tags.isEmpty()) {
+            state.tags.tag(message.deviceId, message.tags);
+        }
+
+        if (state.deviceActorById.containsKey(message.deviceId)) {
+            message.replyTo.tell(new DeviceManagerActor.DeviceRegistered(groupId, message.deviceId,
+                    state.deviceActorById.get(message.deviceId)));
             return Behaviors.same();
         }
 
-        getContext().getLog().info("Creating device actor for {}!", message.deviceId);
+        message.replyTo.tell(new DeviceManagerActor.DeviceRegistered(groupId, message.deviceId, spawnDevice(message.deviceId)));
+
+        return Behaviors.same();
+    }
+
+    private ActorRef<DeviceActor.Command> spawnDevice(final String deviceId) {
+
+        getContext().getLog().info("Creating device actor for {}!", deviceId);
 
         final ActorRef<DeviceActor.Command> deviceActor = getContext()
-                .spawn(DeviceActor.create(this.groupId, message.deviceId), "device-" + message.deviceId);
-        getContext().watchWith(deviceActor, new DeviceTerminated(deviceActor, this.groupId, message.deviceId));
+                .spawn(DeviceActor.create(this.groupId, deviceId), "device-" + deviceId);
+        getContext().watchWith(deviceActor, new DeviceTerminated(deviceActor, this.groupId, deviceId));
+
+        if (state.devicePublishing != DevicePublishing.OFF) {
+            deviceActor.tell(devicePublishChanges());
+        }
+
+        state.deviceActorById = state.deviceActorById.plus(deviceId, deviceActor);
+        publishChange(deviceId, TemperatureNotAvailable.INSTANCE);
+        return deviceActor;
+    }
+
+    private Behavior<Command> onRecordTemperatures(final RecordTemperatures message) {
+
+        state.routedMessages++;
+
+        if (!this.groupId.equals(message.groupId)) {
+            getContext().getLog().info("Ignoring RecordTemperatures request for group {}. " +
+                    "This actor handles only group {}!", message.groupId, this.groupId);
+            return Behaviors.same();
+        }
 
-        deviceActorById.put(message.deviceId, deviceActor);
-        message.replyTo.tell(new DeviceManagerActor.DeviceRegistered(deviceActor));
+        if (message.values.length == 0) {
+            message.replyTo.tell(new TemperaturesRecorded(message.requestId, 0));
+            return Behaviors.same();
+        }
+
+        final PendingRecords.PendingRecord pending = state.pendingRecords.start(message);
+        if (pending == null) {
+            return Behaviors.same();
+        }
+
+        for (int i = 0; i < message.values.length; i++) {
+            final ActorRef<DeviceActor.Command> device = state.deviceActorById.containsKey(message.deviceIds[i])
+                    ? state.deviceActorById.get(message.deviceIds[i])
+                    : spawnDevice(message.deviceIds[i]);
+            device.tell(new DeviceActor.RecordTemperature(pending.readingId(i), message.values[i],
+                    recordCompletedAdapter));
+        }
 
         return Behaviors.same();
     }
 
+    private Behavior<Command> onRecordTemperatureCompleted(final WrappedRecordTemperatureCompleted message) {
+        state.pendingRecords.completed(message.response.requestId);
+        return Behaviors.same();
+    }
+
     private Behavior<Command> onRequestDeviceList(final RequestDeviceList message) {
 
         if (!this.groupId.equals(message.groupId)) {
@@ -144,7 +679,19 @@ public class DeviceGroupActor extends AbstractBehavior<DeviceGroupActor.Command>
             return Behaviors.same();
         }
 
-        message.replyTo.tell(new ReplyDeviceList(message.requestId, this.deviceActorById.keySet()));
+        if (!message.afterDeviceId.isPresent() && message.limit >= state.deviceActorById.size()) {
+            // the map is immutable, so its key set view can be shared as is
+            message.replyTo.tell(new ReplyDeviceList(message.requestId, state.deviceActorById.keySet()));
+            return Behaviors.same();
+        }
+
+        final List<String> page = state.deviceActorById.keysAfter(message.afterDeviceId.orElse(null), message.limit);
+        final Optional<String> nextCursor = page.isEmpty() || !state.deviceActorById.hasKeyAfter(page.get(page.size() - 1))
+                ? Optional.empty()
+                : Optional.of(page.get(page.size() - 1));
+
+        message.replyTo.tell(new ReplyDeviceList(message.requestId,
+                Collections.unmodifiableSet(new LinkedHashSet<>(page)), nextCursor));
         return Behaviors.same();
     }
 
@@ -156,10 +703,24 @@ public class DeviceGroupActor extends AbstractBehavior<DeviceGroupActor.Command>
             return Behaviors.same();
         }
 
-        final Map<String, ActorRef<DeviceActor.Command>> deviceActorById = new HashMap<>(this.deviceActorById);
+        if (Deadlines.passed(message.deadlineMillis)) {
+            getContext().getLog().debug("Dropping RequestAllTemperatures {} of group {}, its deadline passed.",
+                    message.requestId, this.groupId);
+            return Behaviors.same();
+        }
+
+        // the query actor gets the current immutable snapshot, no copy needed
+        final Map<String, ActorRef<DeviceActor.Command>> devices = message.tags.isEmpty()
+                ? state.deviceActorById
+                : state.tags.devicesTagged(message.tags, state.deviceActorById);
+        if (devices.isEmpty()) {
+            message.replyTo.tell(new RespondAllTemperatures(message.requestId, Collections.emptyMap()));
+            return Behaviors.same();
+        }
 
         getContext().spawnAnonymous(
-                DeviceGroupQueryActor.create(message.requestId, deviceActorById, message.replyTo, queryTimeout)
+                DeviceGroupQueryActor.create(message.requestId, devices, message.replyTo, queryTimeout,
+                        message.deadlineMillis)
         );
 
         return Behaviors.same();
@@ -174,9 +735,15 @@ public class DeviceGroupActor extends AbstractBehavior<DeviceGroupActor.Command>
             return Behaviors.same();
         }
 
-        final boolean removed = this.deviceActorById.remove(message.deviceId) != null;
+        final boolean removed = state.deviceActorById.containsKey(message.deviceId);
+        state.deviceActorById = state.deviceActorById.minus(message.deviceId);
         if (removed) {
             getContext().getLog().info("Device {} terminated! No longer part of group {}", message.device, this.groupId);
+            state.tags.untag(message.deviceId);
+            state.alerts.clear(message.deviceId, timers);
+            publishChange(message.deviceId, DeviceNotAvailable.INSTANCE);
+            removedListener.ifPresent(listener ->
+                    listener.tell(new PartitionedDeviceGroupActor.DeviceRemoved(message.deviceId, state.routedMessages)));
         } else {
             getContext().getLog().info("Device {} already not being tracked in group {}. " +
                     "Ignoring termination signal.", message.device, this.groupId);
@@ -185,7 +752,196 @@ public class DeviceGroupActor extends AbstractBehavior<DeviceGroupActor.Command>
         return Behaviors.same();
     }
 
+    private Behavior<Command> onSubscribeTemperatures(final SubscribeTemperatures message) {
+
+        if (!this.groupId.equals(message.groupId)) {
+            getContext().getLog().info("Ignoring subscription to group {}. This actor handles only group {}!",
+                    message.groupId, this.groupId);
+            return Behaviors.same();
+        }
+
+        final Subscription existing = state.subscriptionBySubscriber.get(message.subscriber);
+        if (existing != null) {
+            existing.minEmitIntervalNanos = message.minEmitInterval.toNanos();
+            return Behaviors.same();
+        }
+
+        state.subscriptionBySubscriber.put(message.subscriber,
+                new Subscription(message.subscriber, message.minEmitInterval.toNanos()));
+        getContext().watchWith(message.subscriber, new UnsubscribeTemperatures(this.groupId, message.subscriber));
+        updateDevicePublishing();
+
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onUnsubscribeTemperatures(final UnsubscribeTemperatures message) {
+
+        if (state.subscriptionBySubscriber.remove(message.subscriber) == null) {
+            return Behaviors.same();
+        }
+
+        getContext().unwatch(message.subscriber);
+        timers.cancel(message.subscriber);
+        updateDevicePublishing();
+
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onTemperatureChanged(final WrappedTemperatureChanged message) {
+        if (state.deviceActorById.containsKey(message.change.deviceId)) {
+            final Temperature reading = new Temperature(message.change.value);
+            // unchanged readings only arrive for the alert rules
+            if (!reading.equals(state.versions.reading(message.change.deviceId))) {
+                publishChange(message.change.deviceId, reading);
+            }
+            if (!state.alerts.isEmpty() && !Double.isNaN(message.change.value)) {
+                state.alerts.evaluate(message.change.deviceId, message.change.value, timers);
+            }
+        }
+        return Behaviors.same();
+    }
+
+    private void publishChange(final String deviceId, final TemperatureReading reading) {
+        final TemperatureReading previous = state.versions.record(deviceId, reading);
+        if (topListener.isPresent() && state.top.rank(deviceId, previous, reading) && !topPublishScheduled) {
+            // everything changing the published top until then is conflated into one publish
+            topPublishScheduled = true;
+            timers.startSingleTimer(PublishTopTemperatures.INSTANCE, PublishTopTemperatures.INSTANCE, topPublishInterval);
+        }
+        if (exporter.isPresent()) {
+            exporter.get().export(groupId, deviceId, reading);
+        }
+        if (state.readModelSnapshot.isPresent()) {
+            TemperatureReadModel.publish(state.readModelSnapshot.get(), deviceId, reading);
+        }
+
+        for (final Subscription subscription : state.subscriptionBySubscriber.values()) {
+            subscription.pending.put(deviceId, reading);
+            if (subscription.emitScheduled) {
+                continue;
+            }
+
+            final long untilNextEmit = subscription.lastEmitNanos + subscription.minEmitIntervalNanos - System.nanoTime();
+            if (untilNextEmit <= 0) {
+                emit(subscription);
+            } else {
+                subscription.emitScheduled = true;
+                timers.startSingleTimer(subscription.subscriber, new EmitChanges(subscription.subscriber),
+                        Duration.ofNanos(untilNextEmit));
+            }
+        }
+    }
+
+    private Behavior<Command> onPublishTopTemperatures() {
+        topPublishScheduled = false;
+        state.top.publish().ifPresent(top -> topListener.ifPresent(listener ->
+                listener.tell(new DeviceManagerActor.GroupTopTemperatures(groupId, top))));
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onRequestTemperaturesSince(final RequestTemperaturesSince message) {
+
+        if (!this.groupId.equals(message.groupId)) {
+            getContext().getLog().info("Cannot request temperatures of group {}. Current actor cares only about " +
+                    "group {}.", message.groupId, this.groupId);
+            return Behaviors.same();
+        }
+
+        if (!state.versionsRead) {
+            // readings the devices did not tell about yet come in as changes, the reader gets them with its next request
+            state.versionsRead = true;
+            updateDevicePublishing();
+        }
+
+        message.replyTo.tell(state.versions.since(message.requestId, message.version));
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onAddAlertRule(final AddAlertRule message) {
+
+        if (!this.groupId.equals(message.groupId)) {
+            getContext().getLog().info("Ignoring alert rule for group {}. This actor handles only group {}!",
+                    message.groupId, this.groupId);
+            return Behaviors.same();
+        }
+
+        state.alerts.add(message.rule, message.listener, timers);
+        // stale readings are not entered, the devices tell their current ones now and enter the rules with them
+        if (updateDevicePublishing()) {
+            state.alerts.enterCurrentReadings(message.rule.id, state.versions, timers);
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onRemoveAlertRule(final RemoveAlertRule message) {
+        if (this.groupId.equals(message.groupId)) {
+            state.alerts.remove(message.ruleId, timers);
+            updateDevicePublishing();
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onSustainedAlertDue(final SustainedAlertDue message) {
+        state.alerts.sustained(message);
+        return Behaviors.same();
+    }
+
+    /**
+     * Devices only tell the group about their readings while something needs them: a subscriber, a reader of versions,
+     * an alert rule, the top listener, the read model or the exporter. Groups without any pay nothing per reading.
+     *
+     * @return whether the devices were telling about their readings already, so the readings of the group are current
+     */
+    private boolean updateDevicePublishing() {
+        final DevicePublishing publishing;
+        if (!state.alerts.isEmpty()) {
+            publishing = DevicePublishing.EVERY_READING;
+        } else if (!state.subscriptionBySubscriber.isEmpty() || state.versionsRead || topListener.isPresent()
+                || state.readModelSnapshot.isPresent() || exporter.isPresent()) {
+            publishing = DevicePublishing.CHANGES;
+        } else {
+            publishing = DevicePublishing.OFF;
+        }
+
+        final DevicePublishing previous = state.devicePublishing;
+        if (publishing != previous) {
+            state.devicePublishing = publishing;
+            final DeviceActor.PublishChanges publish = devicePublishChanges();
+            state.deviceActorById.values().forEach(device -> device.tell(publish));
+        }
+        return previous != DevicePublishing.OFF;
+    }
+
+    private DeviceActor.PublishChanges devicePublishChanges() {
+        return new DeviceActor.PublishChanges(
+                state.devicePublishing == DevicePublishing.OFF ? Optional.empty() : Optional.of(temperatureChangedAdapter),
+                state.devicePublishing == DevicePublishing.EVERY_READING);
+    }
+
+    private Behavior<Command> onEmitChanges(final EmitChanges message) {
+        final Subscription subscription = state.subscriptionBySubscriber.get(message.subscriber);
+        if (subscription != null) {
+            subscription.emitScheduled = false;
+            if (!subscription.pending.isEmpty()) {
+                emit(subscription);
+            }
+        }
+        return Behaviors.same();
+    }
+
+    private void emit(final Subscription subscription) {
+        subscription.subscriber.tell(new TemperatureChanges(this.groupId, subscription.pending));
+        subscription.pending = new HashMap<>();
+        subscription.lastEmitNanos = System.nanoTime();
+    }
+
+    private Behavior<Command> onInjectFailure() {
+        throw new IllegalStateException("Injected failure of group " + groupId);
+    }
+
     private Behavior<Command> onPostStop(final Signal signal) {
+        state.readModelSnapshot.ifPresent(snapshot ->
+                TemperatureReadModel.get(getContext().getSystem()).unregister(groupId, snapshot));
         getContext().getLog().info("DeviceGroupActor {} stopped!", groupId);
         return Behaviors.same();
     }
@@ -12,14 +12,29 @@ import com.lightbend.akka.tutorial.model.DeviceTimedOut;
 import com.lightbend.akka.tutorial.model.Temperature;
 import com.lightbend.akka.tutorial.model.TemperatureNotAvailable;
 import com.lightbend.akka.tutorial.model.TemperatureReading;
+import com.lightbend.akka.tutorial.util.Deadlines;
+
+import com.typesafe.config.Config;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
+/**
+ * Collects the temperatures of a set of devices. Up to {@code iot.group-query.leaf-size} devices are asked directly,
+ * larger sets are split into {@code iot.group-query.fan-out} partitions, each collected by a child query of its own,
+ * so reading and merging the replies of a huge group runs on many threads instead of one mailbox. A leaf size of 0,
+ * the default, asks every device directly.
+ * <p>
+ * The query gives up at its timeout, or at the deadline of the request when that comes first. Its reads and child
+ * queries carry that deadline, so devices still busy when it passes drop the reads instead of answering a query that
+ * is gone.
+ */
 public class DeviceGroupQueryActor extends AbstractBehavior<DeviceGroupQueryActor.Command> {
 
     interface Command {
@@ -37,6 +52,14 @@ public class DeviceGroupQueryActor extends AbstractBehavior<DeviceGroupQueryActo
         }
     }
 
+    private static final class WrappedRespondAllTemperatures implements Command {
+        final DeviceGroupActor.RespondAllTemperatures response;
+
+        WrappedRespondAllTemperatures(final DeviceGroupActor.RespondAllTemperatures response) {
+            this.response = response;
+        }
+    }
+
     private static class DeviceTerminated implements Command {
 
         final String deviceId;
@@ -52,6 +75,7 @@ public class DeviceGroupQueryActor extends AbstractBehavior<DeviceGroupQueryActo
                 .onMessageEquals(GroupQueryTimeout.INSTANCE, this::onGroupQueryTimeout)
                 .onMessage(WrappedRespondTemperature.class, this::onRespondTemperature)
                 .onMessage(DeviceTerminated.class, this::onDeviceTerminated)
+                .onMessage(WrappedRespondAllTemperatures.class, this::onRespondAllTemperatures)
                 .build();
     }
 
@@ -60,47 +84,131 @@ public class DeviceGroupQueryActor extends AbstractBehavior<DeviceGroupQueryActo
 
     private final Map<String, TemperatureReading> responseByDeviceId;
     private final Set<String> waitingDeviceIds;
+    // device ids of the partitions still collected by child queries, by the child's request id
+    private final Map<UUID, List<String>> waitingPartitions;
 
     public static Behavior<DeviceGroupQueryActor.Command> create(final UUID requestID,
                                                                  final Map<String, ActorRef<DeviceActor.Command>> actorByDeviceId,
                                                                  final ActorRef<DeviceGroupActor.RespondAllTemperatures> replyTo,
                                                                  final Duration timeout) {
-        return Behaviors.setup(context ->
-                Behaviors.withTimers(timers ->
-                        new DeviceGroupQueryActor(requestID, actorByDeviceId, replyTo, timeout, context, timers)
-                )
-        );
+        return create(requestID, actorByDeviceId, replyTo, timeout, Deadlines.NONE);
+    }
+
+    /**
+     * @param deadlineMillis deadline of the request, see {@link Deadlines}
+     */
+    public static Behavior<DeviceGroupQueryActor.Command> create(final UUID requestID,
+                                                                 final Map<String, ActorRef<DeviceActor.Command>> actorByDeviceId,
+                                                                 final ActorRef<DeviceGroupActor.RespondAllTemperatures> replyTo,
+                                                                 final Duration timeout, final long deadlineMillis) {
+        return Behaviors.setup(context -> {
+            final Config config = context.getSystem().settings().config().getConfig("iot.group-query");
+            return Behaviors.withTimers(timers -> new DeviceGroupQueryActor(requestID, actorByDeviceId, replyTo,
+                    Math.min(deadlineMillis, Deadlines.after(timeout)), config.getInt("leaf-size"),
+                    config.getInt("fan-out"), context, timers));
+        });
+    }
+
+    static Behavior<DeviceGroupQueryActor.Command> create(final UUID requestID,
+                                                          final Map<String, ActorRef<DeviceActor.Command>> actorByDeviceId,
+                                                          final ActorRef<DeviceGroupActor.RespondAllTemperatures> replyTo,
+                                                          final Duration timeout, final int leafSize, final int fanOut) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new DeviceGroupQueryActor(requestID,
+                actorByDeviceId, replyTo, Deadlines.after(timeout), leafSize, fanOut, context, timers)));
+    }
+
+    private static Behavior<DeviceGroupQueryActor.Command> createPartition(final UUID requestID,
+                                                                           final Map<String, ActorRef<DeviceActor.Command>> actorByDeviceId,
+                                                                           final ActorRef<DeviceGroupActor.RespondAllTemperatures> replyTo,
+                                                                           final long deadlineMillis,
+                                                                           final int leafSize, final int fanOut) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new DeviceGroupQueryActor(requestID,
+                actorByDeviceId, replyTo, deadlineMillis, leafSize, fanOut, context, timers)));
     }
 
     DeviceGroupQueryActor(
             final UUID requestID,
             final Map<String, ActorRef<DeviceActor.Command>> actorByDeviceId,
             final ActorRef<DeviceGroupActor.RespondAllTemperatures> replyTo,
-            final Duration timeout,
+            final long deadlineMillis,
+            final int leafSize,
+            final int fanOut,
             final ActorContext<Command> context,
             final TimerScheduler<Command> timers) {
 
         super(context);
+        final Duration timeout = Deadlines.remaining(deadlineMillis);
         this.requestId = requestID;
         this.replyTo = replyTo;
-        this.responseByDeviceId = new HashMap<>();
-        this.waitingDeviceIds = new HashSet<>(actorByDeviceId.keySet());
+        this.responseByDeviceId = new HashMap<>(actorByDeviceId.size() * 4 / 3 + 1);
+
+        if (leafSize > 0 && actorByDeviceId.size() > leafSize) {
+            this.waitingDeviceIds = new HashSet<>();
+            this.waitingPartitions = new HashMap<>();
+            queryPartitions(actorByDeviceId, deadlineMillis, leafSize, fanOut);
+            // the partitions report their own timeouts, this one only covers a partition that failed
+            timers.startSingleTimer("device-group-query-temperatures", GroupQueryTimeout.INSTANCE,
+                    timeout.plus(timeout.dividedBy(10)));
+            return;
+        }
 
         // sends a `GroupQueryTimeout` message after the given timeout
         timers.startSingleTimer("device-group-query-temperatures", GroupQueryTimeout.INSTANCE, timeout);
 
+        this.waitingDeviceIds = new HashSet<>(actorByDeviceId.keySet());
+        this.waitingPartitions = new HashMap<>();
+
         // it only converts from DeviceActor protocol to DeviceGroupQuery protocol
         // FIXME: could it be removed by making DeviceActor.RespondTemperature implement DeviceGroupQueryActor.Command?
         final ActorRef<DeviceActor.RespondTemperature> respondTemperatureAdapterActorRef =
                 context.messageAdapter(DeviceActor.RespondTemperature.class, WrappedRespondTemperature::new);
 
-        // queries each device for the temperature, watching for any termination
+        // queries each device for the temperature, watching for any termination; replies are matched by device id,
+        // so all reads share the query's request id
         actorByDeviceId.forEach((key, value) -> {
             context.watchWith(value, new DeviceTerminated(key));
-            value.tell(new DeviceActor.ReadTemperature(UUID.randomUUID(), respondTemperatureAdapterActorRef));
+            value.tell(new DeviceActor.ReadTemperature(requestID, deadlineMillis, respondTemperatureAdapterActorRef));
         });
     }
 
+    private void queryPartitions(final Map<String, ActorRef<DeviceActor.Command>> actorByDeviceId,
+                                 final long deadlineMillis, final int leafSize, final int fanOut) {
+
+        final int partitionCount = Math.min(fanOut, (actorByDeviceId.size() + leafSize - 1) / leafSize);
+        final int partitionSize = (actorByDeviceId.size() + partitionCount - 1) / partitionCount;
+
+        final ActorRef<DeviceGroupActor.RespondAllTemperatures> respondAllTemperaturesAdapter =
+                getContext().messageAdapter(DeviceGroupActor.RespondAllTemperatures.class, WrappedRespondAllTemperatures::new);
+
+        Map<String, ActorRef<DeviceActor.Command>> partition = new HashMap<>(partitionSize * 4 / 3 + 1);
+        for (final Map.Entry<String, ActorRef<DeviceActor.Command>> entry : actorByDeviceId.entrySet()) {
+            partition.put(entry.getKey(), entry.getValue());
+            if (partition.size() == partitionSize) {
+                queryPartition(partition, respondAllTemperaturesAdapter, deadlineMillis, leafSize, fanOut);
+                partition = new HashMap<>(partitionSize * 4 / 3 + 1);
+            }
+        }
+        if (!partition.isEmpty()) {
+            queryPartition(partition, respondAllTemperaturesAdapter, deadlineMillis, leafSize, fanOut);
+        }
+    }
+
+    private void queryPartition(final Map<String, ActorRef<DeviceActor.Command>> partition,
+                                final ActorRef<DeviceGroupActor.RespondAllTemperatures> replyTo,
+                                final long deadlineMillis, final int leafSize, final int fanOut) {
+        final UUID partitionRequestId = UUID.randomUUID();
+        waitingPartitions.put(partitionRequestId, new ArrayList<>(partition.keySet()));
+        getContext().spawnAnonymous(createPartition(partitionRequestId, partition, replyTo, deadlineMillis, leafSize,
+                fanOut));
+    }
+
+    private Behavior<Command> onRespondAllTemperatures(final WrappedRespondAllTemperatures message) {
+        if (this.waitingPartitions.remove(message.response.requestId) != null) {
+            this.responseByDeviceId.putAll(message.response.responseByDeviceId);
+        }
+        return respondWhenAllCollected();
+    }
+
     private Behavior<Command> onRespondTemperature(final WrappedRespondTemperature message) {
 
         if (!this.waitingDeviceIds.contains(message.response.deviceId)) {
@@ -132,13 +240,16 @@ public class DeviceGroupQueryActor extends AbstractBehavior<DeviceGroupQueryActo
 
         this.waitingDeviceIds.forEach(deviceId -> this.responseByDeviceId.put(deviceId, DeviceTimedOut.INSTANCE));
         this.waitingDeviceIds.clear();
+        this.waitingPartitions.values().forEach(deviceIds ->
+                deviceIds.forEach(deviceId -> this.responseByDeviceId.put(deviceId, DeviceTimedOut.INSTANCE)));
+        this.waitingPartitions.clear();
 
         return respondWhenAllCollected();
     }
 
     private Behavior<Command> respondWhenAllCollected() {
 
-        if (!this.waitingDeviceIds.isEmpty()) {
+        if (!this.waitingDeviceIds.isEmpty() || !this.waitingPartitions.isEmpty()) {
             return Behaviors.same();
         }
 
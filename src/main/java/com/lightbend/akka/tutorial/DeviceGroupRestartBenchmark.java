@@ -0,0 +1,119 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The failing child of ActorSupervisingExperiments, as a device group holding many devices: compares what a failure
+ * costs when the group restarts keeping its state with what it cost before, when the group was gone and every device
+ * had to register again.
+ * <p>
+ * Arguments: devices, registrations in flight, min backoff in milliseconds.
+ */
+public class DeviceGroupRestartBenchmark {
+
+    private static final Duration timeout = Duration.ofSeconds(60);
+
+    public static void main(String[] args) throws Exception {
+
+        BenchmarkSupport.quietLogging();
+
+        final int devices = BenchmarkSupport.intArg(args, 0, 100_000);
+        final int window = BenchmarkSupport.intArg(args, 1, 1_000);
+        final int minBackoffMillis = BenchmarkSupport.intArg(args, 2, 10);
+
+        final ActorSystem<DeviceGroupActor.Command> system = ActorSystem.create(
+                DeviceGroupActor.create("group", Duration.ofSeconds(3)), "group-restart-benchmark",
+                ConfigFactory.parseString("iot.supervision.min-backoff = " + minBackoffMillis + "ms")
+                        .withFallback(ConfigFactory.load()));
+        try {
+            final CompletableFuture<Long> registered = new CompletableFuture<>();
+            system.systemActorOf(RegistrationDriver.create(system, devices, window, registered), "registration-driver",
+                    Props.empty());
+            final double registrationMillis = registered.get() / 1e6;
+
+            final long failedNanos = System.nanoTime();
+            system.tell(DeviceGroupActor.InjectFailure.INSTANCE);
+            final DeviceGroupActor.ReplyDeviceList recovered = AskPattern.<DeviceGroupActor.Command, DeviceGroupActor.ReplyDeviceList>ask(system,
+                    replyTo -> new DeviceGroupActor.RequestDeviceList(UUID.randomUUID(), "group", replyTo),
+                    timeout, system.scheduler()).toCompletableFuture().get();
+            final double recoveryMillis = (System.nanoTime() - failedNanos) / 1e6;
+
+            System.out.printf("devices=%d registering all devices (recovery without retained state)=%.1fms "
+                            + "restart with retained state=%.1fms (min backoff %dms) devices after restart=%d%n",
+                    devices, registrationMillis, recoveryMillis, minBackoffMillis, recovered.deviceIds.size());
+        } finally {
+            system.terminate();
+        }
+    }
+
+    /**
+     * Registers devices with up to {@code window} registrations in flight and completes with the elapsed nanos.
+     */
+    static final class RegistrationDriver extends AbstractBehavior<DeviceManagerActor.DeviceRegistered> {
+
+        static Behavior<DeviceManagerActor.DeviceRegistered> create(final ActorRef<DeviceGroupActor.Command> group,
+                                                                    final int devices, final int window,
+                                                                    final CompletableFuture<Long> done) {
+            return Behaviors.setup(context -> new RegistrationDriver(context, group, devices, window, done));
+        }
+
+        private final ActorRef<DeviceGroupActor.Command> group;
+        private final int devices;
+        private final CompletableFuture<Long> done;
+        private final long startNanos;
+
+        private int sent;
+        private int completed;
+
+        private RegistrationDriver(final ActorContext<DeviceManagerActor.DeviceRegistered> context,
+                                   final ActorRef<DeviceGroupActor.Command> group, final int devices, final int window,
+                                   final CompletableFuture<Long> done) {
+            super(context);
+            this.group = group;
+            this.devices = devices;
+            this.done = done;
+            this.startNanos = System.nanoTime();
+
+            for (int i = 0; i < Math.min(window, devices); i++) {
+                sendNext();
+            }
+        }
+
+        @Override
+        public Receive<DeviceManagerActor.DeviceRegistered> createReceive() {
+            return newReceiveBuilder()
+                    .onMessage(DeviceManagerActor.DeviceRegistered.class, this::onRegistered)
+                    .build();
+        }
+
+        private Behavior<DeviceManagerActor.DeviceRegistered> onRegistered(final DeviceManagerActor.DeviceRegistered message) {
+            completed++;
+            if (completed == devices) {
+                done.complete(System.nanoTime() - startNanos);
+                return Behaviors.stopped();
+            }
+            if (sent < devices) {
+                sendNext();
+            }
+            return Behaviors.same();
+        }
+
+        private void sendNext() {
+            group.tell(new DeviceManagerActor.RegisterDevice("group", "device-" + sent, getContext().getSelf()));
+            sent++;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.lightbend.akka.tutorial;
+
+import com.lightbend.akka.tutorial.util.GorillaBlock;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Readings of one device over {@code iot.history.retention}, in {@link GorillaBlock}s spanning
+ * {@code iot.history.block-duration} each. Only the newest block takes readings, older ones are closed and blocks
+ * entirely past the retention are dropped. With a {@link HistoryStore} as cold tier closed blocks are handed over
+ * to it instead, so the device keeps only its open block on the heap, and reads combine both tiers. Owned by its
+ * {@link DeviceActor}.
+ */
+final class DeviceHistory {
+
+    private final long blockDurationMillis;
+    private final long retentionMillis;
+    private final Optional<HistoryStore> coldTier;
+    private final String key;
+    private final ArrayDeque<GorillaBlock> blocks = new ArrayDeque<>();
+
+    DeviceHistory(final Duration blockDuration, final Duration retention) {
+        this(blockDuration, retention, Optional.empty(), "");
+    }
+
+    /**
+     * @param key of the device in the {@code coldTier}
+     */
+    DeviceHistory(final Duration blockDuration, final Duration retention, final Optional<HistoryStore> coldTier,
+                  final String key) {
+        this.blockDurationMillis = blockDuration.toMillis();
+        this.retentionMillis = retention.toMillis();
+        this.coldTier = coldTier;
+        this.key = key;
+    }
+
+    static DeviceHistory fromConfig(final Config config, final Optional<HistoryStore> coldTier, final String key) {
+        return new DeviceHistory(config.getDuration("block-duration"), config.getDuration("retention"), coldTier, key);
+    }
+
+    void record(final long timestamp, final double value) {
+        GorillaBlock open = blocks.peekLast();
+        // blocks only take increasing timestamps, a clock stepping back repeats the last one instead
+        final long time = open == null ? timestamp : Math.max(timestamp, open.lastTimestamp());
+
+        if (open == null || time - open.firstTimestamp() >= blockDurationMillis) {
+            if (open != null) {
+                open.close();
+                if (coldTier.isPresent()) {
+                    coldTier.get().append(key, blocks.removeLast());
+                }
+            }
+            open = new GorillaBlock();
+            blocks.addLast(open);
+        }
+        open.append(time, value);
+
+        while (blocks.size() > 1 && blocks.peekFirst().lastTimestamp() < time - retentionMillis) {
+            blocks.removeFirst();
+        }
+    }
+
+    /**
+     * Closes the open block and hands it over to the cold tier, if there is one, so the readings outlive a device that
+     * stops or passivates. The next reading opens a new block.
+     */
+    void closeOpenBlock() {
+        if (coldTier.isPresent() && !blocks.isEmpty()) {
+            final GorillaBlock open = blocks.removeLast();
+            open.close();
+            coldTier.get().append(key, open);
+        }
+    }
+
+    /**
+     * Readings with {@code from <= timestamp < to}, oldest first.
+     */
+    Samples read(final long from, final long to) {
+        final Samples samples = new Samples();
+        coldTier.ifPresent(store -> store.forEach(key, from, to, samples));
+        for (final GorillaBlock block : blocks) {
+            block.forEach(from, to, samples);
+        }
+        return samples;
+    }
+
+    /**
+     * Samples held in memory.
+     */
+    int sampleCount() {
+        int count = 0;
+        for (final GorillaBlock block : blocks) {
+            count += block.count();
+        }
+        return count;
+    }
+
+    /**
+     * Bytes of the blocks held in memory.
+     */
+    long sizeInBytes() {
+        long size = 0;
+        for (final GorillaBlock block : blocks) {
+            size += block.sizeInBytes();
+        }
+        return size;
+    }
+
+    static final class Samples implements GorillaBlock.SampleConsumer {
+        private long[] timestamps = new long[16];
+        private double[] values = new double[16];
+        private int size;
+
+        @Override
+        public void accept(final long timestamp, final double value) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+        }
+
+        long[] timestamps() {
+            return Arrays.copyOf(timestamps, size);
+        }
+
+        double[] values() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -9,10 +9,27 @@ import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
 
+import com.lightbend.akka.tutorial.model.DeviceTemperature;
+import com.lightbend.akka.tutorial.model.TemperatureAggregate;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+import com.lightbend.akka.tutorial.util.Deadlines;
+import com.lightbend.akka.tutorial.util.ExpiringLruCache;
+import com.typesafe.config.Config;
+
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.emptySet;
 
@@ -25,20 +42,35 @@ public class DeviceManagerActor extends AbstractBehavior<DeviceManagerActor.Comm
 
         final String groupId;
         final String deviceId;
+        final Set<String> tags;
         final ActorRef<DeviceRegistered> replyTo;
 
         public RegisterDevice(final String groupId, final String deviceId, final ActorRef<DeviceRegistered> replyTo) {
+            this(groupId, deviceId, emptySet(), replyTo);
+        }
+
+        /**
+         * Registers a device with metadata tags such as {@code floor=3} that {@link DeviceGroupActor.RequestAllTemperatures}
+         * can filter on. Registering an existing device again with tags replaces its tags, without tags keeps them.
+         */
+        public RegisterDevice(final String groupId, final String deviceId, final Set<String> tags,
+                              final ActorRef<DeviceRegistered> replyTo) {
             this.groupId = groupId;
             this.deviceId = deviceId;
+            this.tags = tags;
             this.replyTo = replyTo;
         }
     }
 
     public static final class DeviceRegistered implements DeviceActor.Command {
 
+        final String groupId;
+        final String deviceId;
         final ActorRef<DeviceActor.Command> device;
 
-        public DeviceRegistered(final ActorRef<DeviceActor.Command> device) {
+        public DeviceRegistered(final String groupId, final String deviceId, final ActorRef<DeviceActor.Command> device) {
+            this.groupId = groupId;
+            this.deviceId = deviceId;
             this.device = device;
         }
 
@@ -53,8 +85,190 @@ public class DeviceManagerActor extends AbstractBehavior<DeviceManagerActor.Comm
         }
     }
 
+    /**
+     * Top {@code iot.top-temperatures.size} devices of a group, sent by the group whenever they change.
+     */
+    public static final class GroupTopTemperatures implements DeviceManagerActor.Command {
+
+        final String groupId;
+        final List<DeviceTemperature> top;
+
+        public GroupTopTemperatures(final String groupId, final List<DeviceTemperature> top) {
+            this.groupId = groupId;
+            this.top = top;
+        }
+    }
+
+    /**
+     * Asks for the {@code count} hottest devices across all groups, hottest first. At most
+     * {@code iot.top-temperatures.size} are returned.
+     */
+    public static final class RequestTopTemperatures implements DeviceManagerActor.Command {
+
+        final UUID requestId;
+        final int count;
+        final ActorRef<RespondTopTemperatures> replyTo;
+
+        public RequestTopTemperatures(final UUID requestId, final int count, final ActorRef<RespondTopTemperatures> replyTo) {
+            this.requestId = requestId;
+            this.count = count;
+            this.replyTo = replyTo;
+        }
+    }
+
+    public static final class RespondTopTemperatures {
+
+        final UUID requestId;
+        final List<DeviceTemperature> top;
+
+        public RespondTopTemperatures(final UUID requestId, final List<DeviceTemperature> top) {
+            this.requestId = requestId;
+            this.top = top;
+        }
+    }
+
+    /**
+     * Queries the temperatures of the given groups (all groups when empty) in parallel. The reply is sent once every
+     * group answered or after {@code deadline}, with the groups that were too slow listed as timed out. With
+     * {@code aggregatesOnly} only per group aggregates are returned, not the readings of every device.
+     */
+    public static final class RequestFleetTemperatures implements DeviceManagerActor.Command {
+
+        final UUID requestId;
+        final Set<String> groupIds;
+        final Duration deadline;
+        final boolean aggregatesOnly;
+        final ActorRef<RespondFleetTemperatures> replyTo;
+
+        public RequestFleetTemperatures(final UUID requestId, final Set<String> groupIds, final Duration deadline,
+                                        final boolean aggregatesOnly, final ActorRef<RespondFleetTemperatures> replyTo) {
+            this.requestId = requestId;
+            this.groupIds = groupIds;
+            this.deadline = deadline;
+            this.aggregatesOnly = aggregatesOnly;
+            this.replyTo = replyTo;
+        }
+    }
+
+    public static final class RespondFleetTemperatures {
+
+        final UUID requestId;
+        final Map<String, Map<String, TemperatureReading>> readingsByGroupId;
+        final Map<String, TemperatureAggregate> aggregateByGroupId;
+        final Set<String> timedOutGroupIds;
+
+        public RespondFleetTemperatures(final UUID requestId,
+                                        final Map<String, Map<String, TemperatureReading>> readingsByGroupId,
+                                        final Map<String, TemperatureAggregate> aggregateByGroupId,
+                                        final Set<String> timedOutGroupIds) {
+            this.requestId = requestId;
+            this.readingsByGroupId = readingsByGroupId;
+            this.aggregateByGroupId = aggregateByGroupId;
+            this.timedOutGroupIds = timedOutGroupIds;
+        }
+    }
+
+    public static final class RequestQueryCacheStats implements DeviceManagerActor.Command {
+
+        final ActorRef<QueryCacheStats> replyTo;
+
+        public RequestQueryCacheStats(final ActorRef<QueryCacheStats> replyTo) {
+            this.replyTo = replyTo;
+        }
+    }
+
+    /**
+     * Counters of the RequestAllTemperatures cache. {@code coalesced} counts misses that joined a group query already
+     * in flight instead of starting another one.
+     */
+    public static final class QueryCacheStats {
+
+        public final long hits;
+        public final long misses;
+        public final long coalesced;
+        public final long evictions;
+        public final long expirations;
+        public final int size;
+
+        public QueryCacheStats(final long hits, final long misses, final long coalesced, final long evictions,
+                               final long expirations, final int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.coalesced = coalesced;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.size = size;
+        }
+    }
+
+    private static final class GroupQueryResult implements DeviceManagerActor.Command {
+        final QueryKey key;
+        final DeviceGroupActor.RespondAllTemperatures response;
+
+        GroupQueryResult(final QueryKey key, final DeviceGroupActor.RespondAllTemperatures response) {
+            this.key = key;
+            this.response = response;
+        }
+    }
+
+    private static final class QueryKey {
+        final String groupId;
+        final Set<String> tags;
+
+        QueryKey(final String groupId, final Set<String> tags) {
+            this.groupId = groupId;
+            this.tags = tags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            QueryKey that = (QueryKey) o;
+            return groupId.equals(that.groupId) && tags.equals(that.tags);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(groupId, tags);
+        }
+    }
+
     public static Behavior<DeviceManagerActor.Command> create(final Duration queryGroupTemperaturesDuration) {
-        return Behaviors.setup(context -> new DeviceManagerActor(context, queryGroupTemperaturesDuration));
+        return Behaviors.setup(context -> {
+            final Config cacheConfig = context.getSystem().settings().config().getConfig("iot.query-cache");
+            return new DeviceManagerActor(context, queryGroupTemperaturesDuration,
+                    cacheConfig.getDuration("max-staleness"), cacheConfig.getInt("max-entries"),
+                    groupBehavior(context, queryGroupTemperaturesDuration));
+        });
+    }
+
+    /**
+     * @param queryCacheMaxStaleness how old a cached RespondAllTemperatures may be to answer a request, zero disables
+     *                               the cache
+     */
+    public static Behavior<DeviceManagerActor.Command> create(final Duration queryGroupTemperaturesDuration,
+                                                              final Duration queryCacheMaxStaleness,
+                                                              final int queryCacheMaxEntries) {
+        return Behaviors.setup(context -> new DeviceManagerActor(context, queryGroupTemperaturesDuration,
+                queryCacheMaxStaleness, queryCacheMaxEntries, groupBehavior(context, queryGroupTemperaturesDuration)));
+    }
+
+    /**
+     * @param groupBehavior the behavior of the group with the given id, for tests standing in for the groups
+     */
+    static Behavior<DeviceManagerActor.Command> create(final Duration queryGroupTemperaturesDuration,
+                                                       final Duration queryCacheMaxStaleness,
+                                                       final int queryCacheMaxEntries,
+                                                       final Function<String, Behavior<DeviceGroupActor.Command>> groupBehavior) {
+        return Behaviors.setup(context -> new DeviceManagerActor(context, queryGroupTemperaturesDuration,
+                queryCacheMaxStaleness, queryCacheMaxEntries, groupBehavior));
+    }
+
+    private static Function<String, Behavior<DeviceGroupActor.Command>> groupBehavior(
+            final ActorContext<DeviceManagerActor.Command> context, final Duration queryGroupTemperaturesDuration) {
+        return groupId -> PartitionedDeviceGroupActor.create(groupId, queryGroupTemperaturesDuration,
+                Optional.of(context.getSelf().narrow()));
     }
 
     @Override
@@ -63,6 +277,17 @@ public class DeviceManagerActor extends AbstractBehavior<DeviceManagerActor.Comm
                 .onMessage(DeviceManagerActor.RegisterDevice.class, this::onRegisterDevice)
                 .onMessage(DeviceGroupActor.RequestDeviceList.class, this::onRequestDeviceList)
                 .onMessage(DeviceGroupActor.RequestAllTemperatures.class, this::onRequestAllTemperatures)
+                .onMessage(DeviceGroupActor.RecordTemperatures.class, this::onRecordTemperatures)
+                .onMessage(DeviceGroupActor.RequestTemperaturesSince.class, this::onRequestTemperaturesSince)
+                .onMessage(DeviceGroupActor.SubscribeTemperatures.class, this::onSubscribeTemperatures)
+                .onMessage(DeviceGroupActor.UnsubscribeTemperatures.class, this::onUnsubscribeTemperatures)
+                .onMessage(DeviceGroupActor.AddAlertRule.class, this::onAddAlertRule)
+                .onMessage(DeviceGroupActor.RemoveAlertRule.class, this::onRemoveAlertRule)
+                .onMessage(GroupTopTemperatures.class, this::onGroupTopTemperatures)
+                .onMessage(RequestTopTemperatures.class, this::onRequestTopTemperatures)
+                .onMessage(RequestFleetTemperatures.class, this::onRequestFleetTemperatures)
+                .onMessage(GroupQueryResult.class, this::onGroupQueryResult)
+                .onMessage(RequestQueryCacheStats.class, this::onRequestQueryCacheStats)
                 .onMessage(DeviceManagerActor.DeviceGroupTerminated.class, this::onDeviceGroupTerminated)
                 .onSignal(PostStop.class, this::onPostStop)
                 .build();
@@ -71,30 +296,86 @@ public class DeviceManagerActor extends AbstractBehavior<DeviceManagerActor.Comm
     private final Map<String, ActorRef<DeviceGroupActor.Command>> deviceGroupActorById;
 
     private final Duration queryGroupTemperaturesDuration;
+    private final Function<String, Behavior<DeviceGroupActor.Command>> groupBehavior;
 
-    private DeviceManagerActor(final ActorContext<DeviceManagerActor.Command> context, final Duration queryGroupTemperaturesDuration) {
+    // the published top of every group, merged into one ranking so a query only reads its head
+    private final Map<String, List<DeviceTemperature>> topByGroupId;
+    private final TreeSet<DeviceTemperature> globalTop;
+    private final int topSize;
+
+    private final Optional<ExpiringLruCache<QueryKey, Map<String, TemperatureReading>>> queryCache;
+    private final Map<QueryKey, List<DeviceGroupActor.RequestAllTemperatures>> waitingRequestsByKey;
+    private long coalescedQueries;
+
+    private DeviceManagerActor(final ActorContext<DeviceManagerActor.Command> context,
+                               final Duration queryGroupTemperaturesDuration,
+                               final Duration queryCacheMaxStaleness, final int queryCacheMaxEntries,
+                               final Function<String, Behavior<DeviceGroupActor.Command>> groupBehavior) {
         super(context);
+        this.groupBehavior = groupBehavior;
+        this.queryCache = queryCacheMaxStaleness.isZero()
+                ? Optional.empty()
+                : Optional.of(new ExpiringLruCache<>(queryCacheMaxEntries, queryCacheMaxStaleness.toNanos()));
+        this.waitingRequestsByKey = new HashMap<>();
         this.queryGroupTemperaturesDuration = queryGroupTemperaturesDuration;
         this.deviceGroupActorById = new HashMap<>();
+        this.topByGroupId = new HashMap<>();
+        this.globalTop = new TreeSet<>(DeviceTemperature.HOTTEST_FIRST);
+        this.topSize = context.getSystem().settings().config().getInt("iot.top-temperatures.size");
         context.getLog().info("DeviceManagerActor started!");
     }
 
     private Behavior<DeviceManagerActor.Command> onRegisterDevice(final DeviceManagerActor.RegisterDevice message) {
+        deviceGroupFor(message.groupId).tell(message);
+        return Behaviors.same();
+    }
 
-        if (!this.deviceGroupActorById.containsKey(message.groupId)) {
+    private Behavior<DeviceManagerActor.Command> onRecordTemperatures(final DeviceGroupActor.RecordTemperatures message) {
+        deviceGroupFor(message.groupId).tell(message);
+        return Behaviors.same();
+    }
 
-            getContext().getLog().info("Creating device group for {}!", message.groupId);
+    private Behavior<DeviceManagerActor.Command> onSubscribeTemperatures(final DeviceGroupActor.SubscribeTemperatures message) {
+        // the group is created when missing, so subscribers see devices registering from the start
+        deviceGroupFor(message.groupId).tell(message);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onUnsubscribeTemperatures(final DeviceGroupActor.UnsubscribeTemperatures message) {
+        if (this.deviceGroupActorById.containsKey(message.groupId)) {
+            this.deviceGroupActorById.get(message.groupId).tell(message);
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onAddAlertRule(final DeviceGroupActor.AddAlertRule message) {
+        // the group is created when missing, so the rule applies to devices registering from the start
+        deviceGroupFor(message.groupId).tell(message);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRemoveAlertRule(final DeviceGroupActor.RemoveAlertRule message) {
+        if (this.deviceGroupActorById.containsKey(message.groupId)) {
+            this.deviceGroupActorById.get(message.groupId).tell(message);
+        }
+        return Behaviors.same();
+    }
+
+    private ActorRef<DeviceGroupActor.Command> deviceGroupFor(final String groupId) {
+
+        if (!this.deviceGroupActorById.containsKey(groupId)) {
+
+            getContext().getLog().info("Creating device group for {}!", groupId);
 
             final ActorRef<DeviceGroupActor.Command> deviceGroupRef =
-                    getContext().spawn(DeviceGroupActor.create(message.groupId, queryGroupTemperaturesDuration), "group-" + message.groupId);
+                    getContext().spawn(groupBehavior.apply(groupId), "group-" + groupId);
 
-            getContext().watchWith(deviceGroupRef, new DeviceGroupTerminated(message.groupId));
+            getContext().watchWith(deviceGroupRef, new DeviceGroupTerminated(groupId));
 
-            this.deviceGroupActorById.put(message.groupId, deviceGroupRef);
+            this.deviceGroupActorById.put(groupId, deviceGroupRef);
         }
 
-        this.deviceGroupActorById.get(message.groupId).tell(message);
-        return Behaviors.same();
+        return this.deviceGroupActorById.get(groupId);
     }
 
     private Behavior<DeviceManagerActor.Command> onRequestDeviceList(final DeviceGroupActor.RequestDeviceList message) {
@@ -110,18 +391,147 @@ public class DeviceManagerActor extends AbstractBehavior<DeviceManagerActor.Comm
 
     private Behavior<DeviceManagerActor.Command> onRequestAllTemperatures(final DeviceGroupActor.RequestAllTemperatures message) {
 
+        if (Deadlines.passed(message.deadlineMillis)) {
+            return Behaviors.same();
+        }
+
         if (!this.deviceGroupActorById.containsKey(message.groupId)) {
             message.replyTo.tell(new DeviceGroupActor.RespondAllTemperatures(message.requestId, emptyMap()));
             return Behaviors.same();
         }
 
+        if (!queryCache.isPresent()) {
+            this.deviceGroupActorById.get(message.groupId).tell(message);
+            return Behaviors.same();
+        }
+
+        final QueryKey key = new QueryKey(message.groupId, message.tags);
+        final Map<String, TemperatureReading> cached = queryCache.get().get(key, System.nanoTime());
+        if (cached != null) {
+            message.replyTo.tell(new DeviceGroupActor.RespondAllTemperatures(message.requestId, cached));
+            return Behaviors.same();
+        }
+
+        final List<DeviceGroupActor.RequestAllTemperatures> waiting = waitingRequestsByKey.get(key);
+        if (waiting != null) {
+            coalescedQueries++;
+            waiting.add(message);
+            return Behaviors.same();
+        }
+
+        waitingRequestsByKey.put(key, new ArrayList<>(Collections.singletonList(message)));
+        // the group query answers within its own timeout, the margin only covers a group stopping meanwhile. Its
+        // result is cached for later requests too, so it is only bounded by the ask, not by this request's deadline
+        final Duration askTimeout = queryGroupTemperaturesDuration.plusSeconds(1);
+        getContext().ask(DeviceGroupActor.RespondAllTemperatures.class, this.deviceGroupActorById.get(message.groupId),
+                askTimeout,
+                replyTo -> new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), message.groupId, message.tags,
+                        Deadlines.after(askTimeout), replyTo),
+                (response, failure) -> new GroupQueryResult(key, response));
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onGroupQueryResult(final GroupQueryResult message) {
+
+        final List<DeviceGroupActor.RequestAllTemperatures> waiting = waitingRequestsByKey.remove(message.key);
+
+        if (message.response == null) {
+            // the group stopped or did not answer in time. An empty answer would read as a group without devices, so
+            // the waiting requests get none and time out like a request sent to the group itself would
+            getContext().getLog().warn("Query of temperatures of group {} failed, {} requests left unanswered",
+                    message.key.groupId, waiting == null ? 0 : waiting.size());
+            return Behaviors.same();
+        }
+
+        final Map<String, TemperatureReading> readings = Collections.unmodifiableMap(message.response.responseByDeviceId);
+        queryCache.ifPresent(cache -> cache.put(message.key, readings, System.nanoTime()));
+
+        if (waiting != null) {
+            for (final DeviceGroupActor.RequestAllTemperatures request : waiting) {
+                if (!Deadlines.passed(request.deadlineMillis)) {
+                    request.replyTo.tell(new DeviceGroupActor.RespondAllTemperatures(request.requestId, readings));
+                }
+            }
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRequestQueryCacheStats(final RequestQueryCacheStats message) {
+        message.replyTo.tell(queryCache
+                .map(cache -> new QueryCacheStats(cache.hits(), cache.misses(), coalescedQueries, cache.evictions(),
+                        cache.expirations(), cache.size()))
+                .orElse(new QueryCacheStats(0, 0, 0, 0, 0, 0)));
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRequestTemperaturesSince(final DeviceGroupActor.RequestTemperaturesSince message) {
+
+        if (!this.deviceGroupActorById.containsKey(message.groupId)) {
+            message.replyTo.tell(new DeviceGroupActor.RespondTemperaturesSince(message.requestId, 0, true, emptyMap()));
+            return Behaviors.same();
+        }
+
         this.deviceGroupActorById.get(message.groupId).tell(message);
         return Behaviors.same();
     }
 
+    private Behavior<DeviceManagerActor.Command> onGroupTopTemperatures(final GroupTopTemperatures message) {
+        if (this.deviceGroupActorById.containsKey(message.groupId)) {
+            replaceGroupTop(message.groupId, message.top);
+        }
+        return Behaviors.same();
+    }
+
+    private void replaceGroupTop(final String groupId, final List<DeviceTemperature> top) {
+        final List<DeviceTemperature> previous = top.isEmpty() ? topByGroupId.remove(groupId) : topByGroupId.put(groupId, top);
+        if (previous != null) {
+            globalTop.removeAll(previous);
+        }
+        globalTop.addAll(top);
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRequestTopTemperatures(final RequestTopTemperatures message) {
+        final int count = Math.min(message.count, topSize);
+        final List<DeviceTemperature> top = new ArrayList<>(count);
+        for (final DeviceTemperature entry : globalTop) {
+            if (top.size() == count) {
+                break;
+            }
+            top.add(entry);
+        }
+        message.replyTo.tell(new RespondTopTemperatures(message.requestId, top));
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRequestFleetTemperatures(final RequestFleetTemperatures message) {
+
+        final Map<String, ActorRef<DeviceGroupActor.Command>> groups;
+        if (message.groupIds.isEmpty()) {
+            groups = new HashMap<>(this.deviceGroupActorById);
+        } else {
+            groups = new HashMap<>();
+            for (final String groupId : message.groupIds) {
+                final ActorRef<DeviceGroupActor.Command> group = this.deviceGroupActorById.get(groupId);
+                if (group != null) {
+                    groups.put(groupId, group);
+                }
+            }
+        }
+
+        if (groups.isEmpty()) {
+            message.replyTo.tell(new RespondFleetTemperatures(message.requestId, emptyMap(), emptyMap(), emptySet()));
+            return Behaviors.same();
+        }
+
+        getContext().spawnAnonymous(FleetQueryActor.create(message, groups));
+        return Behaviors.same();
+    }
+
     private Behavior<DeviceManagerActor.Command> onDeviceGroupTerminated(final DeviceManagerActor.DeviceGroupTerminated message) {
         getContext().getLog().info("Device group actor for {} has been terminated", message.groupId);
         this.deviceGroupActorById.remove(message.groupId);
+        replaceGroupTop(message.groupId, emptyList());
+        queryCache.ifPresent(cache -> cache.removeIf(key -> key.groupId.equals(message.groupId)));
         return Behaviors.same();
     }
 
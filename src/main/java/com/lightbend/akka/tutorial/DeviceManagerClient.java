@@ -0,0 +1,49 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Asks the {@link DeviceManagerActor} from plain Java code. All requests of a client go through one
+ * {@link DeviceManagerGatewayActor}, any number of them may be in flight at once. The returned stages fail with a
+ * {@link java.util.concurrent.TimeoutException} when no reply arrives in time.
+ * <p>
+ * Stages complete on the gateway's dispatcher thread, callers should use the async variants for anything slow.
+ */
+public final class DeviceManagerClient {
+
+    private final ActorRef<DeviceManagerGatewayActor.Command> gateway;
+
+    public static DeviceManagerClient create(final ActorSystem<?> system, final ActorRef<DeviceManagerActor.Command> deviceManager,
+                                             final String name, final Duration timeout) {
+        return new DeviceManagerClient(system.systemActorOf(DeviceManagerGatewayActor.create(deviceManager, timeout),
+                name, Props.empty()));
+    }
+
+    private DeviceManagerClient(final ActorRef<DeviceManagerGatewayActor.Command> gateway) {
+        this.gateway = gateway;
+    }
+
+    public CompletionStage<DeviceManagerActor.DeviceRegistered> registerDevice(final String groupId, final String deviceId) {
+        final CompletableFuture<DeviceManagerActor.DeviceRegistered> result = new CompletableFuture<>();
+        gateway.tell(new DeviceManagerGatewayActor.RegisterDevice(groupId, deviceId, result));
+        return result;
+    }
+
+    public CompletionStage<DeviceGroupActor.RespondAllTemperatures> requestAllTemperatures(final String groupId) {
+        final CompletableFuture<DeviceGroupActor.RespondAllTemperatures> result = new CompletableFuture<>();
+        gateway.tell(new DeviceManagerGatewayActor.RequestAllTemperatures(groupId, result));
+        return result;
+    }
+
+    public CompletionStage<DeviceGroupActor.ReplyDeviceList> requestDeviceList(final String groupId) {
+        final CompletableFuture<DeviceGroupActor.ReplyDeviceList> result = new CompletableFuture<>();
+        gateway.tell(new DeviceManagerGatewayActor.RequestDeviceList(groupId, result));
+        return result;
+    }
+}
@@ -0,0 +1,258 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import com.lightbend.akka.tutorial.util.Deadlines;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Long-lived actor behind {@link DeviceManagerClient}. Forwards requests to the {@link DeviceManagerActor} with itself
+ * as the reply address and completes the caller's future when the reply with the matching request id comes back,
+ * so a request costs two messages instead of a temporary actor and a timer per ask.
+ * <p>
+ * {@link DeviceManagerActor.DeviceRegistered} carries no request id. Registrations are correlated by group and device
+ * id instead; replies for one device come from the same group, in the order the registrations were sent.
+ * <p>
+ * Requests time out in a sweep every tenth of the timeout, so a timed out request fails up to 10% late.
+ */
+public class DeviceManagerGatewayActor extends AbstractBehavior<DeviceManagerGatewayActor.Command> {
+
+    interface Command {
+    }
+
+    static final class RegisterDevice implements Command {
+
+        final String groupId;
+        final String deviceId;
+        final CompletableFuture<DeviceManagerActor.DeviceRegistered> result;
+
+        RegisterDevice(final String groupId, final String deviceId,
+                       final CompletableFuture<DeviceManagerActor.DeviceRegistered> result) {
+            this.groupId = groupId;
+            this.deviceId = deviceId;
+            this.result = result;
+        }
+    }
+
+    static final class RequestAllTemperatures implements Command {
+
+        final String groupId;
+        final CompletableFuture<DeviceGroupActor.RespondAllTemperatures> result;
+
+        RequestAllTemperatures(final String groupId, final CompletableFuture<DeviceGroupActor.RespondAllTemperatures> result) {
+            this.groupId = groupId;
+            this.result = result;
+        }
+    }
+
+    static final class RequestDeviceList implements Command {
+
+        final String groupId;
+        final CompletableFuture<DeviceGroupActor.ReplyDeviceList> result;
+
+        RequestDeviceList(final String groupId, final CompletableFuture<DeviceGroupActor.ReplyDeviceList> result) {
+            this.groupId = groupId;
+            this.result = result;
+        }
+    }
+
+    private static final class WrappedDeviceRegistered implements Command {
+
+        final DeviceManagerActor.DeviceRegistered response;
+
+        WrappedDeviceRegistered(final DeviceManagerActor.DeviceRegistered response) {
+            this.response = response;
+        }
+    }
+
+    private static final class WrappedRespondAllTemperatures implements Command {
+
+        final DeviceGroupActor.RespondAllTemperatures response;
+
+        WrappedRespondAllTemperatures(final DeviceGroupActor.RespondAllTemperatures response) {
+            this.response = response;
+        }
+    }
+
+    private static final class WrappedReplyDeviceList implements Command {
+
+        final DeviceGroupActor.ReplyDeviceList response;
+
+        WrappedReplyDeviceList(final DeviceGroupActor.ReplyDeviceList response) {
+            this.response = response;
+        }
+    }
+
+    private enum SweepTimeouts implements Command {
+        INSTANCE
+    }
+
+    private static final class Pending {
+
+        final CompletableFuture<?> result;
+        final long deadlineNanos;
+
+        Pending(final CompletableFuture<?> result, final long deadlineNanos) {
+            this.result = result;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    public static Behavior<Command> create(final ActorRef<DeviceManagerActor.Command> deviceManager,
+                                           final Duration timeout) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new DeviceManagerGatewayActor(context, timers, deviceManager, timeout)));
+    }
+
+    private final ActorRef<DeviceManagerActor.Command> deviceManager;
+    private final long timeoutNanos;
+
+    private final ActorRef<DeviceManagerActor.DeviceRegistered> deviceRegisteredAdapter;
+    private final ActorRef<DeviceGroupActor.RespondAllTemperatures> respondAllTemperaturesAdapter;
+    private final ActorRef<DeviceGroupActor.ReplyDeviceList> replyDeviceListAdapter;
+
+    // in sending order, which with a single timeout is also deadline order
+    private final LinkedHashMap<UUID, Pending> pendingByRequestId = new LinkedHashMap<>();
+    private final Map<String, ArrayDeque<UUID>> registrationsByDevice = new HashMap<>();
+    private long requestSequence;
+
+    private DeviceManagerGatewayActor(final ActorContext<Command> context, final TimerScheduler<Command> timers,
+                                      final ActorRef<DeviceManagerActor.Command> deviceManager, final Duration timeout) {
+        super(context);
+        this.deviceManager = deviceManager;
+        this.timeoutNanos = timeout.toNanos();
+        this.deviceRegisteredAdapter =
+                context.messageAdapter(DeviceManagerActor.DeviceRegistered.class, WrappedDeviceRegistered::new);
+        this.respondAllTemperaturesAdapter =
+                context.messageAdapter(DeviceGroupActor.RespondAllTemperatures.class, WrappedRespondAllTemperatures::new);
+        this.replyDeviceListAdapter =
+                context.messageAdapter(DeviceGroupActor.ReplyDeviceList.class, WrappedReplyDeviceList::new);
+
+        timers.startTimerAtFixedRate(SweepTimeouts.INSTANCE, SweepTimeouts.INSTANCE, timeout.dividedBy(10));
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(RegisterDevice.class, this::onRegisterDevice)
+                .onMessage(RequestAllTemperatures.class, this::onRequestAllTemperatures)
+                .onMessage(RequestDeviceList.class, this::onRequestDeviceList)
+                .onMessage(WrappedDeviceRegistered.class, this::onDeviceRegistered)
+                .onMessage(WrappedRespondAllTemperatures.class, this::onRespondAllTemperatures)
+                .onMessage(WrappedReplyDeviceList.class, this::onReplyDeviceList)
+                .onMessage(SweepTimeouts.class, message -> onSweepTimeouts())
+                .onSignal(PostStop.class, signal -> onPostStop())
+                .build();
+    }
+
+    private Behavior<Command> onRegisterDevice(final RegisterDevice message) {
+        final UUID requestId = track(message.result);
+        registrationsByDevice.computeIfAbsent(message.groupId + '/' + message.deviceId, key -> new ArrayDeque<>())
+                .add(requestId);
+        deviceManager.tell(new DeviceManagerActor.RegisterDevice(message.groupId, message.deviceId, deviceRegisteredAdapter));
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onRequestAllTemperatures(final RequestAllTemperatures message) {
+        // the request is failed with a timeout after that, an answer would arrive too late anyway
+        deviceManager.tell(new DeviceGroupActor.RequestAllTemperatures(track(message.result), message.groupId,
+                Collections.emptySet(), Deadlines.after(Duration.ofNanos(timeoutNanos)), respondAllTemperaturesAdapter));
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onRequestDeviceList(final RequestDeviceList message) {
+        deviceManager.tell(new DeviceGroupActor.RequestDeviceList(track(message.result), message.groupId,
+                replyDeviceListAdapter));
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onDeviceRegistered(final WrappedDeviceRegistered message) {
+        final String key = message.response.groupId + '/' + message.response.deviceId;
+        final ArrayDeque<UUID> registrations = registrationsByDevice.get(key);
+        if (registrations == null) {
+            return Behaviors.same();
+        }
+
+        // skips registrations that already timed out
+        UUID requestId;
+        while ((requestId = registrations.poll()) != null) {
+            if (complete(requestId, message.response)) {
+                break;
+            }
+        }
+        if (registrations.isEmpty()) {
+            registrationsByDevice.remove(key);
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onRespondAllTemperatures(final WrappedRespondAllTemperatures message) {
+        complete(message.response.requestId, message.response);
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onReplyDeviceList(final WrappedReplyDeviceList message) {
+        complete(message.response.requestId, message.response);
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onSweepTimeouts() {
+        final long now = System.nanoTime();
+        final Iterator<Pending> pending = pendingByRequestId.values().iterator();
+        while (pending.hasNext()) {
+            final Pending request = pending.next();
+            if (request.deadlineNanos - now > 0) {
+                break;
+            }
+            pending.remove();
+            request.result.completeExceptionally(new TimeoutException("No reply from the device manager within "
+                    + Duration.ofNanos(timeoutNanos)));
+        }
+        // a device that never replied would keep its queue forever
+        registrationsByDevice.values().removeIf(registrations -> {
+            registrations.removeIf(requestId -> !pendingByRequestId.containsKey(requestId));
+            return registrations.isEmpty();
+        });
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onPostStop() {
+        final IllegalStateException stopped = new IllegalStateException("Device manager gateway stopped");
+        pendingByRequestId.values().forEach(request -> request.result.completeExceptionally(stopped));
+        pendingByRequestId.clear();
+        return Behaviors.same();
+    }
+
+    private UUID track(final CompletableFuture<?> result) {
+        // a sequential id is enough for correlation and is much cheaper than a random UUID
+        final UUID requestId = new UUID(0, requestSequence++);
+        pendingByRequestId.put(requestId, new Pending(result, System.nanoTime() + timeoutNanos));
+        return requestId;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> boolean complete(final UUID requestId, final T response) {
+        final Pending request = pendingByRequestId.remove(requestId);
+        if (request == null) {
+            return false;
+        }
+        ((CompletableFuture<T>) request.result).complete(response);
+        return true;
+    }
+}
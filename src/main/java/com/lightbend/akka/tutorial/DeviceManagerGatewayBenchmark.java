@@ -0,0 +1,95 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Compares RequestDeviceList throughput through {@link AskPattern}, one temporary actor and timer per request, with
+ * the {@link DeviceManagerClient}, where all requests share one gateway actor. Client threads keep a window of
+ * requests in flight.
+ * <p>
+ * Arguments: groups, client threads, requests per thread, in-flight window per thread.
+ */
+public class DeviceManagerGatewayBenchmark {
+
+    private static final Duration timeout = Duration.ofSeconds(30);
+
+    public static void main(String[] args) throws Exception {
+
+        BenchmarkSupport.quietLogging();
+
+        final int groups = BenchmarkSupport.intArg(args, 0, 100);
+        final int threads = BenchmarkSupport.intArg(args, 1, 4);
+        final int requestsPerThread = BenchmarkSupport.intArg(args, 2, 50_000);
+        final int window = BenchmarkSupport.intArg(args, 3, 100);
+
+        final ActorSystem<DeviceManagerActor.Command> system =
+                ActorSystem.create(DeviceManagerActor.create(Duration.ofSeconds(3)), "gateway-benchmark");
+        try {
+            final DeviceManagerClient client = DeviceManagerClient.create(system, system, "device-manager-gateway", timeout);
+            for (int group = 0; group < groups; group++) {
+                client.registerDevice("group-" + group, "device").toCompletableFuture().get();
+            }
+
+            // two rounds each, the first one warms up
+            for (int round = 0; round < 2; round++) {
+                report("ask", groups, threads, requestsPerThread, window, groupId ->
+                        AskPattern.<DeviceManagerActor.Command, DeviceGroupActor.ReplyDeviceList>ask(system,
+                                replyTo -> new DeviceGroupActor.RequestDeviceList(UUID.randomUUID(), groupId, replyTo),
+                                timeout, system.scheduler()));
+                report("gateway", groups, threads, requestsPerThread, window, client::requestDeviceList);
+            }
+        } finally {
+            system.terminate();
+        }
+    }
+
+    private static void report(final String mode, final int groups, final int threadCount, final int requestsPerThread,
+                               final int window,
+                               final Function<String, CompletionStage<DeviceGroupActor.ReplyDeviceList>> request)
+            throws InterruptedException {
+
+        final LongAdder failed = new LongAdder();
+        final long start = System.nanoTime();
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            final Thread thread = new Thread(() -> {
+                final Semaphore inFlight = new Semaphore(window);
+                try {
+                    for (int sent = 0; sent < requestsPerThread; sent++) {
+                        inFlight.acquire();
+                        request.apply("group-" + sent % groups).whenComplete((reply, failure) -> {
+                            if (failure != null) {
+                                failed.increment();
+                            }
+                            inFlight.release();
+                        });
+                    }
+                    inFlight.acquire(window);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        final long total = (long) threadCount * requestsPerThread;
+        System.out.printf("mode=%s threads=%d window=%d requests=%d requests/s=%.0f failed=%d%n",
+                mode, threadCount, window, total, total / seconds, failed.sum());
+    }
+}
@@ -0,0 +1,103 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Adapter;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.serialization.SerializationExtension;
+import akka.serialization.SerializerWithStringManifest;
+import com.lightbend.akka.tutorial.model.Temperature;
+import com.lightbend.akka.tutorial.model.TemperatureNotAvailable;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Measures serialization and deserialization throughput of {@link DeviceProtocolSerializer} for single readings and
+ * for a large {@link DeviceGroupActor.RespondAllTemperatures}, and compares the encoded size of the latter with
+ * plain Java serialization of an equivalent {@code HashMap<String, Double>}.
+ * <p>
+ * Arguments: devices in the group response, iterations.
+ */
+public class DeviceProtocolSerializationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        BenchmarkSupport.quietLogging();
+
+        final int devices = BenchmarkSupport.intArg(args, 0, 20_000);
+        final int iterations = BenchmarkSupport.intArg(args, 1, 200);
+
+        final ActorSystem<Void> system = ActorSystem.create(Behaviors.empty(), "serialization-benchmark");
+        try {
+            final SerializerWithStringManifest serializer = (SerializerWithStringManifest)
+                    SerializationExtension.get(Adapter.toClassic(system)).serializerFor(DeviceActor.RecordTemperature.class);
+
+            final DeviceActor.RecordTemperature record =
+                    new DeviceActor.RecordTemperature(UUID.randomUUID(), 21.5, system.deadLetters());
+            measure("RecordTemperature", serializer, record, iterations * devices);
+
+            final Map<String, TemperatureReading> readings = new HashMap<>();
+            final HashMap<String, Double> plainReadings = new HashMap<>();
+            for (int i = 0; i < devices; i++) {
+                final String deviceId = "device-" + i;
+                if (i % 10 == 0) {
+                    readings.put(deviceId, TemperatureNotAvailable.INSTANCE);
+                } else {
+                    readings.put(deviceId, new Temperature(20 + i % 7));
+                    plainReadings.put(deviceId, 20.0 + i % 7);
+                }
+            }
+
+            final DeviceGroupActor.RespondAllTemperatures response =
+                    new DeviceGroupActor.RespondAllTemperatures(UUID.randomUUID(), readings);
+            measure("RespondAllTemperatures(" + devices + ")", serializer, response, iterations);
+
+            System.out.printf("java serialization of HashMap<String, Double>(%d): %d bytes%n",
+                    plainReadings.size(), javaSerializedSize(plainReadings));
+        } finally {
+            system.terminate();
+        }
+    }
+
+    private static void measure(final String name, final SerializerWithStringManifest serializer,
+                                final Object message, final int iterations) throws Exception {
+
+        final String manifest = serializer.manifest(message);
+        final byte[] bytes = serializer.toBinary(message);
+
+        // warm up both directions before timing
+        for (int i = 0; i < iterations; i++) {
+            serializer.fromBinary(serializer.toBinary(message), manifest);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            serializer.toBinary(message);
+        }
+        final double serializeSeconds = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            serializer.fromBinary(bytes, manifest);
+        }
+        final double deserializeSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%s: %d bytes, serialize %.0f msg/s (%.1f MB/s), deserialize %.0f msg/s (%.1f MB/s)%n",
+                name, bytes.length,
+                iterations / serializeSeconds, iterations * (double) bytes.length / serializeSeconds / 1e6,
+                iterations / deserializeSeconds, iterations * (double) bytes.length / deserializeSeconds / 1e6);
+    }
+
+    private static int javaSerializedSize(final Object value) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.size();
+    }
+}
@@ -0,0 +1,628 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.ExtendedActorSystem;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorRefResolver;
+import akka.actor.typed.javadsl.Adapter;
+import akka.serialization.SerializerWithStringManifest;
+import com.lightbend.akka.tutorial.model.AlertRule;
+import com.lightbend.akka.tutorial.model.DeviceNotAvailable;
+import com.lightbend.akka.tutorial.model.DeviceTemperature;
+import com.lightbend.akka.tutorial.model.DeviceTimedOut;
+import com.lightbend.akka.tutorial.model.Temperature;
+import com.lightbend.akka.tutorial.model.TemperatureAggregate;
+import com.lightbend.akka.tutorial.model.TemperatureNotAvailable;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+
+import java.io.NotSerializableException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Hand written binary format for the device protocol. Lengths and counts are varints, doubles are written as their
+ * raw 8 bytes, readings are a one byte tag (followed by the value for {@link Temperature}) and actor refs use their
+ * {@link ActorRefResolver} string form.
+ * <p>
+ * Bound to the protocol classes in reference.conf.
+ */
+public class DeviceProtocolSerializer extends SerializerWithStringManifest {
+
+    static final int IDENTIFIER = 9001;
+
+    static final String RECORD_TEMPERATURE_MANIFEST = "RT";
+    static final String RECORD_TEMPERATURE_COMPLETED_MANIFEST = "RTC";
+    static final String READ_TEMPERATURE_MANIFEST = "RDT";
+    static final String RESPOND_TEMPERATURE_MANIFEST = "RST";
+    static final String READ_HISTORY_MANIFEST = "RDH";
+    static final String RESPOND_HISTORY_MANIFEST = "RSH";
+    static final String REGISTER_DEVICE_MANIFEST = "RD";
+    static final String DEVICE_REGISTERED_MANIFEST = "DR";
+    static final String REQUEST_DEVICE_LIST_MANIFEST = "RQL";
+    static final String REPLY_DEVICE_LIST_MANIFEST = "RPL";
+    static final String REQUEST_ALL_TEMPERATURES_MANIFEST = "RQA";
+    static final String RESPOND_ALL_TEMPERATURES_MANIFEST = "RPA";
+    static final String RECORD_TEMPERATURES_MANIFEST = "RTS";
+    static final String TEMPERATURES_RECORDED_MANIFEST = "TSR";
+    static final String TEMPERATURE_READING_MANIFEST = "TR";
+    static final String SUBSCRIBE_TEMPERATURES_MANIFEST = "STS";
+    static final String UNSUBSCRIBE_TEMPERATURES_MANIFEST = "UTS";
+    static final String TEMPERATURE_CHANGES_MANIFEST = "TC";
+    static final String REQUEST_TEMPERATURES_SINCE_MANIFEST = "RQS";
+    static final String RESPOND_TEMPERATURES_SINCE_MANIFEST = "RPS";
+    static final String TEMPERATURES_NOT_MODIFIED_MANIFEST = "TNM";
+    static final String REQUEST_TOP_TEMPERATURES_MANIFEST = "RQT";
+    static final String RESPOND_TOP_TEMPERATURES_MANIFEST = "RPT";
+    static final String REQUEST_FLEET_TEMPERATURES_MANIFEST = "RQF";
+    static final String RESPOND_FLEET_TEMPERATURES_MANIFEST = "RPF";
+    static final String ADD_ALERT_RULE_MANIFEST = "AAR";
+    static final String REMOVE_ALERT_RULE_MANIFEST = "RAR";
+    static final String DEVICE_ALERT_MANIFEST = "DA";
+
+    private static final byte TEMPERATURE_TAG = 0;
+    private static final byte TEMPERATURE_NOT_AVAILABLE_TAG = 1;
+    private static final byte DEVICE_NOT_AVAILABLE_TAG = 2;
+    private static final byte DEVICE_TIMED_OUT_TAG = 3;
+
+    private final ActorRefResolver actorRefResolver;
+
+    public DeviceProtocolSerializer(final ExtendedActorSystem system) {
+        this.actorRefResolver = ActorRefResolver.get(Adapter.toTyped(system));
+    }
+
+    @Override
+    public int identifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public String manifest(final Object o) {
+        if (o instanceof DeviceActor.RecordTemperature) return RECORD_TEMPERATURE_MANIFEST;
+        if (o instanceof DeviceActor.RecordTemperatureCompleted) return RECORD_TEMPERATURE_COMPLETED_MANIFEST;
+        if (o instanceof DeviceActor.ReadTemperature) return READ_TEMPERATURE_MANIFEST;
+        if (o instanceof DeviceActor.RespondTemperature) return RESPOND_TEMPERATURE_MANIFEST;
+        if (o instanceof DeviceActor.ReadHistory) return READ_HISTORY_MANIFEST;
+        if (o instanceof DeviceActor.RespondHistory) return RESPOND_HISTORY_MANIFEST;
+        if (o instanceof DeviceManagerActor.RegisterDevice) return REGISTER_DEVICE_MANIFEST;
+        if (o instanceof DeviceManagerActor.DeviceRegistered) return DEVICE_REGISTERED_MANIFEST;
+        if (o instanceof DeviceGroupActor.RequestDeviceList) return REQUEST_DEVICE_LIST_MANIFEST;
+        if (o instanceof DeviceGroupActor.ReplyDeviceList) return REPLY_DEVICE_LIST_MANIFEST;
+        if (o instanceof DeviceGroupActor.RequestAllTemperatures) return REQUEST_ALL_TEMPERATURES_MANIFEST;
+        if (o instanceof DeviceGroupActor.RespondAllTemperatures) return RESPOND_ALL_TEMPERATURES_MANIFEST;
+        if (o instanceof DeviceGroupActor.RecordTemperatures) return RECORD_TEMPERATURES_MANIFEST;
+        if (o instanceof DeviceGroupActor.TemperaturesRecorded) return TEMPERATURES_RECORDED_MANIFEST;
+        if (o instanceof TemperatureReading) return TEMPERATURE_READING_MANIFEST;
+        if (o instanceof DeviceGroupActor.SubscribeTemperatures) return SUBSCRIBE_TEMPERATURES_MANIFEST;
+        if (o instanceof DeviceGroupActor.UnsubscribeTemperatures) return UNSUBSCRIBE_TEMPERATURES_MANIFEST;
+        if (o instanceof DeviceGroupActor.TemperatureChanges) return TEMPERATURE_CHANGES_MANIFEST;
+        if (o instanceof DeviceGroupActor.RequestTemperaturesSince) return REQUEST_TEMPERATURES_SINCE_MANIFEST;
+        if (o instanceof DeviceGroupActor.RespondTemperaturesSince) return RESPOND_TEMPERATURES_SINCE_MANIFEST;
+        if (o instanceof DeviceGroupActor.TemperaturesNotModified) return TEMPERATURES_NOT_MODIFIED_MANIFEST;
+        if (o instanceof DeviceManagerActor.RequestTopTemperatures) return REQUEST_TOP_TEMPERATURES_MANIFEST;
+        if (o instanceof DeviceManagerActor.RespondTopTemperatures) return RESPOND_TOP_TEMPERATURES_MANIFEST;
+        if (o instanceof DeviceManagerActor.RequestFleetTemperatures) return REQUEST_FLEET_TEMPERATURES_MANIFEST;
+        if (o instanceof DeviceManagerActor.RespondFleetTemperatures) return RESPOND_FLEET_TEMPERATURES_MANIFEST;
+        if (o instanceof DeviceGroupActor.AddAlertRule) return ADD_ALERT_RULE_MANIFEST;
+        if (o instanceof DeviceGroupActor.RemoveAlertRule) return REMOVE_ALERT_RULE_MANIFEST;
+        if (o instanceof DeviceGroupActor.DeviceAlert) return DEVICE_ALERT_MANIFEST;
+        throw new IllegalArgumentException("Cannot serialize object of type " + o.getClass().getName());
+    }
+
+    @Override
+    public byte[] toBinary(final Object o) {
+        final Output out = new Output(64);
+
+        if (o instanceof DeviceActor.RecordTemperature) {
+            final DeviceActor.RecordTemperature message = (DeviceActor.RecordTemperature) o;
+            out.writeUuid(message.requestId);
+            out.writeDouble(message.value);
+            writeActorRef(out, message.replyTo);
+        } else if (o instanceof DeviceActor.RecordTemperatureCompleted) {
+            out.writeUuid(((DeviceActor.RecordTemperatureCompleted) o).requestId);
+        } else if (o instanceof DeviceActor.ReadTemperature) {
+            final DeviceActor.ReadTemperature message = (DeviceActor.ReadTemperature) o;
+            out.writeUuid(message.requestId);
+            out.writeLong(message.deadlineMillis);
+            writeActorRef(out, message.replyTo);
+        } else if (o instanceof DeviceActor.RespondTemperature) {
+            final DeviceActor.RespondTemperature message = (DeviceActor.RespondTemperature) o;
+            out.writeUuid(message.requestId);
+            out.writeString(message.deviceId);
+            out.writeByte(message.value.isPresent() ? 1 : 0);
+            if (message.value.isPresent()) {
+                out.writeDouble(message.value.get());
+            }
+        } else if (o instanceof DeviceActor.ReadHistory) {
+            final DeviceActor.ReadHistory message = (DeviceActor.ReadHistory) o;
+            out.writeUuid(message.requestId);
+            out.writeLong(message.fromMillis);
+            out.writeLong(message.toMillis);
+            writeActorRef(out, message.replyTo);
+        } else if (o instanceof DeviceActor.RespondHistory) {
+            final DeviceActor.RespondHistory message = (DeviceActor.RespondHistory) o;
+            out.writeUuid(message.requestId);
+            out.writeString(message.deviceId);
+            out.writeVarInt(message.values.length);
+            for (int i = 0; i < message.values.length; i++) {
+                out.writeLong(message.timestamps[i]);
+                out.writeDouble(message.values[i]);
+            }
+        } else if (o instanceof DeviceManagerActor.RegisterDevice) {
+            final DeviceManagerActor.RegisterDevice message = (DeviceManagerActor.RegisterDevice) o;
+            out.writeString(message.groupId);
+            out.writeString(message.deviceId);
+            writeStrings(out, message.tags);
+            writeActorRef(out, message.replyTo);
+        } else if (o instanceof DeviceManagerActor.DeviceRegistered) {
+            final DeviceManagerActor.DeviceRegistered message = (DeviceManagerActor.DeviceRegistered) o;
+            out.writeString(message.groupId);
+            out.writeString(message.deviceId);
+            writeActorRef(out, message.device);
+        } else if (o instanceof DeviceGroupActor.RequestDeviceList) {
+            final DeviceGroupActor.RequestDeviceList message = (DeviceGroupActor.RequestDeviceList) o;
+            out.writeUuid(message.requestId);
+            out.writeString(message.groupId);
+            writeOptionalString(out, message.afterDeviceId);
+            out.writeVarInt(message.limit);
+            writeActorRef(out, message.replyTo);
+        } else if (o instanceof DeviceGroupActor.ReplyDeviceList) {
+            final DeviceGroupActor.ReplyDeviceList message = (DeviceGroupActor.ReplyDeviceList) o;
+            out.writeUuid(message.requestId);
+            writeStrings(out, message.deviceIds);
+            writeOptionalString(out, message.nextCursor);
+        } else if (o instanceof DeviceGroupActor.RequestAllTemperatures) {
+            final DeviceGroupActor.RequestAllTemperatures message = (DeviceGroupActor.RequestAllTemperatures) o;
+            out.writeUuid(message.requestId);
+            out.writeString(message.groupId);
+            writeStrings(out, message.tags);
+            out.writeLong(message.deadlineMillis);
+            writeActorRef(out, message.replyTo);
+        } else if (o instanceof DeviceGroupActor.RespondAllTemperatures) {
+            final DeviceGroupActor.RespondAllTemperatures message = (DeviceGroupActor.RespondAllTemperatures) o;
+            out.writeUuid(message.requestId);
+            writeReadings(out, message.responseByDeviceId);
+        } else if (o instanceof DeviceGroupActor.RecordTemperatures) {
+            final DeviceGroupActor.RecordTemperatures message = (DeviceGroupActor.RecordTemperatures) o;
+            out.writeUuid(message.requestId);
+            out.writeString(message.groupId);
+            out.writeVarInt(message.values.length);
+            for (int i = 0; i < message.values.length; i++) {
+                out.writeString(message.deviceIds[i]);
+                out.writeDouble(message.values[i]);
+            }
+            writeActorRef(out, message.replyTo);
+        } else if (o instanceof DeviceGroupActor.TemperaturesRecorded) {
+            final DeviceGroupActor.TemperaturesRecorded message = (DeviceGroupActor.TemperaturesRecorded) o;
+            out.writeUuid(message.requestId);
+            out.writeVarInt(message.count);
+        } else if (o instanceof TemperatureReading) {
+            writeReading(out, (TemperatureReading) o);
+        } else if (o instanceof DeviceGroupActor.SubscribeTemperatures) {
+            final DeviceGroupActor.SubscribeTemperatures message = (DeviceGroupActor.SubscribeTemperatures) o;
+            out.writeString(message.groupId);
+            writeActorRef(out, message.subscriber);
+            out.writeLong(message.minEmitInterval.toNanos());
+        } else if (o instanceof DeviceGroupActor.UnsubscribeTemperatures) {
+            final DeviceGroupActor.UnsubscribeTemperatures message = (DeviceGroupActor.UnsubscribeTemperatures) o;
+            out.writeString(message.groupId);
+            writeActorRef(out, message.subscriber);
+        } else if (o instanceof DeviceGroupActor.TemperatureChanges) {
+            final DeviceGroupActor.TemperatureChanges message = (DeviceGroupActor.TemperatureChanges) o;
+            out.writeString(message.groupId);
+            writeReadings(out, message.changesByDeviceId);
+        } else if (o instanceof DeviceGroupActor.RequestTemperaturesSince) {
+            final DeviceGroupActor.RequestTemperaturesSince message = (DeviceGroupActor.RequestTemperaturesSince) o;
+            out.writeUuid(message.requestId);
+            out.writeString(message.groupId);
+            out.writeLong(message.version);
+            writeActorRef(out, message.replyTo);
+        } else if (o instanceof DeviceGroupActor.RespondTemperaturesSince) {
+            final DeviceGroupActor.RespondTemperaturesSince message = (DeviceGroupActor.RespondTemperaturesSince) o;
+            out.writeUuid(message.requestId);
+            out.writeLong(message.version);
+            out.writeByte(message.fullSnapshot ? 1 : 0);
+            writeReadings(out, message.changesByDeviceId);
+        } else if (o instanceof DeviceGroupActor.TemperaturesNotModified) {
+            final DeviceGroupActor.TemperaturesNotModified message = (DeviceGroupActor.TemperaturesNotModified) o;
+            out.writeUuid(message.requestId);
+            out.writeLong(message.version);
+        } else if (o instanceof DeviceManagerActor.RequestTopTemperatures) {
+            final DeviceManagerActor.RequestTopTemperatures message = (DeviceManagerActor.RequestTopTemperatures) o;
+            out.writeUuid(message.requestId);
+            out.writeVarInt(message.count);
+            writeActorRef(out, message.replyTo);
+        } else if (o instanceof DeviceManagerActor.RespondTopTemperatures) {
+            final DeviceManagerActor.RespondTopTemperatures message = (DeviceManagerActor.RespondTopTemperatures) o;
+            out.writeUuid(message.requestId);
+            out.writeVarInt(message.top.size());
+            for (final DeviceTemperature entry : message.top) {
+                out.writeString(entry.groupId);
+                out.writeString(entry.deviceId);
+                out.writeDouble(entry.value);
+            }
+        } else if (o instanceof DeviceManagerActor.RequestFleetTemperatures) {
+            final DeviceManagerActor.RequestFleetTemperatures message = (DeviceManagerActor.RequestFleetTemperatures) o;
+            out.writeUuid(message.requestId);
+            writeStrings(out, message.groupIds);
+            out.writeLong(message.deadline.toNanos());
+            out.writeByte(message.aggregatesOnly ? 1 : 0);
+            writeActorRef(out, message.replyTo);
+        } else if (o instanceof DeviceManagerActor.RespondFleetTemperatures) {
+            final DeviceManagerActor.RespondFleetTemperatures message = (DeviceManagerActor.RespondFleetTemperatures) o;
+            out.writeUuid(message.requestId);
+            out.writeVarInt(message.readingsByGroupId.size());
+            message.readingsByGroupId.forEach((groupId, readings) -> {
+                out.writeString(groupId);
+                writeReadings(out, readings);
+            });
+            out.writeVarInt(message.aggregateByGroupId.size());
+            message.aggregateByGroupId.forEach((groupId, aggregate) -> {
+                out.writeString(groupId);
+                out.writeVarInt(aggregate.devices);
+                out.writeVarInt(aggregate.reporting);
+                out.writeDouble(aggregate.min);
+                out.writeDouble(aggregate.max);
+                out.writeDouble(aggregate.mean);
+            });
+            writeStrings(out, message.timedOutGroupIds);
+        } else if (o instanceof DeviceGroupActor.AddAlertRule) {
+            final DeviceGroupActor.AddAlertRule message = (DeviceGroupActor.AddAlertRule) o;
+            out.writeString(message.groupId);
+            out.writeString(message.rule.id);
+            out.writeByte(message.rule.kind.ordinal());
+            out.writeDouble(message.rule.low);
+            out.writeDouble(message.rule.high);
+            out.writeLong(message.rule.sustainedFor.toNanos());
+            writeStrings(out, message.rule.tags);
+            writeActorRef(out, message.listener);
+        } else if (o instanceof DeviceGroupActor.RemoveAlertRule) {
+            final DeviceGroupActor.RemoveAlertRule message = (DeviceGroupActor.RemoveAlertRule) o;
+            out.writeString(message.groupId);
+            out.writeString(message.ruleId);
+        } else if (o instanceof DeviceGroupActor.DeviceAlert) {
+            final DeviceGroupActor.DeviceAlert message = (DeviceGroupActor.DeviceAlert) o;
+            out.writeString(message.groupId);
+            out.writeString(message.deviceId);
+            out.writeString(message.ruleId);
+            out.writeByte(message.firing ? 1 : 0);
+            out.writeDouble(message.value);
+        } else {
+            throw new IllegalArgumentException("Cannot serialize object of type " + o.getClass().getName());
+        }
+
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object fromBinary(final byte[] bytes, final String manifest) throws NotSerializableException {
+        final Input in = new Input(bytes);
+
+        switch (manifest) {
+            case RECORD_TEMPERATURE_MANIFEST:
+                return new DeviceActor.RecordTemperature(in.readUuid(), in.readDouble(), readActorRef(in));
+            case RECORD_TEMPERATURE_COMPLETED_MANIFEST:
+                return new DeviceActor.RecordTemperatureCompleted(in.readUuid());
+            case READ_TEMPERATURE_MANIFEST:
+                return new DeviceActor.ReadTemperature(in.readUuid(), in.readLong(), readActorRef(in));
+            case RESPOND_TEMPERATURE_MANIFEST: {
+                final UUID requestId = in.readUuid();
+                final String deviceId = in.readString();
+                final Optional<Double> value = in.readByte() == 1 ? Optional.of(in.readDouble()) : Optional.empty();
+                return new DeviceActor.RespondTemperature(requestId, deviceId, value);
+            }
+            case READ_HISTORY_MANIFEST:
+                return new DeviceActor.ReadHistory(in.readUuid(), in.readLong(), in.readLong(), readActorRef(in));
+            case RESPOND_HISTORY_MANIFEST: {
+                final UUID requestId = in.readUuid();
+                final String deviceId = in.readString();
+                final int size = in.readVarInt();
+                final long[] timestamps = new long[size];
+                final double[] values = new double[size];
+                for (int i = 0; i < size; i++) {
+                    timestamps[i] = in.readLong();
+                    values[i] = in.readDouble();
+                }
+                return new DeviceActor.RespondHistory(requestId, deviceId, timestamps, values);
+            }
+            case REGISTER_DEVICE_MANIFEST:
+                return new DeviceManagerActor.RegisterDevice(in.readString(), in.readString(), readStrings(in),
+                        readActorRef(in));
+            case DEVICE_REGISTERED_MANIFEST:
+                return new DeviceManagerActor.DeviceRegistered(in.readString(), in.readString(), readActorRef(in));
+            case REQUEST_DEVICE_LIST_MANIFEST:
+                return new DeviceGroupActor.RequestDeviceList(in.readUuid(), in.readString(), readOptionalString(in),
+                        in.readVarInt(), readActorRef(in));
+            case REPLY_DEVICE_LIST_MANIFEST:
+                return new DeviceGroupActor.ReplyDeviceList(in.readUuid(), readStrings(in), readOptionalString(in));
+            case REQUEST_ALL_TEMPERATURES_MANIFEST:
+                return new DeviceGroupActor.RequestAllTemperatures(in.readUuid(), in.readString(), readStrings(in),
+                        in.readLong(), readActorRef(in));
+            case RESPOND_ALL_TEMPERATURES_MANIFEST:
+                return new DeviceGroupActor.RespondAllTemperatures(in.readUuid(), readReadings(in));
+            case RECORD_TEMPERATURES_MANIFEST: {
+                final UUID requestId = in.readUuid();
+                final String groupId = in.readString();
+                final int size = in.readVarInt();
+                final String[] deviceIds = new String[size];
+                final double[] values = new double[size];
+                for (int i = 0; i < size; i++) {
+                    deviceIds[i] = in.readString();
+                    values[i] = in.readDouble();
+                }
+                return new DeviceGroupActor.RecordTemperatures(requestId, groupId, deviceIds, values, readActorRef(in));
+            }
+            case TEMPERATURES_RECORDED_MANIFEST:
+                return new DeviceGroupActor.TemperaturesRecorded(in.readUuid(), in.readVarInt());
+            case TEMPERATURE_READING_MANIFEST:
+                return readReading(in);
+            case SUBSCRIBE_TEMPERATURES_MANIFEST:
+                return new DeviceGroupActor.SubscribeTemperatures(in.readString(), readActorRef(in),
+                        Duration.ofNanos(in.readLong()));
+            case UNSUBSCRIBE_TEMPERATURES_MANIFEST:
+                return new DeviceGroupActor.UnsubscribeTemperatures(in.readString(), readActorRef(in));
+            case TEMPERATURE_CHANGES_MANIFEST:
+                return new DeviceGroupActor.TemperatureChanges(in.readString(), readReadings(in));
+            case REQUEST_TEMPERATURES_SINCE_MANIFEST:
+                return new DeviceGroupActor.RequestTemperaturesSince(in.readUuid(), in.readString(), in.readLong(),
+                        readActorRef(in));
+            case RESPOND_TEMPERATURES_SINCE_MANIFEST:
+                return new DeviceGroupActor.RespondTemperaturesSince(in.readUuid(), in.readLong(), in.readByte() == 1,
+                        readReadings(in));
+            case TEMPERATURES_NOT_MODIFIED_MANIFEST:
+                return new DeviceGroupActor.TemperaturesNotModified(in.readUuid(), in.readLong());
+            case REQUEST_TOP_TEMPERATURES_MANIFEST:
+                return new DeviceManagerActor.RequestTopTemperatures(in.readUuid(), in.readVarInt(), readActorRef(in));
+            case RESPOND_TOP_TEMPERATURES_MANIFEST: {
+                final UUID requestId = in.readUuid();
+                final int size = in.readVarInt();
+                final List<DeviceTemperature> top = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    top.add(new DeviceTemperature(in.readString(), in.readString(), in.readDouble()));
+                }
+                return new DeviceManagerActor.RespondTopTemperatures(requestId, top);
+            }
+            case REQUEST_FLEET_TEMPERATURES_MANIFEST:
+                return new DeviceManagerActor.RequestFleetTemperatures(in.readUuid(), readStrings(in),
+                        Duration.ofNanos(in.readLong()), in.readByte() == 1, readActorRef(in));
+            case RESPOND_FLEET_TEMPERATURES_MANIFEST: {
+                final UUID requestId = in.readUuid();
+                final int groups = in.readVarInt();
+                final Map<String, Map<String, TemperatureReading>> readingsByGroupId = new HashMap<>(capacityFor(groups));
+                for (int i = 0; i < groups; i++) {
+                    readingsByGroupId.put(in.readString(), readReadings(in));
+                }
+                final int aggregates = in.readVarInt();
+                final Map<String, TemperatureAggregate> aggregateByGroupId = new HashMap<>(capacityFor(aggregates));
+                for (int i = 0; i < aggregates; i++) {
+                    aggregateByGroupId.put(in.readString(), new TemperatureAggregate(
+                            in.readVarInt(), in.readVarInt(), in.readDouble(), in.readDouble(), in.readDouble()));
+                }
+                return new DeviceManagerActor.RespondFleetTemperatures(requestId, readingsByGroupId, aggregateByGroupId,
+                        readStrings(in));
+            }
+            case ADD_ALERT_RULE_MANIFEST:
+                return new DeviceGroupActor.AddAlertRule(in.readString(), new AlertRule(in.readString(),
+                        AlertRule.Kind.values()[in.readByte()], in.readDouble(), in.readDouble(),
+                        Duration.ofNanos(in.readLong()), readStrings(in)), readActorRef(in));
+            case REMOVE_ALERT_RULE_MANIFEST:
+                return new DeviceGroupActor.RemoveAlertRule(in.readString(), in.readString());
+            case DEVICE_ALERT_MANIFEST:
+                return new DeviceGroupActor.DeviceAlert(in.readString(), in.readString(), in.readString(),
+                        in.readByte() == 1, in.readDouble());
+            default:
+                throw new NotSerializableException("Unknown manifest " + manifest);
+        }
+    }
+
+    private void writeActorRef(final Output out, final ActorRef<?> ref) {
+        out.writeString(actorRefResolver.toSerializationFormat(ref));
+    }
+
+    private <T> ActorRef<T> readActorRef(final Input in) {
+        return actorRefResolver.resolveActorRef(in.readString());
+    }
+
+    private static void writeOptionalString(final Output out, final Optional<String> value) {
+        out.writeByte(value.isPresent() ? 1 : 0);
+        value.ifPresent(out::writeString);
+    }
+
+    private static Optional<String> readOptionalString(final Input in) {
+        return in.readByte() == 1 ? Optional.of(in.readString()) : Optional.empty();
+    }
+
+    private static void writeStrings(final Output out, final Set<String> values) {
+        out.writeVarInt(values.size());
+        values.forEach(out::writeString);
+    }
+
+    private static Set<String> readStrings(final Input in) {
+        final int size = in.readVarInt();
+        final Set<String> values = new LinkedHashSet<>(capacityFor(size));
+        for (int i = 0; i < size; i++) {
+            values.add(in.readString());
+        }
+        return values;
+    }
+
+    private static void writeReadings(final Output out, final Map<String, TemperatureReading> readingByDeviceId) {
+        out.writeVarInt(readingByDeviceId.size());
+        readingByDeviceId.forEach((deviceId, reading) -> {
+            out.writeString(deviceId);
+            writeReading(out, reading);
+        });
+    }
+
+    private static Map<String, TemperatureReading> readReadings(final Input in) {
+        final int size = in.readVarInt();
+        final Map<String, TemperatureReading> readingByDeviceId = new HashMap<>(capacityFor(size));
+        for (int i = 0; i < size; i++) {
+            readingByDeviceId.put(in.readString(), readReading(in));
+        }
+        return readingByDeviceId;
+    }
+
+    private static void writeReading(final Output out, final TemperatureReading reading) {
+        if (reading instanceof Temperature) {
+            out.writeByte(TEMPERATURE_TAG);
+            out.writeDouble(((Temperature) reading).value);
+        } else if (reading == TemperatureNotAvailable.INSTANCE) {
+            out.writeByte(TEMPERATURE_NOT_AVAILABLE_TAG);
+        } else if (reading == DeviceNotAvailable.INSTANCE) {
+            out.writeByte(DEVICE_NOT_AVAILABLE_TAG);
+        } else if (reading == DeviceTimedOut.INSTANCE) {
+            out.writeByte(DEVICE_TIMED_OUT_TAG);
+        } else {
+            throw new IllegalArgumentException("Unknown temperature reading " + reading);
+        }
+    }
+
+    private static TemperatureReading readReading(final Input in) {
+        final byte tag = in.readByte();
+        switch (tag) {
+            case TEMPERATURE_TAG:
+                return new Temperature(in.readDouble());
+            case TEMPERATURE_NOT_AVAILABLE_TAG:
+                return TemperatureNotAvailable.INSTANCE;
+            case DEVICE_NOT_AVAILABLE_TAG:
+                return DeviceNotAvailable.INSTANCE;
+            case DEVICE_TIMED_OUT_TAG:
+                return DeviceTimedOut.INSTANCE;
+            default:
+                throw new IllegalArgumentException("Unknown temperature reading tag " + tag);
+        }
+    }
+
+    private static int capacityFor(final int size) {
+        return (int) (size / 0.75f) + 1;
+    }
+
+    static final class Output {
+
+        private byte[] buffer;
+        private int position;
+
+        Output(final int initialCapacity) {
+            this.buffer = new byte[initialCapacity];
+        }
+
+        void writeByte(final int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeLong(final long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeDouble(final double value) {
+            writeLong(Double.doubleToRawLongBits(value));
+        }
+
+        void writeUuid(final UUID value) {
+            writeLong(value.getMostSignificantBits());
+            writeLong(value.getLeastSignificantBits());
+        }
+
+        void writeString(final String value) {
+            final int length = value.length();
+            boolean ascii = true;
+            for (int i = 0; i < length && ascii; i++) {
+                ascii = value.charAt(i) < 0x80;
+            }
+
+            if (ascii) {
+                // device and group ids are nearly always ascii, which avoids an intermediate byte array
+                writeVarInt(length);
+                ensureCapacity(length);
+                for (int i = 0; i < length; i++) {
+                    buffer[position++] = (byte) value.charAt(i);
+                }
+            } else {
+                final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(bytes.length);
+                ensureCapacity(bytes.length);
+                System.arraycopy(bytes, 0, buffer, position, bytes.length);
+                position += bytes.length;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(final int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+    }
+
+    static final class Input {
+
+        private final byte[] buffer;
+        private int position;
+
+        Input(final byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            return buffer[position++];
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                final byte b = buffer[position++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        double readDouble() {
+            return Double.longBitsToDouble(readLong());
+        }
+
+        UUID readUuid() {
+            return new UUID(readLong(), readLong());
+        }
+
+        String readString() {
+            final int length = readVarInt();
+            final String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
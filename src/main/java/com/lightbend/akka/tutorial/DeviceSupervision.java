@@ -0,0 +1,22 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.BackoffSupervisorStrategy;
+import akka.actor.typed.SupervisorStrategy;
+import com.typesafe.config.Config;
+
+/**
+ * Supervision of the device tiers, configured by {@code iot.supervision}. Device groups and devices restart with
+ * exponential backoff and keep their state across restarts, so a failure does not cost a re-registration storm.
+ */
+final class DeviceSupervision {
+
+    private DeviceSupervision() {
+    }
+
+    static BackoffSupervisorStrategy restartWithBackoff(final ActorSystem<?> system) {
+        final Config config = system.settings().config().getConfig("iot.supervision");
+        return SupervisorStrategy.restartWithBackoff(config.getDuration("min-backoff"),
+                config.getDuration("max-backoff"), config.getDouble("random-factor"));
+    }
+}
@@ -0,0 +1,75 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tags the devices of a group were registered with, and the devices carrying each tag, so queries and alert rules
+ * for some tags only look at the devices that have them. Owned by its {@link DeviceGroupActor}.
+ */
+final class DeviceTags {
+
+    private final Map<String, Set<String>> tagsByDeviceId = new HashMap<>();
+    private final Map<String, Set<String>> deviceIdsByTag = new HashMap<>();
+
+    /**
+     * Replaces the tags of the device.
+     */
+    void tag(final String deviceId, final Set<String> tags) {
+        untag(deviceId);
+        tagsByDeviceId.put(deviceId, tags);
+        for (final String tag : tags) {
+            deviceIdsByTag.computeIfAbsent(tag, t -> new HashSet<>()).add(deviceId);
+        }
+    }
+
+    void untag(final String deviceId) {
+        final Set<String> tags = tagsByDeviceId.remove(deviceId);
+        if (tags == null) {
+            return;
+        }
+        for (final String tag : tags) {
+            final Set<String> deviceIds = deviceIdsByTag.get(tag);
+            deviceIds.remove(deviceId);
+            if (deviceIds.isEmpty()) {
+                deviceIdsByTag.remove(tag);
+            }
+        }
+    }
+
+    boolean hasAll(final String deviceId, final Set<String> tags) {
+        return tagsByDeviceId.getOrDefault(deviceId, Collections.emptySet()).containsAll(tags);
+    }
+
+    /**
+     * The {@code devices} tagged with all of {@code tags}. Intersects the posting sets of the tags, walking the
+     * smallest one.
+     */
+    Map<String, ActorRef<DeviceActor.Command>> devicesTagged(final Set<String> tags,
+                                                             final Map<String, ActorRef<DeviceActor.Command>> devices) {
+        Set<String> smallest = null;
+        for (final String tag : tags) {
+            final Set<String> deviceIds = deviceIdsByTag.get(tag);
+            if (deviceIds == null) {
+                return Collections.emptyMap();
+            }
+            if (smallest == null || deviceIds.size() < smallest.size()) {
+                smallest = deviceIds;
+            }
+        }
+
+        final Map<String, ActorRef<DeviceActor.Command>> tagged = new HashMap<>();
+        for (final String deviceId : smallest) {
+            final ActorRef<DeviceActor.Command> device = devices.get(deviceId);
+            if (device != null && tagsByDeviceId.get(deviceId).containsAll(tags)) {
+                tagged.put(deviceId, device);
+            }
+        }
+        return tagged;
+    }
+}
@@ -0,0 +1,63 @@
+package com.lightbend.akka.tutorial;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Memory fences for the seqlocks of the readings export, see {@link ReadingsExporter}. The table lives in a
+ * {@link java.nio.MappedByteBuffer}, whose accessors are plain loads and stores the compiler and CPU may reorder, and
+ * this build targets Java 8, which has no fenced buffer access: {@code MethodHandles.byteBufferViewVarHandle} and
+ * {@code VarHandle.releaseFence()} only came with Java 9. Until the target moves, the fences of
+ * {@code sun.misc.Unsafe} are used. Both the instance and its fence methods are looked up by reflection, so nothing
+ * here compiles against the internal API; the handles are constants the JIT inlines down to the fences themselves.
+ * <p>
+ * Only for the exporter and its reader, anything shared between threads of this process uses the usual concurrency
+ * utilities instead.
+ */
+final class ExportFences {
+
+    private static final MethodHandle STORE_FENCE;
+    private static final MethodHandle LOAD_FENCE;
+
+    static {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            final Object unsafe = field.get(null);
+            final MethodType fence = MethodType.methodType(void.class);
+            STORE_FENCE = MethodHandles.lookup().findVirtual(unsafeClass, "storeFence", fence).bindTo(unsafe);
+            LOAD_FENCE = MethodHandles.lookup().findVirtual(unsafeClass, "loadFence", fence).bindTo(unsafe);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private ExportFences() {
+    }
+
+    /**
+     * Stores before the fence are not reordered with stores after it.
+     */
+    static void storeFence() {
+        try {
+            STORE_FENCE.invokeExact();
+        } catch (Throwable e) {
+            // the fence itself throws nothing
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads before the fence are not reordered with loads after it.
+     */
+    static void loadFence() {
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import com.lightbend.akka.tutorial.model.TemperatureAggregate;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+import com.lightbend.akka.tutorial.util.Deadlines;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Scatter-gather counterpart of {@link DeviceGroupQueryActor} one level up: asks every given group for all its
+ * temperatures in parallel, folds each answer in as it arrives and replies once all groups answered or the deadline
+ * passed, whichever comes first. Groups that did not make it are listed in
+ * {@link DeviceManagerActor.RespondFleetTemperatures#timedOutGroupIds}.
+ */
+public class FleetQueryActor extends AbstractBehavior<FleetQueryActor.Command> {
+
+    interface Command {
+    }
+
+    private enum DeadlinePassed implements Command {
+        INSTANCE
+    }
+
+    static final class WrappedRespondAllTemperatures implements Command {
+        final DeviceGroupActor.RespondAllTemperatures response;
+
+        WrappedRespondAllTemperatures(final DeviceGroupActor.RespondAllTemperatures response) {
+            this.response = response;
+        }
+    }
+
+    private static final class GroupTerminated implements Command {
+        final UUID groupRequestId;
+
+        GroupTerminated(final UUID groupRequestId) {
+            this.groupRequestId = groupRequestId;
+        }
+    }
+
+    public static Behavior<Command> create(final DeviceManagerActor.RequestFleetTemperatures request,
+                                           final Map<String, ActorRef<DeviceGroupActor.Command>> groupById) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new FleetQueryActor(context, timers, request, groupById)));
+    }
+
+    private final DeviceManagerActor.RequestFleetTemperatures request;
+    // every group gets its own request id, which is how answers are told apart
+    private final Map<UUID, String> waitingGroupIdByRequestId;
+    private final Map<String, Map<String, TemperatureReading>> readingsByGroupId;
+    private final Map<String, TemperatureAggregate> aggregateByGroupId;
+
+    private FleetQueryActor(final ActorContext<Command> context, final TimerScheduler<Command> timers,
+                            final DeviceManagerActor.RequestFleetTemperatures request,
+                            final Map<String, ActorRef<DeviceGroupActor.Command>> groupById) {
+        super(context);
+        this.request = request;
+        this.waitingGroupIdByRequestId = new HashMap<>();
+        this.readingsByGroupId = new HashMap<>();
+        this.aggregateByGroupId = new HashMap<>();
+
+        timers.startSingleTimer(DeadlinePassed.INSTANCE, DeadlinePassed.INSTANCE, request.deadline);
+        // groups still busy with other work at the deadline drop the request instead of answering it too late
+        final long deadlineMillis = Deadlines.after(request.deadline);
+
+        final ActorRef<DeviceGroupActor.RespondAllTemperatures> respondAdapter =
+                context.messageAdapter(DeviceGroupActor.RespondAllTemperatures.class, WrappedRespondAllTemperatures::new);
+
+        groupById.forEach((groupId, group) -> {
+            final UUID groupRequestId = UUID.randomUUID();
+            waitingGroupIdByRequestId.put(groupRequestId, groupId);
+            context.watchWith(group, new GroupTerminated(groupRequestId));
+            group.tell(new DeviceGroupActor.RequestAllTemperatures(groupRequestId, groupId, Collections.emptySet(),
+                    deadlineMillis, respondAdapter));
+        });
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(WrappedRespondAllTemperatures.class, this::onRespondAllTemperatures)
+                .onMessage(GroupTerminated.class, this::onGroupTerminated)
+                .onMessageEquals(DeadlinePassed.INSTANCE, this::onDeadlinePassed)
+                .build();
+    }
+
+    private Behavior<Command> onRespondAllTemperatures(final WrappedRespondAllTemperatures message) {
+
+        final String groupId = waitingGroupIdByRequestId.remove(message.response.requestId);
+        if (groupId == null) {
+            return respondWhenAllCollected();
+        }
+
+        aggregateByGroupId.put(groupId, TemperatureAggregate.of(message.response.responseByDeviceId));
+        if (!request.aggregatesOnly) {
+            readingsByGroupId.put(groupId, message.response.responseByDeviceId);
+        }
+
+        return respondWhenAllCollected();
+    }
+
+    private Behavior<Command> onGroupTerminated(final GroupTerminated message) {
+        // a stopped group has no devices left to report, same as if it had never existed
+        waitingGroupIdByRequestId.remove(message.groupRequestId);
+        return respondWhenAllCollected();
+    }
+
+    private Behavior<Command> onDeadlinePassed() {
+        respond(new HashSet<>(waitingGroupIdByRequestId.values()));
+        return Behaviors.stopped();
+    }
+
+    private Behavior<Command> respondWhenAllCollected() {
+
+        if (!waitingGroupIdByRequestId.isEmpty()) {
+            return Behaviors.same();
+        }
+
+        respond(new HashSet<>());
+        return Behaviors.stopped();
+    }
+
+    private void respond(final Set<String> timedOutGroupIds) {
+        request.replyTo.tell(new DeviceManagerActor.RespondFleetTemperatures(
+                request.requestId, readingsByGroupId, aggregateByGroupId, timedOutGroupIds));
+    }
+}
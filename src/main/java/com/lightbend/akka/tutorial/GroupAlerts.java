@@ -0,0 +1,247 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.javadsl.TimerScheduler;
+import com.lightbend.akka.tutorial.model.AlertRule;
+import com.lightbend.akka.tutorial.model.Temperature;
+import com.lightbend.akka.tutorial.util.IntervalIndex;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The alert rules of a group and what they are evaluated against. Threshold and rate rules are kept in an
+ * {@link IntervalIndex} each, so a reading is only checked against the rules whose bounds lie between it and the
+ * previous reading of its device. Rules sustained for a while wait on a {@link DeviceGroupActor.SustainedAlertDue}
+ * timer of the group before they fire. Owned by its {@link DeviceGroupActor}.
+ */
+final class GroupAlerts {
+
+    private static final double NANOS_PER_MINUTE = Duration.ofMinutes(1).toNanos();
+
+    private static final class RegisteredRule {
+        final AlertRule rule;
+        final ActorRef<DeviceGroupActor.DeviceAlert> listener;
+
+        RegisteredRule(final AlertRule rule, final ActorRef<DeviceGroupActor.DeviceAlert> listener) {
+            this.rule = rule;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * What the alert rules of a device are evaluated against, kept only while the group has rules.
+     */
+    private static final class DeviceAlerts {
+        double value;
+        // degrees per minute between the last two readings, NaN until known
+        double rate = Double.NaN;
+        long readNanos;
+        final Set<String> firingRuleIds = new HashSet<>();
+        // rules matched but not sustained long enough yet
+        final Set<String> pendingRuleIds = new HashSet<>();
+
+        DeviceAlerts(final double value, final long readNanos) {
+            this.value = value;
+            this.readNanos = readNanos;
+        }
+    }
+
+    private final String groupId;
+    private final DeviceTags tags;
+    private final Map<String, RegisteredRule> ruleById = new LinkedHashMap<>();
+    private final Map<String, DeviceAlerts> alertsByDeviceId = new HashMap<>();
+    private IntervalIndex<RegisteredRule> thresholdIndex = IntervalIndex.empty();
+    private IntervalIndex<RegisteredRule> rateIndex = IntervalIndex.empty();
+
+    GroupAlerts(final String groupId, final DeviceTags tags) {
+        this.groupId = groupId;
+        this.tags = tags;
+    }
+
+    boolean isEmpty() {
+        return ruleById.isEmpty();
+    }
+
+    /**
+     * Adds the rule, replacing the rule with the same id.
+     */
+    void add(final AlertRule rule, final ActorRef<DeviceGroupActor.DeviceAlert> listener,
+             final TimerScheduler<DeviceGroupActor.Command> timers) {
+        remove(rule.id, timers);
+        ruleById.put(rule.id, new RegisteredRule(rule, listener));
+        reindex();
+    }
+
+    /**
+     * Devices already past the bounds of a new threshold rule enter it now, rates are only known from the next
+     * reading.
+     */
+    void enterCurrentReadings(final String ruleId, final ReadingVersions readings,
+                              final TimerScheduler<DeviceGroupActor.Command> timers) {
+        final RegisteredRule registered = ruleById.get(ruleId);
+        readings.forEachReading((deviceId, reading) -> {
+            if (reading instanceof Temperature) {
+                final double value = ((Temperature) reading).value;
+                final DeviceAlerts alerts = alertsByDeviceId.computeIfAbsent(deviceId,
+                        id -> new DeviceAlerts(value, System.nanoTime()));
+                if (registered.rule.kind == AlertRule.Kind.THRESHOLD && registered.rule.matches(value)) {
+                    enter(deviceId, alerts, registered, timers);
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes the rule, its listener is told about every device that stops firing because of it.
+     */
+    void remove(final String ruleId, final TimerScheduler<DeviceGroupActor.Command> timers) {
+        final RegisteredRule removed = ruleById.remove(ruleId);
+        if (removed == null) {
+            return;
+        }
+
+        alertsByDeviceId.forEach((deviceId, alerts) -> {
+            if (alerts.firingRuleIds.remove(ruleId)) {
+                removed.listener.tell(new DeviceGroupActor.DeviceAlert(groupId, deviceId, ruleId, false, Double.NaN));
+            }
+            if (alerts.pendingRuleIds.remove(ruleId)) {
+                timers.cancel(new DeviceGroupActor.SustainedAlertDue(deviceId, ruleId));
+            }
+        });
+        if (ruleById.isEmpty()) {
+            alertsByDeviceId.clear();
+        }
+        reindex();
+    }
+
+    private void reindex() {
+        final List<RegisteredRule> thresholds = new ArrayList<>();
+        final List<RegisteredRule> rates = new ArrayList<>();
+        for (final RegisteredRule registered : ruleById.values()) {
+            (registered.rule.kind == AlertRule.Kind.THRESHOLD ? thresholds : rates).add(registered);
+        }
+        thresholdIndex = IntervalIndex.of(thresholds, r -> r.rule.low, r -> r.rule.high);
+        rateIndex = IntervalIndex.of(rates, r -> r.rule.low, r -> r.rule.high);
+    }
+
+    /**
+     * Called for every reading, unchanged ones included, so a rate drops back to 0 once the temperature holds. A
+     * reading can only enter or leave the rules with a bound between it and the previous reading, so only those are
+     * looked at. A device seen for the first time enters every rule containing its reading.
+     */
+    void evaluate(final String deviceId, final double value, final TimerScheduler<DeviceGroupActor.Command> timers) {
+        final long now = System.nanoTime();
+        final DeviceAlerts alerts = alertsByDeviceId.get(deviceId);
+        if (alerts == null) {
+            final DeviceAlerts created = new DeviceAlerts(value, now);
+            alertsByDeviceId.put(deviceId, created);
+            thresholdIndex.forEachContaining(value, registered -> enter(deviceId, created, registered, timers));
+            return;
+        }
+
+        final double previous = alerts.value;
+        alerts.value = value;
+        thresholdIndex.forEachWithBoundIn(Math.min(previous, value), Math.max(previous, value), registered ->
+                cross(deviceId, alerts, registered, registered.rule.matches(previous), registered.rule.matches(value),
+                        timers));
+
+        if (!rateIndex.isEmpty()) {
+            final double previousRate = alerts.rate;
+            final double rate = (value - previous) * NANOS_PER_MINUTE / Math.max(now - alerts.readNanos, 1);
+            alerts.rate = rate;
+            if (Double.isNaN(previousRate)) {
+                rateIndex.forEachContaining(rate, registered -> enter(deviceId, alerts, registered, timers));
+            } else {
+                rateIndex.forEachWithBoundIn(Math.min(previousRate, rate), Math.max(previousRate, rate), registered ->
+                        cross(deviceId, alerts, registered, registered.rule.matches(previousRate),
+                                registered.rule.matches(rate), timers));
+            }
+        }
+        alerts.readNanos = now;
+    }
+
+    private void cross(final String deviceId, final DeviceAlerts alerts, final RegisteredRule registered,
+                       final boolean matched, final boolean matches,
+                       final TimerScheduler<DeviceGroupActor.Command> timers) {
+        if (matches && !matched) {
+            enter(deviceId, alerts, registered, timers);
+        } else if (matched && !matches) {
+            leave(deviceId, alerts, registered, timers);
+        }
+    }
+
+    private void enter(final String deviceId, final DeviceAlerts alerts, final RegisteredRule registered,
+                       final TimerScheduler<DeviceGroupActor.Command> timers) {
+        final AlertRule rule = registered.rule;
+        if (!rule.tags.isEmpty() && !tags.hasAll(deviceId, rule.tags)) {
+            return;
+        }
+
+        if (rule.sustainedFor.isZero()) {
+            alerts.firingRuleIds.add(rule.id);
+            registered.listener.tell(new DeviceGroupActor.DeviceAlert(groupId, deviceId, rule.id, true, alerts.value));
+        } else if (alerts.pendingRuleIds.add(rule.id)) {
+            final DeviceGroupActor.SustainedAlertDue due = new DeviceGroupActor.SustainedAlertDue(deviceId, rule.id);
+            timers.startSingleTimer(due, due, rule.sustainedFor);
+        }
+    }
+
+    private void leave(final String deviceId, final DeviceAlerts alerts, final RegisteredRule registered,
+                       final TimerScheduler<DeviceGroupActor.Command> timers) {
+        if (alerts.firingRuleIds.remove(registered.rule.id)) {
+            registered.listener.tell(new DeviceGroupActor.DeviceAlert(groupId, deviceId, registered.rule.id, false,
+                    alerts.value));
+        } else if (alerts.pendingRuleIds.remove(registered.rule.id)) {
+            timers.cancel(new DeviceGroupActor.SustainedAlertDue(deviceId, registered.rule.id));
+        }
+    }
+
+    /**
+     * Fires a rule the device kept matching for as long as it has to.
+     */
+    void sustained(final DeviceGroupActor.SustainedAlertDue due) {
+        final DeviceAlerts alerts = alertsByDeviceId.get(due.deviceId);
+        final RegisteredRule registered = ruleById.get(due.ruleId);
+        if (alerts != null && registered != null && alerts.pendingRuleIds.remove(due.ruleId)) {
+            alerts.firingRuleIds.add(due.ruleId);
+            registered.listener.tell(new DeviceGroupActor.DeviceAlert(groupId, due.deviceId, due.ruleId, true,
+                    alerts.value));
+        }
+    }
+
+    /**
+     * Timers do not survive a restart of the group, so sustained alerts wait their full duration again.
+     */
+    void restartSustainedTimers(final TimerScheduler<DeviceGroupActor.Command> timers) {
+        alertsByDeviceId.forEach((deviceId, alerts) -> {
+            for (final String ruleId : alerts.pendingRuleIds) {
+                final DeviceGroupActor.SustainedAlertDue due = new DeviceGroupActor.SustainedAlertDue(deviceId, ruleId);
+                timers.startSingleTimer(due, due, ruleById.get(ruleId).rule.sustainedFor);
+            }
+        });
+    }
+
+    /**
+     * Forgets a device that stopped, its listeners are told it no longer fires.
+     */
+    void clear(final String deviceId, final TimerScheduler<DeviceGroupActor.Command> timers) {
+        final DeviceAlerts alerts = alertsByDeviceId.remove(deviceId);
+        if (alerts == null) {
+            return;
+        }
+        for (final String ruleId : alerts.firingRuleIds) {
+            ruleById.get(ruleId).listener.tell(new DeviceGroupActor.DeviceAlert(groupId, deviceId, ruleId, false,
+                    Double.NaN));
+        }
+        for (final String ruleId : alerts.pendingRuleIds) {
+            timers.cancel(new DeviceGroupActor.SustainedAlertDue(deviceId, ruleId));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import com.lightbend.akka.tutorial.util.LatencyHistogram;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Latency of one RequestAllTemperatures over a very large group, collected by a single
+ * {@link DeviceGroupQueryActor} versus a tree of partition queries, with the default dispatcher limited to 1, 2, 4...
+ * up to all cores. The flat query cannot use more than one core for the replies, the tree only gets ahead once there
+ * are several: on a single core it is slower, 740 against 705 ms for 200,000 devices, which is why
+ * {@code iot.group-query.leaf-size} is 0 by default. Run it on the target machine before turning the tree on.
+ * <p>
+ * Arguments: devices, queries per run, leaf size, fan-out.
+ */
+public class GroupQueryBenchmark {
+
+    private static final Duration timeout = Duration.ofSeconds(60);
+
+    public static void main(String[] args) throws Exception {
+
+        BenchmarkSupport.quietLogging();
+
+        final int devices = BenchmarkSupport.intArg(args, 0, 200_000);
+        final int queries = BenchmarkSupport.intArg(args, 1, 20);
+        final int leafSize = BenchmarkSupport.intArg(args, 2, 5_000);
+        final int fanOut = BenchmarkSupport.intArg(args, 3, 16);
+
+        final int cores = Runtime.getRuntime().availableProcessors();
+        for (int parallelism = 1; ; parallelism = Math.min(parallelism * 2, cores)) {
+            final ActorSystem<RunQuery> system = ActorSystem.create(Behaviors.setup(context -> {
+                final Map<String, ActorRef<DeviceActor.Command>> actorByDeviceId = new HashMap<>();
+                for (int i = 0; i < devices; i++) {
+                    actorByDeviceId.put("device-" + i, context.spawnAnonymous(DeviceActor.create("group", "device-" + i)));
+                }
+                return Behaviors.receive(RunQuery.class)
+                        .onMessage(RunQuery.class, message -> {
+                            context.spawnAnonymous(DeviceGroupQueryActor.create(UUID.randomUUID(), actorByDeviceId,
+                                    message.replyTo, timeout, message.leafSize, fanOut));
+                            return Behaviors.same();
+                        })
+                        .build();
+            }), "group-query-benchmark", ConfigFactory.parseString(
+                    "akka.actor.default-dispatcher.fork-join-executor.parallelism-min = " + parallelism + "\n"
+                            + "akka.actor.default-dispatcher.fork-join-executor.parallelism-max = " + parallelism)
+                    .withFallback(ConfigFactory.load()));
+            try {
+                report(system, "flat", parallelism, devices, queries, Integer.MAX_VALUE);
+                report(system, "tree", parallelism, devices, queries, leafSize);
+            } finally {
+                system.terminate();
+                system.getWhenTerminated().toCompletableFuture().get();
+            }
+
+            if (parallelism == cores) {
+                break;
+            }
+        }
+    }
+
+    private static void report(final ActorSystem<RunQuery> system, final String mode, final int parallelism,
+                               final int devices, final int queries, final int leafSize) throws Exception {
+        final LatencyHistogram latency = new LatencyHistogram();
+        // the first queries warm up
+        for (int i = -Math.max(1, queries / 4); i < queries; i++) {
+            final long start = System.nanoTime();
+            final CompletableFuture<DeviceGroupActor.RespondAllTemperatures> response =
+                    AskPattern.<RunQuery, DeviceGroupActor.RespondAllTemperatures>ask(system,
+                            replyTo -> new RunQuery(leafSize, replyTo), timeout, system.scheduler())
+                            .toCompletableFuture();
+            if (response.get().responseByDeviceId.size() != devices) {
+                throw new IllegalStateException("Incomplete response");
+            }
+            if (i >= 0) {
+                latency.record(System.nanoTime() - start);
+            }
+        }
+        System.out.printf("mode=%s parallelism=%d devices=%d %s%n", mode, parallelism, devices, latency.summaryMillis());
+    }
+
+    static final class RunQuery {
+
+        final int leafSize;
+        final ActorRef<DeviceGroupActor.RespondAllTemperatures> replyTo;
+
+        RunQuery(final int leafSize, final ActorRef<DeviceGroupActor.RespondAllTemperatures> replyTo) {
+            this.leafSize = leafSize;
+            this.replyTo = replyTo;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.lightbend.akka.tutorial;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * Memory and speed of {@link DeviceHistory} for a day of 1Hz readings per device, with three kinds of sensors: one
+ * reporting on the second with a value changing in 0.1 steps about every ten seconds, the same with up to 20ms of
+ * jitter on the timestamps, and one whose value changes on every reading. Raw samples would take 16 bytes each as
+ * primitive arrays, and several times that as {@code model.Temperature} objects.
+ * <p>
+ * Arguments: devices, seconds of readings per device.
+ */
+public class HistoryCompressionBenchmark {
+
+    private interface Sensor {
+        long timestamp(Random random, int second);
+
+        double value(Random random, double previous);
+    }
+
+    public static void main(String[] args) {
+
+        final int devices = BenchmarkSupport.intArg(args, 0, 100);
+        final int seconds = BenchmarkSupport.intArg(args, 1, 86_400);
+
+        final long start = 1_600_000_000_000L;
+        final Sensor steady = new Sensor() {
+            public long timestamp(final Random random, final int second) {
+                return start + second * 1000L;
+            }
+
+            public double value(final Random random, final double previous) {
+                return random.nextInt(10) == 0 ? step(random, previous) : previous;
+            }
+        };
+        final Sensor jittered = new Sensor() {
+            public long timestamp(final Random random, final int second) {
+                return start + second * 1000L + random.nextInt(20);
+            }
+
+            public double value(final Random random, final double previous) {
+                return steady.value(random, previous);
+            }
+        };
+        final Sensor noisy = new Sensor() {
+            public long timestamp(final Random random, final int second) {
+                return steady.timestamp(random, second);
+            }
+
+            public double value(final Random random, final double previous) {
+                return step(random, previous);
+            }
+        };
+
+        for (int round = 0; round < 2; round++) {
+            final boolean warmUp = round == 0;
+            report("steady", devices, seconds, steady, warmUp);
+            report("jittered", devices, seconds, jittered, warmUp);
+            report("noisy", devices, seconds, noisy, warmUp);
+        }
+    }
+
+    private static double step(final Random random, final double previous) {
+        return Math.round(previous * 10 + (random.nextBoolean() ? 1 : -1)) / 10.0;
+    }
+
+    private static void report(final String name, final int devices, final int seconds, final Sensor sensor,
+                               final boolean warmUp) {
+        final Random random = new Random(42);
+        final DeviceHistory[] histories = new DeviceHistory[devices];
+
+        final long encodeStart = System.nanoTime();
+        for (int device = 0; device < devices; device++) {
+            final DeviceHistory history = new DeviceHistory(Duration.ofHours(2), Duration.ofHours(24));
+            double value = 21.5;
+            for (int second = 0; second < seconds; second++) {
+                value = sensor.value(random, value);
+                history.record(sensor.timestamp(random, second), value);
+            }
+            histories[device] = history;
+        }
+        final long encodeNanos = System.nanoTime() - encodeStart;
+
+        final long decodeStart = System.nanoTime();
+        long samples = 0;
+        long bytes = 0;
+        for (final DeviceHistory history : histories) {
+            samples += history.read(Long.MIN_VALUE, Long.MAX_VALUE).values().length;
+            bytes += history.sizeInBytes();
+        }
+        final long decodeNanos = System.nanoTime() - decodeStart;
+
+        if (!warmUp) {
+            System.out.printf("%-9s %,d samples  %.2f bytes/sample  encode %.0f ns/sample  decode %.0f ns/sample%n",
+                    name, samples, (double) bytes / samples, (double) encodeNanos / samples,
+                    (double) decodeNanos / samples);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.lightbend.akka.tutorial;
+
+import com.lightbend.akka.tutorial.util.GorillaBlock;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable file of closed {@link GorillaBlock}s of many devices, memory mapped for reading. Blocks are decoded
+ * straight from the mapping, so a segment costs no heap however much history it holds; the OS page cache keeps the
+ * parts that are read.
+ * <p>
+ * Layout, all values big endian, columns of one value per key or per block:
+ * <pre>
+ * header (64 bytes):  int magic, int format version, int key count, int block count, int key bytes,
+ *                     long min timestamp, long max timestamp
+ * blocks (n):         long first timestamps[n], long last timestamps[n], long data offsets[n], int sample counts[n],
+ *                     int word counts[n]
+ * keys (k):           int key offsets[k + 1], int first blocks[k + 1], UTF-8 key bytes, padded to 8 bytes
+ * data:               the encoded words of every block
+ * </pre>
+ * Keys are sorted by their UTF-8 bytes and looked up by binary search, the blocks of a key are contiguous and sorted
+ * by first timestamp. Segments are written to a temporary file and moved in place, so a segment file that exists is
+ * complete.
+ */
+public final class HistorySegment {
+
+    static final int MAGIC = 0x494F5448;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    static final int KEY_COUNT_OFFSET = 8;
+    static final int BLOCK_COUNT_OFFSET = 12;
+    static final int KEY_BYTES_OFFSET = 16;
+    static final int MIN_TIMESTAMP_OFFSET = 24;
+    static final int MAX_TIMESTAMP_OFFSET = 32;
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final int keyCount;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+
+    private final int firstTimestamps;
+    private final int lastTimestamps;
+    private final int dataOffsets;
+    private final int sampleCounts;
+    private final int wordCounts;
+    private final int keyOffsets;
+    private final int firstBlocks;
+    private final int keyBytes;
+
+    /**
+     * Writes the closed {@code blocksByKey}, each list sorted by first timestamp, and opens the new segment.
+     */
+    public static HistorySegment write(final Path path, final Map<String, List<GorillaBlock>> blocksByKey)
+            throws IOException {
+        final List<byte[]> keys = new ArrayList<>(blocksByKey.size());
+        final List<List<GorillaBlock>> blocksOfKeys = new ArrayList<>(blocksByKey.size());
+        blocksByKey.keySet().stream()
+                .map(key -> key.getBytes(StandardCharsets.UTF_8))
+                .sorted(HistorySegment::compareUnsigned)
+                .forEach(key -> {
+                    keys.add(key);
+                    blocksOfKeys.add(blocksByKey.get(new String(key, StandardCharsets.UTF_8)));
+                });
+
+        int blockCount = 0;
+        int keyBytesLength = 0;
+        long wordCount = 0;
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        for (int k = 0; k < keys.size(); k++) {
+            keyBytesLength += keys.get(k).length;
+            for (final GorillaBlock block : blocksOfKeys.get(k)) {
+                if (!block.isClosed()) {
+                    throw new IllegalArgumentException("Only closed blocks can be written to a segment");
+                }
+                blockCount++;
+                wordCount += block.wordCount();
+                minTimestamp = Math.min(minTimestamp, block.firstTimestamp());
+                maxTimestamp = Math.max(maxTimestamp, block.lastTimestamp());
+            }
+        }
+
+        final long dataStart = align(keyBytesStart(keys.size(), blockCount) + keyBytesLength);
+        final long size = dataStart + wordCount * Long.BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment of " + size + " bytes does not fit a single mapping");
+        }
+
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.putInt(0, MAGIC);
+            out.putInt(4, FORMAT_VERSION);
+            out.putInt(KEY_COUNT_OFFSET, keys.size());
+            out.putInt(BLOCK_COUNT_OFFSET, blockCount);
+            out.putInt(KEY_BYTES_OFFSET, keyBytesLength);
+            out.putLong(MIN_TIMESTAMP_OFFSET, minTimestamp);
+            out.putLong(MAX_TIMESTAMP_OFFSET, maxTimestamp);
+
+            final HistorySegment layout = new HistorySegment(path, out);
+            int block = 0;
+            int keyOffset = 0;
+            long dataOffset = dataStart;
+            for (int k = 0; k < keys.size(); k++) {
+                final byte[] key = keys.get(k);
+                out.putInt(layout.keyOffsets + k * Integer.BYTES, keyOffset);
+                out.putInt(layout.firstBlocks + k * Integer.BYTES, block);
+                for (int i = 0; i < key.length; i++) {
+                    out.put(layout.keyBytes + keyOffset + i, key[i]);
+                }
+                keyOffset += key.length;
+
+                for (final GorillaBlock gorillaBlock : blocksOfKeys.get(k)) {
+                    out.putLong(layout.firstTimestamps + block * Long.BYTES, gorillaBlock.firstTimestamp());
+                    out.putLong(layout.lastTimestamps + block * Long.BYTES, gorillaBlock.lastTimestamp());
+                    out.putLong(layout.dataOffsets + block * Long.BYTES, dataOffset);
+                    out.putInt(layout.sampleCounts + block * Integer.BYTES, gorillaBlock.count());
+                    out.putInt(layout.wordCounts + block * Integer.BYTES, gorillaBlock.wordCount());
+                    gorillaBlock.writeTo(layout.words(dataOffset, gorillaBlock.wordCount()));
+                    dataOffset += (long) gorillaBlock.wordCount() * Long.BYTES;
+                    block++;
+                }
+            }
+            out.putInt(layout.keyOffsets + keys.size() * Integer.BYTES, keyOffset);
+            out.putInt(layout.firstBlocks + keys.size() * Integer.BYTES, block);
+            out.force();
+        }
+
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        return open(path);
+    }
+
+    /**
+     * @throws IOException when the file is not a segment of this format version
+     */
+    public static HistorySegment open(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException(path + " is not a history segment");
+            }
+            // the mapping stays valid after the channel is closed
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a history segment");
+            }
+            if (buffer.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Unsupported history segment version " + buffer.getInt(4) + " of " + path);
+            }
+            return new HistorySegment(path, buffer);
+        }
+    }
+
+    private HistorySegment(final Path path, final ByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        this.keyCount = buffer.getInt(KEY_COUNT_OFFSET);
+        this.minTimestamp = buffer.getLong(MIN_TIMESTAMP_OFFSET);
+        this.maxTimestamp = buffer.getLong(MAX_TIMESTAMP_OFFSET);
+
+        final int blockCount = buffer.getInt(BLOCK_COUNT_OFFSET);
+        this.firstTimestamps = HEADER_SIZE;
+        this.lastTimestamps = firstTimestamps + blockCount * Long.BYTES;
+        this.dataOffsets = lastTimestamps + blockCount * Long.BYTES;
+        this.sampleCounts = dataOffsets + blockCount * Long.BYTES;
+        this.wordCounts = sampleCounts + blockCount * Integer.BYTES;
+        this.keyOffsets = wordCounts + blockCount * Integer.BYTES;
+        this.firstBlocks = keyOffsets + (keyCount + 1) * Integer.BYTES;
+        this.keyBytes = firstBlocks + (keyCount + 1) * Integer.BYTES;
+    }
+
+    private static int keyBytesStart(final int keyCount, final int blockCount) {
+        return HEADER_SIZE + blockCount * (3 * Long.BYTES + 2 * Integer.BYTES) + 2 * (keyCount + 1) * Integer.BYTES;
+    }
+
+    private static long align(final long offset) {
+        return (offset + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public long minTimestamp() {
+        return minTimestamp;
+    }
+
+    public long maxTimestamp() {
+        return maxTimestamp;
+    }
+
+    public long sizeInBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Decodes the samples of {@code key} with {@code from <= timestamp < to}, oldest first.
+     */
+    public void forEach(final byte[] key, final long from, final long to, final GorillaBlock.SampleConsumer consumer) {
+        if (from > maxTimestamp || to <= minTimestamp) {
+            return;
+        }
+
+        final int k = find(key);
+        if (k < 0) {
+            return;
+        }
+        final int end = buffer.getInt(firstBlocks + (k + 1) * Integer.BYTES);
+        for (int block = buffer.getInt(firstBlocks + k * Integer.BYTES); block < end; block++) {
+            final long first = buffer.getLong(firstTimestamps + block * Long.BYTES);
+            if (first >= to) {
+                return;
+            }
+            if (buffer.getLong(lastTimestamps + block * Long.BYTES) < from) {
+                continue;
+            }
+            GorillaBlock.decode(
+                    words(buffer.getLong(dataOffsets + block * Long.BYTES), buffer.getInt(wordCounts + block * Integer.BYTES)),
+                    buffer.getInt(sampleCounts + block * Integer.BYTES), from, to, consumer);
+        }
+    }
+
+    private LongBuffer words(final long offset, final int count) {
+        final ByteBuffer view = buffer.duplicate();
+        view.position((int) offset);
+        view.limit((int) offset + count * Long.BYTES);
+        return view.slice().asLongBuffer();
+    }
+
+    private int find(final byte[] key) {
+        int low = 0;
+        int high = keyCount - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int start = buffer.getInt(keyOffsets + middle * Integer.BYTES);
+            final int length = buffer.getInt(keyOffsets + (middle + 1) * Integer.BYTES) - start;
+
+            int compared = 0;
+            for (int i = 0; i < Math.min(length, key.length) && compared == 0; i++) {
+                compared = Integer.compare(buffer.get(keyBytes + start + i) & 0xFF, key[i] & 0xFF);
+            }
+            if (compared == 0) {
+                compared = Integer.compare(length, key.length);
+            }
+
+            if (compared < 0) {
+                low = middle + 1;
+            } else if (compared > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private static int compareUnsigned(final byte[] a, final byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            final int compared = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+}
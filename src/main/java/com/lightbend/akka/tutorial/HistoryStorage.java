@@ -0,0 +1,59 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import com.typesafe.config.Config;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * One {@link HistoryStore} per actor system, shared by the histories of all devices, configured by
+ * {@code iot.history.cold-storage}. Pending blocks are written out when the system terminates.
+ */
+public final class HistoryStorage implements Extension {
+
+    public static final ExtensionId<HistoryStorage> ID = new ExtensionId<HistoryStorage>() {
+        @Override
+        public HistoryStorage createExtension(final ActorSystem<?> system) {
+            return new HistoryStorage(system);
+        }
+    };
+
+    public static HistoryStorage get(final ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    private final Optional<HistoryStore> store;
+
+    private HistoryStorage(final ActorSystem<?> system) {
+        final Config config = system.settings().config().getConfig("iot.history.cold-storage");
+        if (!config.getBoolean("enabled")) {
+            this.store = Optional.empty();
+            return;
+        }
+
+        try {
+            final HistoryStore opened = HistoryStore.open(Paths.get(config.getString("directory")),
+                    config.getBytes("segment-size"), config.getDuration("flush-interval"),
+                    config.getDuration("retention"));
+            this.store = Optional.of(opened);
+            system.getWhenTerminated().thenRun(() -> {
+                try {
+                    opened.close();
+                } catch (IOException e) {
+                    system.log().warn("Failed to write pending history: {}", e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Optional<HistoryStore> store() {
+        return store;
+    }
+}
@@ -0,0 +1,247 @@
+package com.lightbend.akka.tutorial;
+
+import com.lightbend.akka.tutorial.util.GorillaBlock;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cold tier of the device history: closed {@link GorillaBlock}s handed over by {@link DeviceHistory} are kept on the
+ * heap only until a background thread writes them into a {@link HistorySegment} in {@code directory}, which happens
+ * once they reach {@code segmentBytes} and at every {@code flushInterval}. Segments whose newest sample is older than
+ * {@code retention} are deleted, segments found in the directory on open are read again.
+ * <p>
+ * Reads see every appended block, whether still pending, being written or in a segment. Thread safe, shared by all
+ * devices of an actor system through {@link HistoryStorage}.
+ */
+public final class HistoryStore implements AutoCloseable {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long retentionMillis;
+    private final ScheduledExecutorService writer;
+    private final LongAdder failedWrites = new LongAdder();
+
+    // guarded by this, segments oldest first
+    private final List<HistorySegment> segments = new ArrayList<>();
+    private Map<String, List<GorillaBlock>> pending = new HashMap<>();
+    private Map<String, List<GorillaBlock>> writing = Collections.emptyMap();
+    private long pendingBytes;
+    private boolean writeScheduled;
+    private long nextSegment;
+
+    public static HistoryStore open(final Path directory, final long segmentBytes, final Duration flushInterval,
+                                    final Duration retention) throws IOException {
+        return new HistoryStore(directory, segmentBytes, flushInterval, retention);
+    }
+
+    private HistoryStore(final Path directory, final long segmentBytes, final Duration flushInterval,
+                         final Duration retention) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retentionMillis = retention.toMillis();
+
+        Files.createDirectories(directory);
+        final List<Path> existing = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX + "*")) {
+            for (final Path file : files) {
+                if (file.getFileName().toString().endsWith(SEGMENT_SUFFIX)) {
+                    existing.add(file);
+                } else {
+                    // left over by a write that did not complete
+                    Files.delete(file);
+                }
+            }
+        }
+        // segment names are zero padded sequence numbers, so name order is write order
+        Collections.sort(existing);
+        for (final Path file : existing) {
+            segments.add(HistorySegment.open(file));
+            nextSegment = sequenceOf(file) + 1;
+        }
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "history-segment-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::writePending, flushInterval.toMillis(), flushInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        writer.execute(this::dropExpired);
+    }
+
+    private static long sequenceOf(final Path file) {
+        final String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Hands a closed block of {@code key} over to the store, blocks of one key in timestamp order.
+     */
+    public void append(final String key, final GorillaBlock block) {
+        if (!block.isClosed()) {
+            throw new IllegalArgumentException("Only closed blocks can be stored");
+        }
+
+        synchronized (this) {
+            pending.computeIfAbsent(key, k -> new ArrayList<>()).add(block);
+            pendingBytes += block.sizeInBytes();
+            if (pendingBytes < segmentBytes || writeScheduled) {
+                return;
+            }
+            writeScheduled = true;
+        }
+        writer.execute(this::writePending);
+    }
+
+    /**
+     * Decodes the stored samples of {@code key} with {@code from <= timestamp < to}, oldest first. Segments are read
+     * without holding the lock.
+     */
+    public void forEach(final String key, final long from, final long to, final GorillaBlock.SampleConsumer consumer) {
+        final List<HistorySegment> segmentsToRead;
+        final List<GorillaBlock> blocksToRead = new ArrayList<>();
+        synchronized (this) {
+            segmentsToRead = new ArrayList<>(segments);
+            blocksToRead.addAll(writing.getOrDefault(key, Collections.emptyList()));
+            blocksToRead.addAll(pending.getOrDefault(key, Collections.emptyList()));
+        }
+
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        for (final HistorySegment segment : segmentsToRead) {
+            segment.forEach(keyBytes, from, to, consumer);
+        }
+        for (final GorillaBlock block : blocksToRead) {
+            block.forEach(from, to, consumer);
+        }
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Heap held by blocks not written to a segment yet.
+     */
+    public synchronized long pendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * Segment writes that failed, their blocks stay pending and are written with the next segment.
+     */
+    public long failedWrites() {
+        return failedWrites.sum();
+    }
+
+    /**
+     * Writes the pending blocks into a segment and waits for it.
+     */
+    public void flush() throws IOException {
+        try {
+            if (!writer.submit(this::writePending).get()) {
+                throw new IOException("Failed to write a history segment into " + directory);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing history", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to flush history", e.getCause());
+        }
+    }
+
+    /**
+     * Only runs on the writer thread.
+     *
+     * @return false when the segment could not be written
+     */
+    private boolean writePending() {
+        final Map<String, List<GorillaBlock>> blocks;
+        final long blockBytes;
+        final Path path;
+        synchronized (this) {
+            writeScheduled = false;
+            if (pending.isEmpty()) {
+                return true;
+            }
+            blocks = pending;
+            writing = blocks;
+            pending = new HashMap<>();
+            blockBytes = pendingBytes;
+            pendingBytes = 0;
+            path = directory.resolve(String.format("%019d%s", nextSegment, SEGMENT_SUFFIX));
+        }
+
+        HistorySegment segment = null;
+        try {
+            segment = HistorySegment.write(path, blocks);
+        } catch (IOException | RuntimeException e) {
+            failedWrites.increment();
+        }
+
+        synchronized (this) {
+            writing = Collections.emptyMap();
+            if (segment != null) {
+                segments.add(segment);
+                nextSegment++;
+            } else {
+                // keeps the blocks readable and retries them with the next segment, ahead of newer blocks
+                blocks.forEach((key, keyBlocks) -> {
+                    final List<GorillaBlock> newer = pending.put(key, keyBlocks);
+                    if (newer != null) {
+                        keyBlocks.addAll(newer);
+                    }
+                });
+                pendingBytes += blockBytes;
+            }
+        }
+        dropExpired();
+        return segment != null;
+    }
+
+    // only runs on the writer thread
+    private void dropExpired() {
+        final long cutoff = System.currentTimeMillis() - retentionMillis;
+        final List<HistorySegment> expired = new ArrayList<>();
+        synchronized (this) {
+            while (!segments.isEmpty() && segments.get(0).maxTimestamp() < cutoff) {
+                expired.add(segments.remove(0));
+            }
+        }
+        for (final HistorySegment segment : expired) {
+            try {
+                Files.deleteIfExists(segment.path());
+            } catch (IOException e) {
+                // expired anyway, the next open drops it again
+            }
+        }
+    }
+
+    /**
+     * Writes the pending blocks and stops the writer thread.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            writer.shutdown();
+        }
+    }
+}
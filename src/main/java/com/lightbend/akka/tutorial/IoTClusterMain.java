@@ -0,0 +1,48 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.Behaviors;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Starts one cluster node hosting a share of the device groups. Pass the remoting port as the first argument to run
+ * several nodes on the same machine, e.g. 2551 (the seed node), 2552 and 2553.
+ */
+public class IoTClusterMain {
+
+    static final Duration QUERY_GROUP_TEMPERATURES_DURATION = Duration.ofSeconds(3);
+
+    static Behavior<DeviceManagerActor.Command> rootBehavior() {
+        return Behaviors.setup(context -> {
+            ShardedDeviceManagerActor.initSharding(context.getSystem(), QUERY_GROUP_TEMPERATURES_DURATION,
+                    context.spawn(NodeDeviceGroupsActor.create(), "node-device-groups"));
+            return ShardedDeviceManagerActor.create();
+        });
+    }
+
+    static Config nodeConfig(final int port) {
+        return ConfigFactory.parseString("akka.remote.artery.canonical.port = " + port)
+                .withFallback(ConfigFactory.load("cluster"));
+    }
+
+    public static void main(String[] args) {
+
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : 2551;
+        final ActorSystem<DeviceManagerActor.Command> actorSystemRef =
+                ActorSystem.create(rootBehavior(), "iot-system", nodeConfig(port));
+
+        try {
+            System.in.read();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            actorSystemRef.terminate();
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.Behaviors;
+import com.typesafe.config.Config;
+
+/**
+ * Repeatable capacity test: runs a {@link DeviceManagerActor} and a {@link LoadGeneratorActor} in one JVM and prints
+ * the report once the run is over. Settings live under {@code iot.load-generator}, e.g.
+ * {@code -Diot.load-generator.readings-per-second=200000}.
+ */
+public class IoTLoadGeneratorMain {
+
+    static Behavior<LoadGeneratorActor.Report> rootBehavior() {
+        return Behaviors.setup(context -> {
+            final Config config = context.getSystem().settings().config().getConfig("iot");
+            final ActorRef<DeviceManagerActor.Command> deviceManager = context.spawn(
+                    DeviceManagerActor.create(config.getDuration("query-group-temperatures-timeout")), "device-manager");
+            final LoadGeneratorActor.Settings settings =
+                    LoadGeneratorActor.Settings.fromConfig(config.getConfig("load-generator"));
+            context.spawn(LoadGeneratorActor.create(deviceManager, settings, context.getSelf()), "load-generator");
+
+            return Behaviors.receive(LoadGeneratorActor.Report.class)
+                    .onAnyMessage(report -> {
+                        System.out.println(report.text);
+                        return Behaviors.stopped();
+                    })
+                    .build();
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        BenchmarkSupport.quietLogging();
+
+        final ActorSystem<LoadGeneratorActor.Report> actorSystemRef =
+                ActorSystem.create(rootBehavior(), "iot-load-generator");
+        actorSystemRef.getWhenTerminated().toCompletableFuture().get();
+    }
+}
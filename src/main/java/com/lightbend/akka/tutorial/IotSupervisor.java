@@ -1,11 +1,18 @@
 package com.lightbend.akka.tutorial;
 
+import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
 import akka.actor.typed.PostStop;
 import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import com.typesafe.config.Config;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
 
 public class IotSupervisor extends AbstractBehavior<Void> {
 
@@ -13,9 +20,35 @@ public class IotSupervisor extends AbstractBehavior<Void> {
         return Behaviors.setup(IotSupervisor::new);
     }
 
-    private IotSupervisor(ActorContext<Void> context) {
+    private final Optional<TelemetryIngestionServer> ingestionServer;
+
+    private IotSupervisor(ActorContext<Void> context) throws IOException {
         super(context);
-        context.getLog().info("IoT Application started!");
+
+        final Config config = context.getSystem().settings().config().getConfig("iot");
+
+        final ActorRef<DeviceManagerActor.Command> deviceManager = context.spawn(
+                DeviceManagerActor.create(config.getDuration("query-group-temperatures-timeout")), "device-manager");
+
+        final Config ingestionConfig = config.getConfig("ingestion");
+        if (!ingestionConfig.getBoolean("enabled")) {
+            this.ingestionServer = Optional.empty();
+            context.getLog().info("IoT Application started!");
+            return;
+        }
+
+        final ActorRef<TelemetryIngestionActor.Command> ingestion = context.spawn(
+                TelemetryIngestionActor.create(deviceManager, new LongAdder()), "telemetry-ingestion");
+        final TelemetryIngestionServer server = new TelemetryIngestionServer(
+                new InetSocketAddress(ingestionConfig.getString("interface"), ingestionConfig.getInt("tcp-port")),
+                new InetSocketAddress(ingestionConfig.getString("interface"), ingestionConfig.getInt("udp-port")),
+                ingestion,
+                ingestionConfig.getInt("max-batch-size"),
+                ingestionConfig.getInt("max-devices"));
+        this.ingestionServer = Optional.of(server);
+
+        context.getLog().info("IoT Application started! Accepting telemetry on {} tcp port {} and udp port {}.",
+                ingestionConfig.getString("interface"), server.tcpPort(), server.udpPort());
     }
 
     @Override
@@ -23,7 +56,10 @@ public class IotSupervisor extends AbstractBehavior<Void> {
         return newReceiveBuilder().onSignal(PostStop.class, signal -> onPostStop()).build();
     }
 
-    private Behavior<Void> onPostStop() {
+    private Behavior<Void> onPostStop() throws IOException {
+        if (ingestionServer.isPresent()) {
+            ingestionServer.get().close();
+        }
         getContext().getLog().info("Iot Application stopped!");
         return Behaviors.same();
     }
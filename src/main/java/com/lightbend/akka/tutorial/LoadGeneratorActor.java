@@ -0,0 +1,355 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import com.lightbend.akka.tutorial.util.LatencyHistogram;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Drives a {@link DeviceManagerActor} like a device fleet would: registers {@code groups x devicesPerGroup} devices,
+ * then for a fixed duration sends readings, RequestAllTemperatures and RequestDeviceList queries and device stops at
+ * the configured rates, and finally replies with a report of throughput and latency percentiles.
+ * <p>
+ * Send timestamps travel in the most significant bits of the request ids, so latencies are tracked without any
+ * per-request bookkeeping.
+ */
+public class LoadGeneratorActor extends AbstractBehavior<LoadGeneratorActor.Command> {
+
+    interface Command {
+    }
+
+    public static final class Settings {
+
+        final int groups;
+        final int devicesPerGroup;
+        final double readingsPerSecond;
+        final double allTemperaturesQueriesPerSecond;
+        final double deviceListQueriesPerSecond;
+        final double deviceStopsPerSecond;
+        final Duration duration;
+        final Duration tickInterval;
+        final int maxRegistrationsInFlight;
+
+        public Settings(final int groups, final int devicesPerGroup, final double readingsPerSecond,
+                        final double allTemperaturesQueriesPerSecond, final double deviceListQueriesPerSecond,
+                        final double deviceStopsPerSecond, final Duration duration, final Duration tickInterval,
+                        final int maxRegistrationsInFlight) {
+            this.groups = groups;
+            this.devicesPerGroup = devicesPerGroup;
+            this.readingsPerSecond = readingsPerSecond;
+            this.allTemperaturesQueriesPerSecond = allTemperaturesQueriesPerSecond;
+            this.deviceListQueriesPerSecond = deviceListQueriesPerSecond;
+            this.deviceStopsPerSecond = deviceStopsPerSecond;
+            this.duration = duration;
+            this.tickInterval = tickInterval;
+            this.maxRegistrationsInFlight = maxRegistrationsInFlight;
+        }
+
+        public static Settings fromConfig(final Config config) {
+            return new Settings(
+                    config.getInt("groups"),
+                    config.getInt("devices-per-group"),
+                    config.getDouble("readings-per-second"),
+                    config.getDouble("all-temperatures-queries-per-second"),
+                    config.getDouble("device-list-queries-per-second"),
+                    config.getDouble("device-stops-per-second"),
+                    config.getDuration("duration"),
+                    config.getDuration("tick-interval"),
+                    config.getInt("max-registrations-in-flight"));
+        }
+    }
+
+    public static final class Report {
+
+        public final String text;
+
+        Report(final String text) {
+            this.text = text;
+        }
+    }
+
+    private static final class DeviceRegistrationResult implements Command {
+        final int index;
+        final DeviceManagerActor.DeviceRegistered response;
+
+        DeviceRegistrationResult(final int index, final DeviceManagerActor.DeviceRegistered response) {
+            this.index = index;
+            this.response = response;
+        }
+    }
+
+    private static final class WrappedRecordTemperatureCompleted implements Command {
+        final DeviceActor.RecordTemperatureCompleted response;
+
+        WrappedRecordTemperatureCompleted(final DeviceActor.RecordTemperatureCompleted response) {
+            this.response = response;
+        }
+    }
+
+    private static final class WrappedRespondAllTemperatures implements Command {
+        final DeviceGroupActor.RespondAllTemperatures response;
+
+        WrappedRespondAllTemperatures(final DeviceGroupActor.RespondAllTemperatures response) {
+            this.response = response;
+        }
+    }
+
+    private static final class WrappedReplyDeviceList implements Command {
+        final DeviceGroupActor.ReplyDeviceList response;
+
+        WrappedReplyDeviceList(final DeviceGroupActor.ReplyDeviceList response) {
+            this.response = response;
+        }
+    }
+
+    private static final class DeviceStopped implements Command {
+        final int index;
+
+        DeviceStopped(final int index) {
+            this.index = index;
+        }
+    }
+
+    private enum Tick implements Command {
+        INSTANCE
+    }
+
+    private enum Finish implements Command {
+        INSTANCE
+    }
+
+    private static final Duration registrationTimeout = Duration.ofSeconds(30);
+    private static final Duration drainTimeout = Duration.ofSeconds(5);
+
+    public static Behavior<Command> create(final ActorRef<DeviceManagerActor.Command> deviceManager,
+                                           final Settings settings, final ActorRef<Report> replyTo) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new LoadGeneratorActor(context, timers, deviceManager, settings, replyTo)));
+    }
+
+    private final TimerScheduler<Command> timers;
+    private final ActorRef<DeviceManagerActor.Command> deviceManager;
+    private final Settings settings;
+    private final ActorRef<Report> replyTo;
+
+    private final ActorRef<DeviceActor.RecordTemperatureCompleted> recordAdapter;
+    private final ActorRef<DeviceGroupActor.RespondAllTemperatures> allTemperaturesAdapter;
+    private final ActorRef<DeviceGroupActor.ReplyDeviceList> deviceListAdapter;
+
+    // by registration index, null while not registered
+    private final List<ActorRef<DeviceActor.Command>> devices;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private final LatencyHistogram registrationLatency = new LatencyHistogram();
+    private final LatencyHistogram readingLatency = new LatencyHistogram();
+    private final LatencyHistogram allTemperaturesLatency = new LatencyHistogram();
+    private final LatencyHistogram deviceListLatency = new LatencyHistogram();
+
+    private int nextRegistration;
+    private int registered;
+    private long sequence;
+
+    private long runStartNanos;
+    private long runEndNanos;
+    private double readingsDue;
+    private double allTemperaturesDue;
+    private double deviceListDue;
+    private double stopsDue;
+
+    private long readingsSent;
+    private long readingsSkipped;
+    private long deviceStops;
+    private long allTemperaturesSent;
+    private long deviceListSent;
+
+    private LoadGeneratorActor(final ActorContext<Command> context, final TimerScheduler<Command> timers,
+                               final ActorRef<DeviceManagerActor.Command> deviceManager, final Settings settings,
+                               final ActorRef<Report> replyTo) {
+        super(context);
+        this.timers = timers;
+        this.deviceManager = deviceManager;
+        this.settings = settings;
+        this.replyTo = replyTo;
+        this.devices = new ArrayList<>(Collections.nCopies(settings.groups * settings.devicesPerGroup, null));
+
+        this.recordAdapter = context.messageAdapter(DeviceActor.RecordTemperatureCompleted.class, WrappedRecordTemperatureCompleted::new);
+        this.allTemperaturesAdapter = context.messageAdapter(DeviceGroupActor.RespondAllTemperatures.class, WrappedRespondAllTemperatures::new);
+        this.deviceListAdapter = context.messageAdapter(DeviceGroupActor.ReplyDeviceList.class, WrappedReplyDeviceList::new);
+
+        context.getLog().info("Registering {} devices in {} groups.", devices.size(), settings.groups);
+        while (nextRegistration < Math.min(devices.size(), settings.maxRegistrationsInFlight)) {
+            register(nextRegistration++);
+        }
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(DeviceRegistrationResult.class, this::onDeviceRegistrationResult)
+                .onMessage(DeviceStopped.class, this::onDeviceStopped)
+                .onMessageEquals(Tick.INSTANCE, this::onTick)
+                .onMessage(WrappedRecordTemperatureCompleted.class, this::onRecordTemperatureCompleted)
+                .onMessage(WrappedRespondAllTemperatures.class, this::onRespondAllTemperatures)
+                .onMessage(WrappedReplyDeviceList.class, this::onReplyDeviceList)
+                .onMessageEquals(Finish.INSTANCE, this::onFinish)
+                .build();
+    }
+
+    private void register(final int index) {
+        final String groupId = "group-" + index / settings.devicesPerGroup;
+        final String deviceId = "device-" + index % settings.devicesPerGroup;
+        final long sentNanos = System.nanoTime();
+
+        getContext().ask(DeviceManagerActor.DeviceRegistered.class, deviceManager, registrationTimeout,
+                replyTo -> new DeviceManagerActor.RegisterDevice(groupId, deviceId, replyTo),
+                (response, failure) -> {
+                    if (response != null) {
+                        registrationLatency.record(System.nanoTime() - sentNanos);
+                    }
+                    return new DeviceRegistrationResult(index, response);
+                });
+    }
+
+    private Behavior<Command> onDeviceRegistrationResult(final DeviceRegistrationResult message) {
+
+        if (message.response == null) {
+            getContext().getLog().warn("Registration of device {} timed out, retrying.", message.index);
+            register(message.index);
+            return Behaviors.same();
+        }
+
+        devices.set(message.index, message.response.device);
+        getContext().watchWith(message.response.device, new DeviceStopped(message.index));
+
+        if (runStartNanos != 0) {
+            return Behaviors.same();
+        }
+
+        registered++;
+        if (nextRegistration < devices.size()) {
+            register(nextRegistration++);
+        } else if (registered == devices.size()) {
+            getContext().getLog().info("All devices registered, running load for {}.", settings.duration);
+            runStartNanos = System.nanoTime();
+            timers.startTimerAtFixedRate(Tick.INSTANCE, Tick.INSTANCE, settings.tickInterval);
+        }
+
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onTick() {
+
+        final long now = System.nanoTime();
+        if (now - runStartNanos >= settings.duration.toNanos()) {
+            runEndNanos = now;
+            timers.cancel(Tick.INSTANCE);
+            timers.startSingleTimer(Finish.INSTANCE, Finish.INSTANCE, drainTimeout);
+            return Behaviors.same();
+        }
+
+        final double tickSeconds = settings.tickInterval.toNanos() / 1e9;
+        readingsDue += settings.readingsPerSecond * tickSeconds;
+        allTemperaturesDue += settings.allTemperaturesQueriesPerSecond * tickSeconds;
+        deviceListDue += settings.deviceListQueriesPerSecond * tickSeconds;
+        stopsDue += settings.deviceStopsPerSecond * tickSeconds;
+
+        for (; readingsDue >= 1; readingsDue--) {
+            final ActorRef<DeviceActor.Command> device = devices.get(random.nextInt(devices.size()));
+            if (device == null) {
+                // stopped and not registered again yet
+                readingsSkipped++;
+                continue;
+            }
+            device.tell(new DeviceActor.RecordTemperature(requestId(now), random.nextDouble(-20, 40), recordAdapter));
+            readingsSent++;
+        }
+
+        for (; allTemperaturesDue >= 1; allTemperaturesDue--) {
+            deviceManager.tell(new DeviceGroupActor.RequestAllTemperatures(requestId(now), randomGroupId(), allTemperaturesAdapter));
+            allTemperaturesSent++;
+        }
+
+        for (; deviceListDue >= 1; deviceListDue--) {
+            deviceManager.tell(new DeviceGroupActor.RequestDeviceList(requestId(now), randomGroupId(), deviceListAdapter));
+            deviceListSent++;
+        }
+
+        for (; stopsDue >= 1; stopsDue--) {
+            final int index = random.nextInt(devices.size());
+            final ActorRef<DeviceActor.Command> device = devices.set(index, null);
+            if (device != null) {
+                device.tell(DeviceActor.Passivate.INSTANCE);
+                deviceStops++;
+            }
+        }
+
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onDeviceStopped(final DeviceStopped message) {
+        // register the device again once its group has seen it go, like a reconnecting device would
+        devices.set(message.index, null);
+        register(message.index);
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onRecordTemperatureCompleted(final WrappedRecordTemperatureCompleted message) {
+        readingLatency.record(System.nanoTime() - message.response.requestId.getMostSignificantBits());
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onRespondAllTemperatures(final WrappedRespondAllTemperatures message) {
+        allTemperaturesLatency.record(System.nanoTime() - message.response.requestId.getMostSignificantBits());
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onReplyDeviceList(final WrappedReplyDeviceList message) {
+        deviceListLatency.record(System.nanoTime() - message.response.requestId.getMostSignificantBits());
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onFinish() {
+
+        final double seconds = (runEndNanos - runStartNanos) / 1e9;
+        final String report = String.format(
+                "devices=%d groups=%d duration=%.1fs%n" +
+                "registrations: %s%n" +
+                "readings: sent=%d skipped=%d acknowledged=%d throughput=%.0f/s%n" +
+                "  latency %s%n" +
+                "all temperatures queries: sent=%d answered=%d%n" +
+                "  latency %s%n" +
+                "device list queries: sent=%d answered=%d%n" +
+                "  latency %s%n" +
+                "device stops: %d",
+                devices.size(), settings.groups, seconds,
+                registrationLatency.summaryMillis(),
+                readingsSent, readingsSkipped, readingLatency.count(), readingLatency.count() / seconds,
+                readingLatency.summaryMillis(),
+                allTemperaturesSent, allTemperaturesLatency.count(), allTemperaturesLatency.summaryMillis(),
+                deviceListSent, deviceListLatency.count(), deviceListLatency.summaryMillis(),
+                deviceStops);
+
+        replyTo.tell(new Report(report));
+        return Behaviors.stopped();
+    }
+
+    private UUID requestId(final long sentNanos) {
+        return new UUID(sentNanos, sequence++);
+    }
+
+    private String randomGroupId() {
+        return "group-" + random.nextInt(settings.groups);
+    }
+}
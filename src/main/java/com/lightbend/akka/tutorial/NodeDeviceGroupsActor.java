@@ -0,0 +1,152 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.receptionist.Receptionist;
+import akka.actor.typed.receptionist.ServiceKey;
+import com.lightbend.akka.tutorial.model.DeviceTemperature;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+
+/**
+ * The sharded device groups hosted on one cluster node, for the requests of {@link ShardedDeviceManagerActor} about
+ * all groups. Ranks the hottest devices of its groups from their published tops like {@link DeviceManagerActor} does
+ * and answers {@link DeviceManagerActor.RequestTopTemperatures} and
+ * {@link DeviceManagerActor.RequestFleetTemperatures} for its groups only. Registers with the receptionist under
+ * {@link #SERVICE_KEY}, so the managers on every node find it.
+ */
+public class NodeDeviceGroupsActor extends AbstractBehavior<DeviceManagerActor.Command> {
+
+    static final ServiceKey<DeviceManagerActor.Command> SERVICE_KEY =
+            ServiceKey.create(DeviceManagerActor.Command.class, "node-device-groups");
+
+    /**
+     * Sent by every group entity starting on this node.
+     */
+    static final class GroupStarted implements DeviceManagerActor.Command {
+        final String groupId;
+        final ActorRef<DeviceGroupActor.Command> group;
+
+        GroupStarted(final String groupId, final ActorRef<DeviceGroupActor.Command> group) {
+            this.groupId = groupId;
+            this.group = group;
+        }
+    }
+
+    private static final class GroupStopped implements DeviceManagerActor.Command {
+        final String groupId;
+        final ActorRef<DeviceGroupActor.Command> group;
+
+        GroupStopped(final String groupId, final ActorRef<DeviceGroupActor.Command> group) {
+            this.groupId = groupId;
+            this.group = group;
+        }
+    }
+
+    static Behavior<DeviceManagerActor.Command> create() {
+        return Behaviors.setup(context -> {
+            context.getSystem().receptionist().tell(Receptionist.register(SERVICE_KEY, context.getSelf()));
+            return new NodeDeviceGroupsActor(context);
+        });
+    }
+
+    private final Map<String, ActorRef<DeviceGroupActor.Command>> groupById = new HashMap<>();
+    private final Map<String, List<DeviceTemperature>> topByGroupId = new HashMap<>();
+    private final TreeSet<DeviceTemperature> nodeTop = new TreeSet<>(DeviceTemperature.HOTTEST_FIRST);
+    private final int topSize;
+
+    private NodeDeviceGroupsActor(final ActorContext<DeviceManagerActor.Command> context) {
+        super(context);
+        this.topSize = context.getSystem().settings().config().getInt("iot.top-temperatures.size");
+    }
+
+    @Override
+    public Receive<DeviceManagerActor.Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(GroupStarted.class, this::onGroupStarted)
+                .onMessage(GroupStopped.class, this::onGroupStopped)
+                .onMessage(DeviceManagerActor.GroupTopTemperatures.class, this::onGroupTopTemperatures)
+                .onMessage(DeviceManagerActor.RequestTopTemperatures.class, this::onRequestTopTemperatures)
+                .onMessage(DeviceManagerActor.RequestFleetTemperatures.class, this::onRequestFleetTemperatures)
+                .build();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onGroupStarted(final GroupStarted message) {
+        groupById.put(message.groupId, message.group);
+        getContext().watchWith(message.group, new GroupStopped(message.groupId, message.group));
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onGroupStopped(final GroupStopped message) {
+        // the group may have been started again meanwhile
+        if (groupById.remove(message.groupId, message.group)) {
+            replaceGroupTop(message.groupId, emptyList());
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onGroupTopTemperatures(final DeviceManagerActor.GroupTopTemperatures message) {
+        if (groupById.containsKey(message.groupId)) {
+            replaceGroupTop(message.groupId, message.top);
+        }
+        return Behaviors.same();
+    }
+
+    private void replaceGroupTop(final String groupId, final List<DeviceTemperature> top) {
+        final List<DeviceTemperature> previous = top.isEmpty() ? topByGroupId.remove(groupId) : topByGroupId.put(groupId, top);
+        if (previous != null) {
+            nodeTop.removeAll(previous);
+        }
+        nodeTop.addAll(top);
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRequestTopTemperatures(final DeviceManagerActor.RequestTopTemperatures message) {
+        final int count = Math.min(message.count, topSize);
+        final List<DeviceTemperature> top = new ArrayList<>(count);
+        for (final DeviceTemperature entry : nodeTop) {
+            if (top.size() == count) {
+                break;
+            }
+            top.add(entry);
+        }
+        message.replyTo.tell(new DeviceManagerActor.RespondTopTemperatures(message.requestId, top));
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRequestFleetTemperatures(final DeviceManagerActor.RequestFleetTemperatures message) {
+
+        final Map<String, ActorRef<DeviceGroupActor.Command>> groups;
+        if (message.groupIds.isEmpty()) {
+            groups = new HashMap<>(groupById);
+        } else {
+            groups = new HashMap<>();
+            for (final String groupId : message.groupIds) {
+                final ActorRef<DeviceGroupActor.Command> group = groupById.get(groupId);
+                if (group != null) {
+                    groups.put(groupId, group);
+                }
+            }
+        }
+
+        if (groups.isEmpty()) {
+            message.replyTo.tell(new DeviceManagerActor.RespondFleetTemperatures(message.requestId, emptyMap(),
+                    emptyMap(), emptySet()));
+            return Behaviors.same();
+        }
+
+        getContext().spawnAnonymous(FleetQueryActor.create(message, groups));
+        return Behaviors.same();
+    }
+}
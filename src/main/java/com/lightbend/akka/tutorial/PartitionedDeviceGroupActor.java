@@ -0,0 +1,802 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import com.lightbend.akka.tutorial.model.DeviceTemperature;
+import com.lightbend.akka.tutorial.model.DeviceTimedOut;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+import com.lightbend.akka.tutorial.util.DedupWindow;
+import com.lightbend.akka.tutorial.util.Deadlines;
+import com.lightbend.akka.tutorial.util.PersistentSortedMap;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Device group that spreads its devices over partitions, each a {@link DeviceGroupActor} of the same group id, so the
+ * registrations, terminations and queries of a hot group are not all handled by one actor. It speaks the protocol of
+ * {@link DeviceGroupActor} and starts with a single partition. Once every partition holds
+ * {@code iot.group-partitioning.max-partition-size} devices the group splits, doubling its partitions up to
+ * {@code max-partitions}.
+ * <p>
+ * A new device goes to the partition picked by the hash of its id, or the next one with room, and stays there: device
+ * actors cannot move, so the devices registered before a split stay where they are. Requests about single devices
+ * are routed to their partition, requests about the whole group go to every partition and their answers are merged.
+ * The versions a split group answers {@link DeviceGroupActor.RequestTemperaturesSince} with stand for the versions of
+ * all its partitions, so a client gets the changes of every partition since then, or TemperaturesNotModified.
+ * <p>
+ * Partitions recognize retried batches themselves, except the batches split over several partitions, whose retries
+ * this actor recognizes before splitting them again.
+ */
+public class PartitionedDeviceGroupActor extends AbstractBehavior<DeviceGroupActor.Command> {
+
+    /**
+     * Sent by a partition when one of its devices stopped. {@code routedMessages} counts the registrations and batches
+     * the partition handled until then, so a registration routed in the meantime keeps the device where it is.
+     */
+    static final class DeviceRemoved implements DeviceGroupActor.Command {
+        final String deviceId;
+        final long routedMessages;
+
+        DeviceRemoved(final String deviceId, final long routedMessages) {
+            this.deviceId = deviceId;
+            this.routedMessages = routedMessages;
+        }
+    }
+
+    private static final class PartitionTop implements DeviceGroupActor.Command {
+        final int partition;
+        final List<DeviceTemperature> top;
+
+        PartitionTop(final int partition, final List<DeviceTemperature> top) {
+            this.partition = partition;
+            this.top = top;
+        }
+    }
+
+    private static final class WrappedReplyDeviceList implements DeviceGroupActor.Command {
+        final DeviceGroupActor.ReplyDeviceList response;
+
+        WrappedReplyDeviceList(final DeviceGroupActor.ReplyDeviceList response) {
+            this.response = response;
+        }
+    }
+
+    private static final class WrappedRespondAllTemperatures implements DeviceGroupActor.Command {
+        final DeviceGroupActor.RespondAllTemperatures response;
+
+        WrappedRespondAllTemperatures(final DeviceGroupActor.RespondAllTemperatures response) {
+            this.response = response;
+        }
+    }
+
+    private static final class WrappedTemperaturesRecorded implements DeviceGroupActor.Command {
+        final DeviceGroupActor.TemperaturesRecorded response;
+
+        WrappedTemperaturesRecorded(final DeviceGroupActor.TemperaturesRecorded response) {
+            this.response = response;
+        }
+    }
+
+    private static final class WrappedTemperaturesSince implements DeviceGroupActor.Command {
+        final DeviceGroupActor.TemperaturesSinceResponse response;
+
+        WrappedTemperaturesSince(final DeviceGroupActor.TemperaturesSinceResponse response) {
+            this.response = response;
+        }
+    }
+
+    private static final class MergeTimedOut implements DeviceGroupActor.Command {
+        final Merge merge;
+
+        MergeTimedOut(final Merge merge) {
+            this.merge = merge;
+        }
+    }
+
+    private static final class Partition {
+        final int index;
+        final ActorRef<DeviceGroupActor.Command> group;
+        // RegisterDevice and RecordTemperatures sent to the partition, see DeviceRemoved
+        long routedMessages;
+        int size;
+        List<DeviceTemperature> top = Collections.emptyList();
+
+        Partition(final int index, final ActorRef<DeviceGroupActor.Command> group) {
+            this.index = index;
+            this.group = group;
+        }
+    }
+
+    private static final class Placement {
+        final Partition partition;
+        long lastRoutedMessage;
+        // as registered, to tell which devices of a partition timed out of a query
+        Set<String> tags = Collections.emptySet();
+
+        Placement(final Partition partition) {
+            this.partition = partition;
+        }
+    }
+
+    /**
+     * Answers of the partitions to one request, every partition is asked with its own request id.
+     */
+    private abstract static class Merge {
+        final Set<UUID> waitingRequestIds = new HashSet<>();
+
+        abstract void respond();
+    }
+
+    private static final class DeviceListMerge extends Merge {
+        final DeviceGroupActor.RequestDeviceList request;
+        final TreeSet<String> deviceIds = new TreeSet<>();
+        boolean more;
+
+        DeviceListMerge(final DeviceGroupActor.RequestDeviceList request) {
+            this.request = request;
+        }
+
+        @Override
+        void respond() {
+            // every partition returned its own first page, the merged page is the first of their union
+            final Set<String> page = new LinkedHashSet<>();
+            String last = null;
+            for (final String deviceId : deviceIds) {
+                if (page.size() == request.limit) {
+                    break;
+                }
+                page.add(deviceId);
+                last = deviceId;
+            }
+            final boolean hasMore = more || page.size() < deviceIds.size();
+            request.replyTo.tell(new DeviceGroupActor.ReplyDeviceList(request.requestId,
+                    Collections.unmodifiableSet(page), hasMore && last != null ? Optional.of(last) : Optional.empty()));
+        }
+    }
+
+    private static final class TemperaturesMerge extends Merge {
+        final DeviceGroupActor.RequestAllTemperatures request;
+        final Map<UUID, Partition> partitionByRequestId = new HashMap<>();
+        final Map<String, TemperatureReading> readings = new HashMap<>();
+
+        TemperaturesMerge(final DeviceGroupActor.RequestAllTemperatures request) {
+            this.request = request;
+        }
+
+        @Override
+        void respond() {
+            request.replyTo.tell(new DeviceGroupActor.RespondAllTemperatures(request.requestId, readings));
+        }
+    }
+
+    private static final class RecordMerge extends Merge {
+        final DeviceGroupActor.RecordTemperatures request;
+        final Set<ActorRef<DeviceGroupActor.TemperaturesRecorded>> retriedBy = new HashSet<>();
+        int count;
+
+        RecordMerge(final DeviceGroupActor.RecordTemperatures request) {
+            this.request = request;
+        }
+
+        @Override
+        void respond() {
+            final DeviceGroupActor.TemperaturesRecorded recorded =
+                    new DeviceGroupActor.TemperaturesRecorded(request.requestId, count);
+            request.replyTo.tell(recorded);
+            retriedBy.forEach(replyTo -> replyTo.tell(recorded));
+        }
+    }
+
+    private static final class SinceMerge extends Merge {
+        final DeviceGroupActor.RequestTemperaturesSince request;
+        final boolean fullSnapshot;
+        // by partition index, the version each partition is asked for until it answers with its current one
+        final long[] partitionVersions;
+        final Map<UUID, Integer> partitionByRequestId = new HashMap<>();
+        final Map<String, TemperatureReading> readings = new HashMap<>();
+        boolean modified;
+        // a partition no longer had the changes since the version it was asked for
+        boolean outOfWindow;
+        long version;
+
+        SinceMerge(final DeviceGroupActor.RequestTemperaturesSince request, final boolean fullSnapshot,
+                   final long[] partitionVersions) {
+            this.request = request;
+            this.fullSnapshot = fullSnapshot;
+            this.partitionVersions = partitionVersions;
+        }
+
+        @Override
+        void respond() {
+            if (fullSnapshot || modified) {
+                request.replyTo.tell(new DeviceGroupActor.RespondTemperaturesSince(request.requestId, version,
+                        fullSnapshot, readings));
+            } else {
+                request.replyTo.tell(new DeviceGroupActor.TemperaturesNotModified(request.requestId, version));
+            }
+        }
+    }
+
+    // versions handed out by a split group, older ones get a full snapshot
+    private static final int MAX_REMEMBERED_VERSIONS = 1024;
+
+    /**
+     * A partitioned group configured by {@code iot.group-partitioning}, or a plain {@link DeviceGroupActor} when
+     * partitioning is disabled.
+     */
+    public static Behavior<DeviceGroupActor.Command> create(final String groupId, final Duration queryTimeout,
+                                                            final Optional<ActorRef<DeviceManagerActor.GroupTopTemperatures>> topListener) {
+        return Behaviors.setup(context -> {
+            final Config config = context.getSystem().settings().config().getConfig("iot.group-partitioning");
+            return create(groupId, queryTimeout, topListener, config.getInt("max-partition-size"),
+                    config.getInt("max-partitions"));
+        });
+    }
+
+    static Behavior<DeviceGroupActor.Command> create(final String groupId, final Duration queryTimeout,
+                                                     final Optional<ActorRef<DeviceManagerActor.GroupTopTemperatures>> topListener,
+                                                     final int maxPartitionSize, final int maxPartitions) {
+        if (maxPartitionSize <= 0) {
+            return DeviceGroupActor.create(groupId, queryTimeout, topListener);
+        }
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new PartitionedDeviceGroupActor(context, timers, groupId, queryTimeout, topListener,
+                        maxPartitionSize, maxPartitions)));
+    }
+
+    private final TimerScheduler<DeviceGroupActor.Command> timers;
+    private final String groupId;
+    private final Duration queryTimeout;
+    private final Duration mergeTimeout;
+    private final Optional<ActorRef<DeviceManagerActor.GroupTopTemperatures>> topListener;
+    private final Optional<AtomicReference<PersistentSortedMap<String, TemperatureReading>>> readModelSnapshot;
+    private final int maxPartitionSize;
+    private final int maxPartitions;
+    private final int topSize;
+
+    private final List<Partition> partitions = new ArrayList<>();
+    private final Map<String, Placement> placementByDeviceId = new HashMap<>();
+    // replayed to the partitions added by a split
+    private final Map<ActorRef<DeviceGroupActor.TemperatureChanges>, Duration> minEmitIntervalBySubscriber = new HashMap<>();
+    private final Map<String, DeviceGroupActor.AddAlertRule> alertRuleById = new LinkedHashMap<>();
+    private final Map<UUID, Merge> mergeByRequestId = new HashMap<>();
+    // batches split over several partitions, by the request id of their sender
+    private final DedupWindow recentSplitRecords;
+    private final Map<UUID, RecordMerge> recordMergeBySplitRequestId = new HashMap<>();
+    private final RecordDeduplication dedup;
+    private List<DeviceTemperature> publishedTop = Collections.emptyList();
+    // the versions of the partitions every version of the split group stands for. Negative and counting down, so
+    // they never clash with the versions of the first partition, handed out before the group split
+    private final LinkedHashMap<Long, long[]> partitionVersionsByVersion = new LinkedHashMap<>();
+    private long version = -(System.currentTimeMillis() << 20);
+    // keeps the sub request ids apart from the ids of batches partitions get straight from senders
+    private final long requestIdPrefix = ThreadLocalRandom.current().nextLong();
+    private long requestSequence;
+
+    private final ActorRef<DeviceGroupActor.ReplyDeviceList> deviceListAdapter;
+    private final ActorRef<DeviceGroupActor.RespondAllTemperatures> allTemperaturesAdapter;
+    private final ActorRef<DeviceGroupActor.TemperaturesRecorded> recordedAdapter;
+    private final ActorRef<DeviceGroupActor.TemperaturesSinceResponse> temperaturesSinceAdapter;
+
+    private PartitionedDeviceGroupActor(final ActorContext<DeviceGroupActor.Command> context,
+                                        final TimerScheduler<DeviceGroupActor.Command> timers,
+                                        final String groupId, final Duration queryTimeout,
+                                        final Optional<ActorRef<DeviceManagerActor.GroupTopTemperatures>> topListener,
+                                        final int maxPartitionSize, final int maxPartitions) {
+        super(context);
+        this.timers = timers;
+        this.groupId = groupId;
+        this.queryTimeout = queryTimeout;
+        // partitions answer within the query timeout, the margin only covers a partition restarting meanwhile
+        this.mergeTimeout = queryTimeout.multipliedBy(2);
+        this.topListener = topListener;
+        this.maxPartitionSize = maxPartitionSize;
+        this.maxPartitions = maxPartitions;
+        this.topSize = context.getSystem().settings().config().getInt("iot.top-temperatures.size");
+        this.dedup = RecordDeduplication.get(context.getSystem());
+        this.recentSplitRecords = dedup.newGroupWindow();
+
+        final TemperatureReadModel readModel = TemperatureReadModel.get(context.getSystem());
+        this.readModelSnapshot = readModel.enabled() ? Optional.of(readModel.register(groupId)) : Optional.empty();
+
+        this.deviceListAdapter =
+                context.messageAdapter(DeviceGroupActor.ReplyDeviceList.class, WrappedReplyDeviceList::new);
+        this.allTemperaturesAdapter =
+                context.messageAdapter(DeviceGroupActor.RespondAllTemperatures.class, WrappedRespondAllTemperatures::new);
+        this.recordedAdapter =
+                context.messageAdapter(DeviceGroupActor.TemperaturesRecorded.class, WrappedTemperaturesRecorded::new);
+        this.temperaturesSinceAdapter =
+                context.messageAdapter(DeviceGroupActor.TemperaturesSinceResponse.class, WrappedTemperaturesSince::new);
+
+        addPartition();
+    }
+
+    @Override
+    public Receive<DeviceGroupActor.Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(DeviceManagerActor.RegisterDevice.class, this::onRegisterDevice)
+                .onMessage(DeviceGroupActor.RecordTemperatures.class, this::onRecordTemperatures)
+                .onMessage(DeviceGroupActor.RequestDeviceList.class, this::onRequestDeviceList)
+                .onMessage(DeviceGroupActor.RequestAllTemperatures.class, this::onRequestAllTemperatures)
+                .onMessage(DeviceGroupActor.RequestTemperaturesSince.class, this::onRequestTemperaturesSince)
+                .onMessage(DeviceGroupActor.SubscribeTemperatures.class, this::onSubscribeTemperatures)
+                .onMessage(DeviceGroupActor.UnsubscribeTemperatures.class, this::onUnsubscribeTemperatures)
+                .onMessage(DeviceGroupActor.AddAlertRule.class, this::onAddAlertRule)
+                .onMessage(DeviceGroupActor.RemoveAlertRule.class, this::onRemoveAlertRule)
+                .onMessage(DeviceRemoved.class, this::onDeviceRemoved)
+                .onMessage(PartitionTop.class, this::onPartitionTop)
+                .onMessage(WrappedReplyDeviceList.class, this::onReplyDeviceList)
+                .onMessage(WrappedRespondAllTemperatures.class, this::onRespondAllTemperatures)
+                .onMessage(WrappedTemperaturesRecorded.class, this::onTemperaturesRecorded)
+                .onMessage(WrappedTemperaturesSince.class, this::onTemperaturesSince)
+                .onMessage(MergeTimedOut.class, this::onMergeTimedOut)
+                .build();
+    }
+
+    private void addPartition() {
+        final int index = partitions.size();
+        final ActorRef<DeviceGroupActor.Command> self = getContext().getSelf();
+        final Optional<ActorRef<DeviceManagerActor.GroupTopTemperatures>> partitionTopListener = topListener.map(listener ->
+                getContext().spawn(Behaviors.receive(DeviceManagerActor.GroupTopTemperatures.class)
+                        .onMessage(DeviceManagerActor.GroupTopTemperatures.class, message -> {
+                            self.tell(new PartitionTop(index, message.top));
+                            return Behaviors.same();
+                        })
+                        .build(), "partition-" + index + "-top"));
+
+        final ActorRef<DeviceGroupActor.Command> group = getContext().spawn(DeviceGroupActor.createPartition(groupId,
+                queryTimeout, partitionTopListener, readModelSnapshot, getContext().getSelf().narrow()),
+                "partition-" + index);
+        minEmitIntervalBySubscriber.forEach((subscriber, minEmitInterval) ->
+                group.tell(new DeviceGroupActor.SubscribeTemperatures(groupId, subscriber, minEmitInterval)));
+        alertRuleById.values().forEach(group::tell);
+
+        partitions.add(new Partition(index, group));
+    }
+
+    private Placement place(final String deviceId) {
+        final Placement existing = placementByDeviceId.get(deviceId);
+        if (existing != null) {
+            return existing;
+        }
+
+        if (placementByDeviceId.size() >= maxPartitionSize * partitions.size() && partitions.size() < maxPartitions) {
+            final int target = Math.min(partitions.size() * 2, maxPartitions);
+            while (partitions.size() < target) {
+                addPartition();
+            }
+            getContext().getLog().info("DeviceGroup {} split into {} partitions at {} devices!",
+                    groupId, partitions.size(), placementByDeviceId.size());
+        }
+
+        // partitions filled before the last split take no more devices while the others have room
+        final int first = Math.floorMod(deviceId.hashCode(), partitions.size());
+        Partition partition = partitions.get(first);
+        for (int i = 1; i < partitions.size() && partition.size >= maxPartitionSize; i++) {
+            partition = partitions.get((first + i) % partitions.size());
+        }
+        if (partition.size >= maxPartitionSize) {
+            // every partition is full and the group cannot split any further
+            partition = partitions.get(first);
+        }
+
+        final Placement placement = new Placement(partition);
+        partition.size++;
+        placementByDeviceId.put(deviceId, placement);
+        return placement;
+    }
+
+    private Behavior<DeviceGroupActor.Command> onRegisterDevice(final DeviceManagerActor.RegisterDevice message) {
+
+        if (!this.groupId.equals(message.groupId)) {
+            getContext().getLog().info("Ignoring RegisterDevice request for group {}. " +
+                    "This actor handles only group {}!", message.groupId, this.groupId);
+            return Behaviors.same();
+        }
+
+        final Placement placement = place(message.deviceId);
+        if (!message.tags.isEmpty()) {
+            placement.tags = message.tags;
+        }
+        placement.lastRoutedMessage = ++placement.partition.routedMessages;
+        placement.partition.group.tell(message);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceGroupActor.Command> onRecordTemperatures(final DeviceGroupActor.RecordTemperatures message) {
+
+        if (!this.groupId.equals(message.groupId)) {
+            getContext().getLog().info("Ignoring RecordTemperatures request for group {}. " +
+                    "This actor handles only group {}!", message.groupId, this.groupId);
+            return Behaviors.same();
+        }
+
+        if (recentSplitRecords.contains(message.requestId)) {
+            dedup.groupDuplicate();
+            final RecordMerge pending = recordMergeBySplitRequestId.get(message.requestId);
+            if (pending != null) {
+                if (!message.replyTo.equals(pending.request.replyTo)) {
+                    pending.retriedBy.add(message.replyTo);
+                }
+            } else {
+                message.replyTo.tell(new DeviceGroupActor.TemperaturesRecorded(message.requestId, message.values.length));
+            }
+            return Behaviors.same();
+        }
+
+        final Placement[] placements = new Placement[message.deviceIds.length];
+        for (int i = 0; i < placements.length; i++) {
+            placements[i] = place(message.deviceIds[i]);
+        }
+        // placing may have split the group, so partitions are counted afterwards
+        final int[] counts = new int[partitions.size()];
+        int involved = 0;
+        for (final Placement placement : placements) {
+            if (counts[placement.partition.index]++ == 0) {
+                involved++;
+            }
+        }
+
+        if (involved <= 1) {
+            final Partition partition = placements.length == 0 ? partitions.get(0) : placements[0].partition;
+            routeBatch(partition, placements, message);
+            return Behaviors.same();
+        }
+
+        final RecordMerge merge = new RecordMerge(message);
+        recentSplitRecords.add(message.requestId);
+        recordMergeBySplitRequestId.put(message.requestId, merge);
+        for (final Partition partition : partitions) {
+            final int count = counts[partition.index];
+            if (count == 0) {
+                continue;
+            }
+            final String[] deviceIds = new String[count];
+            final double[] values = new double[count];
+            final List<Placement> routed = new ArrayList<>(count);
+            int next = 0;
+            for (int i = 0; i < placements.length; i++) {
+                if (placements[i].partition == partition) {
+                    deviceIds[next] = message.deviceIds[i];
+                    values[next] = message.values[i];
+                    routed.add(placements[i]);
+                    next++;
+                }
+            }
+            routeBatch(partition, routed.toArray(new Placement[0]), new DeviceGroupActor.RecordTemperatures(
+                    subRequest(merge), groupId, deviceIds, values, recordedAdapter));
+        }
+        startMerge(merge);
+        return Behaviors.same();
+    }
+
+    private void routeBatch(final Partition partition, final Placement[] placements,
+                            final DeviceGroupActor.RecordTemperatures batch) {
+        final long routed = ++partition.routedMessages;
+        for (final Placement placement : placements) {
+            placement.lastRoutedMessage = routed;
+        }
+        partition.group.tell(batch);
+    }
+
+    private Behavior<DeviceGroupActor.Command> onRequestDeviceList(final DeviceGroupActor.RequestDeviceList message) {
+
+        if (!this.groupId.equals(message.groupId)) {
+            getContext().getLog().info("Cannot list devices from group {}. This actor only handles group {}.",
+                    message.groupId, this.groupId);
+            return Behaviors.same();
+        }
+
+        if (partitions.size() == 1) {
+            partitions.get(0).group.tell(message);
+            return Behaviors.same();
+        }
+
+        final DeviceListMerge merge = new DeviceListMerge(message);
+        for (final Partition partition : partitions) {
+            partition.group.tell(new DeviceGroupActor.RequestDeviceList(subRequest(merge), groupId,
+                    message.afterDeviceId, message.limit, deviceListAdapter));
+        }
+        startMerge(merge);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceGroupActor.Command> onRequestAllTemperatures(final DeviceGroupActor.RequestAllTemperatures message) {
+
+        if (!this.groupId.equals(message.groupId)) {
+            getContext().getLog().info("Cannot request temperatures of group {}. Current actor cares only about " +
+                    "group {}.", message.groupId, this.groupId);
+            return Behaviors.same();
+        }
+
+        if (Deadlines.passed(message.deadlineMillis)) {
+            return Behaviors.same();
+        }
+
+        if (partitions.size() == 1) {
+            partitions.get(0).group.tell(message);
+            return Behaviors.same();
+        }
+
+        final TemperaturesMerge merge = new TemperaturesMerge(message);
+        for (final Partition partition : partitions) {
+            final UUID requestId = subRequest(merge);
+            merge.partitionByRequestId.put(requestId, partition);
+            partition.group.tell(new DeviceGroupActor.RequestAllTemperatures(requestId, groupId,
+                    message.tags, message.deadlineMillis, allTemperaturesAdapter));
+        }
+        startMerge(merge);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceGroupActor.Command> onRequestTemperaturesSince(final DeviceGroupActor.RequestTemperaturesSince message) {
+
+        if (!this.groupId.equals(message.groupId)) {
+            getContext().getLog().info("Cannot request temperatures of group {}. Current actor cares only about " +
+                    "group {}.", message.groupId, this.groupId);
+            return Behaviors.same();
+        }
+
+        if (partitions.size() == 1) {
+            partitions.get(0).group.tell(message);
+            return Behaviors.same();
+        }
+
+        final long[] known = partitionVersionsByVersion.get(message.version);
+        final long[] partitionVersions = new long[partitions.size()];
+        if (known != null) {
+            // partitions added since then are asked for version 0 like all of them for an unknown version
+            System.arraycopy(known, 0, partitionVersions, 0, known.length);
+        }
+        requestSince(message, known == null, partitionVersions);
+        return Behaviors.same();
+    }
+
+    /**
+     * Version 0 is older than any partition remembers, so a partition asked for it answers with its full snapshot.
+     */
+    private void requestSince(final DeviceGroupActor.RequestTemperaturesSince message, final boolean fullSnapshot,
+                              final long[] partitionVersions) {
+        final SinceMerge merge = new SinceMerge(message, fullSnapshot, partitionVersions);
+        for (final Partition partition : partitions) {
+            final UUID requestId = subRequest(merge);
+            merge.partitionByRequestId.put(requestId, partition.index);
+            partition.group.tell(new DeviceGroupActor.RequestTemperaturesSince(requestId, groupId,
+                    partitionVersions[partition.index], temperaturesSinceAdapter));
+        }
+        startMerge(merge);
+    }
+
+    private Behavior<DeviceGroupActor.Command> onSubscribeTemperatures(final DeviceGroupActor.SubscribeTemperatures message) {
+
+        if (!this.groupId.equals(message.groupId)) {
+            getContext().getLog().info("Ignoring subscription to group {}. This actor handles only group {}!",
+                    message.groupId, this.groupId);
+            return Behaviors.same();
+        }
+
+        if (minEmitIntervalBySubscriber.put(message.subscriber, message.minEmitInterval) == null) {
+            getContext().watchWith(message.subscriber,
+                    new DeviceGroupActor.UnsubscribeTemperatures(groupId, message.subscriber));
+        }
+        partitions.forEach(partition -> partition.group.tell(message));
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceGroupActor.Command> onUnsubscribeTemperatures(final DeviceGroupActor.UnsubscribeTemperatures message) {
+
+        if (minEmitIntervalBySubscriber.remove(message.subscriber) == null) {
+            return Behaviors.same();
+        }
+
+        getContext().unwatch(message.subscriber);
+        partitions.forEach(partition -> partition.group.tell(message));
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceGroupActor.Command> onAddAlertRule(final DeviceGroupActor.AddAlertRule message) {
+        if (this.groupId.equals(message.groupId)) {
+            alertRuleById.put(message.rule.id, message);
+            partitions.forEach(partition -> partition.group.tell(message));
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceGroupActor.Command> onRemoveAlertRule(final DeviceGroupActor.RemoveAlertRule message) {
+        if (alertRuleById.remove(message.ruleId) != null) {
+            partitions.forEach(partition -> partition.group.tell(message));
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceGroupActor.Command> onDeviceRemoved(final DeviceRemoved message) {
+        final Placement placement = placementByDeviceId.get(message.deviceId);
+        // a registration routed after the device stopped has spawned it again
+        if (placement != null && placement.lastRoutedMessage <= message.routedMessages) {
+            placementByDeviceId.remove(message.deviceId);
+            placement.partition.size--;
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceGroupActor.Command> onPartitionTop(final PartitionTop message) {
+        partitions.get(message.partition).top = message.top;
+
+        final TreeSet<DeviceTemperature> ranked = new TreeSet<>(DeviceTemperature.HOTTEST_FIRST);
+        partitions.forEach(partition -> ranked.addAll(partition.top));
+        final List<DeviceTemperature> top = new ArrayList<>(topSize);
+        for (final DeviceTemperature entry : ranked) {
+            if (top.size() == topSize) {
+                break;
+            }
+            top.add(entry);
+        }
+
+        if (!top.equals(publishedTop)) {
+            publishedTop = Collections.unmodifiableList(top);
+            topListener.ifPresent(listener -> listener.tell(new DeviceManagerActor.GroupTopTemperatures(groupId, publishedTop)));
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceGroupActor.Command> onReplyDeviceList(final WrappedReplyDeviceList message) {
+        final DeviceListMerge merge = (DeviceListMerge) mergeByRequestId.remove(message.response.requestId);
+        if (merge != null) {
+            merge.deviceIds.addAll(message.response.deviceIds);
+            merge.more |= message.response.nextCursor.isPresent();
+            respondWhenCollected(merge, message.response.requestId);
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceGroupActor.Command> onRespondAllTemperatures(final WrappedRespondAllTemperatures message) {
+        final TemperaturesMerge merge = (TemperaturesMerge) mergeByRequestId.remove(message.response.requestId);
+        if (merge != null) {
+            merge.readings.putAll(message.response.responseByDeviceId);
+            respondWhenCollected(merge, message.response.requestId);
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceGroupActor.Command> onTemperaturesRecorded(final WrappedTemperaturesRecorded message) {
+        final RecordMerge merge = (RecordMerge) mergeByRequestId.remove(message.response.requestId);
+        if (merge != null) {
+            merge.count += message.response.count;
+            respondWhenCollected(merge, message.response.requestId);
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceGroupActor.Command> onTemperaturesSince(final WrappedTemperaturesSince message) {
+        if (message.response instanceof DeviceGroupActor.TemperaturesNotModified) {
+            final DeviceGroupActor.TemperaturesNotModified notModified =
+                    (DeviceGroupActor.TemperaturesNotModified) message.response;
+            final SinceMerge merge = (SinceMerge) mergeByRequestId.remove(notModified.requestId);
+            if (merge != null) {
+                respondWhenCollected(merge, notModified.requestId);
+            }
+            return Behaviors.same();
+        }
+
+        final DeviceGroupActor.RespondTemperaturesSince response = (DeviceGroupActor.RespondTemperaturesSince) message.response;
+        final SinceMerge merge = (SinceMerge) mergeByRequestId.remove(response.requestId);
+        if (merge != null) {
+            final int partition = merge.partitionByRequestId.get(response.requestId);
+            merge.outOfWindow |= response.fullSnapshot && merge.partitionVersions[partition] != 0;
+            merge.partitionVersions[partition] = response.version;
+            merge.readings.putAll(response.changesByDeviceId);
+            merge.modified = true;
+            respondWhenCollected(merge, response.requestId);
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceGroupActor.Command> onMergeTimedOut(final MergeTimedOut message) {
+        getContext().getLog().warn("{} of {} partitions of group {} did not answer in time.",
+                message.merge.waitingRequestIds.size(), partitions.size(), groupId);
+        message.merge.waitingRequestIds.forEach(mergeByRequestId::remove);
+
+        if (message.merge instanceof RecordMerge) {
+            // not acknowledged, so the sender retries, and the retry is routed again instead of being taken for a
+            // duplicate, partitions that recorded their part already record it once more
+            final RecordMerge merge = (RecordMerge) message.merge;
+            recentSplitRecords.remove(merge.request.requestId);
+            recordMergeBySplitRequestId.remove(merge.request.requestId, merge);
+            return Behaviors.same();
+        }
+
+        if (message.merge instanceof TemperaturesMerge) {
+            final TemperaturesMerge merge = (TemperaturesMerge) message.merge;
+            final Set<Partition> unanswered = new HashSet<>();
+            merge.waitingRequestIds.forEach(requestId -> unanswered.add(merge.partitionByRequestId.get(requestId)));
+            placementByDeviceId.forEach((deviceId, placement) -> {
+                if (unanswered.contains(placement.partition) && placement.tags.containsAll(merge.request.tags)) {
+                    merge.readings.put(deviceId, DeviceTimedOut.INSTANCE);
+                }
+            });
+        }
+        complete(message.merge);
+        return Behaviors.same();
+    }
+
+    private UUID subRequest(final Merge merge) {
+        // a sequential id is enough to correlate answers and is much cheaper than a random UUID
+        final UUID requestId = new UUID(requestIdPrefix, ++requestSequence);
+        merge.waitingRequestIds.add(requestId);
+        mergeByRequestId.put(requestId, merge);
+        return requestId;
+    }
+
+    private void startMerge(final Merge merge) {
+        timers.startSingleTimer(merge, new MergeTimedOut(merge), mergeTimeout);
+    }
+
+    private void respondWhenCollected(final Merge merge, final UUID requestId) {
+        merge.waitingRequestIds.remove(requestId);
+        if (merge.waitingRequestIds.isEmpty()) {
+            timers.cancel(merge);
+            complete(merge);
+        }
+    }
+
+    private void complete(final Merge merge) {
+        if (merge instanceof SinceMerge) {
+            completeSince((SinceMerge) merge);
+            return;
+        }
+        merge.respond();
+        if (merge instanceof RecordMerge) {
+            final RecordMerge recordMerge = (RecordMerge) merge;
+            // a request id sent again after it left the window may have replaced this one
+            recordMergeBySplitRequestId.remove(recordMerge.request.requestId, recordMerge);
+        }
+    }
+
+    private void completeSince(final SinceMerge merge) {
+        if (merge.outOfWindow) {
+            // devices that stopped in that partition could not be reported, so the client starts over
+            requestSince(merge.request, true, new long[partitions.size()]);
+            return;
+        }
+        merge.version = merge.fullSnapshot || merge.modified ? versionOf(merge.partitionVersions) : merge.request.version;
+        merge.respond();
+    }
+
+    /**
+     * The version standing for {@code partitionVersions}, the latest one again while no partition changed.
+     */
+    private long versionOf(final long[] partitionVersions) {
+        if (Arrays.equals(partitionVersions, partitionVersionsByVersion.get(version))) {
+            return version;
+        }
+        partitionVersionsByVersion.put(--version, partitionVersions);
+        if (partitionVersionsByVersion.size() > MAX_REMEMBERED_VERSIONS) {
+            final Iterator<Long> oldest = partitionVersionsByVersion.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        return version;
+    }
+}
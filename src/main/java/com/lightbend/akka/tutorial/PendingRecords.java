@@ -0,0 +1,121 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import com.lightbend.akka.tutorial.util.DedupWindow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link DeviceGroupActor.RecordTemperatures} batches of a group until their devices acknowledged every reading, and
+ * the window of recent batch ids that keeps a retried batch from being recorded twice, see
+ * {@link RecordDeduplication}. Owned by its {@link DeviceGroupActor}.
+ */
+final class PendingRecords {
+
+    static final class PendingRecord {
+        final DeviceGroupActor.RecordTemperatures request;
+        final long sequence;
+        private final long readingIdBits;
+        private int remaining;
+        // retries of the request from other senders, typically new ask actors
+        private List<ActorRef<DeviceGroupActor.TemperaturesRecorded>> retriedBy = Collections.emptyList();
+
+        private PendingRecord(final DeviceGroupActor.RecordTemperatures request, final long sequence,
+                              final long readingIdBits) {
+            this.request = request;
+            this.sequence = sequence;
+            this.readingIdBits = readingIdBits;
+            this.remaining = request.values.length;
+        }
+
+        /**
+         * Id of the reading at {@code index} of the batch, as sent to its device.
+         */
+        UUID readingId(final int index) {
+            return new UUID(readingIdBits, index);
+        }
+
+        private void addRetry(final ActorRef<DeviceGroupActor.TemperaturesRecorded> replyTo) {
+            if (replyTo.equals(request.replyTo) || retriedBy.contains(replyTo)) {
+                return;
+            }
+            if (retriedBy.isEmpty()) {
+                retriedBy = new ArrayList<>(1);
+            }
+            retriedBy.add(replyTo);
+        }
+
+        private void respond() {
+            final DeviceGroupActor.TemperaturesRecorded recorded =
+                    new DeviceGroupActor.TemperaturesRecorded(request.requestId, request.values.length);
+            request.replyTo.tell(recorded);
+            retriedBy.forEach(replyTo -> replyTo.tell(recorded));
+        }
+    }
+
+    private final RecordDeduplication dedup;
+    private final DedupWindow recentRecords;
+    private final Map<UUID, PendingRecord> pendingById = new HashMap<>();
+    private final Map<Long, PendingRecord> pendingBySequence = new HashMap<>();
+    // readings sent to devices have ids of their own, (prefix ^ batch sequence, index in batch), so devices can
+    // tell them apart even when a batch holds several readings of one device
+    private final long readingIdPrefix = ThreadLocalRandom.current().nextLong();
+    private long nextSequence;
+
+    PendingRecords(final RecordDeduplication dedup) {
+        this.dedup = dedup;
+        this.recentRecords = dedup.newGroupWindow();
+    }
+
+    /**
+     * Starts recording a batch. A batch seen before is acknowledged right away instead, or together with the first
+     * one when that is still being recorded.
+     *
+     * @return the new batch, null for one seen before
+     */
+    PendingRecord start(final DeviceGroupActor.RecordTemperatures request) {
+
+        if (!recentRecords.add(request.requestId)) {
+            dedup.groupDuplicate();
+            final PendingRecord pending = pendingById.get(request.requestId);
+            if (pending != null) {
+                pending.addRetry(request.replyTo);
+            } else {
+                request.replyTo.tell(new DeviceGroupActor.TemperaturesRecorded(request.requestId, request.values.length));
+            }
+            return null;
+        }
+
+        // every reading of the batch carries the batch sequence, so acknowledgements can be counted down
+        final long sequence = nextSequence++;
+        final PendingRecord pending = new PendingRecord(request, sequence, readingIdPrefix ^ sequence);
+        pendingById.put(request.requestId, pending);
+        pendingBySequence.put(sequence, pending);
+        return pending;
+    }
+
+    /**
+     * Counts down the batch of an acknowledged reading, the batch is acknowledged once all of its readings are.
+     */
+    void completed(final UUID readingId) {
+
+        final long sequence = readingId.getMostSignificantBits() ^ readingIdPrefix;
+        final PendingRecord pending = pendingBySequence.get(sequence);
+        if (pending == null) {
+            return;
+        }
+
+        if (--pending.remaining == 0) {
+            pendingBySequence.remove(sequence);
+            // a request id sent again after it left the window may have replaced this one
+            pendingById.remove(pending.request.requestId, pending);
+            pending.respond();
+        }
+    }
+}
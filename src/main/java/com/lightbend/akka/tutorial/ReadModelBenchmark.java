@@ -0,0 +1,104 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares how many group queries per second plain threads get out of the {@link TemperatureReadModel} against
+ * asking the {@link DeviceManagerActor} for {@link DeviceGroupActor.RequestAllTemperatures}, each thread querying
+ * random groups back to back.
+ * <p>
+ * Arguments: groups, devices per group, reader threads, seconds per mode.
+ */
+public class ReadModelBenchmark {
+
+    private static final Duration timeout = Duration.ofSeconds(30);
+
+    public static void main(String[] args) throws Exception {
+
+        BenchmarkSupport.quietLogging();
+
+        final int groups = BenchmarkSupport.intArg(args, 0, 100);
+        final int devicesPerGroup = BenchmarkSupport.intArg(args, 1, 100);
+        final int threads = BenchmarkSupport.intArg(args, 2, 4);
+        final int seconds = BenchmarkSupport.intArg(args, 3, 5);
+
+        final ActorSystem<DeviceManagerActor.Command> system =
+                ActorSystem.create(DeviceManagerActor.create(Duration.ofSeconds(3)), "read-model-benchmark",
+                        ConfigFactory.parseString("iot.read-model.enabled = on").withFallback(ConfigFactory.load()));
+        try {
+            final List<CompletableFuture<DeviceActor.RecordTemperatureCompleted>> recorded = new ArrayList<>();
+            for (int group = 0; group < groups; group++) {
+                for (int device = 0; device < devicesPerGroup; device++) {
+                    final String groupId = "group-" + group;
+                    final String deviceId = "device-" + device;
+                    final double value = 20 + device % 10;
+                    recorded.add(AskPattern.<DeviceManagerActor.Command, DeviceManagerActor.DeviceRegistered>ask(system,
+                            replyTo -> new DeviceManagerActor.RegisterDevice(groupId, deviceId, replyTo),
+                            timeout, system.scheduler())
+                            .thenCompose(registered -> AskPattern.<DeviceActor.Command, DeviceActor.RecordTemperatureCompleted>ask(
+                                    registered.device,
+                                    replyTo -> new DeviceActor.RecordTemperature(UUID.randomUUID(), value, replyTo),
+                                    timeout, system.scheduler()))
+                            .toCompletableFuture());
+                }
+            }
+            for (final CompletableFuture<DeviceActor.RecordTemperatureCompleted> completed : recorded) {
+                completed.get();
+            }
+
+            final TemperatureReadModel readModel = TemperatureReadModel.get(system);
+            report("read-model", groups, devicesPerGroup, threads, seconds, groupId -> readModel.readings(groupId).size());
+            report("ask", groups, devicesPerGroup, threads, seconds, groupId ->
+                    AskPattern.<DeviceManagerActor.Command, DeviceGroupActor.RespondAllTemperatures>ask(system,
+                            replyTo -> new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), groupId, replyTo),
+                            timeout, system.scheduler())
+                            .toCompletableFuture().join().responseByDeviceId.size());
+        } finally {
+            system.terminate();
+        }
+    }
+
+    interface GroupQuery {
+        int devices(String groupId);
+    }
+
+    private static void report(final String mode, final int groups, final int devicesPerGroup, final int threadCount,
+                               final int seconds, final GroupQuery query) throws InterruptedException {
+
+        final LongAdder queries = new LongAdder();
+        final LongAdder incomplete = new LongAdder();
+        final long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            final Thread thread = new Thread(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    if (query.devices("group-" + random.nextInt(groups)) != devicesPerGroup) {
+                        incomplete.increment();
+                    }
+                    queries.increment();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        final double perSecond = queries.sum() / (double) seconds;
+        System.out.printf("mode=%s threads=%d groups=%d devices/group=%d queries/s=%.0f mean latency=%.3fms incomplete=%d%n",
+                mode, threadCount, groups, devicesPerGroup, perSecond, threadCount * 1000 / perSecond, incomplete.sum());
+    }
+}
@@ -0,0 +1,114 @@
+package com.lightbend.akka.tutorial;
+
+import com.lightbend.akka.tutorial.model.DeviceNotAvailable;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Latest reading of every device of a group together with the group version it was recorded at, so
+ * {@link DeviceGroupActor.RequestTemperaturesSince} is answered with only the readings changed after a version.
+ * Stopped devices stay around as {@link DeviceNotAvailable} so deltas can report them, up to
+ * {@link #MAX_RETAINED_STOPPED_DEVICES}. Owned by its {@link DeviceGroupActor}.
+ */
+final class ReadingVersions {
+
+    private static final int MAX_RETAINED_STOPPED_DEVICES = 1024;
+
+    private static final class VersionedReading {
+        final TemperatureReading reading;
+        final long version;
+
+        VersionedReading(final TemperatureReading reading, final long version) {
+            this.reading = reading;
+            this.version = version;
+        }
+    }
+
+    private final Map<String, VersionedReading> readingByDeviceId = new HashMap<>();
+    private final TreeMap<Long, String> deviceIdByVersion = new TreeMap<>();
+    // versions start from the clock so they keep increasing when the group is recreated or moves to another node
+    private long version = System.currentTimeMillis() << 20;
+    private long oldestDeltaVersion = version;
+    private int retainedStoppedDevices;
+
+    /**
+     * The latest reading of the device, null when it is not known (any more).
+     */
+    TemperatureReading reading(final String deviceId) {
+        final VersionedReading versioned = readingByDeviceId.get(deviceId);
+        return versioned == null ? null : versioned.reading;
+    }
+
+    void forEachReading(final BiConsumer<String, TemperatureReading> consumer) {
+        readingByDeviceId.forEach((deviceId, versioned) -> consumer.accept(deviceId, versioned.reading));
+    }
+
+    /**
+     * Records the reading under a new version of the group.
+     *
+     * @return the previous reading of the device, null when there was none
+     */
+    TemperatureReading record(final String deviceId, final TemperatureReading reading) {
+        final VersionedReading previous = readingByDeviceId.put(deviceId, new VersionedReading(reading, ++version));
+        if (previous != null) {
+            deviceIdByVersion.remove(previous.version);
+            if (previous.reading == DeviceNotAvailable.INSTANCE) {
+                retainedStoppedDevices--;
+            }
+        }
+        deviceIdByVersion.put(version, deviceId);
+
+        if (reading == DeviceNotAvailable.INSTANCE && ++retainedStoppedDevices > MAX_RETAINED_STOPPED_DEVICES) {
+            forgetOldestStoppedDevice();
+        }
+        return previous == null ? null : previous.reading;
+    }
+
+    private void forgetOldestStoppedDevice() {
+        final Iterator<Map.Entry<Long, String>> entries = deviceIdByVersion.entrySet().iterator();
+        while (entries.hasNext()) {
+            final Map.Entry<Long, String> entry = entries.next();
+            if (readingByDeviceId.get(entry.getValue()).reading == DeviceNotAvailable.INSTANCE) {
+                entries.remove();
+                readingByDeviceId.remove(entry.getValue());
+                retainedStoppedDevices--;
+                // clients behind this version could miss that the device stopped, they get a full snapshot instead
+                oldestDeltaVersion = entry.getKey();
+                return;
+            }
+        }
+    }
+
+    /**
+     * The answer to a {@link DeviceGroupActor.RequestTemperaturesSince} for {@code since}: not modified, the readings
+     * changed after it, or all readings when it is unknown or too old.
+     */
+    DeviceGroupActor.TemperaturesSinceResponse since(final UUID requestId, final long since) {
+
+        if (since == version) {
+            return new DeviceGroupActor.TemperaturesNotModified(requestId, version);
+        }
+
+        if (since < oldestDeltaVersion || since > version) {
+            final Map<String, TemperatureReading> snapshot = new HashMap<>();
+            readingByDeviceId.forEach((deviceId, versioned) -> {
+                if (versioned.reading != DeviceNotAvailable.INSTANCE) {
+                    snapshot.put(deviceId, versioned.reading);
+                }
+            });
+            return new DeviceGroupActor.RespondTemperaturesSince(requestId, version, true, snapshot);
+        }
+
+        final Map<String, TemperatureReading> changes = new HashMap<>();
+        for (final String deviceId : deviceIdByVersion.tailMap(since, false).values()) {
+            changes.put(deviceId, readingByDeviceId.get(deviceId).reading);
+        }
+        return new DeviceGroupActor.RespondTemperaturesSince(requestId, version, false, changes);
+    }
+}
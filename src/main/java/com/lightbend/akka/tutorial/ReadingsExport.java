@@ -0,0 +1,58 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import com.typesafe.config.Config;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * One {@link ReadingsExporter} per actor system, shared by all device groups, configured by
+ * {@code iot.readings-export}. The export file is closed when the system terminates.
+ */
+public final class ReadingsExport implements Extension {
+
+    public static final ExtensionId<ReadingsExport> ID = new ExtensionId<ReadingsExport>() {
+        @Override
+        public ReadingsExport createExtension(final ActorSystem<?> system) {
+            return new ReadingsExport(system);
+        }
+    };
+
+    public static ReadingsExport get(final ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    private final Optional<ReadingsExporter> exporter;
+
+    private ReadingsExport(final ActorSystem<?> system) {
+        final Config config = system.settings().config().getConfig("iot.readings-export");
+        if (!config.getBoolean("enabled")) {
+            this.exporter = Optional.empty();
+            return;
+        }
+
+        try {
+            final ReadingsExporter opened =
+                    ReadingsExporter.open(Paths.get(config.getString("path")), config.getInt("slots"));
+            this.exporter = Optional.of(opened);
+            system.getWhenTerminated().thenRun(() -> {
+                try {
+                    opened.close();
+                } catch (IOException e) {
+                    system.log().warn("Failed to close readings export: {}", e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Optional<ReadingsExporter> exporter() {
+        return exporter;
+    }
+}
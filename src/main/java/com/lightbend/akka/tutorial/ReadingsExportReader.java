@@ -0,0 +1,139 @@
+package com.lightbend.akka.tutorial;
+
+import com.lightbend.akka.tutorial.model.DeviceNotAvailable;
+import com.lightbend.akka.tutorial.model.DeviceTimedOut;
+import com.lightbend.akka.tutorial.model.Temperature;
+import com.lightbend.akka.tutorial.model.TemperatureNotAvailable;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.lightbend.akka.tutorial.ReadingsExporter.*;
+
+/**
+ * Reads the table written by {@link ReadingsExporter}, possibly from another process. Reads never block the writer,
+ * they retry while a slot is being written. A slot still being written after {@code MAX_READ_ATTEMPTS} tries, such as
+ * one left behind by a writer process that died halfway, reads as {@link TemperatureNotAvailable}.
+ * <p>
+ * Not thread safe, every reading thread opens its own reader.
+ */
+public final class ReadingsExportReader implements AutoCloseable {
+
+    // a write is a handful of stores, a slot busy for this many tries is not going to be finished
+    private static final int MAX_READ_ATTEMPTS = 1000;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Integer> slotByKey = new HashMap<>();
+    private int indexedSlots;
+
+    public static ReadingsExportReader open(final Path path) throws IOException {
+        return new ReadingsExportReader(path);
+    }
+
+    private ReadingsExportReader(final Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION || buffer.getInt(SLOT_SIZE_OFFSET) != SLOT_SIZE) {
+            channel.close();
+            throw new IOException("Not a readings export file: " + path);
+        }
+    }
+
+    public Optional<TemperatureReading> read(final String groupId, final String deviceId) {
+        final String key = groupId + '/' + deviceId;
+        Integer slot = slotByKey.get(key);
+        if (slot == null) {
+            indexNewSlots();
+            slot = slotByKey.get(key);
+        }
+        return slot == null ? Optional.empty() : Optional.ofNullable(readSlot(slot));
+    }
+
+    /**
+     * Latest reading of every exported device, keyed by {@code groupId/deviceId}.
+     */
+    public Map<String, TemperatureReading> readAll() {
+        indexNewSlots();
+        final Map<String, TemperatureReading> readings = new HashMap<>();
+        slotByKey.forEach((key, slot) -> {
+            final TemperatureReading reading = readSlot(slot);
+            if (reading != null) {
+                readings.put(key, reading);
+            }
+        });
+        return readings;
+    }
+
+    private void indexNewSlots() {
+        final int allocated = buffer.getInt(ALLOCATED_OFFSET);
+        ExportFences.loadFence();
+        for (; indexedSlots < allocated; indexedSlots++) {
+            final int base = HEADER_SIZE + indexedSlots * SLOT_SIZE;
+            final int keyLength = buffer.get(base + KEY_LENGTH_OFFSET);
+            if (keyLength == 0) {
+                // not written yet, indexed again from here next time
+                break;
+            }
+            final byte[] key = new byte[keyLength];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = buffer.get(base + KEY_OFFSET + i);
+            }
+            slotByKey.put(new String(key, StandardCharsets.UTF_8), indexedSlots);
+        }
+    }
+
+    /**
+     * Returns null while the slot has never been written.
+     */
+    private TemperatureReading readSlot(final int slot) {
+        final int base = HEADER_SIZE + slot * SLOT_SIZE;
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            final long before = buffer.getLong(base + SEQUENCE_OFFSET);
+            if (before == 0) {
+                return null;
+            }
+            if ((before & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+
+            ExportFences.loadFence();
+            final double value = buffer.getDouble(base + VALUE_OFFSET);
+            final byte tag = buffer.get(base + TAG_OFFSET);
+            ExportFences.loadFence();
+
+            if (buffer.getLong(base + SEQUENCE_OFFSET) == before) {
+                return toReading(tag, value);
+            }
+        }
+        return TemperatureNotAvailable.INSTANCE;
+    }
+
+    private static TemperatureReading toReading(final byte tag, final double value) {
+        switch (tag) {
+            case TEMPERATURE_TAG:
+                return new Temperature(value);
+            case DEVICE_NOT_AVAILABLE_TAG:
+                return DeviceNotAvailable.INSTANCE;
+            case DEVICE_TIMED_OUT_TAG:
+                return DeviceTimedOut.INSTANCE;
+            default:
+                return TemperatureNotAvailable.INSTANCE;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,162 @@
+package com.lightbend.akka.tutorial;
+
+import com.lightbend.akka.tutorial.model.DeviceNotAvailable;
+import com.lightbend.akka.tutorial.model.DeviceTimedOut;
+import com.lightbend.akka.tutorial.model.Temperature;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes the latest reading of every device into a memory mapped file of fixed size slots, one per
+ * {@code groupId/deviceId}, so that other processes (see {@link ReadingsExportReader}) can read current temperatures
+ * without sending a single message to the actor system.
+ * <p>
+ * Layout, all values big endian:
+ * <pre>
+ * header (64 bytes): int magic, int format version, int slot size, int slot count, int allocated slots
+ * slot (128 bytes):  long sequence, long epoch millis, double value, byte reading tag, byte key length, key bytes
+ * </pre>
+ * Each slot is a seqlock: the sequence is odd while the slot is being written, readers retry when it is odd or
+ * changed while they read. A slot is only ever written by the group actor owning the device, so there is a single
+ * writer per slot. Groups allocate slots concurrently, the allocated count in the header only grows over slots whose
+ * key is written, so readers can index every slot below it. A reader still finding a key length of 0 there skips
+ * the slot until later.
+ */
+public final class ReadingsExporter implements AutoCloseable {
+
+    static final int MAGIC = 0x494F5458;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int SLOT_SIZE = 128;
+
+    static final int SLOT_SIZE_OFFSET = 8;
+    static final int SLOT_COUNT_OFFSET = 12;
+    static final int ALLOCATED_OFFSET = 16;
+
+    static final int SEQUENCE_OFFSET = 0;
+    static final int TIMESTAMP_OFFSET = 8;
+    static final int VALUE_OFFSET = 16;
+    static final int TAG_OFFSET = 24;
+    static final int KEY_LENGTH_OFFSET = 25;
+    static final int KEY_OFFSET = 26;
+    static final int MAX_KEY_LENGTH = SLOT_SIZE - KEY_OFFSET;
+
+    static final byte TEMPERATURE_TAG = 0;
+    static final byte TEMPERATURE_NOT_AVAILABLE_TAG = 1;
+    static final byte DEVICE_NOT_AVAILABLE_TAG = 2;
+    static final byte DEVICE_TIMED_OUT_TAG = 3;
+
+    private static final int NO_SLOT = -1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+
+    private final ConcurrentHashMap<String, Integer> slotByKey = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final LongAdder skippedReadings = new LongAdder();
+    // guarded by this, slots with their key written but not yet covered by the published count
+    private final BitSet writtenSlots = new BitSet();
+    private int publishedSlots;
+
+    public static ReadingsExporter open(final Path path, final int slotCount) throws IOException {
+        return new ReadingsExporter(path, slotCount);
+    }
+
+    private ReadingsExporter(final Path path, final int slotCount) throws IOException {
+        this.slotCount = slotCount;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slotCount * SLOT_SIZE);
+
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(SLOT_SIZE_OFFSET, SLOT_SIZE);
+        buffer.putInt(SLOT_COUNT_OFFSET, slotCount);
+        buffer.putInt(ALLOCATED_OFFSET, 0);
+    }
+
+    /**
+     * Readings that could not be exported because the table was full or the key did not fit into a slot.
+     */
+    public long skippedReadings() {
+        return skippedReadings.sum();
+    }
+
+    public void export(final String groupId, final String deviceId, final TemperatureReading reading) {
+        final int slot = slotByKey.computeIfAbsent(groupId + '/' + deviceId, this::allocate);
+        if (slot == NO_SLOT) {
+            skippedReadings.increment();
+            return;
+        }
+
+        final int base = HEADER_SIZE + slot * SLOT_SIZE;
+        final long sequence = buffer.getLong(base + SEQUENCE_OFFSET);
+
+        buffer.putLong(base + SEQUENCE_OFFSET, sequence + 1);
+        ExportFences.storeFence();
+        buffer.putLong(base + TIMESTAMP_OFFSET, System.currentTimeMillis());
+        buffer.putDouble(base + VALUE_OFFSET, reading instanceof Temperature ? ((Temperature) reading).value : Double.NaN);
+        buffer.put(base + TAG_OFFSET, tagOf(reading));
+        ExportFences.storeFence();
+        buffer.putLong(base + SEQUENCE_OFFSET, sequence + 2);
+    }
+
+    private Integer allocate(final String key) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > MAX_KEY_LENGTH) {
+            return NO_SLOT;
+        }
+
+        final int slot = nextSlot.getAndIncrement();
+        if (slot >= slotCount) {
+            return NO_SLOT;
+        }
+
+        final int base = HEADER_SIZE + slot * SLOT_SIZE;
+        buffer.put(base + KEY_LENGTH_OFFSET, (byte) keyBytes.length);
+        for (int i = 0; i < keyBytes.length; i++) {
+            buffer.put(base + KEY_OFFSET + i, keyBytes[i]);
+        }
+        ExportFences.storeFence();
+
+        // slots are allocated rarely, under a lock the count only moves over slots whose key is written, a slot
+        // allocated later but written first waits for the ones before it
+        synchronized (this) {
+            writtenSlots.set(slot);
+            if (slot == publishedSlots) {
+                publishedSlots = writtenSlots.nextClearBit(slot);
+                writtenSlots.clear(slot, publishedSlots);
+                buffer.putInt(ALLOCATED_OFFSET, publishedSlots);
+            }
+        }
+        return slot;
+    }
+
+    private static byte tagOf(final TemperatureReading reading) {
+        if (reading instanceof Temperature) {
+            return TEMPERATURE_TAG;
+        } else if (reading == DeviceNotAvailable.INSTANCE) {
+            return DEVICE_NOT_AVAILABLE_TAG;
+        } else if (reading == DeviceTimedOut.INSTANCE) {
+            return DEVICE_TIMED_OUT_TAG;
+        }
+        return TEMPERATURE_NOT_AVAILABLE_TAG;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
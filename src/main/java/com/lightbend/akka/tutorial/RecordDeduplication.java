@@ -0,0 +1,68 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import com.lightbend.akka.tutorial.util.DedupWindow;
+import com.typesafe.config.Config;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Windows of recent request ids that let devices and groups recognize a retried {@link DeviceActor.RecordTemperature}
+ * or {@link DeviceGroupActor.RecordTemperatures}: a retry is acknowledged again without recording its readings twice.
+ * Sized by {@code iot.dedup}, with counts of the retries dropped across the actor system.
+ */
+public final class RecordDeduplication implements Extension {
+
+    public static final ExtensionId<RecordDeduplication> ID = new ExtensionId<RecordDeduplication>() {
+        @Override
+        public RecordDeduplication createExtension(final ActorSystem<?> system) {
+            return new RecordDeduplication(system.settings().config().getConfig("iot.dedup"));
+        }
+    };
+
+    public static RecordDeduplication get(final ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    private final int deviceWindow;
+    private final int groupWindow;
+    private final LongAdder deviceDuplicates = new LongAdder();
+    private final LongAdder groupDuplicates = new LongAdder();
+
+    private RecordDeduplication(final Config config) {
+        this.deviceWindow = config.getInt("device-window");
+        this.groupWindow = config.getInt("group-window");
+    }
+
+    DedupWindow newDeviceWindow() {
+        return new DedupWindow(deviceWindow);
+    }
+
+    DedupWindow newGroupWindow() {
+        return new DedupWindow(groupWindow);
+    }
+
+    void deviceDuplicate() {
+        deviceDuplicates.increment();
+    }
+
+    void groupDuplicate() {
+        groupDuplicates.increment();
+    }
+
+    /**
+     * Retried readings sent straight to a device that it acknowledged without recording them again.
+     */
+    public long deviceDuplicates() {
+        return deviceDuplicates.sum();
+    }
+
+    /**
+     * Retried batches a group acknowledged, or waited for the original of, without recording them again.
+     */
+    public long groupDuplicates() {
+        return groupDuplicates.sum();
+    }
+}
@@ -0,0 +1,148 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A gateway retrying every batch of readings right after sending it, like one whose asks all time out, against a
+ * device group with and without the dedup windows of {@link RecordDeduplication}. Reports the time until every batch
+ * was acknowledged and the retries the group dropped.
+ * <p>
+ * Arguments: devices, batches, readings per batch, retries per batch, batches in flight.
+ */
+public class RetryStormBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        BenchmarkSupport.quietLogging();
+
+        final int devices = BenchmarkSupport.intArg(args, 0, 10_000);
+        final int batches = BenchmarkSupport.intArg(args, 1, 5_000);
+        final int batchSize = BenchmarkSupport.intArg(args, 2, 100);
+        final int retries = BenchmarkSupport.intArg(args, 3, 3);
+        final int window = BenchmarkSupport.intArg(args, 4, 16);
+
+        for (int round = 0; round < 3; round++) {
+            final boolean warmUp = round < 2;
+            for (final boolean dedup : new boolean[]{false, true}) {
+                final ActorSystem<DeviceGroupActor.Command> system = ActorSystem.create(
+                        DeviceGroupActor.create("group", Duration.ofSeconds(3)), "retry-storm-benchmark",
+                        ConfigFactory.parseString(dedup ? "" : "iot.dedup { device-window = 0, group-window = 0 }")
+                                .withFallback(ConfigFactory.load()));
+                try {
+                    final CompletableFuture<Long> done = new CompletableFuture<>();
+                    system.systemActorOf(RetryingGateway.create(system, devices, batches, batchSize, retries, window, done),
+                            "retrying-gateway", Props.empty());
+                    final long nanos = done.get(5, TimeUnit.MINUTES);
+                    if (!warmUp) {
+                        System.out.printf("dedup %-3s  %,d batches of %d readings, %d retries each  %.0f ms  "
+                                        + "%,d retried batches dropped%n",
+                                dedup ? "on" : "off", batches, batchSize, retries, nanos / 1e6,
+                                RecordDeduplication.get(system).groupDuplicates());
+                    }
+                } finally {
+                    system.terminate();
+                    system.getWhenTerminated().toCompletableFuture().get();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends every batch {@code 1 + retries} times with up to {@code window} batches in flight and completes with the
+     * elapsed nanos once each batch was acknowledged.
+     */
+    static final class RetryingGateway extends AbstractBehavior<DeviceGroupActor.TemperaturesRecorded> {
+
+        static Behavior<DeviceGroupActor.TemperaturesRecorded> create(final ActorRef<DeviceGroupActor.Command> group,
+                                                                      final int devices, final int batches,
+                                                                      final int batchSize, final int retries,
+                                                                      final int window,
+                                                                      final CompletableFuture<Long> done) {
+            return Behaviors.setup(context ->
+                    new RetryingGateway(context, group, devices, batches, batchSize, retries, window, done));
+        }
+
+        private final ActorRef<DeviceGroupActor.Command> group;
+        private final int devices;
+        private final int batches;
+        private final int batchSize;
+        private final int retries;
+        private final CompletableFuture<Long> done;
+        private final Set<UUID> acknowledged = new HashSet<>();
+        private final long startNanos;
+
+        private int sent;
+
+        private RetryingGateway(final ActorContext<DeviceGroupActor.TemperaturesRecorded> context,
+                                final ActorRef<DeviceGroupActor.Command> group, final int devices, final int batches,
+                                final int batchSize, final int retries, final int window,
+                                final CompletableFuture<Long> done) {
+            super(context);
+            this.group = group;
+            this.devices = devices;
+            this.batches = batches;
+            this.batchSize = batchSize;
+            this.retries = retries;
+            this.done = done;
+            this.startNanos = System.nanoTime();
+
+            for (int i = 0; i < Math.min(window, batches); i++) {
+                sendNext();
+            }
+        }
+
+        @Override
+        public Receive<DeviceGroupActor.TemperaturesRecorded> createReceive() {
+            return newReceiveBuilder()
+                    .onMessage(DeviceGroupActor.TemperaturesRecorded.class, this::onRecorded)
+                    .build();
+        }
+
+        private Behavior<DeviceGroupActor.TemperaturesRecorded> onRecorded(final DeviceGroupActor.TemperaturesRecorded message) {
+            // without dedup every retry is acknowledged as well
+            if (!acknowledged.add(message.requestId)) {
+                return Behaviors.same();
+            }
+            if (acknowledged.size() == batches) {
+                done.complete(System.nanoTime() - startNanos);
+                return Behaviors.stopped();
+            }
+            if (sent < batches) {
+                sendNext();
+            }
+            return Behaviors.same();
+        }
+
+        private void sendNext() {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final String[] deviceIds = new String[batchSize];
+            final double[] values = new double[batchSize];
+            for (int i = 0; i < batchSize; i++) {
+                deviceIds[i] = "device-" + random.nextInt(devices);
+                values[i] = random.nextDouble(-20, 40);
+            }
+            final DeviceGroupActor.RecordTemperatures batch = new DeviceGroupActor.RecordTemperatures(
+                    UUID.randomUUID(), "group", deviceIds, values, getContext().getSelf());
+            for (int attempt = 0; attempt <= retries; attempt++) {
+                group.tell(batch);
+            }
+            sent++;
+        }
+    }
+}
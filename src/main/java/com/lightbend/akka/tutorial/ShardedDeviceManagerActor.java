@@ -0,0 +1,321 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.Signal;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.actor.typed.receptionist.Receptionist;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.Entity;
+import akka.cluster.sharding.typed.javadsl.EntityTypeKey;
+import com.lightbend.akka.tutorial.model.DeviceTemperature;
+import com.lightbend.akka.tutorial.model.TemperatureAggregate;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+import com.lightbend.akka.tutorial.util.Deadlines;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Cluster counterpart of {@link DeviceManagerActor}: it speaks the same protocol, but instead of spawning every
+ * {@link DeviceGroupActor} as a local child, groups are sharded entities keyed by group id and distributed over the
+ * cluster nodes. Every node can run one of these managers, as it holds no state of its own.
+ * <p>
+ * Requests about a group go to its entity. Requests about all groups, the top temperatures and fleet queries, go to
+ * the {@link NodeDeviceGroupsActor} of every node, which answers for the groups it hosts, and the answers are merged.
+ * Group queries are not cached, so the query cache stats are all zero.
+ * <p>
+ * Device actors live with their group, so a rebalance or a crashed node drops the devices of the moved groups and
+ * they must register again.
+ */
+public class ShardedDeviceManagerActor extends AbstractBehavior<DeviceManagerActor.Command> {
+
+    public static final EntityTypeKey<DeviceGroupActor.Command> DEVICE_GROUP_TYPE_KEY =
+            EntityTypeKey.create(DeviceGroupActor.Command.class, "DeviceGroup");
+
+    private static final class WrappedListing implements DeviceManagerActor.Command {
+        final Receptionist.Listing listing;
+
+        WrappedListing(final Receptionist.Listing listing) {
+            this.listing = listing;
+        }
+    }
+
+    private static final class WrappedRespondTopTemperatures implements DeviceManagerActor.Command {
+        final DeviceManagerActor.RespondTopTemperatures response;
+
+        WrappedRespondTopTemperatures(final DeviceManagerActor.RespondTopTemperatures response) {
+            this.response = response;
+        }
+    }
+
+    private static final class WrappedRespondFleetTemperatures implements DeviceManagerActor.Command {
+        final DeviceManagerActor.RespondFleetTemperatures response;
+
+        WrappedRespondFleetTemperatures(final DeviceManagerActor.RespondFleetTemperatures response) {
+            this.response = response;
+        }
+    }
+
+    private static final class MergeTimedOut implements DeviceManagerActor.Command {
+        final Merge merge;
+
+        MergeTimedOut(final Merge merge) {
+            this.merge = merge;
+        }
+    }
+
+    /**
+     * Answers of the nodes to one request, every node is asked with its own request id.
+     */
+    private abstract static class Merge {
+        final Set<UUID> waitingRequestIds = new HashSet<>();
+
+        abstract void respond();
+    }
+
+    private static final class TopMerge extends Merge {
+        final DeviceManagerActor.RequestTopTemperatures request;
+        final List<DeviceTemperature> top = new ArrayList<>();
+
+        TopMerge(final DeviceManagerActor.RequestTopTemperatures request) {
+            this.request = request;
+        }
+
+        @Override
+        void respond() {
+            top.sort(DeviceTemperature.HOTTEST_FIRST);
+            request.replyTo.tell(new DeviceManagerActor.RespondTopTemperatures(request.requestId,
+                    new ArrayList<>(top.subList(0, Math.min(request.count, top.size())))));
+        }
+    }
+
+    private static final class FleetMerge extends Merge {
+        final DeviceManagerActor.RequestFleetTemperatures request;
+        final Map<String, Map<String, TemperatureReading>> readingsByGroupId = new HashMap<>();
+        final Map<String, TemperatureAggregate> aggregateByGroupId = new HashMap<>();
+        final Set<String> timedOutGroupIds = new HashSet<>();
+
+        FleetMerge(final DeviceManagerActor.RequestFleetTemperatures request) {
+            this.request = request;
+        }
+
+        @Override
+        void respond() {
+            request.replyTo.tell(new DeviceManagerActor.RespondFleetTemperatures(request.requestId, readingsByGroupId,
+                    aggregateByGroupId, timedOutGroupIds));
+        }
+    }
+
+    /**
+     * @param nodeGroups the {@link NodeDeviceGroupsActor} of this node, told about every group entity started here
+     */
+    public static void initSharding(final ActorSystem<?> system, final Duration queryGroupTemperaturesDuration,
+                                    final ActorRef<DeviceManagerActor.Command> nodeGroups) {
+        ClusterSharding.get(system).init(Entity.of(DEVICE_GROUP_TYPE_KEY, entityContext -> Behaviors.setup(context -> {
+            nodeGroups.tell(new NodeDeviceGroupsActor.GroupStarted(entityContext.getEntityId(), context.getSelf()));
+            return PartitionedDeviceGroupActor.create(entityContext.getEntityId(), queryGroupTemperaturesDuration,
+                    Optional.of(nodeGroups.narrow()));
+        })));
+    }
+
+    public static Behavior<DeviceManagerActor.Command> create() {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new ShardedDeviceManagerActor(context, timers)));
+    }
+
+    private final ClusterSharding sharding;
+    private final TimerScheduler<DeviceManagerActor.Command> timers;
+    private final Duration mergeTimeout;
+    private final ActorRef<DeviceManagerActor.RespondTopTemperatures> topAdapter;
+    private final ActorRef<DeviceManagerActor.RespondFleetTemperatures> fleetAdapter;
+    private Set<ActorRef<DeviceManagerActor.Command>> nodes = Collections.emptySet();
+    private final Map<UUID, Merge> mergeByRequestId = new HashMap<>();
+
+    private ShardedDeviceManagerActor(final ActorContext<DeviceManagerActor.Command> context,
+                                      final TimerScheduler<DeviceManagerActor.Command> timers) {
+        super(context);
+        this.sharding = ClusterSharding.get(context.getSystem());
+        this.timers = timers;
+        this.mergeTimeout = context.getSystem().settings().config().getDuration("iot.query-group-temperatures-timeout");
+        this.topAdapter =
+                context.messageAdapter(DeviceManagerActor.RespondTopTemperatures.class, WrappedRespondTopTemperatures::new);
+        this.fleetAdapter =
+                context.messageAdapter(DeviceManagerActor.RespondFleetTemperatures.class, WrappedRespondFleetTemperatures::new);
+        context.getSystem().receptionist().tell(Receptionist.subscribe(NodeDeviceGroupsActor.SERVICE_KEY,
+                context.messageAdapter(Receptionist.Listing.class, WrappedListing::new)));
+        context.getLog().info("ShardedDeviceManagerActor started!");
+    }
+
+    @Override
+    public Receive<DeviceManagerActor.Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(DeviceManagerActor.RegisterDevice.class, this::onRegisterDevice)
+                .onMessage(DeviceGroupActor.RequestDeviceList.class, this::onRequestDeviceList)
+                .onMessage(DeviceGroupActor.RequestAllTemperatures.class, this::onRequestAllTemperatures)
+                .onMessage(DeviceGroupActor.RecordTemperatures.class, this::onRecordTemperatures)
+                .onMessage(DeviceGroupActor.RequestTemperaturesSince.class, this::onRequestTemperaturesSince)
+                .onMessage(DeviceGroupActor.SubscribeTemperatures.class, this::onSubscribeTemperatures)
+                .onMessage(DeviceGroupActor.UnsubscribeTemperatures.class, this::onUnsubscribeTemperatures)
+                .onMessage(DeviceGroupActor.AddAlertRule.class, this::onAddAlertRule)
+                .onMessage(DeviceGroupActor.RemoveAlertRule.class, this::onRemoveAlertRule)
+                .onMessage(DeviceManagerActor.RequestTopTemperatures.class, this::onRequestTopTemperatures)
+                .onMessage(DeviceManagerActor.RequestFleetTemperatures.class, this::onRequestFleetTemperatures)
+                .onMessage(DeviceManagerActor.RequestQueryCacheStats.class, this::onRequestQueryCacheStats)
+                .onMessage(WrappedListing.class, this::onListing)
+                .onMessage(WrappedRespondTopTemperatures.class, this::onRespondTopTemperatures)
+                .onMessage(WrappedRespondFleetTemperatures.class, this::onRespondFleetTemperatures)
+                .onMessage(MergeTimedOut.class, this::onMergeTimedOut)
+                .onSignal(PostStop.class, this::onPostStop)
+                .build();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRegisterDevice(final DeviceManagerActor.RegisterDevice message) {
+        this.sharding.entityRefFor(DEVICE_GROUP_TYPE_KEY, message.groupId).tell(message);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRequestDeviceList(final DeviceGroupActor.RequestDeviceList message) {
+        this.sharding.entityRefFor(DEVICE_GROUP_TYPE_KEY, message.groupId).tell(message);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRequestAllTemperatures(final DeviceGroupActor.RequestAllTemperatures message) {
+        if (Deadlines.passed(message.deadlineMillis)) {
+            return Behaviors.same();
+        }
+        this.sharding.entityRefFor(DEVICE_GROUP_TYPE_KEY, message.groupId).tell(message);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRecordTemperatures(final DeviceGroupActor.RecordTemperatures message) {
+        this.sharding.entityRefFor(DEVICE_GROUP_TYPE_KEY, message.groupId).tell(message);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRequestTemperaturesSince(final DeviceGroupActor.RequestTemperaturesSince message) {
+        this.sharding.entityRefFor(DEVICE_GROUP_TYPE_KEY, message.groupId).tell(message);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onSubscribeTemperatures(final DeviceGroupActor.SubscribeTemperatures message) {
+        this.sharding.entityRefFor(DEVICE_GROUP_TYPE_KEY, message.groupId).tell(message);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onUnsubscribeTemperatures(final DeviceGroupActor.UnsubscribeTemperatures message) {
+        this.sharding.entityRefFor(DEVICE_GROUP_TYPE_KEY, message.groupId).tell(message);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onAddAlertRule(final DeviceGroupActor.AddAlertRule message) {
+        this.sharding.entityRefFor(DEVICE_GROUP_TYPE_KEY, message.groupId).tell(message);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRemoveAlertRule(final DeviceGroupActor.RemoveAlertRule message) {
+        this.sharding.entityRefFor(DEVICE_GROUP_TYPE_KEY, message.groupId).tell(message);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRequestTopTemperatures(final DeviceManagerActor.RequestTopTemperatures message) {
+        final TopMerge merge = new TopMerge(message);
+        for (final ActorRef<DeviceManagerActor.Command> node : nodes) {
+            node.tell(new DeviceManagerActor.RequestTopTemperatures(subRequest(merge), message.count, topAdapter));
+        }
+        startMerge(merge, mergeTimeout);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRequestFleetTemperatures(final DeviceManagerActor.RequestFleetTemperatures message) {
+        final FleetMerge merge = new FleetMerge(message);
+        // the nodes answer a little before the deadline, so the groups they are still waiting for are listed as
+        // timed out instead of the answer of the whole node being missed
+        final Duration nodeDeadline = message.deadline.multipliedBy(4).dividedBy(5);
+        for (final ActorRef<DeviceManagerActor.Command> node : nodes) {
+            node.tell(new DeviceManagerActor.RequestFleetTemperatures(subRequest(merge), message.groupIds, nodeDeadline,
+                    message.aggregatesOnly, fleetAdapter));
+        }
+        startMerge(merge, message.deadline);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRequestQueryCacheStats(final DeviceManagerActor.RequestQueryCacheStats message) {
+        message.replyTo.tell(new DeviceManagerActor.QueryCacheStats(0, 0, 0, 0, 0, 0));
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onListing(final WrappedListing message) {
+        nodes = message.listing.getServiceInstances(NodeDeviceGroupsActor.SERVICE_KEY);
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRespondTopTemperatures(final WrappedRespondTopTemperatures message) {
+        final TopMerge merge = (TopMerge) mergeByRequestId.remove(message.response.requestId);
+        if (merge != null) {
+            merge.top.addAll(message.response.top);
+            respondWhenCollected(merge, message.response.requestId);
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onRespondFleetTemperatures(final WrappedRespondFleetTemperatures message) {
+        final FleetMerge merge = (FleetMerge) mergeByRequestId.remove(message.response.requestId);
+        if (merge != null) {
+            merge.readingsByGroupId.putAll(message.response.readingsByGroupId);
+            merge.aggregateByGroupId.putAll(message.response.aggregateByGroupId);
+            merge.timedOutGroupIds.addAll(message.response.timedOutGroupIds);
+            respondWhenCollected(merge, message.response.requestId);
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<DeviceManagerActor.Command> onMergeTimedOut(final MergeTimedOut message) {
+        getContext().getLog().warn("{} of {} nodes did not answer in time, responding without them.",
+                message.merge.waitingRequestIds.size(), nodes.size());
+        message.merge.waitingRequestIds.forEach(mergeByRequestId::remove);
+        message.merge.respond();
+        return Behaviors.same();
+    }
+
+    private UUID subRequest(final Merge merge) {
+        final UUID requestId = UUID.randomUUID();
+        merge.waitingRequestIds.add(requestId);
+        mergeByRequestId.put(requestId, merge);
+        return requestId;
+    }
+
+    private void startMerge(final Merge merge, final Duration timeout) {
+        if (merge.waitingRequestIds.isEmpty()) {
+            merge.respond();
+        } else {
+            timers.startSingleTimer(merge, new MergeTimedOut(merge), timeout);
+        }
+    }
+
+    private void respondWhenCollected(final Merge merge, final UUID requestId) {
+        merge.waitingRequestIds.remove(requestId);
+        if (merge.waitingRequestIds.isEmpty()) {
+            timers.cancel(merge);
+            merge.respond();
+        }
+    }
+
+    private Behavior<DeviceManagerActor.Command> onPostStop(final Signal signal) {
+        getContext().getLog().info("ShardedDeviceManager stopped");
+        return Behaviors.same();
+    }
+}
@@ -0,0 +1,266 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.cluster.MemberStatus;
+import akka.cluster.typed.Cluster;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.StreamSupport;
+
+/**
+ * Measures RecordTemperatures ingestion throughput of the sharded device tier with 1, 2 and 3 cluster nodes, each
+ * started in a JVM of its own. Every node drives batches of readings for randomly picked groups into its
+ * {@link ShardedDeviceManagerActor}, so they go through shard routing and, for the groups hosted elsewhere, remoting
+ * and serialization. The nodes share the cores of this machine, so the numbers show the cost of the sharded path
+ * rather than how throughput scales over machines.
+ * <p>
+ * Arguments: groups, devices per group, readings per node, readings per batch, batches in flight per node.
+ */
+public class ShardedIngestionBenchmark {
+
+    private static final Duration timeout = Duration.ofSeconds(30);
+
+    private static final String NODE = "node";
+    private static final String READY = "ready";
+    private static final String DONE = "done ";
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length > 0 && args[0].equals(NODE)) {
+            runNode(args);
+            return;
+        }
+
+        final int groups = BenchmarkSupport.intArg(args, 0, 30);
+        final int devicesPerGroup = BenchmarkSupport.intArg(args, 1, 100);
+        final int readingsPerNode = BenchmarkSupport.intArg(args, 2, 200_000);
+        final int batchSize = BenchmarkSupport.intArg(args, 3, 10);
+        final int window = BenchmarkSupport.intArg(args, 4, 100);
+
+        for (int nodeCount = 1; nodeCount <= 3; nodeCount++) {
+            final double readingsPerSecond = run(nodeCount, groups, devicesPerGroup, readingsPerNode, batchSize, window);
+            System.out.printf("nodes=%d groups=%d devices=%d readings/s=%.0f%n",
+                    nodeCount, groups, groups * devicesPerGroup, readingsPerSecond);
+        }
+    }
+
+    /**
+     * Starts a JVM per node, lets all of them register their share of the devices and then starts ingestion on all of
+     * them at once.
+     */
+    private static double run(final int nodeCount, final int groups, final int devicesPerGroup,
+                              final int readingsPerNode, final int batchSize, final int window) throws Exception {
+
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        final List<Process> nodes = new ArrayList<>();
+        try {
+            for (int i = 0; i < nodeCount; i++) {
+                nodes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        ShardedIngestionBenchmark.class.getName(), NODE, String.valueOf(i), String.valueOf(nodeCount),
+                        String.valueOf(groups), String.valueOf(devicesPerGroup), String.valueOf(readingsPerNode),
+                        String.valueOf(batchSize), String.valueOf(window))
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start());
+            }
+
+            final List<BufferedReader> outputs = new ArrayList<>();
+            for (final Process node : nodes) {
+                final BufferedReader output =
+                        new BufferedReader(new InputStreamReader(node.getInputStream(), StandardCharsets.UTF_8));
+                awaitLine(output, READY);
+                outputs.add(output);
+            }
+            for (final Process node : nodes) {
+                final Writer input = new OutputStreamWriter(node.getOutputStream(), StandardCharsets.UTF_8);
+                input.write("go\n");
+                input.flush();
+            }
+
+            long slowestNanos = 0;
+            for (final BufferedReader output : outputs) {
+                slowestNanos = Math.max(slowestNanos, Long.parseLong(awaitLine(output, DONE).substring(DONE.length())));
+            }
+            return (double) readingsPerNode * nodeCount / (slowestNanos / 1e9);
+        } finally {
+            // closing stdin stops a node
+            for (final Process node : nodes) {
+                node.getOutputStream().close();
+            }
+            for (final Process node : nodes) {
+                node.waitFor();
+            }
+        }
+    }
+
+    private static String awaitLine(final BufferedReader output, final String prefix) throws Exception {
+        String line;
+        while ((line = output.readLine()) != null) {
+            if (line.startsWith(prefix)) {
+                return line;
+            }
+        }
+        throw new IllegalStateException("Benchmark node exited before reporting " + prefix.trim());
+    }
+
+    /**
+     * One node of the cluster: registers the devices of every {@code nodeCount}-th group, reports {@link #READY} and
+     * waits for a line on stdin, then reports the nanos it took to ingest its readings and stops once stdin closes.
+     */
+    private static void runNode(final String[] args) throws Exception {
+
+        BenchmarkSupport.quietLogging();
+
+        final int index = BenchmarkSupport.intArg(args, 1, 0);
+        final int nodeCount = BenchmarkSupport.intArg(args, 2, 1);
+        final int groups = BenchmarkSupport.intArg(args, 3, 30);
+        final int devicesPerGroup = BenchmarkSupport.intArg(args, 4, 100);
+        final int readings = BenchmarkSupport.intArg(args, 5, 200_000);
+        final int batchSize = BenchmarkSupport.intArg(args, 6, 10);
+        final int window = BenchmarkSupport.intArg(args, 7, 100);
+
+        final ActorSystem<DeviceManagerActor.Command> node =
+                ActorSystem.create(IoTClusterMain.rootBehavior(), "iot-system", IoTClusterMain.nodeConfig(2551 + index));
+        try {
+            awaitMembersUp(node, nodeCount);
+
+            final List<CompletableFuture<DeviceManagerActor.DeviceRegistered>> registrations = new ArrayList<>();
+            for (int group = index; group < groups; group += nodeCount) {
+                for (int device = 0; device < devicesPerGroup; device++) {
+                    final String groupId = "group-" + group;
+                    final String deviceId = "device-" + device;
+                    final CompletionStage<DeviceManagerActor.DeviceRegistered> registered = AskPattern.ask(node,
+                            replyTo -> new DeviceManagerActor.RegisterDevice(groupId, deviceId, replyTo),
+                            timeout, node.scheduler());
+                    registrations.add(registered.toCompletableFuture());
+                }
+            }
+            for (final CompletableFuture<DeviceManagerActor.DeviceRegistered> registration : registrations) {
+                registration.get();
+            }
+
+            final BufferedReader input = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            System.out.println(READY);
+            System.out.flush();
+            input.readLine();
+
+            final CompletableFuture<Long> done = new CompletableFuture<>();
+            node.systemActorOf(IngestionDriver.create(node, groups, devicesPerGroup, readings, batchSize, window, done),
+                    "ingestion-driver", Props.empty());
+            System.out.println(DONE + done.get());
+            System.out.flush();
+
+            while (input.readLine() != null) {
+                // waits for the other nodes to finish before leaving the cluster
+            }
+        } finally {
+            node.terminate();
+            node.getWhenTerminated().toCompletableFuture().get();
+        }
+    }
+
+    private static void awaitMembersUp(final ActorSystem<?> node, final int expected) throws InterruptedException {
+        final Cluster cluster = Cluster.get(node);
+        while (StreamSupport.stream(cluster.state().getMembers().spliterator(), false)
+                .filter(member -> member.status().equals(MemberStatus.up())).count() < expected) {
+            Thread.sleep(100);
+        }
+    }
+
+    /**
+     * Keeps up to {@code window} batches in flight through the manager of its node and completes with the elapsed
+     * nanos once every reading has been acknowledged.
+     */
+    static final class IngestionDriver extends AbstractBehavior<DeviceGroupActor.TemperaturesRecorded> {
+
+        static Behavior<DeviceGroupActor.TemperaturesRecorded> create(final ActorRef<DeviceManagerActor.Command> manager,
+                                                                      final int groups, final int devicesPerGroup,
+                                                                      final int readings, final int batchSize,
+                                                                      final int window,
+                                                                      final CompletableFuture<Long> done) {
+            return Behaviors.setup(context ->
+                    new IngestionDriver(context, manager, groups, devicesPerGroup, readings, batchSize, window, done));
+        }
+
+        private final ActorRef<DeviceManagerActor.Command> manager;
+        private final int groups;
+        private final int devicesPerGroup;
+        private final int readings;
+        private final int batchSize;
+        private final CompletableFuture<Long> done;
+        private final long startNanos;
+
+        private int sent;
+        private int completed;
+
+        private IngestionDriver(final ActorContext<DeviceGroupActor.TemperaturesRecorded> context,
+                                final ActorRef<DeviceManagerActor.Command> manager, final int groups,
+                                final int devicesPerGroup, final int readings, final int batchSize, final int window,
+                                final CompletableFuture<Long> done) {
+            super(context);
+            this.manager = manager;
+            this.groups = groups;
+            this.devicesPerGroup = devicesPerGroup;
+            this.readings = readings;
+            this.batchSize = batchSize;
+            this.done = done;
+            this.startNanos = System.nanoTime();
+
+            for (int i = 0; i < window && sent < readings; i++) {
+                sendNext();
+            }
+        }
+
+        @Override
+        public Receive<DeviceGroupActor.TemperaturesRecorded> createReceive() {
+            return newReceiveBuilder()
+                    .onMessage(DeviceGroupActor.TemperaturesRecorded.class, this::onRecorded)
+                    .build();
+        }
+
+        private Behavior<DeviceGroupActor.TemperaturesRecorded> onRecorded(final DeviceGroupActor.TemperaturesRecorded message) {
+            completed += message.count;
+            if (completed == readings) {
+                done.complete(System.nanoTime() - startNanos);
+                return Behaviors.stopped();
+            }
+            if (sent < readings) {
+                sendNext();
+            }
+            return Behaviors.same();
+        }
+
+        private void sendNext() {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final int size = Math.min(batchSize, readings - sent);
+            final String[] deviceIds = new String[size];
+            final double[] values = new double[size];
+            for (int i = 0; i < size; i++) {
+                deviceIds[i] = "device-" + random.nextInt(devicesPerGroup);
+                values[i] = sent + i;
+            }
+            manager.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), "group-" + random.nextInt(groups),
+                    deviceIds, values, getContext().getSelf()));
+            sent += size;
+        }
+    }
+}
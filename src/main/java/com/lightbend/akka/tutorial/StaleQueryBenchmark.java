@@ -0,0 +1,88 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import com.lightbend.akka.tutorial.util.Deadlines;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Overload of a device group by a burst of RequestAllTemperatures whose senders give up after {@code deadline}, with
+ * the deadline carried by the requests against requests without one. Reports how long a query sent right after the
+ * burst waits for the backlog, and how many burst queries were still answered, all of them too late without
+ * deadlines.
+ * <p>
+ * Arguments: devices, queries in the burst, deadline in milliseconds.
+ */
+public class StaleQueryBenchmark {
+
+    private static final Duration timeout = Duration.ofSeconds(120);
+
+    public static void main(String[] args) throws Exception {
+
+        BenchmarkSupport.quietLogging();
+
+        final int devices = BenchmarkSupport.intArg(args, 0, 10_000);
+        final int queries = BenchmarkSupport.intArg(args, 1, 500);
+        final int deadlineMillis = BenchmarkSupport.intArg(args, 2, 100);
+
+        // the group query times out long after the deadline, so without one the devices answer every read
+        final ActorSystem<DeviceGroupActor.Command> system = ActorSystem.create(
+                DeviceGroupActor.create("group", timeout), "stale-query-benchmark");
+        try {
+            final String[] deviceIds = IntStream.range(0, devices).mapToObj(i -> "device-" + i).toArray(String[]::new);
+            AskPattern.<DeviceGroupActor.Command, DeviceGroupActor.TemperaturesRecorded>ask(system,
+                    replyTo -> new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), "group", deviceIds,
+                            new double[devices], replyTo),
+                    timeout, system.scheduler()).toCompletableFuture().get();
+
+            for (int round = 0; round < 3; round++) {
+                final boolean warmUp = round < 2;
+                for (final boolean withDeadline : new boolean[]{false, true}) {
+                    final AtomicInteger answered = new AtomicInteger();
+                    final ActorRef<DeviceGroupActor.RespondAllTemperatures> sink = system.systemActorOf(
+                            Behaviors.receive(DeviceGroupActor.RespondAllTemperatures.class)
+                                    .onAnyMessage(message -> {
+                                        answered.incrementAndGet();
+                                        return Behaviors.same();
+                                    })
+                                    .build(), "burst-sink-" + round + "-" + withDeadline, Props.empty());
+
+                    final long deadline = withDeadline ? Deadlines.after(Duration.ofMillis(deadlineMillis)) : Deadlines.NONE;
+                    for (int i = 0; i < queries; i++) {
+                        system.tell(new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), "group",
+                                Collections.emptySet(), deadline, sink));
+                    }
+
+                    final long start = System.nanoTime();
+                    AskPattern.<DeviceGroupActor.Command, DeviceGroupActor.RespondAllTemperatures>ask(system,
+                            replyTo -> new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), "group", replyTo),
+                            timeout, system.scheduler()).toCompletableFuture().get();
+                    final long freshNanos = System.nanoTime() - start;
+
+                    // lets the rest of the backlog drain before the next run
+                    int drained;
+                    do {
+                        drained = answered.get();
+                        Thread.sleep(200);
+                    } while (answered.get() != drained);
+
+                    if (!warmUp) {
+                        System.out.printf("deadline %-3s  %,d devices, burst of %d queries  fresh query %.0f ms  "
+                                        + "burst queries answered %d%n",
+                                withDeadline ? "on" : "off", devices, queries, freshNanos / 1e6, answered.get());
+                    }
+                }
+            }
+        } finally {
+            system.terminate();
+        }
+    }
+}
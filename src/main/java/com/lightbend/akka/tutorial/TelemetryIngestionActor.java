@@ -0,0 +1,142 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bridges the {@link TelemetryIngestionServer} into the actor system. It receives readings in batches keyed by the
+ * dense device keys of {@link TelemetryLineParser} and sends the readings of each group in a batch to the
+ * {@link DeviceManagerActor} as one {@link DeviceGroupActor.RecordTemperatures}, like {@link TemperatureIngestionFlow}
+ * does. Groups create the devices they do not know yet, so nothing needs registering first.
+ */
+public class TelemetryIngestionActor extends AbstractBehavior<TelemetryIngestionActor.Command> {
+
+    interface Command {
+    }
+
+    public static final class ReadingBatch implements Command {
+
+        final int[] newDeviceKeys;
+        final String[] newGroupIds;
+        final String[] newDeviceIds;
+        final int[] keys;
+        final double[] values;
+        final int size;
+
+        ReadingBatch(final int[] newDeviceKeys, final String[] newGroupIds, final String[] newDeviceIds,
+                     final int[] keys, final double[] values, final int size) {
+            this.newDeviceKeys = newDeviceKeys;
+            this.newGroupIds = newGroupIds;
+            this.newDeviceIds = newDeviceIds;
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A device the parser gave a key to.
+     */
+    private static final class KeyedDevice {
+
+        final String groupId;
+        final String deviceId;
+
+        KeyedDevice(final String groupId, final String deviceId) {
+            this.groupId = groupId;
+            this.deviceId = deviceId;
+        }
+    }
+
+    /**
+     * The readings of one group in a {@link ReadingBatch}.
+     */
+    private static final class GroupReadings {
+
+        String[] deviceIds = new String[8];
+        double[] values = new double[8];
+        int size;
+
+        void add(final String deviceId, final double value) {
+            if (size == values.length) {
+                deviceIds = Arrays.copyOf(deviceIds, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            deviceIds[size] = deviceId;
+            values[size] = value;
+            size++;
+        }
+    }
+
+    public static Behavior<Command> create(final ActorRef<DeviceManagerActor.Command> deviceManager,
+                                           final LongAdder recordedReadings) {
+        return Behaviors.setup(context -> new TelemetryIngestionActor(context, deviceManager, recordedReadings));
+    }
+
+    private final ActorRef<DeviceManagerActor.Command> deviceManager;
+    private final ActorRef<DeviceGroupActor.TemperaturesRecorded> recordedSink;
+
+    private KeyedDevice[] deviceByKey = new KeyedDevice[1024];
+    // groups drop batches whose id they saw recently, so ids must not repeat across ingestion actors
+    private final long requestIdPrefix = ThreadLocalRandom.current().nextLong();
+    private long requestSequence;
+
+    private TelemetryIngestionActor(final ActorContext<Command> context,
+                                    final ActorRef<DeviceManagerActor.Command> deviceManager,
+                                    final LongAdder recordedReadings) {
+        super(context);
+        this.deviceManager = deviceManager;
+        this.recordedSink = context.spawn(Behaviors.receive(DeviceGroupActor.TemperaturesRecorded.class)
+                .onMessage(DeviceGroupActor.TemperaturesRecorded.class, message -> {
+                    recordedReadings.add(message.count);
+                    return Behaviors.same();
+                })
+                .build(), "records-acknowledged");
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(ReadingBatch.class, this::onReadingBatch)
+                .build();
+    }
+
+    private Behavior<Command> onReadingBatch(final ReadingBatch batch) {
+
+        for (int i = 0; i < batch.newDeviceKeys.length; i++) {
+            final int key = batch.newDeviceKeys[i];
+            if (key >= deviceByKey.length) {
+                deviceByKey = Arrays.copyOf(deviceByKey, Math.max(deviceByKey.length * 2, key + 1));
+            }
+            deviceByKey[key] = new KeyedDevice(batch.newGroupIds[i], batch.newDeviceIds[i]);
+        }
+
+        final Map<String, GroupReadings> readingsByGroupId = new HashMap<>();
+        for (int i = 0; i < batch.size; i++) {
+            final KeyedDevice keyed = deviceByKey[batch.keys[i]];
+            readingsByGroupId.computeIfAbsent(keyed.groupId, groupId -> new GroupReadings())
+                    .add(keyed.deviceId, batch.values[i]);
+        }
+        readingsByGroupId.forEach(this::record);
+
+        return Behaviors.same();
+    }
+
+    private void record(final String groupId, final GroupReadings readings) {
+        // a sequential id is enough to correlate acknowledgements and is much cheaper than a random UUID
+        deviceManager.tell(new DeviceGroupActor.RecordTemperatures(new UUID(requestIdPrefix, requestSequence++), groupId,
+                Arrays.copyOf(readings.deviceIds, readings.size), Arrays.copyOf(readings.values, readings.size),
+                recordedSink));
+    }
+}
@@ -0,0 +1,94 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Behaviors;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local load test of the telemetry endpoint: client threads stream lines over TCP into a
+ * {@link TelemetryIngestionServer} as fast as they can, and the run ends once every reading has been acknowledged
+ * by its {@link DeviceGroupActor}.
+ * <p>
+ * Arguments: client connections, devices per connection, readings per connection.
+ */
+public class TelemetryIngestionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        BenchmarkSupport.quietLogging();
+
+        final int clients = BenchmarkSupport.intArg(args, 0, 4);
+        final int devicesPerClient = BenchmarkSupport.intArg(args, 1, 1_000);
+        final int blocksPerClient = BenchmarkSupport.intArg(args, 2, 2_000_000) / devicesPerClient;
+
+        final LongAdder recordedReadings = new LongAdder();
+        final CompletableFuture<ActorRef<TelemetryIngestionActor.Command>> ingestionRef = new CompletableFuture<>();
+
+        final ActorSystem<Void> system = ActorSystem.create(Behaviors.setup(context -> {
+            final ActorRef<DeviceManagerActor.Command> deviceManager =
+                    context.spawn(DeviceManagerActor.create(Duration.ofSeconds(3)), "device-manager");
+            ingestionRef.complete(context.spawn(TelemetryIngestionActor.create(deviceManager, recordedReadings), "ingestion"));
+            return Behaviors.empty();
+        }), "ingestion-benchmark");
+
+        final InetSocketAddress anyLocalPort = new InetSocketAddress("127.0.0.1", 0);
+        try (TelemetryIngestionServer server =
+                     new TelemetryIngestionServer(anyLocalPort, anyLocalPort, ingestionRef.get(), 1024,
+                             clients * devicesPerClient)) {
+
+            final long start = System.nanoTime();
+
+            final List<Thread> threads = new ArrayList<>();
+            for (int client = 0; client < clients; client++) {
+                final Thread thread = new Thread(clientLoop(server.tcpPort(), "group-" + client, devicesPerClient, blocksPerClient));
+                thread.start();
+                threads.add(thread);
+            }
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+
+            final long total = (long) clients * blocksPerClient * devicesPerClient;
+            while (recordedReadings.sum() < total) {
+                Thread.sleep(10);
+            }
+
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            final int cores = Runtime.getRuntime().availableProcessors();
+            System.out.printf("readings=%d seconds=%.2f readings/s=%.0f cores=%d readings/s/core=%.0f malformed=%d%n",
+                    total, seconds, total / seconds, cores, total / seconds / cores, server.malformedLines());
+        } finally {
+            system.terminate();
+        }
+    }
+
+    private static Runnable clientLoop(final int port, final String groupId, final int devices, final int blocks) {
+        return () -> {
+            // one block holds a reading for every device, sent over and over
+            final StringBuilder block = new StringBuilder();
+            for (int device = 0; device < devices; device++) {
+                block.append(groupId).append(",device-").append(device).append(',').append(20 + device % 10).append(".5\n");
+            }
+            final byte[] bytes = block.toString().getBytes(StandardCharsets.US_ASCII);
+
+            try (Socket socket = new Socket("127.0.0.1", port)) {
+                final OutputStream out = socket.getOutputStream();
+                for (int i = 0; i < blocks; i++) {
+                    out.write(bytes);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        };
+    }
+}
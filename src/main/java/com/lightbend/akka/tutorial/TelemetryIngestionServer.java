@@ -0,0 +1,266 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Non-blocking TCP and UDP endpoint for device telemetry. Devices send text lines {@code groupId,deviceId,value},
+ * over a TCP connection or one or more per datagram. A single selector thread reads into pooled direct buffers,
+ * parses them in place with {@link TelemetryLineParser} and hands readings to the {@link TelemetryIngestionActor} in
+ * batches, at most one batch per select round or every {@code maxBatchSize} readings.
+ */
+public class TelemetryIngestionServer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(TelemetryIngestionServer.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ActorRef<TelemetryIngestionActor.Command> ingestion;
+    private final int maxBatchSize;
+
+    private final Selector selector;
+    private final ServerSocketChannel tcpChannel;
+    private final DatagramChannel udpChannel;
+    private final Thread selectorThread;
+
+    private final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>();
+    private final TelemetryLineParser parser;
+    private final Batch batch;
+
+    private volatile boolean running = true;
+
+    public TelemetryIngestionServer(final InetSocketAddress tcpAddress, final InetSocketAddress udpAddress,
+                                    final ActorRef<TelemetryIngestionActor.Command> ingestion,
+                                    final int maxBatchSize, final int maxDevices) throws IOException {
+        this.ingestion = ingestion;
+        this.maxBatchSize = maxBatchSize;
+        this.parser = new TelemetryLineParser(maxDevices);
+        this.batch = new Batch(maxBatchSize);
+
+        this.selector = Selector.open();
+
+        this.tcpChannel = ServerSocketChannel.open();
+        this.tcpChannel.bind(tcpAddress);
+        this.tcpChannel.configureBlocking(false);
+        this.tcpChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        this.udpChannel = DatagramChannel.open();
+        this.udpChannel.bind(udpAddress);
+        this.udpChannel.configureBlocking(false);
+        this.udpChannel.register(selector, SelectionKey.OP_READ, acquireBuffer());
+
+        this.selectorThread = new Thread(this::run, "telemetry-ingestion-selector");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+    }
+
+    public int tcpPort() {
+        return tcpChannel.socket().getLocalPort();
+    }
+
+    public int udpPort() {
+        return udpChannel.socket().getLocalPort();
+    }
+
+    public long malformedLines() {
+        return parser.malformedLines();
+    }
+
+    public long rejectedLines() {
+        return parser.rejectedLines();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (final SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    /**
+     * Failures of the selector or of a single channel are logged and the loop goes on, so one bad connection or a
+     * transient error (like running out of file descriptors on accept) does not stop ingestion for every device.
+     */
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                log.warn("Selecting telemetry channels failed, selecting again", e);
+                continue;
+            }
+
+            final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                final SelectionKey key = keys.next();
+                keys.remove();
+
+                if (!key.isValid()) {
+                    continue;
+                }
+                try {
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.channel() == udpChannel) {
+                        receiveDatagrams(key);
+                    } else {
+                        readConnection(key);
+                    }
+                } catch (IOException e) {
+                    log.warn("Telemetry channel {} failed: {}", key.channel(), e.toString());
+                }
+            }
+
+            flush();
+        }
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel connection = tcpChannel.accept();
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.configureBlocking(false);
+            connection.register(selector, SelectionKey.OP_READ, acquireBuffer());
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private void readConnection(final SelectionKey key) {
+        final SocketChannel connection = (SocketChannel) key.channel();
+        final ByteBuffer buffer = (ByteBuffer) key.attachment();
+
+        final int read;
+        try {
+            read = connection.read(buffer);
+        } catch (IOException e) {
+            closeConnection(key, buffer);
+            return;
+        }
+
+        buffer.flip();
+        parser.parse(buffer, read < 0, batch);
+        buffer.compact();
+
+        if (read < 0) {
+            closeConnection(key, buffer);
+        } else if (!buffer.hasRemaining()) {
+            // a single line larger than the whole buffer is garbage, drop the connection
+            closeConnection(key, buffer);
+        }
+    }
+
+    private void receiveDatagrams(final SelectionKey key) throws IOException {
+        final ByteBuffer buffer = (ByteBuffer) key.attachment();
+        while (udpChannel.receive(buffer) != null) {
+            buffer.flip();
+            parser.parse(buffer, true, batch);
+            buffer.clear();
+        }
+    }
+
+    private void closeConnection(final SelectionKey key, final ByteBuffer buffer) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            log.warn("Closing telemetry connection {} failed: {}", key.channel(), e.toString());
+        }
+        releaseBuffer(buffer);
+    }
+
+    private ByteBuffer acquireBuffer() {
+        final ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private void releaseBuffer(final ByteBuffer buffer) {
+        buffer.clear();
+        bufferPool.push(buffer);
+    }
+
+    private void flush() {
+        if (batch.size > 0 || batch.newDeviceCount > 0) {
+            ingestion.tell(batch.drain());
+        }
+    }
+
+    private final class Batch implements TelemetryLineParser.Sink {
+
+        private int[] newDeviceKeys = new int[16];
+        private String[] newGroupIds = new String[16];
+        private String[] newDeviceIds = new String[16];
+        private int newDeviceCount;
+
+        private int[] keys;
+        private double[] values;
+        private int size;
+
+        Batch(final int capacity) {
+            this.keys = new int[capacity];
+            this.values = new double[capacity];
+        }
+
+        @Override
+        public void onNewDevice(final int key, final String groupId, final String deviceId) {
+            if (newDeviceCount == newDeviceKeys.length) {
+                newDeviceKeys = Arrays.copyOf(newDeviceKeys, newDeviceCount * 2);
+                newGroupIds = Arrays.copyOf(newGroupIds, newDeviceCount * 2);
+                newDeviceIds = Arrays.copyOf(newDeviceIds, newDeviceCount * 2);
+            }
+            newDeviceKeys[newDeviceCount] = key;
+            newGroupIds[newDeviceCount] = groupId;
+            newDeviceIds[newDeviceCount] = deviceId;
+            newDeviceCount++;
+        }
+
+        @Override
+        public void onReading(final int key, final double value) {
+            keys[size] = key;
+            values[size] = value;
+            size++;
+            if (size == maxBatchSize) {
+                flush();
+            }
+        }
+
+        TelemetryIngestionActor.ReadingBatch drain() {
+            // the arrays are handed over to the actor, so the next batch starts with fresh ones
+            final TelemetryIngestionActor.ReadingBatch drained = new TelemetryIngestionActor.ReadingBatch(
+                    Arrays.copyOf(newDeviceKeys, newDeviceCount),
+                    Arrays.copyOf(newGroupIds, newDeviceCount),
+                    Arrays.copyOf(newDeviceIds, newDeviceCount),
+                    keys, values, size);
+
+            newDeviceCount = 0;
+            keys = new int[maxBatchSize];
+            values = new double[maxBatchSize];
+            size = 0;
+            return drained;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.lightbend.akka.tutorial;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Parses {@code groupId,deviceId,value} lines straight out of a {@link ByteBuffer}. Each distinct
+ * {@code groupId,deviceId} pair is interned to a dense int key the first time it is seen, which is the only point
+ * where Strings get created; after that a reading costs a hash over the key bytes and a number parse. Keys are
+ * never forgotten, so once {@code maxDevices} pairs got one, lines of any other pair are rejected.
+ * <p>
+ * Not thread safe, each ingestion thread owns its parser.
+ */
+final class TelemetryLineParser {
+
+    interface Sink {
+
+        void onNewDevice(int key, String groupId, String deviceId);
+
+        void onReading(int key, double value);
+    }
+
+    // up to 15 digits the mantissa and the power of ten are both exact doubles, so the division rounds correctly
+    private static final int MAX_FAST_DIGITS = 15;
+
+    private static final double[] POWERS_OF_TEN = new double[MAX_FAST_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private byte[][] keyBytes = new byte[64][];
+    private int[] slots = new int[128];
+    private final int maxDevices;
+    private int keyCount;
+    private long malformedLines;
+    private long rejectedLines;
+
+    TelemetryLineParser(final int maxDevices) {
+        if (maxDevices <= 0) {
+            throw new IllegalArgumentException("Non-positive max devices " + maxDevices);
+        }
+        this.maxDevices = maxDevices;
+        Arrays.fill(slots, -1);
+    }
+
+    long malformedLines() {
+        return malformedLines;
+    }
+
+    /**
+     * Lines of devices that did not get a key because {@code maxDevices} others have one.
+     */
+    long rejectedLines() {
+        return rejectedLines;
+    }
+
+    /**
+     * Consumes every complete line between the buffer position and limit. An incomplete trailing line is left in
+     * the buffer unless {@code endOfInput} is set, in which case it is parsed as well (datagrams need no trailing
+     * newline).
+     */
+    void parse(final ByteBuffer buffer, final boolean endOfInput, final Sink sink) {
+        int lineStart = buffer.position();
+        final int limit = buffer.limit();
+
+        for (int i = lineStart; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                parseLine(buffer, lineStart, i, sink);
+                lineStart = i + 1;
+            }
+        }
+
+        if (endOfInput && lineStart < limit) {
+            parseLine(buffer, lineStart, limit, sink);
+            lineStart = limit;
+        }
+
+        buffer.position(lineStart);
+    }
+
+    private void parseLine(final ByteBuffer buffer, final int start, int end, final Sink sink) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        if (end == start) {
+            return;
+        }
+
+        int groupEnd = -1;
+        int keyEnd = -1;
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == ',') {
+                if (groupEnd < 0) {
+                    groupEnd = i;
+                } else {
+                    keyEnd = i;
+                    break;
+                }
+            }
+        }
+
+        if (groupEnd <= start || keyEnd <= groupEnd + 1 || keyEnd == end - 1) {
+            malformedLines++;
+            return;
+        }
+
+        final double value = parseDouble(buffer, keyEnd + 1, end);
+        // NaN for anything that is not a number, infinities are no temperature either
+        if (!Double.isFinite(value)) {
+            malformedLines++;
+            return;
+        }
+
+        final int key = intern(buffer, start, groupEnd, keyEnd, sink);
+        if (key < 0) {
+            rejectedLines++;
+            return;
+        }
+        sink.onReading(key, value);
+    }
+
+    /**
+     * @return the key of the pair, -1 when it is new and no more keys can be given out
+     */
+    private int intern(final ByteBuffer buffer, final int start, final int groupEnd, final int end, final Sink sink) {
+        final int hash = hash(buffer, start, end);
+        int slot = hash & (slots.length - 1);
+
+        while (slots[slot] >= 0) {
+            final int key = slots[slot];
+            if (matches(keyBytes[key], buffer, start, end)) {
+                return key;
+            }
+            slot = (slot + 1) & (slots.length - 1);
+        }
+
+        if (keyCount == maxDevices) {
+            return -1;
+        }
+
+        final byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+
+        final int key = keyCount++;
+        if (key == keyBytes.length) {
+            keyBytes = Arrays.copyOf(keyBytes, key * 2);
+        }
+        keyBytes[key] = bytes;
+        slots[slot] = key;
+
+        if (keyCount * 2 > slots.length) {
+            rehash();
+        }
+
+        final int groupLength = groupEnd - start;
+        sink.onNewDevice(key,
+                new String(bytes, 0, groupLength, StandardCharsets.UTF_8),
+                new String(bytes, groupLength + 1, bytes.length - groupLength - 1, StandardCharsets.UTF_8));
+        return key;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, -1);
+        for (int key = 0; key < keyCount; key++) {
+            final ByteBuffer bytes = ByteBuffer.wrap(keyBytes[key]);
+            int slot = hash(bytes, 0, bytes.limit()) & (slots.length - 1);
+            while (slots[slot] >= 0) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            slots[slot] = key;
+        }
+    }
+
+    private static int hash(final ByteBuffer buffer, final int start, final int end) {
+        int hash = 0x811C9DC5;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ buffer.get(i)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(final byte[] key, final ByteBuffer buffer, final int start, final int end) {
+        if (key.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses plain decimals ({@code -12.5}) without allocating, falling back to {@link Double#parseDouble} for
+     * anything fancier. Returns NaN when the text is not a number.
+     */
+    static double parseDouble(final ByteBuffer buffer, final int start, final int end) {
+        int i = start;
+        boolean negative = false;
+        if (buffer.get(i) == '-' || buffer.get(i) == '+') {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+
+        for (; i < end; i++) {
+            final byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                return parseSlowly(buffer, start, end);
+            }
+        }
+
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (digits > MAX_FAST_DIGITS) {
+            return parseSlowly(buffer, start, end);
+        }
+
+        final double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private static double parseSlowly(final ByteBuffer buffer, final int start, final int end) {
+        final byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        try {
+            return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.lightbend.akka.tutorial;
+
+import akka.NotUsed;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Scheduler;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.stream.javadsl.Flow;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Streaming ingestion stage: readings are partitioned by group, batched within a size/time window and recorded
+ * through {@link DeviceGroupActor.RecordTemperatures}. Each group has a single batch in flight, which is only
+ * acknowledged once every device of the batch has recorded its readings, so a slow group backpressures the source
+ * instead of growing device mailboxes.
+ * <p>
+ * Group substreams live as long as the stream, so {@code maxGroups} must cover every group id the source can emit.
+ */
+public final class TemperatureIngestionFlow {
+
+    public static final class DeviceReading {
+
+        public final String groupId;
+        public final String deviceId;
+        public final double value;
+
+        public DeviceReading(final String groupId, final String deviceId, final double value) {
+            this.groupId = groupId;
+            this.deviceId = deviceId;
+            this.value = value;
+        }
+    }
+
+    public static final class BatchResult {
+
+        public final String groupId;
+        public final int readings;
+        public final boolean acknowledged;
+
+        public BatchResult(final String groupId, final int readings, final boolean acknowledged) {
+            this.groupId = groupId;
+            this.readings = readings;
+            this.acknowledged = acknowledged;
+        }
+    }
+
+    private TemperatureIngestionFlow() {
+    }
+
+    /**
+     * @param deviceManager  where batches are sent, a {@link DeviceManagerActor} or {@link ShardedDeviceManagerActor}
+     * @param maxGroups      upper bound of distinct group ids
+     * @param maxBatchSize   readings per batch
+     * @param maxBatchDelay  how long a group waits to fill a batch
+     * @param askTimeout     after which a batch is emitted as not acknowledged
+     */
+    public static Flow<DeviceReading, BatchResult, NotUsed> create(final ActorRef<DeviceManagerActor.Command> deviceManager,
+                                                                   final Scheduler scheduler,
+                                                                   final int maxGroups,
+                                                                   final int maxBatchSize,
+                                                                   final Duration maxBatchDelay,
+                                                                   final Duration askTimeout) {
+        return Flow.<DeviceReading>create()
+                .groupBy(maxGroups, reading -> reading.groupId)
+                .groupedWithin(maxBatchSize, maxBatchDelay)
+                .mapAsync(1, batch -> record(deviceManager, scheduler, askTimeout, batch))
+                .mergeSubstreams();
+    }
+
+    private static CompletionStage<BatchResult> record(final ActorRef<DeviceManagerActor.Command> deviceManager,
+                                                       final Scheduler scheduler,
+                                                       final Duration askTimeout,
+                                                       final List<DeviceReading> batch) {
+
+        final String groupId = batch.get(0).groupId;
+        final String[] deviceIds = new String[batch.size()];
+        final double[] values = new double[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            deviceIds[i] = batch.get(i).deviceId;
+            values[i] = batch.get(i).value;
+        }
+
+        final CompletionStage<DeviceGroupActor.TemperaturesRecorded> recorded = AskPattern.ask(deviceManager,
+                replyTo -> new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId, deviceIds, values, replyTo),
+                askTimeout, scheduler);
+
+        return recorded
+                .thenApply(response -> new BatchResult(groupId, response.count, true))
+                .exceptionally(failure -> new BatchResult(groupId, batch.size(), false));
+    }
+}
@@ -0,0 +1,94 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import com.lightbend.akka.tutorial.model.DeviceNotAvailable;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+import com.lightbend.akka.tutorial.util.PersistentSortedMap;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Latest readings of every local device group, readable from any thread without sending a message. Each
+ * {@link DeviceGroupActor} publishes an immutable snapshot of its readings into its own slot on every change, so a
+ * read is a map lookup and a volatile read, and the returned map never changes afterwards.
+ * <p>
+ * Snapshots contain the same devices as a {@link DeviceGroupActor.RequestAllTemperatures} query, but a device that
+ * timed out of a query shows its last reading here. Enabled by {@code iot.read-model.enabled}.
+ */
+public final class TemperatureReadModel implements Extension {
+
+    public static final ExtensionId<TemperatureReadModel> ID = new ExtensionId<TemperatureReadModel>() {
+        @Override
+        public TemperatureReadModel createExtension(final ActorSystem<?> system) {
+            return new TemperatureReadModel(system.settings().config().getBoolean("iot.read-model.enabled"));
+        }
+    };
+
+    public static TemperatureReadModel get(final ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    private final boolean enabled;
+    private final ConcurrentHashMap<String, AtomicReference<PersistentSortedMap<String, TemperatureReading>>> snapshotByGroupId =
+            new ConcurrentHashMap<>();
+
+    private TemperatureReadModel(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public Set<String> groupIds() {
+        return Collections.unmodifiableSet(snapshotByGroupId.keySet());
+    }
+
+    /**
+     * Readings by device id, empty for an unknown group.
+     */
+    public Map<String, TemperatureReading> readings(final String groupId) {
+        final AtomicReference<PersistentSortedMap<String, TemperatureReading>> snapshot = snapshotByGroupId.get(groupId);
+        return snapshot == null ? Collections.emptyMap() : snapshot.get();
+    }
+
+    public Optional<TemperatureReading> reading(final String groupId, final String deviceId) {
+        return Optional.ofNullable(readings(groupId).get(deviceId));
+    }
+
+    /**
+     * Called by a group when it starts, the group (or its partitions, once split) is the only writer of the returned
+     * reference.
+     */
+    AtomicReference<PersistentSortedMap<String, TemperatureReading>> register(final String groupId) {
+        final AtomicReference<PersistentSortedMap<String, TemperatureReading>> snapshot =
+                new AtomicReference<>(PersistentSortedMap.empty());
+        snapshotByGroupId.put(groupId, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Writes the latest reading of a device into the snapshot of its group, a device that stopped is removed. The
+     * partitions of a split group all write to the snapshot of the group.
+     */
+    static void publish(final AtomicReference<PersistentSortedMap<String, TemperatureReading>> snapshot,
+                        final String deviceId, final TemperatureReading reading) {
+        snapshot.updateAndGet(readings -> reading == DeviceNotAvailable.INSTANCE
+                ? readings.minus(deviceId)
+                : readings.plus(deviceId, reading));
+    }
+
+    /**
+     * Called by a group when it stops, keeps the slot when a new incarnation of the group already replaced it.
+     */
+    void unregister(final String groupId, final AtomicReference<PersistentSortedMap<String, TemperatureReading>> snapshot) {
+        snapshotByGroupId.remove(groupId, snapshot);
+    }
+}
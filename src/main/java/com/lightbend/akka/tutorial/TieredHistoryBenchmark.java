@@ -0,0 +1,112 @@
+package com.lightbend.akka.tutorial;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Heap and range query cost of weeks of 1Hz readings per device, with every {@link DeviceHistory} keeping its blocks
+ * in memory against one handing its closed blocks to a {@link HistoryStore}. Queries ask for the last hour and for a
+ * random day of a random device.
+ * <p>
+ * Arguments: devices, days of readings per device.
+ */
+public class TieredHistoryBenchmark {
+
+    private static final long START = 1_600_000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+
+        final int devices = BenchmarkSupport.intArg(args, 0, 50);
+        final int days = BenchmarkSupport.intArg(args, 1, 14);
+        // readings start in 2020, nothing may expire during the run
+        final Duration retention = Duration.ofDays(36_500);
+
+        final long baseline = usedHeapAfterGc();
+        report("memory", devices, days, baseline, Optional.empty(), retention);
+
+        final Path directory = Files.createTempDirectory("iot-history");
+        try (HistoryStore store = HistoryStore.open(directory, 64L << 20, Duration.ofMinutes(1), retention)) {
+            report("tiered", devices, days, baseline, Optional.of(store), retention);
+            System.out.printf("%-7s %d segments, %,d bytes on disk%n", "", store.segmentCount(), diskUsage(directory));
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(TieredHistoryBenchmark::deleteQuietly);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static void report(final String name, final int devices, final int days, final long baseline,
+                               final Optional<HistoryStore> store, final Duration retention) throws Exception {
+        final Random random = new Random(42);
+        final DeviceHistory[] histories = new DeviceHistory[devices];
+        for (int device = 0; device < devices; device++) {
+            histories[device] = new DeviceHistory(Duration.ofHours(2), retention, store, "group/device" + device);
+        }
+
+        final int seconds = days * 86_400;
+        final long recordStart = System.nanoTime();
+        final double[] values = new double[devices];
+        // devices report together, like a fleet does, so the store sees blocks of all devices interleaved
+        for (int second = 0; second < seconds; second++) {
+            for (int device = 0; device < devices; device++) {
+                if (random.nextInt(10) == 0) {
+                    values[device] = Math.round(values[device] * 10 + (random.nextBoolean() ? 1 : -1)) / 10.0;
+                }
+                histories[device].record(START + second * 1000L, values[device]);
+            }
+        }
+        final long recordNanos = System.nanoTime() - recordStart;
+        if (store.isPresent()) {
+            store.get().flush();
+        }
+        final long heap = usedHeapAfterGc() - baseline;
+
+        final long end = START + seconds * 1000L;
+        final int queries = 1_000;
+        final long hourStart = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            histories[random.nextInt(devices)].read(end - 3_600_000, end);
+        }
+        final long hourNanos = System.nanoTime() - hourStart;
+        final long dayStart = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            final long from = START + random.nextInt(days) * 86_400_000L;
+            histories[random.nextInt(devices)].read(from, from + 86_400_000L);
+        }
+        final long dayNanos = System.nanoTime() - dayStart;
+
+        System.out.printf("%-7s %,d samples  heap %,d bytes (%.3f bytes/sample)  record %.0f ns/sample  "
+                        + "last hour %.0f us  random day %.0f us%n",
+                name, (long) seconds * devices, heap, (double) heap / seconds / devices,
+                (double) recordNanos / seconds / devices, hourNanos / 1e3 / queries, dayNanos / 1e3 / queries);
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long diskUsage(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    private static void deleteQuietly(final Path file) {
+        try {
+            Files.delete(file);
+        } catch (IOException e) {
+            // a temporary directory
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.lightbend.akka.tutorial;
+
+import com.lightbend.akka.tutorial.model.DeviceTemperature;
+import com.lightbend.akka.tutorial.model.Temperature;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * The devices of a group ranked hottest first, for publishing the top {@code size} of them to
+ * {@link DeviceManagerActor}. Changes below the published top cannot alter it, so only the others need a publish.
+ * Owned by its {@link DeviceGroupActor}.
+ */
+final class TopTemperatures {
+
+    private final String groupId;
+    private final int size;
+    private final TreeSet<DeviceTemperature> ranked = new TreeSet<>(DeviceTemperature.HOTTEST_FIRST);
+    private List<DeviceTemperature> published = Collections.emptyList();
+
+    TopTemperatures(final String groupId, final int size) {
+        this.groupId = groupId;
+        this.size = size;
+    }
+
+    /**
+     * Moves the device from its {@code previous} reading to its new one.
+     *
+     * @return whether the published top may have changed
+     */
+    boolean rank(final String deviceId, final TemperatureReading previous, final TemperatureReading reading) {
+        boolean topChanged = false;
+        if (previous instanceof Temperature) {
+            final DeviceTemperature entry = new DeviceTemperature(groupId, deviceId, ((Temperature) previous).value);
+            ranked.remove(entry);
+            topChanged = withinPublished(entry);
+        }
+        if (reading instanceof Temperature) {
+            final DeviceTemperature entry = new DeviceTemperature(groupId, deviceId, ((Temperature) reading).value);
+            ranked.add(entry);
+            topChanged |= withinPublished(entry);
+        }
+        return topChanged;
+    }
+
+    private boolean withinPublished(final DeviceTemperature entry) {
+        return published.size() < size
+                || DeviceTemperature.HOTTEST_FIRST.compare(entry, published.get(published.size() - 1)) <= 0;
+    }
+
+    /**
+     * @return the current top when it differs from the one published last, which it replaces
+     */
+    Optional<List<DeviceTemperature>> publish() {
+        final List<DeviceTemperature> top = new ArrayList<>(size);
+        for (final DeviceTemperature entry : ranked) {
+            if (top.size() == size) {
+                break;
+            }
+            top.add(entry);
+        }
+
+        if (top.equals(published)) {
+            return Optional.empty();
+        }
+        published = Collections.unmodifiableList(top);
+        return Optional.of(published);
+    }
+}
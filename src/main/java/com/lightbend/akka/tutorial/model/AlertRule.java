@@ -0,0 +1,100 @@
+package com.lightbend.akka.tutorial.model;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Fires for a device while its measure lies within {@code [low, high]}: the temperature for {@link Kind#THRESHOLD}
+ * rules, the change in degrees per minute between two consecutive readings for {@link Kind#RATE_OF_CHANGE} rules. A
+ * rule sustained for a duration fires only once the measure stayed within its bounds that long. Rules with tags only
+ * apply to the devices registered with all of them.
+ */
+public final class AlertRule {
+
+    public enum Kind {
+        THRESHOLD,
+        RATE_OF_CHANGE
+    }
+
+    public final String id;
+    public final Kind kind;
+    public final double low;
+    public final double high;
+    public final Duration sustainedFor;
+    public final Set<String> tags;
+
+    public AlertRule(final String id, final Kind kind, final double low, final double high,
+                     final Duration sustainedFor, final Set<String> tags) {
+        if (!(low <= high)) {
+            throw new IllegalArgumentException("Alert rule " + id + " has empty bounds [" + low + ", " + high + "]");
+        }
+        this.id = id;
+        this.kind = kind;
+        this.low = low;
+        this.high = high;
+        this.sustainedFor = sustainedFor;
+        this.tags = tags;
+    }
+
+    public static AlertRule above(final String id, final double threshold) {
+        return new AlertRule(id, Kind.THRESHOLD, threshold, Double.POSITIVE_INFINITY, Duration.ZERO, Collections.emptySet());
+    }
+
+    public static AlertRule below(final String id, final double threshold) {
+        return new AlertRule(id, Kind.THRESHOLD, Double.NEGATIVE_INFINITY, threshold, Duration.ZERO, Collections.emptySet());
+    }
+
+    public static AlertRule risingFaster(final String id, final double degreesPerMinute) {
+        return new AlertRule(id, Kind.RATE_OF_CHANGE, degreesPerMinute, Double.POSITIVE_INFINITY, Duration.ZERO,
+                Collections.emptySet());
+    }
+
+    public static AlertRule fallingFaster(final String id, final double degreesPerMinute) {
+        return new AlertRule(id, Kind.RATE_OF_CHANGE, Double.NEGATIVE_INFINITY, -degreesPerMinute, Duration.ZERO,
+                Collections.emptySet());
+    }
+
+    public AlertRule sustainedFor(final Duration duration) {
+        return new AlertRule(id, kind, low, high, duration, tags);
+    }
+
+    public AlertRule tagged(final Set<String> tags) {
+        return new AlertRule(id, kind, low, high, sustainedFor, tags);
+    }
+
+    public boolean matches(final double measure) {
+        return measure >= low && measure <= high;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AlertRule that = (AlertRule) o;
+        return Double.compare(that.low, low) == 0 &&
+                Double.compare(that.high, high) == 0 &&
+                id.equals(that.id) &&
+                kind == that.kind &&
+                sustainedFor.equals(that.sustainedFor) &&
+                tags.equals(that.tags);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, kind, low, high, sustainedFor, tags);
+    }
+
+    @Override
+    public String toString() {
+        return "AlertRule{" +
+                "id='" + id + '\'' +
+                ", kind=" + kind +
+                ", low=" + low +
+                ", high=" + high +
+                ", sustainedFor=" + sustainedFor +
+                ", tags=" + tags +
+                '}';
+    }
+}
@@ -0,0 +1,49 @@
+package com.lightbend.akka.tutorial.model;
+
+import java.util.Comparator;
+import java.util.Objects;
+
+public final class DeviceTemperature {
+
+    /**
+     * Highest value first, ties broken by group and device id so distinct devices never compare as equal.
+     */
+    public static final Comparator<DeviceTemperature> HOTTEST_FIRST =
+            Comparator.comparingDouble((DeviceTemperature t) -> t.value).reversed()
+                    .thenComparing(t -> t.groupId)
+                    .thenComparing(t -> t.deviceId);
+
+    public final String groupId;
+    public final String deviceId;
+    public final double value;
+
+    public DeviceTemperature(final String groupId, final String deviceId, final double value) {
+        this.groupId = groupId;
+        this.deviceId = deviceId;
+        this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DeviceTemperature that = (DeviceTemperature) o;
+        return Double.compare(that.value, value) == 0 &&
+                groupId.equals(that.groupId) &&
+                deviceId.equals(that.deviceId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(groupId, deviceId, value);
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceTemperature{" +
+                "groupId='" + groupId + '\'' +
+                ", deviceId='" + deviceId + '\'' +
+                ", value=" + value +
+                '}';
+    }
+}
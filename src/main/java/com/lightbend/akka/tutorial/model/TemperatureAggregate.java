@@ -0,0 +1,74 @@
+package com.lightbend.akka.tutorial.model;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Summary of the readings of a group: how many devices answered, how many of them had a temperature and the
+ * min, max and mean of those temperatures (NaN when none had one).
+ */
+public final class TemperatureAggregate {
+
+    public final int devices;
+    public final int reporting;
+    public final double min;
+    public final double max;
+    public final double mean;
+
+    public TemperatureAggregate(final int devices, final int reporting, final double min, final double max, final double mean) {
+        this.devices = devices;
+        this.reporting = reporting;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+    }
+
+    public static TemperatureAggregate of(final Map<String, TemperatureReading> readingByDeviceId) {
+        int reporting = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double sum = 0;
+
+        for (final TemperatureReading reading : readingByDeviceId.values()) {
+            if (reading instanceof Temperature) {
+                final double value = ((Temperature) reading).value;
+                reporting++;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sum += value;
+            }
+        }
+
+        return reporting == 0
+                ? new TemperatureAggregate(readingByDeviceId.size(), 0, Double.NaN, Double.NaN, Double.NaN)
+                : new TemperatureAggregate(readingByDeviceId.size(), reporting, min, max, sum / reporting);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TemperatureAggregate that = (TemperatureAggregate) o;
+        return devices == that.devices &&
+                reporting == that.reporting &&
+                Double.compare(that.min, min) == 0 &&
+                Double.compare(that.max, max) == 0 &&
+                Double.compare(that.mean, mean) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(devices, reporting, min, max, mean);
+    }
+
+    @Override
+    public String toString() {
+        return "TemperatureAggregate{" +
+                "devices=" + devices +
+                ", reporting=" + reporting +
+                ", min=" + min +
+                ", max=" + max +
+                ", mean=" + mean +
+                '}';
+    }
+}
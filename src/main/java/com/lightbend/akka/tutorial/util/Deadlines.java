@@ -0,0 +1,41 @@
+package com.lightbend.akka.tutorial.util;
+
+import java.time.Duration;
+
+/**
+ * Deadlines of requests as epoch milliseconds, so they stay meaningful when a request moves to another node (as
+ * accurate as the clocks of the nodes agree). {@link #NONE} never passes.
+ */
+public final class Deadlines {
+
+    public static final long NONE = Long.MAX_VALUE;
+
+    private Deadlines() {
+    }
+
+    /**
+     * The deadline {@code timeout} from now, {@link #NONE} when that does not fit.
+     */
+    public static long after(final Duration timeout) {
+        final long now = System.currentTimeMillis();
+        final long millis = timeout.toMillis();
+        return millis >= NONE - now ? NONE : now + millis;
+    }
+
+    /**
+     * Only reads the clock for an actual deadline, so requests without one cost nothing.
+     */
+    public static boolean passed(final long deadlineMillis) {
+        return deadlineMillis != NONE && System.currentTimeMillis() >= deadlineMillis;
+    }
+
+    /**
+     * Time left until the deadline, zero once it passed.
+     */
+    public static Duration remaining(final long deadlineMillis) {
+        if (deadlineMillis == NONE) {
+            return Duration.ofMillis(NONE);
+        }
+        return Duration.ofMillis(Math.max(0, deadlineMillis - System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,150 @@
+package com.lightbend.akka.tutorial.util;
+
+import java.util.UUID;
+
+/**
+ * Remembers the last {@code capacity} request ids added, to recognize a request sent again. Ids are kept as 64 bit
+ * fingerprints in a ring, scanned while the window is small and indexed by an open addressing table of at least
+ * twice as many slots once it is larger. Two different ids share a fingerprint with a probability of about
+ * {@code capacity / 2^64}, such an id would be taken for a repeat.
+ * <p>
+ * A capacity of 0 remembers nothing. Not thread safe, meant to be owned by a single actor.
+ */
+public final class DedupWindow {
+
+    // small windows are scanned, a table of twice the capacity is cheaper for larger ones
+    private static final int SCAN_LIMIT = 32;
+    private static final long EMPTY = 0;
+
+    private final long[] ring;
+    private final long[] table;
+    private final int mask;
+    private int next;
+    private int size;
+
+    public DedupWindow(final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative dedup window capacity " + capacity);
+        }
+        this.ring = new long[capacity];
+        if (capacity > SCAN_LIMIT) {
+            final int tableSize = Integer.highestOneBit(capacity - 1) << 2;
+            this.table = new long[tableSize];
+            this.mask = tableSize - 1;
+        } else {
+            this.table = null;
+            this.mask = 0;
+        }
+    }
+
+    public static long fingerprint(final UUID requestId) {
+        long hash = requestId.getMostSignificantBits() * 0x9E3779B97F4A7C15L ^ requestId.getLeastSignificantBits();
+        hash = (hash ^ (hash >>> 32)) * 0xD6E8FEB86659FD93L;
+        hash ^= hash >>> 32;
+        // 0 marks free slots
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(final UUID requestId) {
+        return ring.length > 0 && contains(fingerprint(requestId));
+    }
+
+    /**
+     * Adds the id unless the window holds it already, evicting the oldest id when full.
+     *
+     * @return false when the id was added before and is still in the window
+     */
+    public boolean add(final UUID requestId) {
+        if (ring.length == 0) {
+            return true;
+        }
+        final long fingerprint = fingerprint(requestId);
+        if (contains(fingerprint)) {
+            return false;
+        }
+
+        if (size == ring.length) {
+            if (table != null && ring[next] != EMPTY) {
+                remove(ring[next]);
+            }
+        } else {
+            size++;
+        }
+        ring[next] = fingerprint;
+        next = next + 1 == ring.length ? 0 : next + 1;
+        if (table != null) {
+            int slot = (int) fingerprint & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = fingerprint;
+        }
+        return true;
+    }
+
+    /**
+     * Forgets the id, so it is taken for a new request when added again. Its place in the ring stays taken until the
+     * ring comes around to it.
+     *
+     * @return false when the window does not hold the id
+     */
+    public boolean remove(final UUID requestId) {
+        if (ring.length == 0) {
+            return false;
+        }
+        final long fingerprint = fingerprint(requestId);
+        for (int i = 0; i < size; i++) {
+            if (ring[i] == fingerprint) {
+                ring[i] = EMPTY;
+                if (table != null) {
+                    remove(fingerprint);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean contains(final long fingerprint) {
+        if (table == null) {
+            for (int i = 0; i < size; i++) {
+                if (ring[i] == fingerprint) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        for (int slot = (int) fingerprint & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (table[slot] == fingerprint) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void remove(final long fingerprint) {
+        int slot = (int) fingerprint & mask;
+        while (table[slot] != fingerprint) {
+            slot = (slot + 1) & mask;
+        }
+        // shifts later entries of the probe sequence back, so lookups never stop at the hole
+        int hole = slot;
+        for (int probe = (hole + 1) & mask; table[probe] != EMPTY; probe = (probe + 1) & mask) {
+            final int home = (int) table[probe] & mask;
+            if (((probe - home) & mask) >= ((probe - hole) & mask)) {
+                table[hole] = table[probe];
+                hole = probe;
+            }
+        }
+        table[hole] = EMPTY;
+    }
+}
@@ -0,0 +1,101 @@
+package com.lightbend.akka.tutorial.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Size bounded cache whose entries expire a fixed time after they were put. When full, the least recently read
+ * entry is evicted. Times are passed in by the caller (nanoTime based) so expiry is easy to drive from tests.
+ * <p>
+ * Not thread safe, meant to be owned by a single actor or thread.
+ */
+public final class ExpiringLruCache<K, V> {
+
+    private static final class Entry<V> {
+        final V value;
+        final long storedNanos;
+
+        Entry(final V value, final long storedNanos) {
+            this.value = value;
+            this.storedNanos = storedNanos;
+        }
+    }
+
+    private final int maxEntries;
+    private final long timeToLiveNanos;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    public ExpiringLruCache(final int maxEntries, final long timeToLiveNanos) {
+        this.maxEntries = maxEntries;
+        this.timeToLiveNanos = timeToLiveNanos;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, Entry<V>> eldest) {
+                if (size() > ExpiringLruCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the value stored for the key if it is not older than the time to live, null otherwise.
+     */
+    public V get(final K key, final long nowNanos) {
+        final Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (nowNanos - entry.storedNanos > timeToLiveNanos) {
+            entries.remove(key);
+            expirations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    public void put(final K key, final V value, final long nowNanos) {
+        entries.put(key, new Entry<>(value, nowNanos));
+    }
+
+    public void removeIf(final Predicate<K> predicate) {
+        final Iterator<K> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (predicate.test(keys.next())) {
+                keys.remove();
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+
+    public long expirations() {
+        return expirations;
+    }
+}
@@ -0,0 +1,269 @@
+package com.lightbend.akka.tutorial.util;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Block of (timestamp, double) samples compressed with the scheme of Facebook's Gorilla: timestamps are stored as the
+ * difference between consecutive deltas in a few variable length buckets, values as the XOR with the previous value
+ * with its leading and trailing zeros left out. Regular timestamps cost a single bit and unchanged values another,
+ * slowly changing values a few bits more.
+ * <p>
+ * Samples are appended in timestamp order until the block is {@linkplain #close() closed}, which trims it to its
+ * encoded size. Reads decode the block from its start. An open block is not thread safe and meant to be owned by a
+ * single actor, a closed one never changes again. Closed blocks can be {@linkplain #writeTo(LongBuffer) written out}
+ * and {@linkplain #decode(LongBuffer, int, long, long, SampleConsumer) decoded} from there, e.g. from a memory mapped
+ * file.
+ */
+public final class GorillaBlock {
+
+    public interface SampleConsumer {
+        void accept(long timestamp, double value);
+    }
+
+    private long[] words = new long[4];
+    private int bitLength;
+    private int count;
+    private boolean closed;
+
+    private long firstTimestamp;
+    private long lastTimestamp;
+    private long lastDelta;
+    private long lastValueBits;
+    private int lastLeadingZeros = -1;
+    private int lastTrailingZeros;
+
+    public int count() {
+        return count;
+    }
+
+    public long firstTimestamp() {
+        return firstTimestamp;
+    }
+
+    public long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Bytes held by the encoded samples, excluding the fixed overhead of the block itself.
+     */
+    public int sizeInBytes() {
+        return words.length * Long.BYTES;
+    }
+
+    /**
+     * @throws IllegalArgumentException when {@code timestamp} is before the last appended one
+     * @throws IllegalStateException    when the block is closed
+     */
+    public void append(final long timestamp, final double value) {
+        if (closed) {
+            throw new IllegalStateException("Cannot append to a closed block");
+        }
+        if (count > 0 && timestamp < lastTimestamp) {
+            throw new IllegalArgumentException("Timestamp " + timestamp + " is before the last one " + lastTimestamp);
+        }
+
+        final long valueBits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            firstTimestamp = timestamp;
+            write(timestamp, 64);
+            write(valueBits, 64);
+        } else {
+            final long delta = timestamp - lastTimestamp;
+            writeDeltaOfDelta(delta - lastDelta);
+            writeXor(valueBits ^ lastValueBits);
+            lastDelta = delta;
+        }
+
+        lastTimestamp = timestamp;
+        lastValueBits = valueBits;
+        count++;
+    }
+
+    /**
+     * No more appends, the block keeps only the words its samples need.
+     */
+    public void close() {
+        if (!closed) {
+            closed = true;
+            words = Arrays.copyOf(words, (bitLength + 63) >>> 6);
+        }
+    }
+
+    /**
+     * Number of longs {@link #writeTo(LongBuffer)} writes.
+     */
+    public int wordCount() {
+        return (bitLength + 63) >>> 6;
+    }
+
+    public void writeTo(final LongBuffer out) {
+        out.put(words, 0, wordCount());
+    }
+
+    /**
+     * Decodes the samples with {@code from <= timestamp < to}, in order.
+     */
+    public void forEach(final long from, final long to, final SampleConsumer consumer) {
+        if (count == 0 || from > lastTimestamp || to <= firstTimestamp) {
+            return;
+        }
+        decode(LongBuffer.wrap(words), count, from, to, consumer);
+    }
+
+    /**
+     * Decodes the samples with {@code from <= timestamp < to} of a block of {@code count} samples written by
+     * {@link #writeTo(LongBuffer)}, starting at index 0 of {@code words}.
+     */
+    public static void decode(final LongBuffer words, final int count, final long from, final long to,
+                              final SampleConsumer consumer) {
+        if (count == 0) {
+            return;
+        }
+
+        final BitReader in = new BitReader(words);
+        long timestamp = in.read(64);
+        long valueBits = in.read(64);
+        long delta = 0;
+        int leadingZeros = 0;
+        int trailingZeros = 0;
+
+        for (int i = 0; ; i++) {
+            if (timestamp >= to) {
+                return;
+            }
+            if (timestamp >= from) {
+                consumer.accept(timestamp, Double.longBitsToDouble(valueBits));
+            }
+            if (i == count - 1) {
+                return;
+            }
+
+            delta += readDeltaOfDelta(in);
+            timestamp += delta;
+
+            if (in.read(1) == 1) {
+                if (in.read(1) == 1) {
+                    leadingZeros = (int) in.read(5);
+                    int significantBits = (int) in.read(6);
+                    if (significantBits == 0) {
+                        significantBits = 64;
+                    }
+                    trailingZeros = 64 - leadingZeros - significantBits;
+                }
+                valueBits ^= in.read(64 - leadingZeros - trailingZeros) << trailingZeros;
+            }
+        }
+    }
+
+    private void writeDeltaOfDelta(final long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            write(0, 1);
+        } else if (deltaOfDelta >= -64 && deltaOfDelta < 64) {
+            write(0b10, 2);
+            write(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -256 && deltaOfDelta < 256) {
+            write(0b110, 3);
+            write(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2048 && deltaOfDelta < 2048) {
+            write(0b1110, 4);
+            write(deltaOfDelta, 12);
+        } else {
+            write(0b1111, 4);
+            write(deltaOfDelta, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(final BitReader in) {
+        if (in.read(1) == 0) {
+            return 0;
+        }
+        if (in.read(1) == 0) {
+            return signExtend(in.read(7), 7);
+        }
+        if (in.read(1) == 0) {
+            return signExtend(in.read(9), 9);
+        }
+        if (in.read(1) == 0) {
+            return signExtend(in.read(12), 12);
+        }
+        return in.read(64);
+    }
+
+    private static long signExtend(final long value, final int bits) {
+        return (value << (64 - bits)) >> (64 - bits);
+    }
+
+    private void writeXor(final long xor) {
+        if (xor == 0) {
+            write(0, 1);
+            return;
+        }
+
+        // the leading zero count has 5 bits, longer runs keep a few zeros among the significant bits
+        final int leadingZeros = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        final int trailingZeros = Long.numberOfTrailingZeros(xor);
+
+        if (lastLeadingZeros >= 0 && leadingZeros >= lastLeadingZeros && trailingZeros >= lastTrailingZeros) {
+            write(0b10, 2);
+            write(xor >>> lastTrailingZeros, 64 - lastLeadingZeros - lastTrailingZeros);
+        } else {
+            final int significantBits = 64 - leadingZeros - trailingZeros;
+            write(0b11, 2);
+            write(leadingZeros, 5);
+            // 64 significant bits do not fit in 6 bits and are written as 0
+            write(significantBits, 6);
+            write(xor >>> trailingZeros, significantBits);
+            lastLeadingZeros = leadingZeros;
+            lastTrailingZeros = trailingZeros;
+        }
+    }
+
+    /**
+     * Appends the low {@code bits} bits of {@code value}, most significant first.
+     */
+    private void write(final long value, final int bits) {
+        if ((bitLength + bits + 63) >>> 6 > words.length) {
+            words = Arrays.copyOf(words, Math.max(words.length * 2, (bitLength + bits + 63) >>> 6));
+        }
+
+        final long masked = bits == 64 ? value : value & ((1L << bits) - 1);
+        final int index = bitLength >>> 6;
+        final int free = 64 - (bitLength & 63);
+        if (bits <= free) {
+            words[index] |= masked << (free - bits);
+        } else {
+            words[index] |= masked >>> (bits - free);
+            words[index + 1] |= masked << (64 - (bits - free));
+        }
+        bitLength += bits;
+    }
+
+    private static final class BitReader {
+        private final LongBuffer words;
+        private int position;
+
+        BitReader(final LongBuffer words) {
+            this.words = words;
+        }
+
+        long read(final int bits) {
+            if (bits == 0) {
+                return 0;
+            }
+
+            final int index = position >>> 6;
+            final int offset = position & 63;
+            final int available = 64 - offset;
+            position += bits;
+
+            final long head = (words.get(index) << offset) >>> (64 - bits);
+            return bits <= available ? head : head | (words.get(index + 1) >>> (64 - (bits - available)));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.lightbend.akka.tutorial.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Immutable index of values with a closed interval {@code [low, high]} each, infinite bounds allowed. Finds the
+ * intervals containing a point with an augmented interval tree laid out implicitly over the intervals sorted by low
+ * bound, and the intervals with a bound inside a range with a binary search over all bounds, both in
+ * O(log n + matches).
+ * <p>
+ * A point moving from {@code a} to {@code b} can only enter or leave the intervals with a bound between the two, which
+ * is what {@link #forEachWithBoundIn(double, double, Consumer)} finds.
+ */
+public final class IntervalIndex<T> {
+
+    private static final IntervalIndex<?> EMPTY = new IntervalIndex<>(new ArrayList<>(), t -> 0, t -> 0);
+
+    // sorted by low bound, the subtree of the node at mid of [from, to) covers [from, to)
+    private final Object[] values;
+    private final double[] lows;
+    private final double[] highs;
+    private final double[] maxHighs;
+
+    // every bound once, sorted, with the index of its interval
+    private final double[] bounds;
+    private final int[] boundOwners;
+
+    @SuppressWarnings("unchecked")
+    public static <T> IntervalIndex<T> empty() {
+        return (IntervalIndex<T>) EMPTY;
+    }
+
+    /**
+     * @throws IllegalArgumentException when an interval has {@code low > high} or a NaN bound
+     */
+    public static <T> IntervalIndex<T> of(final Collection<T> values, final ToDoubleFunction<T> low,
+                                          final ToDoubleFunction<T> high) {
+        return values.isEmpty() ? empty() : new IntervalIndex<>(new ArrayList<>(values), low, high);
+    }
+
+    private IntervalIndex(final List<T> unsorted, final ToDoubleFunction<T> low, final ToDoubleFunction<T> high) {
+        for (final T value : unsorted) {
+            if (!(low.applyAsDouble(value) <= high.applyAsDouble(value))) {
+                throw new IllegalArgumentException("Invalid interval [" + low.applyAsDouble(value) + ", "
+                        + high.applyAsDouble(value) + "] of " + value);
+            }
+        }
+        final List<T> sorted = new ArrayList<>(unsorted);
+        sorted.sort(Comparator.comparingDouble(low));
+
+        final int size = sorted.size();
+        this.values = sorted.toArray();
+        this.lows = new double[size];
+        this.highs = new double[size];
+        this.maxHighs = new double[size];
+        for (int i = 0; i < size; i++) {
+            lows[i] = low.applyAsDouble(sorted.get(i));
+            highs[i] = high.applyAsDouble(sorted.get(i));
+        }
+        buildMaxHighs(0, size);
+
+        final List<int[]> ownedBounds = new ArrayList<>(2 * size);
+        for (int i = 0; i < size; i++) {
+            ownedBounds.add(new int[]{i, 0});
+            if (highs[i] != lows[i]) {
+                ownedBounds.add(new int[]{i, 1});
+            }
+        }
+        ownedBounds.sort(Comparator.comparingDouble(bound -> bound[1] == 0 ? lows[bound[0]] : highs[bound[0]]));
+        this.bounds = new double[ownedBounds.size()];
+        this.boundOwners = new int[ownedBounds.size()];
+        for (int i = 0; i < bounds.length; i++) {
+            final int[] bound = ownedBounds.get(i);
+            bounds[i] = bound[1] == 0 ? lows[bound[0]] : highs[bound[0]];
+            boundOwners[i] = bound[0];
+        }
+    }
+
+    private double buildMaxHighs(final int from, final int to) {
+        if (from >= to) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        final int mid = (from + to) >>> 1;
+        maxHighs[mid] = Math.max(highs[mid], Math.max(buildMaxHighs(from, mid), buildMaxHighs(mid + 1, to)));
+        return maxHighs[mid];
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    /**
+     * Visits the values whose interval contains {@code point}, in no particular order.
+     */
+    public void forEachContaining(final double point, final Consumer<T> consumer) {
+        forEachContaining(point, 0, values.length, consumer);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void forEachContaining(final double point, final int from, final int to, final Consumer<T> consumer) {
+        if (from >= to) {
+            return;
+        }
+        final int mid = (from + to) >>> 1;
+        if (maxHighs[mid] < point) {
+            return;
+        }
+        forEachContaining(point, from, mid, consumer);
+        // nodes to the right start at or after this one
+        if (lows[mid] <= point) {
+            if (highs[mid] >= point) {
+                consumer.accept((T) values[mid]);
+            }
+            forEachContaining(point, mid + 1, to, consumer);
+        }
+    }
+
+    /**
+     * Visits once each value with a bound in {@code [from, to]}, in bound order.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachWithBoundIn(final double from, final double to, final Consumer<T> consumer) {
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (bounds[middle] < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        for (int i = low; i < bounds.length && bounds[i] <= to; i++) {
+            final int owner = boundOwners[i];
+            // an interval with both bounds in range is visited at its low bound only
+            final boolean highBound = bounds[i] == highs[owner] && bounds[i] != lows[owner];
+            if (!highBound || lows[owner] < from) {
+                consumer.accept((T) values[owner]);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IntervalIndex" + Arrays.toString(values);
+    }
+}
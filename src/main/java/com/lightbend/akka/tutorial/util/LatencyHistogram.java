@@ -0,0 +1,108 @@
+package com.lightbend.akka.tutorial.util;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size log-linear histogram of non-negative long values (typically nanoseconds). Every power of two range is
+ * split into 32 linear buckets, so reported percentiles are within about 3% of the recorded values, with values
+ * below 32 kept exactly.
+ * <p>
+ * Not thread safe, meant to be owned by a single actor or thread.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+    private long totalCount;
+    private long max;
+    private double sum;
+
+    public void record(final long value) {
+        final long v = Math.max(0, value);
+        counts[indexOf(v)]++;
+        totalCount++;
+        max = Math.max(max, v);
+        sum += v;
+    }
+
+    public long count() {
+        return totalCount;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    /**
+     * Highest value equivalent to the recorded value at the given percentile (0-100), or 0 when empty.
+     */
+    public long percentile(final double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Adds all values recorded by {@code other}, e.g. to combine histograms kept by several actors.
+     */
+    public void add(final LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        max = Math.max(max, other.max);
+        sum += other.sum;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        max = 0;
+        sum = 0;
+    }
+
+    /**
+     * One line summary with values converted from nanoseconds to milliseconds.
+     */
+    public String summaryMillis() {
+        return String.format("count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms",
+                totalCount, mean() / 1e6, percentile(50) / 1e6, percentile(90) / 1e6, percentile(99) / 1e6,
+                percentile(99.9) / 1e6, max / 1e6);
+    }
+
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestEquivalentValue(final int index) {
+        final int block = index / SUB_BUCKETS;
+        final int subBucket = index % SUB_BUCKETS;
+        if (block == 0) {
+            return subBucket;
+        }
+        final int shift = block - 1;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,293 @@
+package com.lightbend.akka.tutorial.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable sorted map backed by a path-copying treap. Updates return a new map sharing all untouched nodes with
+ * the previous version, so handing out a snapshot is just handing out the reference.
+ * <p>
+ * Node priorities are derived from the key hash, which makes the tree shape a function of its key set only.
+ */
+public final class PersistentSortedMap<K extends Comparable<K>, V> extends AbstractMap<K, V> {
+
+    private static final PersistentSortedMap<?, ?> EMPTY = new PersistentSortedMap<>(null);
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final int priority;
+        final int size;
+        final Node<K, V> left;
+        final Node<K, V> right;
+
+        Node(final K key, final V value, final int priority, final Node<K, V> left, final Node<K, V> right) {
+            this.key = key;
+            this.value = value;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + sizeOf(left) + sizeOf(right);
+        }
+
+        Node<K, V> withValue(final V newValue) {
+            return new Node<>(key, newValue, priority, left, right);
+        }
+
+        Node<K, V> withLeft(final Node<K, V> newLeft) {
+            return new Node<>(key, value, priority, newLeft, right);
+        }
+
+        Node<K, V> withRight(final Node<K, V> newRight) {
+            return new Node<>(key, value, priority, left, newRight);
+        }
+    }
+
+    private final Node<K, V> root;
+
+    private PersistentSortedMap(final Node<K, V> root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<K>, V> PersistentSortedMap<K, V> empty() {
+        return (PersistentSortedMap<K, V>) EMPTY;
+    }
+
+    @Override
+    public int size() {
+        return sizeOf(root);
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return find(key) != null;
+    }
+
+    @Override
+    public V get(final Object key) {
+        final Node<K, V> node = find(key);
+        return node == null ? null : node.value;
+    }
+
+    public PersistentSortedMap<K, V> plus(final K key, final V value) {
+        final Node<K, V> existing = find(key);
+        if (existing != null) {
+            return existing.value == value ? this : new PersistentSortedMap<>(replace(root, key, value));
+        }
+        return new PersistentSortedMap<>(insert(root, key, value, priorityOf(key)));
+    }
+
+    public PersistentSortedMap<K, V> minus(final K key) {
+        final Node<K, V> newRoot = delete(root, key);
+        return newRoot == root ? this : new PersistentSortedMap<>(newRoot);
+    }
+
+    /**
+     * Returns up to {@code limit} keys in ascending order that are strictly greater than {@code after}, or starting
+     * from the smallest key when {@code after} is null.
+     */
+    public List<K> keysAfter(final K after, final int limit) {
+        final List<K> keys = new ArrayList<>(Math.min(limit, size()));
+        final Iterator<Node<K, V>> iterator = new NodeIterator<>(root, after);
+        while (keys.size() < limit && iterator.hasNext()) {
+            keys.add(iterator.next().key);
+        }
+        return keys;
+    }
+
+    /**
+     * Whether any key is strictly greater than {@code key}.
+     */
+    public boolean hasKeyAfter(final K key) {
+        return new NodeIterator<>(root, key).hasNext();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                final Iterator<Node<K, V>> nodes = new NodeIterator<>(root, null);
+                return new Iterator<Entry<K, V>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return nodes.hasNext();
+                    }
+
+                    @Override
+                    public Entry<K, V> next() {
+                        final Node<K, V> node = nodes.next();
+                        return new SimpleImmutableEntry<>(node.key, node.value);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return PersistentSortedMap.this.size();
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<K, V> find(final Object key) {
+        if (key == null) {
+            return null;
+        }
+
+        final K k = (K) key;
+        Node<K, V> node = root;
+        while (node != null) {
+            final int cmp = k.compareTo(node.key);
+            if (cmp == 0) {
+                return node;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> insert(final Node<K, V> node, final K key, final V value,
+                                                                   final int priority) {
+        if (node == null) {
+            return new Node<>(key, value, priority, null, null);
+        }
+
+        if (priority > node.priority) {
+            final Halves<K, V> halves = split(node, key);
+            return new Node<>(key, value, priority, halves.smaller, halves.greater);
+        }
+
+        return key.compareTo(node.key) < 0
+                ? node.withLeft(insert(node.left, key, value, priority))
+                : node.withRight(insert(node.right, key, value, priority));
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> replace(final Node<K, V> node, final K key, final V value) {
+        final int cmp = key.compareTo(node.key);
+        if (cmp == 0) {
+            return node.withValue(value);
+        }
+        return cmp < 0 ? node.withLeft(replace(node.left, key, value)) : node.withRight(replace(node.right, key, value));
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> delete(final Node<K, V> node, final K key) {
+        if (node == null) {
+            return null;
+        }
+
+        final int cmp = key.compareTo(node.key);
+        if (cmp == 0) {
+            return merge(node.left, node.right);
+        }
+
+        if (cmp < 0) {
+            final Node<K, V> left = delete(node.left, key);
+            return left == node.left ? node : node.withLeft(left);
+        }
+
+        final Node<K, V> right = delete(node.right, key);
+        return right == node.right ? node : node.withRight(right);
+    }
+
+    /**
+     * Splits the subtree into keys smaller and greater than {@code key}, which must not be present.
+     */
+    private static <K extends Comparable<K>, V> Halves<K, V> split(final Node<K, V> node, final K key) {
+        if (node == null) {
+            return new Halves<>();
+        }
+
+        if (key.compareTo(node.key) < 0) {
+            final Halves<K, V> halves = split(node.left, key);
+            halves.greater = node.withLeft(halves.greater);
+            return halves;
+        }
+
+        final Halves<K, V> halves = split(node.right, key);
+        halves.smaller = node.withRight(halves.smaller);
+        return halves;
+    }
+
+    private static final class Halves<K, V> {
+        Node<K, V> smaller;
+        Node<K, V> greater;
+    }
+
+    private static <K, V> Node<K, V> merge(final Node<K, V> left, final Node<K, V> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+
+        return left.priority > right.priority
+                ? left.withRight(merge(left.right, right))
+                : right.withLeft(merge(left, right.left));
+    }
+
+    private static int sizeOf(final Node<?, ?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int priorityOf(final Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    private static final class NodeIterator<K extends Comparable<K>, V> implements Iterator<Node<K, V>> {
+
+        private final Deque<Node<K, V>> stack = new ArrayDeque<>();
+
+        NodeIterator(Node<K, V> node, final K after) {
+            while (node != null) {
+                if (after == null || after.compareTo(node.key) < 0) {
+                    stack.push(node);
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public Node<K, V> next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+
+            final Node<K, V> node = stack.pop();
+            Node<K, V> next = node.right;
+            while (next != null) {
+                stack.push(next);
+                next = next.left;
+            }
+            return node;
+        }
+    }
+
+    public static <K extends Comparable<K>, V> PersistentSortedMap<K, V> copyOf(final Map<K, V> source) {
+        PersistentSortedMap<K, V> map = empty();
+        for (final Entry<K, V> entry : source.entrySet()) {
+            map = map.plus(entry.getKey(), entry.getValue());
+        }
+        return map;
+    }
+}
@@ -1,22 +1,33 @@
 package com.lightbend.akka.tutorial;
 
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
 import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
 import akka.actor.testkit.typed.javadsl.TestProbe;
 import akka.actor.typed.ActorRef;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigValueFactory;
 import org.junit.ClassRule;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.time.Duration;
 import java.util.Optional;
 import java.util.UUID;
 
 import static com.lightbend.akka.tutorial.DeviceActor.create;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class DeviceActorTest {
 
     @ClassRule
     public static final TestKitJunitResource testKit = new TestKitJunitResource();
 
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testReplyWithEmptyReadingIfNoTemperatureIsKnown() {
 
@@ -137,4 +148,136 @@ public class DeviceActorTest {
         assertEquals(Optional.of(temperature3), readResponse3.value);
     }
 
+    @Test
+    public void testKeepTemperatureAcrossRestart() {
+
+        // given
+        final TestProbe<DeviceActor.RespondTemperature> readProbe = testKit.createTestProbe(DeviceActor.RespondTemperature.class);
+        final TestProbe<DeviceActor.RecordTemperatureCompleted> recordProbe = testKit.createTestProbe(DeviceActor.RecordTemperatureCompleted.class);
+        final ActorRef<DeviceActor.Command> deviceActorRef = testKit.spawn(create("group", "device"));
+        deviceActorRef.tell(new DeviceActor.RecordTemperature(UUID.randomUUID(), 21.5, recordProbe.getRef()));
+        recordProbe.receiveMessage();
+
+        // when
+        deviceActorRef.tell(DeviceActor.InjectFailure.INSTANCE);
+        deviceActorRef.tell(new DeviceActor.ReadTemperature(UUID.randomUUID(), readProbe.getRef()));
+
+        // then
+        assertEquals(Optional.of(21.5), readProbe.receiveMessage().value);
+    }
+
+    @Test
+    public void testReadHistoryOfRecordedTemperatures() {
+
+        // given
+        final ActorTestKit historyKit = ActorTestKit.create(ConfigFactory.parseString("iot.history.enabled = on"));
+        try {
+            final TestProbe<DeviceActor.RecordTemperatureCompleted> recordProbe = historyKit.createTestProbe(DeviceActor.RecordTemperatureCompleted.class);
+            final TestProbe<DeviceActor.RespondHistory> historyProbe = historyKit.createTestProbe(DeviceActor.RespondHistory.class);
+            final ActorRef<DeviceActor.Command> deviceActorRef = historyKit.spawn(create("group", "device"));
+            final long before = System.currentTimeMillis();
+            for (final double value : new double[]{21.5, 21.5, 22.0}) {
+                deviceActorRef.tell(new DeviceActor.RecordTemperature(UUID.randomUUID(), value, recordProbe.getRef()));
+                recordProbe.receiveMessage();
+            }
+
+            // when
+            final UUID requestId = UUID.randomUUID();
+            deviceActorRef.tell(new DeviceActor.ReadHistory(requestId, before, Long.MAX_VALUE, historyProbe.getRef()));
+            deviceActorRef.tell(new DeviceActor.ReadHistory(UUID.randomUUID(), 0, before, historyProbe.getRef()));
+
+            // then
+            final DeviceActor.RespondHistory history = historyProbe.receiveMessage();
+            assertEquals(requestId, history.requestId);
+            assertArrayEquals(new double[]{21.5, 21.5, 22.0}, history.values, 0.0);
+            assertTrue(history.timestamps[0] >= before && history.timestamps[2] >= history.timestamps[0]);
+
+            assertEquals(0, historyProbe.receiveMessage().values.length);
+        } finally {
+            historyKit.shutdownTestKit();
+        }
+    }
+
+    @Test
+    public void testKeepOpenHistoryBlockOfStoppedDevice() {
+
+        // given
+        final ActorTestKit coldStorageKit = ActorTestKit.create(ConfigFactory
+                .parseString("iot.history { enabled = on, cold-storage.enabled = on }")
+                .withValue("iot.history.cold-storage.directory",
+                        ConfigValueFactory.fromAnyRef(folder.getRoot().getAbsolutePath())));
+        try {
+            final TestProbe<DeviceActor.RecordTemperatureCompleted> recordProbe =
+                    coldStorageKit.createTestProbe(DeviceActor.RecordTemperatureCompleted.class);
+            final TestProbe<DeviceActor.RespondHistory> historyProbe =
+                    coldStorageKit.createTestProbe(DeviceActor.RespondHistory.class);
+            final ActorRef<DeviceActor.Command> stopped = coldStorageKit.spawn(create("group", "device"));
+            for (final double value : new double[]{21.5, 22.0}) {
+                stopped.tell(new DeviceActor.RecordTemperature(UUID.randomUUID(), value, recordProbe.getRef()));
+                recordProbe.receiveMessage();
+            }
+
+            // when
+            coldStorageKit.stop(stopped);
+            final ActorRef<DeviceActor.Command> spawnedAgain = coldStorageKit.spawn(create("group", "device"));
+            spawnedAgain.tell(new DeviceActor.RecordTemperature(UUID.randomUUID(), 22.5, recordProbe.getRef()));
+            recordProbe.receiveMessage();
+            spawnedAgain.tell(new DeviceActor.ReadHistory(UUID.randomUUID(), 0, Long.MAX_VALUE, historyProbe.getRef()));
+
+            // then
+            assertArrayEquals(new double[]{21.5, 22.0, 22.5}, historyProbe.receiveMessage().values, 0.0);
+        } finally {
+            coldStorageKit.shutdownTestKit();
+        }
+    }
+
+    @Test
+    public void testAcknowledgeRetriedReadingWithoutRecordingItAgain() {
+
+        // given
+        final ActorTestKit historyKit = ActorTestKit.create(ConfigFactory.parseString("iot.history.enabled = on"));
+        try {
+            final TestProbe<DeviceActor.RecordTemperatureCompleted> recordProbe = historyKit.createTestProbe(DeviceActor.RecordTemperatureCompleted.class);
+            final TestProbe<DeviceActor.RespondHistory> historyProbe = historyKit.createTestProbe(DeviceActor.RespondHistory.class);
+            final TestProbe<DeviceActor.RespondTemperature> readProbe = historyKit.createTestProbe(DeviceActor.RespondTemperature.class);
+            final ActorRef<DeviceActor.Command> deviceActorRef = historyKit.spawn(create("group", "device"));
+            final RecordDeduplication dedup = RecordDeduplication.get(historyKit.system());
+            final long duplicatesBefore = dedup.deviceDuplicates();
+            final UUID retriedRequestId = UUID.randomUUID();
+            deviceActorRef.tell(new DeviceActor.RecordTemperature(retriedRequestId, 21.5, recordProbe.getRef()));
+            deviceActorRef.tell(new DeviceActor.RecordTemperature(UUID.randomUUID(), 22.0, recordProbe.getRef()));
+            recordProbe.receiveSeveralMessages(2);
+
+            // when
+            deviceActorRef.tell(new DeviceActor.RecordTemperature(retriedRequestId, 21.5, recordProbe.getRef()));
+
+            // then
+            assertEquals(retriedRequestId, recordProbe.receiveMessage().requestId);
+            assertEquals(duplicatesBefore + 1, dedup.deviceDuplicates());
+
+            deviceActorRef.tell(new DeviceActor.ReadTemperature(UUID.randomUUID(), readProbe.getRef()));
+            assertEquals(Optional.of(22.0), readProbe.receiveMessage().value);
+            deviceActorRef.tell(new DeviceActor.ReadHistory(UUID.randomUUID(), 0, Long.MAX_VALUE, historyProbe.getRef()));
+            assertArrayEquals(new double[]{21.5, 22.0}, historyProbe.receiveMessage().values, 0.0);
+        } finally {
+            historyKit.shutdownTestKit();
+        }
+    }
+
+    @Test
+    public void testDropReadsWhoseDeadlinePassed() {
+
+        // given
+        final TestProbe<DeviceActor.RespondTemperature> readProbe = testKit.createTestProbe(DeviceActor.RespondTemperature.class);
+        final ActorRef<DeviceActor.Command> deviceActorRef = testKit.spawn(create("group", "device"));
+        final UUID requestId = UUID.randomUUID();
+
+        // when
+        deviceActorRef.tell(new DeviceActor.ReadTemperature(UUID.randomUUID(), System.currentTimeMillis() - 1, readProbe.getRef()));
+        deviceActorRef.tell(new DeviceActor.ReadTemperature(requestId, System.currentTimeMillis() + 60_000, readProbe.getRef()));
+
+        // then
+        assertEquals(requestId, readProbe.receiveMessage().requestId);
+        readProbe.expectNoMessage(Duration.ofMillis(100));
+    }
 }
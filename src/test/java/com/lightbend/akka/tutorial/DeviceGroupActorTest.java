@@ -1,23 +1,33 @@
 package com.lightbend.akka.tutorial;
 
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
 import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
 import akka.actor.testkit.typed.javadsl.TestProbe;
 import akka.actor.typed.ActorRef;
+import com.lightbend.akka.tutorial.model.AlertRule;
 import com.lightbend.akka.tutorial.model.Temperature;
 import com.lightbend.akka.tutorial.model.TemperatureNotAvailable;
 import com.lightbend.akka.tutorial.model.TemperatureReading;
+import com.typesafe.config.ConfigFactory;
 import org.junit.ClassRule;
 import org.junit.Test;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toSet;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 public class DeviceGroupActorTest {
 
@@ -160,6 +170,390 @@ public class DeviceGroupActorTest {
         });
     }
 
+    @Test
+    public void testListActiveDevicesInPages() {
+
+        final String groupId = "groupId";
+
+        final TestProbe<DeviceManagerActor.DeviceRegistered> deviceRegisteredTestProbe =
+                testKit.createTestProbe(DeviceManagerActor.DeviceRegistered.class);
+
+        final ActorRef<DeviceGroupActor.Command> deviceGroupActor = testKit.spawn(DeviceGroupActor.create(groupId, defaultTemperaturesQueryDuration));
+
+        Stream.of("device3", "device1", "device5", "device2", "device4").forEach(deviceId -> {
+            deviceGroupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, deviceId, deviceRegisteredTestProbe.getRef()));
+            deviceRegisteredTestProbe.receiveMessage();
+        });
+
+        final TestProbe<DeviceGroupActor.ReplyDeviceList> deviceListTestProbe =
+                testKit.createTestProbe(DeviceGroupActor.ReplyDeviceList.class);
+
+        deviceGroupActor.tell(new DeviceGroupActor.RequestDeviceList(UUID.randomUUID(), groupId, Optional.empty(), 2, deviceListTestProbe.getRef()));
+        final DeviceGroupActor.ReplyDeviceList firstPage = deviceListTestProbe.receiveMessage();
+        assertEquals(Arrays.asList("device1", "device2"), new ArrayList<>(firstPage.deviceIds));
+        assertEquals(Optional.of("device2"), firstPage.nextCursor);
+
+        deviceGroupActor.tell(new DeviceGroupActor.RequestDeviceList(UUID.randomUUID(), groupId, firstPage.nextCursor, 2, deviceListTestProbe.getRef()));
+        final DeviceGroupActor.ReplyDeviceList secondPage = deviceListTestProbe.receiveMessage();
+        assertEquals(Arrays.asList("device3", "device4"), new ArrayList<>(secondPage.deviceIds));
+        assertEquals(Optional.of("device4"), secondPage.nextCursor);
+
+        deviceGroupActor.tell(new DeviceGroupActor.RequestDeviceList(UUID.randomUUID(), groupId, secondPage.nextCursor, 2, deviceListTestProbe.getRef()));
+        final DeviceGroupActor.ReplyDeviceList lastPage = deviceListTestProbe.receiveMessage();
+        assertEquals(Arrays.asList("device5"), new ArrayList<>(lastPage.deviceIds));
+        assertEquals(Optional.empty(), lastPage.nextCursor);
+    }
+
+    @Test
+    public void testRecordTemperaturesAcknowledgesWholeBatch() {
+
+        final String groupId = "group";
+        final UUID requestId = UUID.randomUUID();
+
+        final ActorRef<DeviceGroupActor.Command> groupActor = testKit.spawn(DeviceGroupActor.create(groupId, defaultTemperaturesQueryDuration));
+
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> recordedProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(requestId, groupId,
+                new String[]{"device1", "device2", "device1"}, new double[]{1.0, 2.0, 3.0}, recordedProbe.getRef()));
+
+        final DeviceGroupActor.TemperaturesRecorded recorded = recordedProbe.receiveMessage();
+        assertEquals(requestId, recorded.requestId);
+        assertEquals(3, recorded.count);
+
+        final TestProbe<DeviceGroupActor.RespondAllTemperatures> allTempProbe =
+                testKit.createTestProbe(DeviceGroupActor.RespondAllTemperatures.class);
+        groupActor.tell(new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), groupId, allTempProbe.getRef()));
+
+        final Map<String, TemperatureReading> expectedTemperatures = new HashMap<>();
+        expectedTemperatures.put("device1", new Temperature(3.0));
+        expectedTemperatures.put("device2", new Temperature(2.0));
+        assertEquals(expectedTemperatures, allTempProbe.receiveMessage().responseByDeviceId);
+    }
+
+    @Test
+    public void testAcknowledgeRetriedBatchWithoutRecordingItAgain() {
+
+        final String groupId = "group";
+        final ActorRef<DeviceGroupActor.Command> groupActor = testKit.spawn(DeviceGroupActor.create(groupId, defaultTemperaturesQueryDuration));
+        final RecordDeduplication dedup = RecordDeduplication.get(testKit.system());
+        final long duplicatesBefore = dedup.groupDuplicates();
+
+        // a retry from another sender, like a new ask, while the batch may still be recorded
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> firstProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> retryProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+        final UUID retriedRequestId = UUID.randomUUID();
+        final DeviceGroupActor.RecordTemperatures first = new DeviceGroupActor.RecordTemperatures(retriedRequestId,
+                groupId, new String[]{"device1", "device2"}, new double[]{1.0, 2.0}, firstProbe.getRef());
+        groupActor.tell(first);
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(retriedRequestId, groupId, first.deviceIds,
+                first.values, retryProbe.getRef()));
+        assertEquals(2, firstProbe.receiveMessage().count);
+        assertEquals(2, retryProbe.receiveMessage().count);
+
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId,
+                new String[]{"device1"}, new double[]{3.0}, firstProbe.getRef()));
+        firstProbe.receiveMessage();
+
+        // a late retry of the first batch is acknowledged, but must not roll device1 back
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(retriedRequestId, groupId, first.deviceIds,
+                first.values, retryProbe.getRef()));
+        final DeviceGroupActor.TemperaturesRecorded recorded = retryProbe.receiveMessage();
+        assertEquals(retriedRequestId, recorded.requestId);
+        assertEquals(2, recorded.count);
+        assertEquals(duplicatesBefore + 2, dedup.groupDuplicates());
+
+        final TestProbe<DeviceGroupActor.RespondAllTemperatures> allTempProbe =
+                testKit.createTestProbe(DeviceGroupActor.RespondAllTemperatures.class);
+        groupActor.tell(new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), groupId, allTempProbe.getRef()));
+
+        final Map<String, TemperatureReading> expectedTemperatures = new HashMap<>();
+        expectedTemperatures.put("device1", new Temperature(3.0));
+        expectedTemperatures.put("device2", new Temperature(2.0));
+        assertEquals(expectedTemperatures, allTempProbe.receiveMessage().responseByDeviceId);
+    }
+
+    @Test
+    public void testDropQueriesWhoseDeadlinePassed() {
+
+        final String groupId = "group";
+        final ActorRef<DeviceGroupActor.Command> groupActor = testKit.spawn(DeviceGroupActor.create(groupId, defaultTemperaturesQueryDuration));
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> recordedProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId,
+                new String[]{"device1"}, new double[]{1.0}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+
+        final TestProbe<DeviceGroupActor.RespondAllTemperatures> allTempProbe =
+                testKit.createTestProbe(DeviceGroupActor.RespondAllTemperatures.class);
+        final UUID requestId = UUID.randomUUID();
+        groupActor.tell(new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), groupId, Collections.emptySet(),
+                System.currentTimeMillis() - 1, allTempProbe.getRef()));
+        groupActor.tell(new DeviceGroupActor.RequestAllTemperatures(requestId, groupId, Collections.emptySet(),
+                System.currentTimeMillis() + 60_000, allTempProbe.getRef()));
+
+        final DeviceGroupActor.RespondAllTemperatures response = allTempProbe.receiveMessage();
+        assertEquals(requestId, response.requestId);
+        assertEquals(Collections.singletonMap("device1", new Temperature(1.0)), response.responseByDeviceId);
+        allTempProbe.expectNoMessage(Duration.ofMillis(100));
+    }
+
+    @Test
+    public void testSubscribersReceiveConflatedChanges() {
+
+        final String groupId = "group";
+
+        // the top listener keeps the devices publishing, so the group knows every reading as it is recorded
+        final TestProbe<DeviceManagerActor.GroupTopTemperatures> topProbe =
+                testKit.createTestProbe(DeviceManagerActor.GroupTopTemperatures.class);
+        final ActorRef<DeviceGroupActor.Command> groupActor = testKit.spawn(DeviceGroupActor.create(groupId,
+                defaultTemperaturesQueryDuration, Optional.of(topProbe.getRef())));
+
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> recordedProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+        final TestProbe<DeviceGroupActor.TemperatureChanges> changesProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperatureChanges.class);
+
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId,
+                new String[]{"device1", "device2"}, new double[]{1.0, 2.0}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+
+        groupActor.tell(new DeviceGroupActor.SubscribeTemperatures(groupId, changesProbe.getRef(), Duration.ofMillis(300)));
+
+        // device2 keeps its reading, device1 changes twice within the interval
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId,
+                new String[]{"device1", "device2", "device1"}, new double[]{3.0, 2.0, 4.0}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+
+        final DeviceGroupActor.TemperatureChanges changes = changesProbe.receiveMessage();
+        assertEquals(groupId, changes.groupId);
+        assertEquals(Collections.singletonMap("device1", new Temperature(4.0)), changes.changesByDeviceId);
+
+        groupActor.tell(new DeviceGroupActor.UnsubscribeTemperatures(groupId, changesProbe.getRef()));
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId,
+                new String[]{"device2"}, new double[]{5.0}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+
+        changesProbe.expectNoMessage(Duration.ofMillis(500));
+    }
+
+    @Test
+    public void testRequestTemperaturesSinceReturnsOnlyChanges() {
+
+        final String groupId = "group";
+
+        // the top listener keeps the devices publishing, so the group knows every reading as it is recorded
+        final TestProbe<DeviceManagerActor.GroupTopTemperatures> topProbe =
+                testKit.createTestProbe(DeviceManagerActor.GroupTopTemperatures.class);
+        final ActorRef<DeviceGroupActor.Command> groupActor = testKit.spawn(DeviceGroupActor.create(groupId,
+                defaultTemperaturesQueryDuration, Optional.of(topProbe.getRef())));
+
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> recordedProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+        final TestProbe<DeviceGroupActor.TemperaturesSinceResponse> sinceProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesSinceResponse.class);
+
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId,
+                new String[]{"device1", "device2", "device3"}, new double[]{1.0, 2.0, 3.0}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+
+        groupActor.tell(new DeviceGroupActor.RequestTemperaturesSince(UUID.randomUUID(), groupId, 0, sinceProbe.getRef()));
+        final DeviceGroupActor.RespondTemperaturesSince snapshot =
+                (DeviceGroupActor.RespondTemperaturesSince) sinceProbe.receiveMessage();
+        assertTrue(snapshot.fullSnapshot);
+        assertEquals(3, snapshot.changesByDeviceId.size());
+        assertEquals(new Temperature(3.0), snapshot.changesByDeviceId.get("device3"));
+
+        groupActor.tell(new DeviceGroupActor.RequestTemperaturesSince(UUID.randomUUID(), groupId, snapshot.version, sinceProbe.getRef()));
+        final DeviceGroupActor.TemperaturesNotModified notModified =
+                (DeviceGroupActor.TemperaturesNotModified) sinceProbe.receiveMessage();
+        assertEquals(snapshot.version, notModified.version);
+
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId,
+                new String[]{"device1", "device2"}, new double[]{1.0, 5.0}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+
+        groupActor.tell(new DeviceGroupActor.RequestTemperaturesSince(UUID.randomUUID(), groupId, snapshot.version, sinceProbe.getRef()));
+        final DeviceGroupActor.RespondTemperaturesSince delta =
+                (DeviceGroupActor.RespondTemperaturesSince) sinceProbe.receiveMessage();
+        assertFalse(delta.fullSnapshot);
+        assertTrue(delta.version > snapshot.version);
+        assertEquals(Collections.singletonMap("device2", new Temperature(5.0)), delta.changesByDeviceId);
+    }
+
+    @Test
+    public void testCatchUpOnReadingsRecordedBeforeTheFirstReader() {
+
+        final String groupId = "unread-group";
+
+        // no top listener and no read model, so the devices only publish once versions are read
+        final TestProbe<PartitionedDeviceGroupActor.DeviceRemoved> removedProbe =
+                testKit.createTestProbe(PartitionedDeviceGroupActor.DeviceRemoved.class);
+        final ActorRef<DeviceGroupActor.Command> groupActor = testKit.spawn(DeviceGroupActor.createPartition(groupId,
+                defaultTemperaturesQueryDuration, Optional.empty(), Optional.empty(), removedProbe.getRef()));
+
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> recordedProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+        final TestProbe<DeviceGroupActor.TemperaturesSinceResponse> sinceProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesSinceResponse.class);
+
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId,
+                new String[]{"device1", "device2"}, new double[]{1.0, 2.0}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+
+        groupActor.tell(new DeviceGroupActor.RequestTemperaturesSince(UUID.randomUUID(), groupId, 0, sinceProbe.getRef()));
+        final DeviceGroupActor.RespondTemperaturesSince snapshot =
+                (DeviceGroupActor.RespondTemperaturesSince) sinceProbe.receiveMessage();
+
+        // the devices tell their readings before they acknowledge this one
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId,
+                new String[]{"device2"}, new double[]{2.0}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+
+        groupActor.tell(new DeviceGroupActor.RequestTemperaturesSince(UUID.randomUUID(), groupId, snapshot.version, sinceProbe.getRef()));
+        final DeviceGroupActor.RespondTemperaturesSince delta =
+                (DeviceGroupActor.RespondTemperaturesSince) sinceProbe.receiveMessage();
+        final Map<String, TemperatureReading> expected = new HashMap<>();
+        expected.put("device1", new Temperature(1.0));
+        expected.put("device2", new Temperature(2.0));
+        assertEquals(expected, delta.changesByDeviceId);
+    }
+
+    @Test
+    public void testCollectTemperaturesOfTaggedDevicesOnly() {
+
+        final String groupId = "group";
+
+        final ActorRef<DeviceGroupActor.Command> groupActor = testKit.spawn(DeviceGroupActor.create(groupId, defaultTemperaturesQueryDuration));
+
+        final TestProbe<DeviceManagerActor.DeviceRegistered> registeredProbe =
+                testKit.createTestProbe(DeviceManagerActor.DeviceRegistered.class);
+        final TestProbe<DeviceActor.RecordTemperatureCompleted> recordProbe =
+                testKit.createTestProbe(DeviceActor.RecordTemperatureCompleted.class);
+
+        final String[][] tagsByDevice = {{"floor=1", "model=a"}, {"floor=1", "model=b"}, {"floor=2", "model=a"}};
+        for (int i = 0; i < tagsByDevice.length; i++) {
+            groupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, "device" + i,
+                    Stream.of(tagsByDevice[i]).collect(toSet()), registeredProbe.getRef()));
+            registeredProbe.receiveMessage().device.tell(new DeviceActor.RecordTemperature(UUID.randomUUID(), i, recordProbe.getRef()));
+            recordProbe.receiveMessage();
+        }
+
+        final TestProbe<DeviceGroupActor.RespondAllTemperatures> allTempProbe =
+                testKit.createTestProbe(DeviceGroupActor.RespondAllTemperatures.class);
+
+        groupActor.tell(new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), groupId,
+                Stream.of("floor=1", "model=a").collect(toSet()), allTempProbe.getRef()));
+        assertEquals(Collections.singletonMap("device0", new Temperature(0)), allTempProbe.receiveMessage().responseByDeviceId);
+
+        groupActor.tell(new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), groupId,
+                Collections.singleton("model=a"), allTempProbe.getRef()));
+        assertEquals(Stream.of("device0", "device2").collect(toSet()), allTempProbe.receiveMessage().responseByDeviceId.keySet());
+
+        groupActor.tell(new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), groupId,
+                Collections.singleton("floor=9"), allTempProbe.getRef()));
+        assertTrue(allTempProbe.receiveMessage().responseByDeviceId.isEmpty());
+    }
+
+    @Test
+    public void testRaiseAndClearAlertsAsReadingsCrossRules() {
+
+        final String groupId = "group";
+        final ActorRef<DeviceGroupActor.Command> groupActor = testKit.spawn(DeviceGroupActor.create(groupId, defaultTemperaturesQueryDuration));
+
+        final TestProbe<DeviceManagerActor.DeviceRegistered> registeredProbe =
+                testKit.createTestProbe(DeviceManagerActor.DeviceRegistered.class);
+        groupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, "device0", Collections.singleton("floor=1"),
+                registeredProbe.getRef()));
+        groupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, "device1", Collections.singleton("floor=2"),
+                registeredProbe.getRef()));
+        registeredProbe.receiveSeveralMessages(2);
+
+        final TestProbe<DeviceGroupActor.DeviceAlert> alertProbe = testKit.createTestProbe(DeviceGroupActor.DeviceAlert.class);
+        groupActor.tell(new DeviceGroupActor.AddAlertRule(groupId,
+                AlertRule.above("hot", 30).tagged(Collections.singleton("floor=1")), alertProbe.getRef()));
+        groupActor.tell(new DeviceGroupActor.AddAlertRule(groupId, AlertRule.below("freezing", 0), alertProbe.getRef()));
+        groupActor.tell(new DeviceGroupActor.AddAlertRule(groupId, AlertRule.risingFaster("heating", 60), alertProbe.getRef()));
+        groupActor.tell(new DeviceGroupActor.AddAlertRule(groupId,
+                AlertRule.above("warm", 25).sustainedFor(Duration.ofMillis(300)), alertProbe.getRef()));
+
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> recordedProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+        final String[] deviceIds = {"device0", "device1"};
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId, deviceIds,
+                new double[]{20, 20}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+        alertProbe.expectNoMessage(Duration.ofMillis(100));
+
+        // 15 degrees within milliseconds is heating far faster than a degree per second
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId, deviceIds,
+                new double[]{35, 35}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+        assertEquals(Stream.of(
+                new DeviceGroupActor.DeviceAlert(groupId, "device0", "hot", true, 35),
+                new DeviceGroupActor.DeviceAlert(groupId, "device0", "heating", true, 35),
+                new DeviceGroupActor.DeviceAlert(groupId, "device1", "heating", true, 35)).collect(toSet()),
+                new HashSet<>(alertProbe.receiveSeveralMessages(3)));
+        assertEquals(Stream.of(
+                new DeviceGroupActor.DeviceAlert(groupId, "device0", "warm", true, 35),
+                new DeviceGroupActor.DeviceAlert(groupId, "device1", "warm", true, 35)).collect(toSet()),
+                new HashSet<>(alertProbe.receiveSeveralMessages(2)));
+
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId, new String[]{"device0"},
+                new double[]{-5}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+        assertEquals(Stream.of(
+                new DeviceGroupActor.DeviceAlert(groupId, "device0", "hot", false, -5),
+                new DeviceGroupActor.DeviceAlert(groupId, "device0", "warm", false, -5),
+                new DeviceGroupActor.DeviceAlert(groupId, "device0", "heating", false, -5),
+                new DeviceGroupActor.DeviceAlert(groupId, "device0", "freezing", true, -5)).collect(toSet()),
+                new HashSet<>(alertProbe.receiveSeveralMessages(4)));
+
+        groupActor.tell(new DeviceGroupActor.RemoveAlertRule(groupId, "freezing"));
+        assertEquals(new DeviceGroupActor.DeviceAlert(groupId, "device0", "freezing", false, Double.NaN),
+                alertProbe.receiveMessage());
+
+        // a new rule fires right away for the devices already past it
+        groupActor.tell(new DeviceGroupActor.AddAlertRule(groupId, AlertRule.above("very-warm", 30), alertProbe.getRef()));
+        assertEquals(new DeviceGroupActor.DeviceAlert(groupId, "device1", "very-warm", true, 35), alertProbe.receiveMessage());
+        alertProbe.expectNoMessage(Duration.ofMillis(100));
+    }
+
+    @Test
+    public void testClearRateAlertOnceTemperatureHolds() {
+
+        final String groupId = "group";
+        final ActorRef<DeviceGroupActor.Command> groupActor = testKit.spawn(DeviceGroupActor.create(groupId, defaultTemperaturesQueryDuration));
+
+        final TestProbe<DeviceManagerActor.DeviceRegistered> registeredProbe =
+                testKit.createTestProbe(DeviceManagerActor.DeviceRegistered.class);
+        groupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, "device0", registeredProbe.getRef()));
+        registeredProbe.receiveMessage();
+
+        final TestProbe<DeviceGroupActor.DeviceAlert> alertProbe = testKit.createTestProbe(DeviceGroupActor.DeviceAlert.class);
+        groupActor.tell(new DeviceGroupActor.AddAlertRule(groupId, AlertRule.risingFaster("heating", 60), alertProbe.getRef()));
+
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> recordedProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+        final String[] deviceIds = {"device0"};
+        for (final double value : new double[]{20, 35}) {
+            groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId, deviceIds,
+                    new double[]{value}, recordedProbe.getRef()));
+            recordedProbe.receiveMessage();
+        }
+        assertEquals(new DeviceGroupActor.DeviceAlert(groupId, "device0", "heating", true, 35), alertProbe.receiveMessage());
+
+        // the same reading again is a rate of 0
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId, deviceIds,
+                new double[]{35}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+        assertEquals(new DeviceGroupActor.DeviceAlert(groupId, "device0", "heating", false, 35), alertProbe.receiveMessage());
+        alertProbe.expectNoMessage(Duration.ofMillis(100));
+    }
+
     @Test
     public void testCollectTemperaturesFromAllActiveDevices() {
 
@@ -211,4 +605,91 @@ public class DeviceGroupActorTest {
 
         assertEquals(expectedTemperatures, response.responseByDeviceId);
     }
+
+    @Test
+    public void testPublishReadingsToReadModel() {
+
+        final ActorTestKit readModelKit = ActorTestKit.create(ConfigFactory.parseString("iot.read-model.enabled = on"));
+        try {
+            final String groupId = "read-model-group";
+
+            final ActorRef<DeviceGroupActor.Command> groupActor =
+                    readModelKit.spawn(DeviceGroupActor.create(groupId, defaultTemperaturesQueryDuration));
+
+            final TestProbe<DeviceManagerActor.DeviceRegistered> registeredProbe =
+                    readModelKit.createTestProbe(DeviceManagerActor.DeviceRegistered.class);
+            final TestProbe<DeviceActor.RecordTemperatureCompleted> recordProbe =
+                    readModelKit.createTestProbe(DeviceActor.RecordTemperatureCompleted.class);
+
+            groupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, "device1", registeredProbe.getRef()));
+            registeredProbe.receiveMessage().device.tell(new DeviceActor.RecordTemperature(UUID.randomUUID(), 1.0, recordProbe.getRef()));
+            recordProbe.receiveMessage();
+            groupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, "device2", registeredProbe.getRef()));
+            registeredProbe.receiveMessage();
+
+            final Map<String, TemperatureReading> expectedTemperatures = new HashMap<>();
+            expectedTemperatures.put("device1", new Temperature(1.0));
+            expectedTemperatures.put("device2", TemperatureNotAvailable.INSTANCE);
+
+            final TemperatureReadModel readModel = TemperatureReadModel.get(readModelKit.system());
+            registeredProbe.awaitAssert(() -> {
+                assertEquals(expectedTemperatures, readModel.readings(groupId));
+                return null;
+            });
+
+            readModelKit.stop(groupActor);
+            registeredProbe.awaitAssert(() -> {
+                assertFalse(readModel.groupIds().contains(groupId));
+                return null;
+            });
+        } finally {
+            readModelKit.shutdownTestKit();
+        }
+    }
+
+    @Test
+    public void testKeepDevicesAndReadingsAcrossRestart() {
+
+        final String groupId = "group";
+
+        final ActorRef<DeviceGroupActor.Command> groupActor = testKit.spawn(DeviceGroupActor.create(groupId, defaultTemperaturesQueryDuration));
+
+        final TestProbe<DeviceManagerActor.DeviceRegistered> registeredProbe =
+                testKit.createTestProbe(DeviceManagerActor.DeviceRegistered.class);
+        final TestProbe<DeviceActor.RecordTemperatureCompleted> recordProbe =
+                testKit.createTestProbe(DeviceActor.RecordTemperatureCompleted.class);
+
+        groupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, "device1", registeredProbe.getRef()));
+        final ActorRef<DeviceActor.Command> device1 = registeredProbe.receiveMessage().device;
+        device1.tell(new DeviceActor.RecordTemperature(UUID.randomUUID(), 1.0, recordProbe.getRef()));
+        recordProbe.receiveMessage();
+        groupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, "device2", registeredProbe.getRef()));
+        final ActorRef<DeviceActor.Command> device2 = registeredProbe.receiveMessage().device;
+
+        groupActor.tell(DeviceGroupActor.InjectFailure.INSTANCE);
+
+        // the devices survived the restart and the group still knows them
+        groupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, "device1", registeredProbe.getRef()));
+        assertEquals(device1, registeredProbe.receiveMessage().device);
+
+        final TestProbe<DeviceGroupActor.RespondAllTemperatures> allTempProbe =
+                testKit.createTestProbe(DeviceGroupActor.RespondAllTemperatures.class);
+        groupActor.tell(new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), groupId, allTempProbe.getRef()));
+
+        final Map<String, TemperatureReading> expectedTemperatures = new HashMap<>();
+        expectedTemperatures.put("device1", new Temperature(1.0));
+        expectedTemperatures.put("device2", TemperatureNotAvailable.INSTANCE);
+        assertEquals(expectedTemperatures, allTempProbe.receiveMessage().responseByDeviceId);
+
+        // and it still watches them
+        final TestProbe<DeviceGroupActor.ReplyDeviceList> deviceListProbe =
+                testKit.createTestProbe(DeviceGroupActor.ReplyDeviceList.class);
+        device2.tell(DeviceActor.Passivate.INSTANCE);
+        registeredProbe.expectTerminated(device2, registeredProbe.getRemainingOrDefault());
+        registeredProbe.awaitAssert(() -> {
+            groupActor.tell(new DeviceGroupActor.RequestDeviceList(UUID.randomUUID(), groupId, deviceListProbe.getRef()));
+            assertEquals(Collections.singleton("device1"), deviceListProbe.receiveMessage().deviceIds);
+            return null;
+        });
+    }
 }
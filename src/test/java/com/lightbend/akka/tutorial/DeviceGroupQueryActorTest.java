@@ -219,4 +219,35 @@ public class DeviceGroupQueryActorTest {
         assertEquals(expectedTemperatures, response.responseByDeviceId);
     }
 
+    @Test
+    public void testCollectPartitionsThroughSubQueries() {
+
+        final UUID queryRequestId = UUID.randomUUID();
+
+        TestProbe<DeviceGroupActor.RespondAllTemperatures> requester =
+                testKit.createTestProbe(DeviceGroupActor.RespondAllTemperatures.class);
+        TestProbe<DeviceActor.RecordTemperatureCompleted> recordProbe =
+                testKit.createTestProbe(DeviceActor.RecordTemperatureCompleted.class);
+        TestProbe<DeviceActor.Command> silentDevice = testKit.createTestProbe(DeviceActor.Command.class);
+
+        Map<String, ActorRef<DeviceActor.Command>> deviceIdToActor = new HashMap<>();
+        Map<String, TemperatureReading> expectedTemperatures = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            final ActorRef<DeviceActor.Command> device = testKit.spawn(DeviceActor.create("group", "device" + i));
+            device.tell(new DeviceActor.RecordTemperature(UUID.randomUUID(), i, recordProbe.getRef()));
+            recordProbe.receiveMessage();
+            deviceIdToActor.put("device" + i, device);
+            expectedTemperatures.put("device" + i, new Temperature(i));
+        }
+        deviceIdToActor.put("silent", silentDevice.getRef());
+        expectedTemperatures.put("silent", DeviceTimedOut.INSTANCE);
+
+        // partitions of at most 2 devices, 2 per level, so the query is a few levels deep
+        testKit.spawn(DeviceGroupQueryActor.create(
+                queryRequestId, deviceIdToActor, requester.getRef(), Duration.ofMillis(500), 2, 2));
+
+        DeviceGroupActor.RespondAllTemperatures response = requester.receiveMessage();
+        assertEquals(queryRequestId, response.requestId);
+        assertEquals(expectedTemperatures, response.responseByDeviceId);
+    }
 }
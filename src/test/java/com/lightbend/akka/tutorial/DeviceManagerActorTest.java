@@ -3,10 +3,14 @@ package com.lightbend.akka.tutorial;
 import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
 import akka.actor.testkit.typed.javadsl.TestProbe;
 import akka.actor.typed.ActorRef;
+import akka.actor.typed.javadsl.Behaviors;
+import com.lightbend.akka.tutorial.model.DeviceTemperature;
 import org.junit.ClassRule;
 import org.junit.Test;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 import java.util.stream.Stream;
 
@@ -66,4 +70,113 @@ public class DeviceManagerActorTest {
         assertEquals(Stream.of(device1Id, device2Id).collect(toSet()), deviceList.deviceIds);
     }
 
+    @Test
+    public void testServesAllTemperaturesFromCacheWithinStaleness() {
+
+        final String groupId = "group";
+
+        final ActorRef<DeviceManagerActor.Command> deviceManagerActor =
+                testKit.spawn(DeviceManagerActor.create(defaultTemperaturesQueryDuration, Duration.ofMinutes(1), 100));
+
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> recordedProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+        deviceManagerActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId,
+                new String[]{"device1"}, new double[]{1.0}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+
+        final TestProbe<DeviceGroupActor.RespondAllTemperatures> allTempProbe =
+                testKit.createTestProbe(DeviceGroupActor.RespondAllTemperatures.class);
+
+        final UUID firstRequestId = UUID.randomUUID();
+        deviceManagerActor.tell(new DeviceGroupActor.RequestAllTemperatures(firstRequestId, groupId, allTempProbe.getRef()));
+        final DeviceGroupActor.RespondAllTemperatures first = allTempProbe.receiveMessage();
+        assertEquals(firstRequestId, first.requestId);
+
+        // a newer reading is not visible until the cached result is older than the staleness bound
+        deviceManagerActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId,
+                new String[]{"device1"}, new double[]{2.0}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+
+        final UUID secondRequestId = UUID.randomUUID();
+        deviceManagerActor.tell(new DeviceGroupActor.RequestAllTemperatures(secondRequestId, groupId, allTempProbe.getRef()));
+        final DeviceGroupActor.RespondAllTemperatures second = allTempProbe.receiveMessage();
+        assertEquals(secondRequestId, second.requestId);
+        assertEquals(first.responseByDeviceId, second.responseByDeviceId);
+
+        final TestProbe<DeviceManagerActor.QueryCacheStats> statsProbe =
+                testKit.createTestProbe(DeviceManagerActor.QueryCacheStats.class);
+        deviceManagerActor.tell(new DeviceManagerActor.RequestQueryCacheStats(statsProbe.getRef()));
+        final DeviceManagerActor.QueryCacheStats stats = statsProbe.receiveMessage();
+        assertEquals(1, stats.hits);
+        assertEquals(1, stats.misses);
+        assertEquals(1, stats.size);
+    }
+
+    @Test
+    public void testLeaveCachedQueryUnansweredWhenGroupFails() {
+
+        final String groupId = "group";
+
+        // the group stops with the query in flight, so the manager's ask of it times out
+        final ActorRef<DeviceManagerActor.Command> deviceManagerActor = testKit.spawn(DeviceManagerActor.create(
+                Duration.ofMillis(100), Duration.ofMinutes(1), 100, id -> Behaviors.receive(DeviceGroupActor.Command.class)
+                        .onMessage(DeviceManagerActor.RegisterDevice.class, message -> Behaviors.same())
+                        .onMessage(DeviceGroupActor.RequestAllTemperatures.class, message -> Behaviors.stopped())
+                        .build()));
+        deviceManagerActor.tell(new DeviceManagerActor.RegisterDevice(groupId, "device1",
+                testKit.<DeviceManagerActor.DeviceRegistered>createTestProbe().getRef()));
+
+        final TestProbe<DeviceGroupActor.RespondAllTemperatures> allTempProbe =
+                testKit.createTestProbe(DeviceGroupActor.RespondAllTemperatures.class);
+        deviceManagerActor.tell(new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), groupId, allTempProbe.getRef()));
+        final TestProbe<DeviceManagerActor.QueryCacheStats> statsProbe =
+                testKit.createTestProbe(DeviceManagerActor.QueryCacheStats.class);
+        deviceManagerActor.tell(new DeviceManagerActor.RequestQueryCacheStats(statsProbe.getRef()));
+        assertEquals(1, statsProbe.receiveMessage().misses);
+
+        // the ask times out 1s after the group query would have
+        allTempProbe.expectNoMessage(Duration.ofMillis(1500));
+    }
+
+    @Test
+    public void testTopTemperaturesAcrossGroups() {
+
+        final ActorRef<DeviceManagerActor.Command> deviceManagerActor = testKit.spawn(DeviceManagerActor.create(defaultTemperaturesQueryDuration));
+
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> recordedProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+
+        deviceManagerActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), "group1",
+                new String[]{"device1", "device2", "device3"}, new double[]{10.0, 30.0, 20.0}, recordedProbe.getRef()));
+        deviceManagerActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), "group2",
+                new String[]{"device1", "device2"}, new double[]{25.0, 5.0}, recordedProbe.getRef()));
+        recordedProbe.receiveSeveralMessages(2);
+
+        final TestProbe<DeviceManagerActor.RespondTopTemperatures> topProbe =
+                testKit.createTestProbe(DeviceManagerActor.RespondTopTemperatures.class);
+
+        final List<DeviceTemperature> expectedTop = Arrays.asList(
+                new DeviceTemperature("group1", "device2", 30.0),
+                new DeviceTemperature("group2", "device1", 25.0),
+                new DeviceTemperature("group1", "device3", 20.0));
+
+        // groups publish their rankings asynchronously
+        topProbe.awaitAssert(() -> {
+            deviceManagerActor.tell(new DeviceManagerActor.RequestTopTemperatures(UUID.randomUUID(), 3, topProbe.getRef()));
+            assertEquals(expectedTop, topProbe.receiveMessage().top);
+            return null;
+        });
+
+        // the hottest device cools down and leaves the top
+        deviceManagerActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), "group1",
+                new String[]{"device2"}, new double[]{1.0}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+
+        topProbe.awaitAssert(() -> {
+            deviceManagerActor.tell(new DeviceManagerActor.RequestTopTemperatures(UUID.randomUUID(), 2, topProbe.getRef()));
+            assertEquals(expectedTop.subList(1, 3), topProbe.receiveMessage().top);
+            return null;
+        });
+    }
+
 }
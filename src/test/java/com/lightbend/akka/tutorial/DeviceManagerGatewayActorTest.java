@@ -0,0 +1,66 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import com.lightbend.akka.tutorial.model.TemperatureNotAvailable;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DeviceManagerGatewayActorTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource();
+
+    private static final Duration defaultTemperaturesQueryDuration = Duration.ofMinutes(3);
+
+    @Test
+    public void testCorrelatesPipelinedRequests() throws Exception {
+
+        final ActorRef<DeviceManagerActor.Command> deviceManagerActor = testKit.spawn(DeviceManagerActor.create(defaultTemperaturesQueryDuration));
+        final DeviceManagerClient client =
+                DeviceManagerClient.create(testKit.system(), deviceManagerActor, "pipelined-gateway", Duration.ofSeconds(3));
+
+        final CompletableFuture<DeviceManagerActor.DeviceRegistered> device1 = client.registerDevice("group", "device1").toCompletableFuture();
+        final CompletableFuture<DeviceManagerActor.DeviceRegistered> device2 = client.registerDevice("group", "device2").toCompletableFuture();
+        final CompletableFuture<DeviceManagerActor.DeviceRegistered> device1Again = client.registerDevice("group", "device1").toCompletableFuture();
+        final CompletableFuture<DeviceGroupActor.ReplyDeviceList> devices = client.requestDeviceList("group").toCompletableFuture();
+        final CompletableFuture<DeviceGroupActor.RespondAllTemperatures> temperatures = client.requestAllTemperatures("group").toCompletableFuture();
+
+        assertEquals("device1", device1.get(3, TimeUnit.SECONDS).deviceId);
+        assertEquals("device2", device2.get(3, TimeUnit.SECONDS).deviceId);
+        assertEquals(device1.get().device, device1Again.get(3, TimeUnit.SECONDS).device);
+        assertEquals(Stream.of("device1", "device2").collect(toSet()), devices.get(3, TimeUnit.SECONDS).deviceIds);
+        assertEquals(TemperatureNotAvailable.INSTANCE, temperatures.get(3, TimeUnit.SECONDS).responseByDeviceId.get("device2"));
+    }
+
+    @Test
+    public void testFailsRequestsWithoutReply() throws Exception {
+
+        final TestProbe<DeviceManagerActor.Command> deviceManagerProbe = testKit.createTestProbe(DeviceManagerActor.Command.class);
+        final DeviceManagerClient client =
+                DeviceManagerClient.create(testKit.system(), deviceManagerProbe.getRef(), "silent-gateway", Duration.ofMillis(200));
+
+        final CompletableFuture<DeviceGroupActor.ReplyDeviceList> devices = client.requestDeviceList("group").toCompletableFuture();
+        deviceManagerProbe.expectMessageClass(DeviceGroupActor.RequestDeviceList.class);
+
+        try {
+            devices.get(3, TimeUnit.SECONDS);
+            fail("expected the request to time out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.javadsl.Adapter;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializers;
+import com.lightbend.akka.tutorial.model.AlertRule;
+import com.lightbend.akka.tutorial.model.DeviceNotAvailable;
+import com.lightbend.akka.tutorial.model.DeviceTimedOut;
+import com.lightbend.akka.tutorial.model.Temperature;
+import com.lightbend.akka.tutorial.model.TemperatureNotAvailable;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+import com.lightbend.akka.tutorial.util.Deadlines;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DeviceProtocolSerializerTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource();
+
+    private static final Serialization serialization = SerializationExtension.get(Adapter.toClassic(testKit.system()));
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(final T message) {
+        final akka.serialization.Serializer serializer = serialization.findSerializerFor(message);
+        assertEquals(DeviceProtocolSerializer.IDENTIFIER, serializer.identifier());
+
+        final byte[] bytes = serializer.toBinary(message);
+        return (T) serialization.deserialize(bytes, serializer.identifier(), Serializers.manifestFor(serializer, message)).get();
+    }
+
+    @Test
+    public void testRecordTemperatureRoundTrip() {
+
+        final TestProbe<DeviceActor.RecordTemperatureCompleted> probe = testKit.createTestProbe(DeviceActor.RecordTemperatureCompleted.class);
+        final DeviceActor.RecordTemperature message = new DeviceActor.RecordTemperature(UUID.randomUUID(), -12.75, probe.getRef());
+
+        final DeviceActor.RecordTemperature result = roundTrip(message);
+
+        assertEquals(message.requestId, result.requestId);
+        assertEquals(message.value, result.value, 0.0);
+        assertEquals(message.replyTo, result.replyTo);
+    }
+
+    @Test
+    public void testRespondTemperatureRoundTrip() {
+
+        final DeviceActor.RespondTemperature withValue =
+                roundTrip(new DeviceActor.RespondTemperature(UUID.randomUUID(), "device-\u00fc", Optional.of(21.5)));
+        assertEquals("device-\u00fc", withValue.deviceId);
+        assertEquals(Optional.of(21.5), withValue.value);
+
+        final DeviceActor.RespondTemperature withoutValue =
+                roundTrip(new DeviceActor.RespondTemperature(UUID.randomUUID(), "device", Optional.empty()));
+        assertEquals(Optional.empty(), withoutValue.value);
+    }
+
+    @Test
+    public void testQueryDeadlinesRoundTrip() {
+
+        final TestProbe<DeviceActor.RespondTemperature> readProbe = testKit.createTestProbe(DeviceActor.RespondTemperature.class);
+        final DeviceActor.ReadTemperature read = roundTrip(new DeviceActor.ReadTemperature(UUID.randomUUID(), 1234L, readProbe.getRef()));
+        assertEquals(1234L, read.deadlineMillis);
+        assertEquals(readProbe.getRef(), read.replyTo);
+
+        final TestProbe<DeviceGroupActor.RespondAllTemperatures> probe = testKit.createTestProbe(DeviceGroupActor.RespondAllTemperatures.class);
+        final DeviceGroupActor.RequestAllTemperatures request = roundTrip(new DeviceGroupActor.RequestAllTemperatures(
+                UUID.randomUUID(), "group", Collections.singleton("floor=1"), 5678L, probe.getRef()));
+        assertEquals("group", request.groupId);
+        assertEquals(Collections.singleton("floor=1"), request.tags);
+        assertEquals(5678L, request.deadlineMillis);
+        assertEquals(probe.getRef(), request.replyTo);
+        assertEquals(Deadlines.NONE,
+                roundTrip(new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), "group", probe.getRef())).deadlineMillis);
+    }
+
+    @Test
+    public void testRespondHistoryRoundTrip() {
+
+        final DeviceActor.RespondHistory message = new DeviceActor.RespondHistory(UUID.randomUUID(), "device",
+                new long[]{1000, 2000, 3000}, new double[]{20.5, Double.NaN, -3.25});
+        final DeviceActor.RespondHistory result = roundTrip(message);
+
+        assertEquals(message.requestId, result.requestId);
+        assertEquals(message.deviceId, result.deviceId);
+        assertArrayEquals(message.timestamps, result.timestamps);
+        assertArrayEquals(message.values, result.values, 0.0);
+    }
+
+    @Test
+    public void testAlertMessagesRoundTrip() {
+
+        final TestProbe<DeviceGroupActor.DeviceAlert> probe = testKit.createTestProbe(DeviceGroupActor.DeviceAlert.class);
+        final AlertRule rule = AlertRule.above("hot", 30.0).sustainedFor(Duration.ofSeconds(5))
+                .tagged(new LinkedHashSet<>(Arrays.asList("floor=1", "model=a")));
+        final DeviceGroupActor.AddAlertRule result = roundTrip(new DeviceGroupActor.AddAlertRule("group", rule, probe.getRef()));
+
+        assertEquals("group", result.groupId);
+        assertEquals(rule, result.rule);
+        assertEquals(probe.getRef(), result.listener);
+
+        final DeviceGroupActor.DeviceAlert alert = new DeviceGroupActor.DeviceAlert("group", "device", "hot", true, 31.5);
+        assertEquals(alert, roundTrip(alert));
+    }
+
+    @Test
+    public void testRespondAllTemperaturesRoundTrip() {
+
+        final Map<String, TemperatureReading> readings = new HashMap<>();
+        readings.put("device1", new Temperature(1.0));
+        readings.put("device2", TemperatureNotAvailable.INSTANCE);
+        readings.put("device3", DeviceNotAvailable.INSTANCE);
+        readings.put("device4", DeviceTimedOut.INSTANCE);
+
+        final DeviceGroupActor.RespondAllTemperatures message = new DeviceGroupActor.RespondAllTemperatures(UUID.randomUUID(), readings);
+        final DeviceGroupActor.RespondAllTemperatures result = roundTrip(message);
+
+        assertEquals(message.requestId, result.requestId);
+        assertEquals(readings, result.responseByDeviceId);
+    }
+
+    @Test
+    public void testTemperatureReadingsRoundTrip() {
+
+        assertEquals(new Temperature(Double.NaN), roundTrip(new Temperature(Double.NaN)));
+        assertEquals(TemperatureNotAvailable.INSTANCE, roundTrip(TemperatureNotAvailable.INSTANCE));
+        assertEquals(DeviceNotAvailable.INSTANCE, roundTrip(DeviceNotAvailable.INSTANCE));
+        assertEquals(DeviceTimedOut.INSTANCE, roundTrip(DeviceTimedOut.INSTANCE));
+    }
+
+    @Test
+    public void testDeviceListRoundTrip() {
+
+        final TestProbe<DeviceGroupActor.ReplyDeviceList> probe = testKit.createTestProbe(DeviceGroupActor.ReplyDeviceList.class);
+
+        final DeviceGroupActor.RequestDeviceList request = roundTrip(
+                new DeviceGroupActor.RequestDeviceList(UUID.randomUUID(), "group", Optional.of("device2"), 500, probe.getRef()));
+        assertEquals("group", request.groupId);
+        assertEquals(Optional.of("device2"), request.afterDeviceId);
+        assertEquals(500, request.limit);
+        assertEquals(probe.getRef(), request.replyTo);
+
+        final DeviceGroupActor.ReplyDeviceList reply = roundTrip(new DeviceGroupActor.ReplyDeviceList(UUID.randomUUID(),
+                new LinkedHashSet<>(Arrays.asList("device3", "device4")), Optional.of("device4")));
+        assertEquals(Arrays.asList("device3", "device4"), Arrays.asList(reply.deviceIds.toArray()));
+        assertEquals(Optional.of("device4"), reply.nextCursor);
+    }
+
+    @Test
+    public void testRecordTemperaturesRoundTrip() {
+
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> probe = testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+
+        final DeviceGroupActor.RecordTemperatures result = roundTrip(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(),
+                "group", new String[]{"device1", "device2"}, new double[]{1.5, -2.5}, probe.getRef()));
+
+        assertEquals(Arrays.asList("device1", "device2"), Arrays.asList(result.deviceIds));
+        assertEquals(1.5, result.values[0], 0.0);
+        assertEquals(-2.5, result.values[1], 0.0);
+        assertEquals(probe.getRef(), result.replyTo);
+
+        assertEquals(2, roundTrip(new DeviceGroupActor.TemperaturesRecorded(UUID.randomUUID(), 2)).count);
+    }
+
+    @Test
+    public void testRegistrationRoundTrip() {
+
+        final TestProbe<DeviceManagerActor.DeviceRegistered> probe = testKit.createTestProbe(DeviceManagerActor.DeviceRegistered.class);
+
+        final DeviceManagerActor.RegisterDevice register = roundTrip(new DeviceManagerActor.RegisterDevice("group", "device", probe.getRef()));
+        assertEquals("group", register.groupId);
+        assertEquals("device", register.deviceId);
+        assertEquals(probe.getRef(), register.replyTo);
+
+        final Set<String> tags = new LinkedHashSet<>(Arrays.asList("floor=3", "model=t1000"));
+        assertEquals(tags, roundTrip(new DeviceManagerActor.RegisterDevice("group", "device", tags, probe.getRef())).tags);
+
+        final TestProbe<DeviceActor.Command> deviceProbe = testKit.createTestProbe(DeviceActor.Command.class);
+        final DeviceManagerActor.DeviceRegistered registered =
+                roundTrip(new DeviceManagerActor.DeviceRegistered("group", "device", deviceProbe.getRef()));
+        assertEquals("group", registered.groupId);
+        assertEquals("device", registered.deviceId);
+        assertEquals(deviceProbe.getRef(), registered.device);
+    }
+
+    @Test
+    public void testSubscriptionRoundTrip() {
+
+        final TestProbe<DeviceGroupActor.TemperatureChanges> probe = testKit.createTestProbe(DeviceGroupActor.TemperatureChanges.class);
+
+        final DeviceGroupActor.SubscribeTemperatures subscribe =
+                roundTrip(new DeviceGroupActor.SubscribeTemperatures("group", probe.getRef(), Duration.ofMillis(250)));
+        assertEquals("group", subscribe.groupId);
+        assertEquals(probe.getRef(), subscribe.subscriber);
+        assertEquals(Duration.ofMillis(250), subscribe.minEmitInterval);
+
+        final DeviceGroupActor.UnsubscribeTemperatures unsubscribe =
+                roundTrip(new DeviceGroupActor.UnsubscribeTemperatures("group", probe.getRef()));
+        assertEquals("group", unsubscribe.groupId);
+        assertEquals(probe.getRef(), unsubscribe.subscriber);
+
+        final Map<String, TemperatureReading> changesByDeviceId = new HashMap<>();
+        changesByDeviceId.put("device1", new Temperature(1.5));
+        changesByDeviceId.put("device2", DeviceNotAvailable.INSTANCE);
+        final DeviceGroupActor.TemperatureChanges changes =
+                roundTrip(new DeviceGroupActor.TemperatureChanges("group", changesByDeviceId));
+        assertEquals("group", changes.groupId);
+        assertEquals(changesByDeviceId, changes.changesByDeviceId);
+    }
+
+    @Test
+    public void testTemperaturesSinceRoundTrip() {
+
+        final TestProbe<DeviceGroupActor.TemperaturesSinceResponse> probe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesSinceResponse.class);
+
+        final DeviceGroupActor.RequestTemperaturesSince request =
+                roundTrip(new DeviceGroupActor.RequestTemperaturesSince(UUID.randomUUID(), "group", 42L, probe.getRef()));
+        assertEquals("group", request.groupId);
+        assertEquals(42L, request.version);
+        assertEquals(probe.getRef(), request.replyTo);
+
+        final Map<String, TemperatureReading> changesByDeviceId = new HashMap<>();
+        changesByDeviceId.put("device1", new Temperature(1.5));
+        final DeviceGroupActor.RespondTemperaturesSince response =
+                roundTrip(new DeviceGroupActor.RespondTemperaturesSince(UUID.randomUUID(), 43L, true, changesByDeviceId));
+        assertEquals(43L, response.version);
+        assertEquals(true, response.fullSnapshot);
+        assertEquals(changesByDeviceId, response.changesByDeviceId);
+
+        final DeviceGroupActor.TemperaturesNotModified notModified =
+                roundTrip(new DeviceGroupActor.TemperaturesNotModified(UUID.randomUUID(), 43L));
+        assertEquals(43L, notModified.version);
+    }
+}
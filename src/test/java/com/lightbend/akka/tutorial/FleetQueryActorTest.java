@@ -0,0 +1,82 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import com.lightbend.akka.tutorial.model.Temperature;
+import com.lightbend.akka.tutorial.model.TemperatureAggregate;
+import com.lightbend.akka.tutorial.model.TemperatureNotAvailable;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FleetQueryActorTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource();
+
+    @Test
+    public void testMergesGroupsThatAnswerBeforeTheDeadline() {
+
+        final UUID requestId = UUID.randomUUID();
+
+        final TestProbe<DeviceManagerActor.RespondFleetTemperatures> requester =
+                testKit.createTestProbe(DeviceManagerActor.RespondFleetTemperatures.class);
+        final TestProbe<DeviceGroupActor.Command> fastGroup = testKit.createTestProbe(DeviceGroupActor.Command.class);
+        final TestProbe<DeviceGroupActor.Command> slowGroup = testKit.createTestProbe(DeviceGroupActor.Command.class);
+
+        final Map<String, ActorRef<DeviceGroupActor.Command>> groupById = new HashMap<>();
+        groupById.put("fast", fastGroup.getRef());
+        groupById.put("slow", slowGroup.getRef());
+
+        testKit.spawn(FleetQueryActor.create(new DeviceManagerActor.RequestFleetTemperatures(requestId,
+                Collections.emptySet(), Duration.ofMillis(500), false, requester.getRef()), groupById));
+
+        final DeviceGroupActor.RequestAllTemperatures request =
+                fastGroup.expectMessageClass(DeviceGroupActor.RequestAllTemperatures.class);
+        slowGroup.expectMessageClass(DeviceGroupActor.RequestAllTemperatures.class);
+
+        final Map<String, TemperatureReading> readings = new HashMap<>();
+        readings.put("device1", new Temperature(1.0));
+        readings.put("device2", new Temperature(3.0));
+        readings.put("device3", TemperatureNotAvailable.INSTANCE);
+        request.replyTo.tell(new DeviceGroupActor.RespondAllTemperatures(request.requestId, readings));
+
+        final DeviceManagerActor.RespondFleetTemperatures response = requester.receiveMessage();
+        assertEquals(requestId, response.requestId);
+        assertEquals(Collections.singletonMap("fast", readings), response.readingsByGroupId);
+        assertEquals(Collections.singletonMap("fast", new TemperatureAggregate(3, 2, 1.0, 3.0, 2.0)), response.aggregateByGroupId);
+        assertEquals(Collections.singleton("slow"), response.timedOutGroupIds);
+    }
+
+    @Test
+    public void testReturnsAggregatesOnlyWhenAsked() {
+
+        final TestProbe<DeviceManagerActor.RespondFleetTemperatures> requester =
+                testKit.createTestProbe(DeviceManagerActor.RespondFleetTemperatures.class);
+        final TestProbe<DeviceGroupActor.Command> group = testKit.createTestProbe(DeviceGroupActor.Command.class);
+
+        testKit.spawn(FleetQueryActor.create(new DeviceManagerActor.RequestFleetTemperatures(UUID.randomUUID(),
+                Collections.emptySet(), Duration.ofSeconds(3), true, requester.getRef()),
+                Collections.singletonMap("group", group.getRef())));
+
+        final DeviceGroupActor.RequestAllTemperatures request =
+                group.expectMessageClass(DeviceGroupActor.RequestAllTemperatures.class);
+        request.replyTo.tell(new DeviceGroupActor.RespondAllTemperatures(request.requestId,
+                Collections.singletonMap("device", new Temperature(5.0))));
+
+        final DeviceManagerActor.RespondFleetTemperatures response = requester.receiveMessage();
+        assertTrue(response.readingsByGroupId.isEmpty());
+        assertEquals(Collections.singletonMap("group", new TemperatureAggregate(1, 1, 5.0, 5.0, 5.0)), response.aggregateByGroupId);
+        assertTrue(response.timedOutGroupIds.isEmpty());
+    }
+}
@@ -0,0 +1,125 @@
+package com.lightbend.akka.tutorial;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final Duration blockDuration = Duration.ofSeconds(10);
+    private static final Duration retention = Duration.ofDays(36_500);
+
+    @Test
+    public void testReadAcrossMemoryPendingBlocksAndSegments() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        final long start = System.currentTimeMillis();
+        final long[] timestamps = LongStream.range(0, 100).map(i -> start + i * 1000).toArray();
+
+        try (HistoryStore store = HistoryStore.open(directory, Long.MAX_VALUE, Duration.ofHours(1), retention)) {
+            final DeviceHistory device1 = new DeviceHistory(blockDuration, retention, Optional.of(store), "group/device1");
+            final DeviceHistory device2 = new DeviceHistory(blockDuration, retention, Optional.of(store), "group/device2");
+            for (int i = 0; i < 50; i++) {
+                device1.record(timestamps[i], i);
+                device2.record(timestamps[i], -i);
+            }
+            // the first 40 readings of each device are in a segment, the next blocks pending
+            store.flush();
+            for (int i = 50; i < 100; i++) {
+                device1.record(timestamps[i], i);
+                device2.record(timestamps[i], -i);
+            }
+
+            assertEquals(1, store.segmentCount());
+            assertTrue(store.pendingBytes() > 0);
+            assertTrue(device1.sampleCount() <= 10);
+            assertReadings(device1, timestamps, 0, 100, 1);
+            assertReadings(device2, timestamps, 0, 100, -1);
+            assertReadings(device1, timestamps, 35, 75, 1);
+            assertReadings(device1, timestamps, 95, 100, 1);
+        }
+
+        // a device started again finds the history of its previous incarnation
+        try (HistoryStore store = HistoryStore.open(directory, Long.MAX_VALUE, Duration.ofHours(1), retention)) {
+            assertEquals(2, store.segmentCount());
+            final DeviceHistory device1 = new DeviceHistory(blockDuration, retention, Optional.of(store), "group/device1");
+            assertReadings(device1, timestamps, 0, 90, 1);
+            assertEquals(90, device1.read(Long.MIN_VALUE, Long.MAX_VALUE).values().length);
+        }
+    }
+
+    @Test
+    public void testWriteSegmentOnceEnoughBlocksArePending() throws Exception {
+        final long start = System.currentTimeMillis();
+
+        try (HistoryStore store = HistoryStore.open(folder.getRoot().toPath(), 1024, Duration.ofHours(1), retention)) {
+            final List<DeviceHistory> devices = new ArrayList<>();
+            for (int d = 0; d < 20; d++) {
+                devices.add(new DeviceHistory(blockDuration, retention, Optional.of(store), "group/device" + d));
+            }
+            for (int i = 0; i < 1000; i++) {
+                for (final DeviceHistory device : devices) {
+                    device.record(start + i * 1000L, i % 7);
+                }
+            }
+
+            final long deadline = System.nanoTime() + Duration.ofSeconds(3).toNanos();
+            while (store.segmentCount() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(store.segmentCount() > 0);
+            for (final DeviceHistory device : devices) {
+                assertEquals(1000, device.read(Long.MIN_VALUE, Long.MAX_VALUE).values().length);
+            }
+        }
+    }
+
+    @Test
+    public void testDropSegmentsPastRetention() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+
+        try (HistoryStore store = HistoryStore.open(directory, Long.MAX_VALUE, Duration.ofHours(1), retention)) {
+            final DeviceHistory device = new DeviceHistory(blockDuration, retention, Optional.of(store), "group/device");
+            for (int i = 0; i < 30; i++) {
+                device.record(i * 1000L, i);
+            }
+            store.flush();
+            assertEquals(1, store.segmentCount());
+        }
+
+        // every reading of 1970 is past a retention of a day
+        try (HistoryStore store = HistoryStore.open(directory, Long.MAX_VALUE, Duration.ofHours(1), Duration.ofDays(1))) {
+            store.flush();
+            assertEquals(0, store.segmentCount());
+            assertEquals(0, directory.toFile().list().length);
+        }
+    }
+
+    private static void assertReadings(final DeviceHistory history, final long[] timestamps, final int from,
+                                       final int to, final int sign) {
+        final long toMillis = to < timestamps.length ? timestamps[to] : timestamps[timestamps.length - 1] + 1;
+        final DeviceHistory.Samples samples = history.read(timestamps[from], toMillis);
+        final List<Double> expected = LongStream.range(from, to).mapToObj(i -> (double) (sign * i))
+                .collect(Collectors.toList());
+        final List<Double> values = new ArrayList<>();
+        for (final double value : samples.values()) {
+            values.add(value);
+        }
+        assertEquals(expected, values);
+        assertArrayEquals(LongStream.range(from, to).map(i -> timestamps[(int) i]).toArray(), samples.timestamps());
+    }
+}
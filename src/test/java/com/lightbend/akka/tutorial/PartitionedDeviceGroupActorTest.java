@@ -0,0 +1,290 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.testkit.typed.javadsl.FishingOutcomes;
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import com.lightbend.akka.tutorial.model.DeviceTemperature;
+import com.lightbend.akka.tutorial.model.DeviceTimedOut;
+import com.lightbend.akka.tutorial.model.Temperature;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+import com.typesafe.config.ConfigFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionedDeviceGroupActorTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource();
+
+    private static final Duration defaultTemperaturesQueryDuration = Duration.ofMinutes(3);
+
+    @Test
+    public void testMergeDeviceListsAndTemperaturesAcrossPartitions() {
+
+        final String groupId = "group";
+        final List<String> deviceIds = IntStream.range(0, 7).mapToObj(i -> "device" + i).collect(Collectors.toList());
+
+        // two devices per partition, so the seven devices are spread over four partitions
+        final ActorRef<DeviceGroupActor.Command> groupActor = testKit.spawn(PartitionedDeviceGroupActor.create(
+                groupId, defaultTemperaturesQueryDuration, Optional.empty(), 2, 4));
+
+        final TestProbe<DeviceManagerActor.DeviceRegistered> registeredProbe =
+                testKit.createTestProbe(DeviceManagerActor.DeviceRegistered.class);
+        deviceIds.forEach(deviceId -> {
+            groupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, deviceId, registeredProbe.getRef()));
+            assertEquals(deviceId, registeredProbe.receiveMessage().deviceId);
+        });
+
+        final TestProbe<DeviceGroupActor.ReplyDeviceList> deviceListProbe =
+                testKit.createTestProbe(DeviceGroupActor.ReplyDeviceList.class);
+        final UUID listRequestId = UUID.randomUUID();
+        groupActor.tell(new DeviceGroupActor.RequestDeviceList(listRequestId, groupId, deviceListProbe.getRef()));
+        final DeviceGroupActor.ReplyDeviceList deviceList = deviceListProbe.receiveMessage();
+        assertEquals(listRequestId, deviceList.requestId);
+        assertEquals(deviceIds.stream().collect(toSet()), deviceList.deviceIds);
+        assertEquals(Optional.empty(), deviceList.nextCursor);
+
+        final List<String> paged = new ArrayList<>();
+        Optional<String> cursor = Optional.empty();
+        do {
+            groupActor.tell(new DeviceGroupActor.RequestDeviceList(UUID.randomUUID(), groupId, cursor, 3,
+                    deviceListProbe.getRef()));
+            final DeviceGroupActor.ReplyDeviceList page = deviceListProbe.receiveMessage();
+            paged.addAll(page.deviceIds);
+            cursor = page.nextCursor;
+        } while (cursor.isPresent());
+        assertEquals(deviceIds, paged);
+
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> recordedProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+        final UUID recordRequestId = UUID.randomUUID();
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(recordRequestId, groupId,
+                deviceIds.toArray(new String[0]), IntStream.range(0, 7).asDoubleStream().toArray(), recordedProbe.getRef()));
+        final DeviceGroupActor.TemperaturesRecorded recorded = recordedProbe.receiveMessage();
+        assertEquals(recordRequestId, recorded.requestId);
+        assertEquals(7, recorded.count);
+
+        final TestProbe<DeviceGroupActor.RespondAllTemperatures> allTempProbe =
+                testKit.createTestProbe(DeviceGroupActor.RespondAllTemperatures.class);
+        final UUID queryRequestId = UUID.randomUUID();
+        groupActor.tell(new DeviceGroupActor.RequestAllTemperatures(queryRequestId, groupId, allTempProbe.getRef()));
+
+        final Map<String, TemperatureReading> expectedTemperatures = new HashMap<>();
+        for (int i = 0; i < deviceIds.size(); i++) {
+            expectedTemperatures.put(deviceIds.get(i), new Temperature(i));
+        }
+        final DeviceGroupActor.RespondAllTemperatures response = allTempProbe.receiveMessage();
+        assertEquals(queryRequestId, response.requestId);
+        assertEquals(expectedTemperatures, response.responseByDeviceId);
+    }
+
+    @Test
+    public void testRegisterStoppedDeviceAgainAfterSplit() {
+
+        final String groupId = "group";
+
+        final ActorRef<DeviceGroupActor.Command> groupActor = testKit.spawn(PartitionedDeviceGroupActor.create(
+                groupId, defaultTemperaturesQueryDuration, Optional.empty(), 1, 4));
+
+        final TestProbe<DeviceManagerActor.DeviceRegistered> registeredProbe =
+                testKit.createTestProbe(DeviceManagerActor.DeviceRegistered.class);
+        Stream.of("device1", "device2", "device3").forEach(deviceId -> {
+            groupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, deviceId, registeredProbe.getRef()));
+            registeredProbe.receiveMessage();
+        });
+        groupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, "device2", registeredProbe.getRef()));
+        final ActorRef<DeviceActor.Command> device2 = registeredProbe.receiveMessage().device;
+
+        device2.tell(DeviceActor.Passivate.INSTANCE);
+        registeredProbe.expectTerminated(device2, registeredProbe.getRemainingOrDefault());
+
+        final TestProbe<DeviceGroupActor.ReplyDeviceList> deviceListProbe =
+                testKit.createTestProbe(DeviceGroupActor.ReplyDeviceList.class);
+        registeredProbe.awaitAssert(() -> {
+            groupActor.tell(new DeviceGroupActor.RequestDeviceList(UUID.randomUUID(), groupId, deviceListProbe.getRef()));
+            assertEquals(Stream.of("device1", "device3").collect(toSet()), deviceListProbe.receiveMessage().deviceIds);
+            return null;
+        });
+
+        groupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, "device2", registeredProbe.getRef()));
+        assertNotEquals(device2, registeredProbe.receiveMessage().device);
+
+        groupActor.tell(new DeviceGroupActor.RequestDeviceList(UUID.randomUUID(), groupId, deviceListProbe.getRef()));
+        assertEquals(Stream.of("device1", "device2", "device3").collect(toSet()),
+                deviceListProbe.receiveMessage().deviceIds);
+    }
+
+    @Test
+    public void testMergeTopTemperaturesOfPartitions() {
+
+        final String groupId = "group";
+        final TestProbe<DeviceManagerActor.GroupTopTemperatures> topProbe =
+                testKit.createTestProbe(DeviceManagerActor.GroupTopTemperatures.class);
+
+        final ActorRef<DeviceGroupActor.Command> groupActor = testKit.spawn(PartitionedDeviceGroupActor.create(
+                groupId, defaultTemperaturesQueryDuration, Optional.of(topProbe.getRef()), 1, 4));
+
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> recordedProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId,
+                new String[]{"device1", "device2", "device3"}, new double[]{20.0, 30.0, 25.0}, recordedProbe.getRef()));
+        assertEquals(3, recordedProbe.receiveMessage().count);
+
+        final List<DeviceTemperature> expectedTop = Arrays.asList(
+                new DeviceTemperature(groupId, "device2", 30.0),
+                new DeviceTemperature(groupId, "device3", 25.0),
+                new DeviceTemperature(groupId, "device1", 20.0));
+        topProbe.fishForMessage(Duration.ofSeconds(3), message -> expectedTop.equals(message.top)
+                ? FishingOutcomes.complete()
+                : FishingOutcomes.continueAndIgnore());
+    }
+
+    @Test
+    public void testAcknowledgeRetriedSplitBatchWithoutRecordingItAgain() {
+
+        final String groupId = "group";
+        // one device per partition, so every batch over several devices is split
+        final ActorRef<DeviceGroupActor.Command> groupActor = testKit.spawn(PartitionedDeviceGroupActor.create(
+                groupId, defaultTemperaturesQueryDuration, Optional.empty(), 1, 4));
+        final RecordDeduplication dedup = RecordDeduplication.get(testKit.system());
+        final long duplicatesBefore = dedup.groupDuplicates();
+
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> recordedProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+        final UUID retriedRequestId = UUID.randomUUID();
+        final String[] deviceIds = {"device1", "device2"};
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(retriedRequestId, groupId, deviceIds,
+                new double[]{1.0, 2.0}, recordedProbe.getRef()));
+        assertEquals(2, recordedProbe.receiveMessage().count);
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId, deviceIds,
+                new double[]{3.0, 4.0}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(retriedRequestId, groupId, deviceIds,
+                new double[]{1.0, 2.0}, recordedProbe.getRef()));
+        final DeviceGroupActor.TemperaturesRecorded recorded = recordedProbe.receiveMessage();
+        assertEquals(retriedRequestId, recorded.requestId);
+        assertEquals(2, recorded.count);
+        assertEquals(duplicatesBefore + 1, dedup.groupDuplicates());
+
+        final TestProbe<DeviceGroupActor.RespondAllTemperatures> allTempProbe =
+                testKit.createTestProbe(DeviceGroupActor.RespondAllTemperatures.class);
+        groupActor.tell(new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), groupId, allTempProbe.getRef()));
+        final Map<String, TemperatureReading> expectedTemperatures = new HashMap<>();
+        expectedTemperatures.put("device1", new Temperature(3.0));
+        expectedTemperatures.put("device2", new Temperature(4.0));
+        assertEquals(expectedTemperatures, allTempProbe.receiveMessage().responseByDeviceId);
+    }
+
+    @Test
+    public void testRouteSplitBatchAgainWhenPartitionDidNotAnswerInTime() {
+
+        // a failed device stays down, so its partition never acknowledges the readings routed to it
+        final ActorTestKit failingKit = ActorTestKit.create(
+                ConfigFactory.parseString("iot.supervision { min-backoff = 1m, max-backoff = 1m }"));
+        try {
+            final String groupId = "group";
+            final ActorRef<DeviceGroupActor.Command> groupActor = failingKit.spawn(PartitionedDeviceGroupActor.create(
+                    groupId, Duration.ofMillis(200), Optional.empty(), 1, 4));
+            final RecordDeduplication dedup = RecordDeduplication.get(failingKit.system());
+
+            final TestProbe<DeviceManagerActor.DeviceRegistered> registeredProbe =
+                    failingKit.createTestProbe(DeviceManagerActor.DeviceRegistered.class);
+            groupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, "device1", registeredProbe.getRef()));
+            registeredProbe.receiveMessage();
+            groupActor.tell(new DeviceManagerActor.RegisterDevice(groupId, "device2", registeredProbe.getRef()));
+            registeredProbe.receiveMessage().device.tell(DeviceActor.InjectFailure.INSTANCE);
+
+            final TestProbe<DeviceGroupActor.TemperaturesRecorded> recordedProbe =
+                    failingKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+            final UUID requestId = UUID.randomUUID();
+            final String[] deviceIds = {"device1", "device2"};
+            groupActor.tell(new DeviceGroupActor.RecordTemperatures(requestId, groupId, deviceIds,
+                    new double[]{1.0, 2.0}, recordedProbe.getRef()));
+            recordedProbe.expectNoMessage(Duration.ofSeconds(1));
+
+            final long duplicatesBefore = dedup.groupDuplicates();
+            groupActor.tell(new DeviceGroupActor.RecordTemperatures(requestId, groupId, deviceIds,
+                    new double[]{1.0, 2.0}, recordedProbe.getRef()));
+            recordedProbe.expectNoMessage(Duration.ofSeconds(1));
+            assertEquals(duplicatesBefore, dedup.groupDuplicates());
+
+            final TestProbe<DeviceGroupActor.RespondAllTemperatures> allTempProbe =
+                    failingKit.createTestProbe(DeviceGroupActor.RespondAllTemperatures.class);
+            groupActor.tell(new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), groupId,
+                    allTempProbe.getRef()));
+            final Map<String, TemperatureReading> expectedTemperatures = new HashMap<>();
+            expectedTemperatures.put("device1", new Temperature(1.0));
+            expectedTemperatures.put("device2", DeviceTimedOut.INSTANCE);
+            assertEquals(expectedTemperatures, allTempProbe.receiveMessage().responseByDeviceId);
+        } finally {
+            failingKit.shutdownTestKit();
+        }
+    }
+
+    @Test
+    public void testAnswerTemperaturesSinceWithChangesOfAllPartitions() {
+
+        final String groupId = "group";
+        // the top listener keeps the devices publishing, so the partitions know every reading as it is recorded
+        final TestProbe<DeviceManagerActor.GroupTopTemperatures> topProbe =
+                testKit.createTestProbe(DeviceManagerActor.GroupTopTemperatures.class);
+        final ActorRef<DeviceGroupActor.Command> groupActor = testKit.spawn(PartitionedDeviceGroupActor.create(
+                groupId, defaultTemperaturesQueryDuration, Optional.of(topProbe.getRef()), 1, 4));
+
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> recordedProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId,
+                new String[]{"device1", "device2", "device3"}, new double[]{20.0, 30.0, 25.0}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+
+        final TestProbe<DeviceGroupActor.TemperaturesSinceResponse> sinceProbe =
+                testKit.createTestProbe(DeviceGroupActor.TemperaturesSinceResponse.class);
+        groupActor.tell(new DeviceGroupActor.RequestTemperaturesSince(UUID.randomUUID(), groupId, 0, sinceProbe.getRef()));
+        final DeviceGroupActor.RespondTemperaturesSince snapshot =
+                (DeviceGroupActor.RespondTemperaturesSince) sinceProbe.receiveMessage();
+        assertTrue(snapshot.fullSnapshot);
+        assertEquals(Stream.of("device1", "device2", "device3").collect(toSet()), snapshot.changesByDeviceId.keySet());
+
+        groupActor.tell(new DeviceGroupActor.RequestTemperaturesSince(UUID.randomUUID(), groupId, snapshot.version,
+                sinceProbe.getRef()));
+        assertEquals(snapshot.version, ((DeviceGroupActor.TemperaturesNotModified) sinceProbe.receiveMessage()).version);
+
+        groupActor.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId, new String[]{"device2"},
+                new double[]{31.0}, recordedProbe.getRef()));
+        recordedProbe.receiveMessage();
+
+        groupActor.tell(new DeviceGroupActor.RequestTemperaturesSince(UUID.randomUUID(), groupId, snapshot.version,
+                sinceProbe.getRef()));
+        final DeviceGroupActor.RespondTemperaturesSince delta =
+                (DeviceGroupActor.RespondTemperaturesSince) sinceProbe.receiveMessage();
+        assertFalse(delta.fullSnapshot);
+        assertEquals(Collections.singletonMap("device2", new Temperature(31.0)), delta.changesByDeviceId);
+        assertNotEquals(snapshot.version, delta.version);
+
+        groupActor.tell(new DeviceGroupActor.RequestTemperaturesSince(UUID.randomUUID(), groupId, delta.version,
+                sinceProbe.getRef()));
+        assertEquals(delta.version, ((DeviceGroupActor.TemperaturesNotModified) sinceProbe.receiveMessage()).version);
+    }
+}
@@ -0,0 +1,104 @@
+package com.lightbend.akka.tutorial;
+
+import com.lightbend.akka.tutorial.model.DeviceNotAvailable;
+import com.lightbend.akka.tutorial.model.Temperature;
+import com.lightbend.akka.tutorial.model.TemperatureNotAvailable;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReadingsExporterTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReaderSeesLatestReadings() throws Exception {
+        final Path path = folder.getRoot().toPath().resolve("readings.export");
+
+        try (ReadingsExporter exporter = ReadingsExporter.open(path, 2);
+             ReadingsExportReader reader = ReadingsExportReader.open(path)) {
+
+            exporter.export("group", "device1", TemperatureNotAvailable.INSTANCE);
+            exporter.export("group", "device1", new Temperature(1.0));
+            exporter.export("group", "device2", new Temperature(2.0));
+            exporter.export("group", "device2", DeviceNotAvailable.INSTANCE);
+            // the table is full
+            exporter.export("group", "device3", new Temperature(3.0));
+
+            assertEquals(Optional.of(new Temperature(1.0)), reader.read("group", "device1"));
+            assertEquals(Optional.of(DeviceNotAvailable.INSTANCE), reader.read("group", "device2"));
+            assertEquals(Optional.empty(), reader.read("group", "device3"));
+            assertEquals(1, exporter.skippedReadings());
+
+            final Map<String, TemperatureReading> all = reader.readAll();
+            assertEquals(2, all.size());
+            assertEquals(new Temperature(1.0), all.get("group/device1"));
+        }
+    }
+
+    @Test
+    public void testReaderGivesUpOnSlotLeftHalfWritten() throws Exception {
+        final Path path = folder.getRoot().toPath().resolve("readings.export");
+
+        try (ReadingsExporter exporter = ReadingsExporter.open(path, 1);
+             ReadingsExportReader reader = ReadingsExportReader.open(path)) {
+
+            exporter.export("group", "device", new Temperature(1.0));
+            // as a writer process dying in the middle of a write leaves it, the sequence stays odd
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(8).putLong(0, 3),
+                        ReadingsExporter.HEADER_SIZE + ReadingsExporter.SEQUENCE_OFFSET);
+            }
+
+            assertEquals(Optional.of(TemperatureNotAvailable.INSTANCE), reader.read("group", "device"));
+        }
+    }
+
+    @Test
+    public void testReaderNeverSeesTornWrites() throws Exception {
+        final Path path = folder.getRoot().toPath().resolve("readings.export");
+        final int writes = 200_000;
+
+        try (ReadingsExporter exporter = ReadingsExporter.open(path, 1);
+             ReadingsExportReader reader = ReadingsExportReader.open(path)) {
+
+            exporter.export("group", "device", new Temperature(0));
+            final AtomicBoolean done = new AtomicBoolean();
+            final Thread writer = new Thread(() -> {
+                for (int i = 1; i <= writes; i++) {
+                    // every other write changes the kind of reading, so a torn read pairs a tag with a stale value
+                    exporter.export("group", "device", i % 2 == 0 ? new Temperature(i) : TemperatureNotAvailable.INSTANCE);
+                }
+                done.set(true);
+            });
+            writer.start();
+
+            double last = 0;
+            while (!done.get()) {
+                final TemperatureReading reading = reader.read("group", "device").get();
+                if (reading instanceof Temperature) {
+                    final double value = ((Temperature) reading).value;
+                    assertTrue(value % 2 == 0);
+                    assertFalse(value < last);
+                    last = value;
+                }
+            }
+            writer.join();
+            assertEquals(Optional.of(new Temperature(writes)), reader.read("group", "device"));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import akka.cluster.MemberStatus;
+import akka.cluster.typed.Cluster;
+import akka.cluster.typed.Join;
+import com.lightbend.akka.tutorial.model.DeviceTemperature;
+import com.lightbend.akka.tutorial.model.Temperature;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.assertEquals;
+
+public class ShardedDeviceManagerActorTest {
+
+    private static final Config nodeConfig = ConfigFactory.parseString(
+            "akka.remote.artery.canonical.port = 0\n" +
+            "akka.cluster.seed-nodes = []\n" +
+            "akka.cluster.jmx.multi-mbeans-in-same-jvm = on")
+            .withFallback(ConfigFactory.load("cluster"));
+
+    private static ActorTestKit node1;
+    private static ActorTestKit node2;
+    private static ActorRef<DeviceManagerActor.Command> manager1;
+    private static ActorRef<DeviceManagerActor.Command> manager2;
+
+    @BeforeClass
+    public static void formCluster() {
+        node1 = ActorTestKit.create("iot-system", nodeConfig);
+        node2 = ActorTestKit.create("iot-system", nodeConfig);
+
+        final Cluster cluster1 = Cluster.get(node1.system());
+        cluster1.manager().tell(Join.create(cluster1.selfMember().address()));
+        Cluster.get(node2.system()).manager().tell(Join.create(cluster1.selfMember().address()));
+
+        node1.createTestProbe().awaitAssert(Duration.ofSeconds(15), () -> {
+            final long up = StreamSupport.stream(cluster1.state().getMembers().spliterator(), false)
+                    .filter(member -> member.status().equals(MemberStatus.up()))
+                    .count();
+            assertEquals(2, up);
+            return null;
+        });
+
+        manager1 = node1.spawn(IoTClusterMain.rootBehavior());
+        manager2 = node2.spawn(IoTClusterMain.rootBehavior());
+    }
+
+    @AfterClass
+    public static void shutdownCluster() {
+        node2.shutdownTestKit();
+        node1.shutdownTestKit();
+    }
+
+    @Test
+    public void testRegisterAndQueryGroupsAcrossNodes() {
+
+        final TestProbe<DeviceManagerActor.DeviceRegistered> registeredProbe =
+                node2.createTestProbe(DeviceManagerActor.DeviceRegistered.class);
+        final TestProbe<DeviceActor.RecordTemperatureCompleted> recordProbe =
+                node2.createTestProbe(DeviceActor.RecordTemperatureCompleted.class);
+
+        final Set<Boolean> remoteDevices = new HashSet<>();
+
+        for (int group = 0; group < 10; group++) {
+            final String groupId = "group-" + group;
+
+            manager2.tell(new DeviceManagerActor.RegisterDevice(groupId, "device", registeredProbe.getRef()));
+            final ActorRef<DeviceActor.Command> device =
+                    registeredProbe.receiveMessage(Duration.ofSeconds(10)).device;
+            remoteDevices.add(device.path().address().hasGlobalScope());
+
+            final UUID recordRequestId = UUID.randomUUID();
+            device.tell(new DeviceActor.RecordTemperature(recordRequestId, group, recordProbe.getRef()));
+            assertEquals(recordRequestId, recordProbe.receiveMessage().requestId);
+        }
+
+        // groups were spread over both nodes, so node2 sees local as well as remote device actors
+        assertEquals(2, remoteDevices.size());
+
+        final TestProbe<DeviceGroupActor.RespondAllTemperatures> allTemperaturesProbe =
+                node1.createTestProbe(DeviceGroupActor.RespondAllTemperatures.class);
+
+        for (int group = 0; group < 10; group++) {
+            final UUID requestId = UUID.randomUUID();
+            manager1.tell(new DeviceGroupActor.RequestAllTemperatures(requestId, "group-" + group, allTemperaturesProbe.getRef()));
+
+            final DeviceGroupActor.RespondAllTemperatures response = allTemperaturesProbe.receiveMessage();
+            assertEquals(requestId, response.requestId);
+
+            final Map<String, TemperatureReading> expected = new HashMap<>();
+            expected.put("device", new Temperature(group));
+            assertEquals(expected, response.responseByDeviceId);
+        }
+    }
+
+    @Test
+    public void testMergeTopAndFleetTemperaturesOfAllNodes() {
+
+        final TestProbe<DeviceGroupActor.TemperaturesRecorded> recordedProbe =
+                node2.createTestProbe(DeviceGroupActor.TemperaturesRecorded.class);
+        final Set<String> groupIds = new HashSet<>();
+        for (int group = 0; group < 10; group++) {
+            final String groupId = "fleet-group-" + group;
+            groupIds.add(groupId);
+            manager2.tell(new DeviceGroupActor.RecordTemperatures(UUID.randomUUID(), groupId,
+                    new String[]{"device"}, new double[]{group}, recordedProbe.getRef()));
+            recordedProbe.receiveMessage(Duration.ofSeconds(10));
+        }
+
+        final TestProbe<DeviceManagerActor.RespondFleetTemperatures> fleetProbe =
+                node1.createTestProbe(DeviceManagerActor.RespondFleetTemperatures.class);
+        // the managers learn about the nodes from the receptionist, which takes a moment to spread
+        fleetProbe.awaitAssert(Duration.ofSeconds(10), () -> {
+            final UUID requestId = UUID.randomUUID();
+            manager1.tell(new DeviceManagerActor.RequestFleetTemperatures(requestId, groupIds, Duration.ofSeconds(3),
+                    false, fleetProbe.getRef()));
+            final DeviceManagerActor.RespondFleetTemperatures response = fleetProbe.receiveMessage();
+            assertEquals(requestId, response.requestId);
+            assertEquals(groupIds, response.readingsByGroupId.keySet());
+            assertEquals(Collections.emptySet(), response.timedOutGroupIds);
+            return null;
+        });
+
+        final TestProbe<DeviceManagerActor.RespondTopTemperatures> topProbe =
+                node1.createTestProbe(DeviceManagerActor.RespondTopTemperatures.class);
+        final List<DeviceTemperature> expectedTop = Arrays.asList(
+                new DeviceTemperature("fleet-group-9", "device", 9),
+                new DeviceTemperature("fleet-group-8", "device", 8),
+                new DeviceTemperature("fleet-group-7", "device", 7));
+        topProbe.awaitAssert(Duration.ofSeconds(10), () -> {
+            manager1.tell(new DeviceManagerActor.RequestTopTemperatures(UUID.randomUUID(), 3, topProbe.getRef()));
+            assertEquals(expectedTop, topProbe.receiveMessage().top);
+            return null;
+        });
+
+        final TestProbe<DeviceManagerActor.QueryCacheStats> statsProbe =
+                node1.createTestProbe(DeviceManagerActor.QueryCacheStats.class);
+        manager1.tell(new DeviceManagerActor.RequestQueryCacheStats(statsProbe.getRef()));
+        assertEquals(0, statsProbe.receiveMessage().size);
+    }
+}
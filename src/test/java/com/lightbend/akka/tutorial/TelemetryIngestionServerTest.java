@@ -0,0 +1,75 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import com.lightbend.akka.tutorial.model.Temperature;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.assertEquals;
+
+public class TelemetryIngestionServerTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource();
+
+    private static final Duration defaultTemperaturesQueryDuration = Duration.ofSeconds(3);
+
+    @Test
+    public void testRecordsReadingsReceivedOverTcpAndUdp() throws Exception {
+
+        final ActorRef<DeviceManagerActor.Command> deviceManager =
+                testKit.spawn(DeviceManagerActor.create(defaultTemperaturesQueryDuration));
+        final LongAdder recordedReadings = new LongAdder();
+        final ActorRef<TelemetryIngestionActor.Command> ingestion =
+                testKit.spawn(TelemetryIngestionActor.create(deviceManager, recordedReadings));
+
+        final InetSocketAddress anyLocalPort = new InetSocketAddress("127.0.0.1", 0);
+        try (TelemetryIngestionServer server = new TelemetryIngestionServer(anyLocalPort, anyLocalPort, ingestion, 16, 100)) {
+
+            try (Socket socket = new Socket("127.0.0.1", server.tcpPort())) {
+                final OutputStream out = socket.getOutputStream();
+                // the second reading is split over two writes
+                out.write("group,device1,1.5\ngroup,dev".getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                out.write("ice2,2.5\ngroup,device1,3.5\n".getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            }
+
+            try (DatagramChannel channel = DatagramChannel.open()) {
+                channel.send(ByteBuffer.wrap("group,device3,4.5\ngroup,device4,5.5".getBytes(StandardCharsets.US_ASCII)),
+                        new InetSocketAddress("127.0.0.1", server.udpPort()));
+            }
+
+            final Map<String, TemperatureReading> expected = new HashMap<>();
+            expected.put("device1", new Temperature(3.5));
+            expected.put("device2", new Temperature(2.5));
+            expected.put("device3", new Temperature(4.5));
+            expected.put("device4", new Temperature(5.5));
+
+            final TestProbe<DeviceGroupActor.RespondAllTemperatures> probe =
+                    testKit.createTestProbe(DeviceGroupActor.RespondAllTemperatures.class);
+
+            probe.awaitAssert(() -> {
+                assertEquals(5, recordedReadings.sum());
+                deviceManager.tell(new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), "group", probe.getRef()));
+                assertEquals(expected, probe.receiveMessage().responseByDeviceId);
+                return null;
+            });
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.lightbend.akka.tutorial;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TelemetryLineParserTest {
+
+    private static final class RecordingSink implements TelemetryLineParser.Sink {
+
+        final List<String> newDevices = new ArrayList<>();
+        final List<String> readings = new ArrayList<>();
+
+        @Override
+        public void onNewDevice(final int key, final String groupId, final String deviceId) {
+            newDevices.add(key + ":" + groupId + "/" + deviceId);
+        }
+
+        @Override
+        public void onReading(final int key, final double value) {
+            readings.add(key + "=" + value);
+        }
+    }
+
+    private static ByteBuffer buffer(final String text) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+        buffer.put(text.getBytes(StandardCharsets.UTF_8));
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void testInternsDevicesAndParsesValues() {
+
+        final TelemetryLineParser parser = new TelemetryLineParser(100);
+        final RecordingSink sink = new RecordingSink();
+
+        parser.parse(buffer("g1,d1,21.5\ng1,d2,-3\r\ng1,d1,1e2\n"), false, sink);
+
+        assertEquals(Arrays.asList("0:g1/d1", "1:g1/d2"), sink.newDevices);
+        assertEquals(Arrays.asList("0=21.5", "1=-3.0", "0=100.0"), sink.readings);
+    }
+
+    @Test
+    public void testKeepsIncompleteLineUntilMoreInputArrives() {
+
+        final TelemetryLineParser parser = new TelemetryLineParser(100);
+        final RecordingSink sink = new RecordingSink();
+
+        final ByteBuffer buffer = buffer("g1,d1,1.0\ng1,d1,2");
+        parser.parse(buffer, false, sink);
+
+        assertEquals(Arrays.asList("0=1.0"), sink.readings);
+        assertEquals(10, buffer.position());
+
+        parser.parse(buffer, true, sink);
+        assertEquals(Arrays.asList("0=1.0", "0=2.0"), sink.readings);
+    }
+
+    @Test
+    public void testSkipsMalformedLines() {
+
+        final TelemetryLineParser parser = new TelemetryLineParser(100);
+        final RecordingSink sink = new RecordingSink();
+
+        parser.parse(buffer("garbage\n,d1,1\ng1,,1\ng1,d1,\ng1,d1,abc\ng1,d1,NaN\ng1,d1,Infinity\ng1,d1,-1e400\n" +
+                "g1,d1,4\n"), false, sink);
+
+        assertEquals(Arrays.asList("0=4.0"), sink.readings);
+        assertEquals(8, parser.malformedLines());
+    }
+
+    @Test
+    public void testRejectsNewDevicesPastMaxDevices() {
+
+        final TelemetryLineParser parser = new TelemetryLineParser(2);
+        final RecordingSink sink = new RecordingSink();
+
+        parser.parse(buffer("g1,d1,1\ng1,d2,2\ng1,d3,3\ng1,d1,4\ng2,d1,5\n"), false, sink);
+
+        assertEquals(Arrays.asList("0:g1/d1", "1:g1/d2"), sink.newDevices);
+        assertEquals(Arrays.asList("0=1.0", "1=2.0", "0=4.0"), sink.readings);
+        assertEquals(2, parser.rejectedLines());
+    }
+
+    @Test
+    public void testParsesDecimalsExactly() {
+
+        for (final String text : Arrays.asList("0", "0.1", "-0.3", "21.45", "123456.789012", "99999999999999.9", "1234567890123456789")) {
+            final ByteBuffer buffer = buffer(text);
+            assertEquals(text, Double.parseDouble(text), TelemetryLineParser.parseDouble(buffer, 0, buffer.limit()), 0.0);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.lightbend.akka.tutorial;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.lightbend.akka.tutorial.model.Temperature;
+import com.lightbend.akka.tutorial.model.TemperatureReading;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TemperatureIngestionFlowTest {
+
+    @ClassRule
+    public static final TestKitJunitResource testKit = new TestKitJunitResource();
+
+    private static final Duration defaultTemperaturesQueryDuration = Duration.ofSeconds(3);
+
+    @Test
+    public void testRecordsReadingsOfAllGroupsInBatches() throws Exception {
+
+        final ActorRef<DeviceManagerActor.Command> deviceManager =
+                testKit.spawn(DeviceManagerActor.create(defaultTemperaturesQueryDuration));
+
+        final List<TemperatureIngestionFlow.DeviceReading> readings = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            readings.add(new TemperatureIngestionFlow.DeviceReading("group" + (i % 2), "device" + (i % 10), i));
+        }
+
+        final List<TemperatureIngestionFlow.BatchResult> results = Source.from(readings)
+                .via(TemperatureIngestionFlow.create(deviceManager, testKit.system().scheduler(),
+                        10, 100, Duration.ofMillis(50), Duration.ofSeconds(3)))
+                .runWith(Sink.seq(), testKit.system())
+                .toCompletableFuture()
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(1000, results.stream().mapToInt(result -> result.readings).sum());
+        assertTrue(results.stream().allMatch(result -> result.acknowledged));
+        assertTrue(results.stream().allMatch(result -> result.readings <= 100));
+
+        // devices of group0 are the even ones, and keep the last of their readings
+        final TestProbe<DeviceGroupActor.RespondAllTemperatures> probe =
+                testKit.createTestProbe(DeviceGroupActor.RespondAllTemperatures.class);
+        deviceManager.tell(new DeviceGroupActor.RequestAllTemperatures(UUID.randomUUID(), "group0", probe.getRef()));
+
+        final Map<String, TemperatureReading> expected = new HashMap<>();
+        for (int device = 0; device < 10; device += 2) {
+            expected.put("device" + device, new Temperature(990 + device));
+        }
+        assertEquals(expected, probe.receiveMessage().responseByDeviceId);
+    }
+}
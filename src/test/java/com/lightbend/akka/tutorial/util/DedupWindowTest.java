@@ -0,0 +1,90 @@
+package com.lightbend.akka.tutorial.util;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DedupWindowTest {
+
+    @Test
+    public void testRememberLastIdsLikeQueue() {
+
+        // scanned and indexed windows
+        for (final int capacity : new int[]{1, 8, 32, 33, 1000}) {
+            final Random random = new Random(capacity);
+            final List<UUID> ids = new ArrayList<>();
+            for (int i = 0; i < 3 * capacity + 10; i++) {
+                ids.add(UUID.randomUUID());
+            }
+
+            final DedupWindow window = new DedupWindow(capacity);
+            final Deque<UUID> expected = new ArrayDeque<>();
+            for (int i = 0; i < 50_000; i++) {
+                final UUID id = ids.get(random.nextInt(ids.size()));
+                final boolean added = window.add(id);
+                assertEquals(!expected.contains(id), added);
+                if (added) {
+                    expected.addLast(id);
+                    if (expected.size() > capacity) {
+                        expected.removeFirst();
+                    }
+                }
+                assertEquals(expected.size(), window.size());
+            }
+            for (final UUID id : ids) {
+                assertEquals(expected.contains(id), window.contains(id));
+            }
+        }
+    }
+
+    @Test
+    public void testTakeRemovedIdForNewOne() {
+
+        for (final int capacity : new int[]{8, 1000}) {
+            final DedupWindow window = new DedupWindow(capacity);
+            final List<UUID> ids = new ArrayList<>();
+            for (int i = 0; i < capacity; i++) {
+                ids.add(UUID.randomUUID());
+                window.add(ids.get(i));
+            }
+
+            final UUID removed = ids.get(capacity / 2);
+            assertTrue(window.remove(removed));
+            assertFalse(window.remove(removed));
+            assertFalse(window.contains(removed));
+            for (final UUID id : ids) {
+                assertEquals(id != removed, window.contains(id));
+            }
+
+            // evicting the removed id's place in the ring leaves the others alone
+            for (int i = 0; i < capacity; i++) {
+                assertTrue(window.add(UUID.randomUUID()));
+            }
+            for (final UUID id : ids) {
+                assertFalse(window.contains(id));
+            }
+            assertTrue(window.add(removed));
+        }
+    }
+
+    @Test
+    public void testZeroCapacityRemembersNothing() {
+
+        final DedupWindow window = new DedupWindow(0);
+        final UUID id = UUID.randomUUID();
+
+        assertTrue(window.add(id));
+        assertTrue(window.add(id));
+        assertFalse(window.contains(id));
+        assertEquals(0, window.size());
+    }
+}
@@ -0,0 +1,54 @@
+package com.lightbend.akka.tutorial.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ExpiringLruCacheTest {
+
+    @Test
+    public void testEntriesExpireAfterTimeToLive() {
+
+        final ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<>(10, 100);
+        cache.put("a", 1, 1_000);
+
+        assertEquals(Integer.valueOf(1), cache.get("a", 1_100));
+        assertNull(cache.get("a", 1_101));
+        assertNull(cache.get("b", 1_101));
+
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(1, cache.expirations());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyReadEntryWhenFull() {
+
+        final ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<>(2, Long.MAX_VALUE);
+        cache.put("a", 1, 0);
+        cache.put("b", 2, 0);
+        cache.get("a", 0);
+        cache.put("c", 3, 0);
+
+        assertEquals(Integer.valueOf(1), cache.get("a", 0));
+        assertNull(cache.get("b", 0));
+        assertEquals(Integer.valueOf(3), cache.get("c", 0));
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    public void testRemoveIf() {
+
+        final ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<>(10, Long.MAX_VALUE);
+        cache.put("group1|a", 1, 0);
+        cache.put("group1|b", 2, 0);
+        cache.put("group2|a", 3, 0);
+
+        cache.removeIf(key -> key.startsWith("group1|"));
+
+        assertEquals(1, cache.size());
+        assertEquals(Integer.valueOf(3), cache.get("group2|a", 0));
+    }
+}
@@ -0,0 +1,91 @@
+package com.lightbend.akka.tutorial.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GorillaBlockTest {
+
+    @Test
+    public void testDecodeWhatWasAppended() {
+
+        final Random random = new Random(42);
+        final GorillaBlock block = new GorillaBlock();
+        final List<Long> timestamps = new ArrayList<>();
+        final List<Double> values = new ArrayList<>();
+        final double[] specials = {Double.NaN, Double.POSITIVE_INFINITY, -0.0, Double.MIN_VALUE, Double.MAX_VALUE};
+
+        long timestamp = -5_000;
+        for (int i = 0; i < 10_000; i++) {
+            // regular steps, jitter and gaps of every delta-of-delta bucket
+            timestamp += random.nextInt(4) == 0 ? (long) (random.nextDouble() * (1L << random.nextInt(40))) : 1000;
+            final double value = i % 100 == 0 ? specials[(i / 100) % specials.length] : random.nextGaussian() * 100;
+            block.append(timestamp, value);
+            timestamps.add(timestamp);
+            values.add(value);
+        }
+        block.close();
+
+        final List<Long> decodedTimestamps = new ArrayList<>();
+        final List<Double> decodedValues = new ArrayList<>();
+        block.forEach(Long.MIN_VALUE, Long.MAX_VALUE, (t, v) -> {
+            decodedTimestamps.add(t);
+            decodedValues.add(v);
+        });
+
+        assertEquals(timestamps, decodedTimestamps);
+        assertEquals(values, decodedValues);
+        assertEquals(timestamps.get(0).longValue(), block.firstTimestamp());
+        assertEquals(timestamps.get(timestamps.size() - 1).longValue(), block.lastTimestamp());
+    }
+
+    @Test
+    public void testReadRange() {
+
+        final GorillaBlock block = new GorillaBlock();
+        for (int i = 0; i < 100; i++) {
+            block.append(i * 10, i);
+        }
+
+        final List<Double> values = new ArrayList<>();
+        block.forEach(150, 200, (t, v) -> values.add(v));
+        assertEquals(Arrays.asList(15.0, 16.0, 17.0, 18.0, 19.0), values);
+
+        values.clear();
+        block.forEach(1000, 2000, (t, v) -> values.add(v));
+        assertTrue(values.isEmpty());
+    }
+
+    @Test
+    public void testCompressSteadyReadingsToAboutOneBytePerSample() {
+
+        // a day at 1Hz of a sensor reporting in steps of 0.1 degrees, changing about every ten seconds
+        final Random random = new Random(7);
+        final GorillaBlock block = new GorillaBlock();
+        long tenths = 215;
+        for (int i = 0; i < 86_400; i++) {
+            if (random.nextInt(10) == 0) {
+                tenths += random.nextBoolean() ? 1 : -1;
+            }
+            block.append(1_600_000_000_000L + i * 1000L, tenths / 10.0);
+        }
+        block.close();
+
+        final double bytesPerSample = (double) block.sizeInBytes() / block.count();
+        assertTrue("bytes per sample " + bytesPerSample, bytesPerSample < 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectTimestampsGoingBack() {
+
+        final GorillaBlock block = new GorillaBlock();
+        block.append(1000, 1.0);
+        block.append(999, 1.0);
+    }
+}
@@ -0,0 +1,89 @@
+package com.lightbend.akka.tutorial.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IntervalIndexTest {
+
+    private static final class Interval {
+        final double low;
+        final double high;
+
+        Interval(final double low, final double high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        boolean contains(final double point) {
+            return low <= point && point <= high;
+        }
+    }
+
+    @Test
+    public void testMatchBruteForce() {
+
+        final Random random = new Random(42);
+        final List<Interval> intervals = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            final double low = random.nextInt(10) == 0 ? Double.NEGATIVE_INFINITY : random.nextInt(100);
+            final double high = random.nextInt(10) == 0 ? Double.POSITIVE_INFINITY
+                    : Double.isInfinite(low) ? random.nextInt(100) : low + random.nextInt(20);
+            intervals.add(new Interval(low, high));
+        }
+        final IntervalIndex<Interval> index = IntervalIndex.of(intervals, i -> i.low, i -> i.high);
+
+        for (int query = 0; query < 1_000; query++) {
+            final double point = random.nextInt(120) - 10;
+            final Set<Interval> expected = new HashSet<>();
+            for (final Interval interval : intervals) {
+                if (interval.contains(point)) {
+                    expected.add(interval);
+                }
+            }
+            final List<Interval> found = new ArrayList<>();
+            index.forEachContaining(point, found::add);
+            assertEquals(expected.size(), found.size());
+            assertEquals(expected, new HashSet<>(found));
+
+            final double from = Math.min(point, point + random.nextInt(30) - 15);
+            final double to = Math.max(point, from + random.nextInt(15));
+            final Set<Interval> expectedWithBound = new HashSet<>();
+            for (final Interval interval : intervals) {
+                if ((from <= interval.low && interval.low <= to) || (from <= interval.high && interval.high <= to)) {
+                    expectedWithBound.add(interval);
+                }
+            }
+            final List<Interval> foundWithBound = new ArrayList<>();
+            index.forEachWithBoundIn(from, to, foundWithBound::add);
+            assertEquals(expectedWithBound.size(), foundWithBound.size());
+            assertEquals(expectedWithBound, new HashSet<>(foundWithBound));
+        }
+    }
+
+    @Test
+    public void testEmptyIndex() {
+
+        final IntervalIndex<Interval> index = IntervalIndex.of(new ArrayList<>(), i -> i.low, i -> i.high);
+        final List<Interval> found = new ArrayList<>();
+        index.forEachContaining(1.0, found::add);
+        index.forEachWithBoundIn(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, found::add);
+        assertTrue(found.isEmpty());
+        assertTrue(index.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectEmptyIntervals() {
+
+        final List<Interval> intervals = new ArrayList<>();
+        intervals.add(new Interval(2, 1));
+        IntervalIndex.of(intervals, i -> i.low, i -> i.high);
+    }
+}
@@ -0,0 +1,81 @@
+package com.lightbend.akka.tutorial.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testSmallValuesAreExact() {
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(10, histogram.count());
+        assertEquals(5, histogram.percentile(50));
+        assertEquals(10, histogram.percentile(100));
+        assertEquals(5.5, histogram.mean(), 0.0);
+    }
+
+    @Test
+    public void testAddCombinesRecordedValues() {
+
+        final LatencyHistogram first = new LatencyHistogram();
+        final LatencyHistogram second = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            (i % 2 == 0 ? first : second).record(i);
+        }
+
+        first.add(second);
+        assertEquals(10, first.count());
+        assertEquals(5, first.percentile(50));
+        assertEquals(10, first.max());
+        assertEquals(5.5, first.mean(), 0.0);
+    }
+
+    @Test
+    public void testPercentilesStayWithinBucketPrecision() {
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1_000_000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertWithin(500_000_000L, histogram.percentile(50));
+        assertWithin(990_000_000L, histogram.percentile(99));
+        assertEquals(1_000_000_000L, histogram.percentile(100));
+        assertEquals(1_000_000_000L, histogram.max());
+    }
+
+    @Test
+    public void testBucketBoundariesAreConsistent() {
+
+        for (long value : new long[]{0, 31, 32, 33, 63, 64, 1000, 123_456_789L, Long.MAX_VALUE}) {
+            final int index = LatencyHistogram.indexOf(value);
+            assertTrue(value <= LatencyHistogram.highestEquivalentValue(index));
+            if (index > 0) {
+                assertTrue(value > LatencyHistogram.highestEquivalentValue(index - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testResetClearsEverything() {
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(99));
+        assertEquals(0, histogram.max());
+    }
+
+    private static void assertWithin(final long expected, final long actual) {
+        assertTrue("expected about " + expected + " but was " + actual, Math.abs(actual - expected) <= expected * 0.04);
+    }
+}
@@ -0,0 +1,95 @@
+package com.lightbend.akka.tutorial.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PersistentSortedMapTest {
+
+    @Test
+    public void testUpdatesDoNotAffectPreviousVersions() {
+
+        final PersistentSortedMap<String, Integer> v1 = PersistentSortedMap.<String, Integer>empty().plus("a", 1).plus("b", 2);
+        final PersistentSortedMap<String, Integer> v2 = v1.plus("c", 3).minus("a");
+
+        assertEquals(2, v1.size());
+        assertEquals(Integer.valueOf(1), v1.get("a"));
+        assertFalse(v1.containsKey("c"));
+
+        assertEquals(2, v2.size());
+        assertNull(v2.get("a"));
+        assertEquals(Integer.valueOf(3), v2.get("c"));
+    }
+
+    @Test
+    public void testRemovingMissingKeyReturnsSameMap() {
+
+        final PersistentSortedMap<String, Integer> map = PersistentSortedMap.<String, Integer>empty().plus("a", 1);
+
+        assertSame(map, map.minus("b"));
+    }
+
+    @Test
+    public void testBehavesLikeTreeMapUnderRandomUpdates() {
+
+        final Random random = new Random(42);
+        final TreeMap<String, Integer> expected = new TreeMap<>();
+        PersistentSortedMap<String, Integer> actual = PersistentSortedMap.empty();
+
+        for (int i = 0; i < 10_000; i++) {
+            final String key = "device-" + random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                actual = actual.minus(key);
+            } else {
+                expected.put(key, i);
+                actual = actual.plus(key, i);
+            }
+        }
+
+        assertEquals(expected, actual);
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+    }
+
+    @Test
+    public void testKeysAfterPaginatesInOrder() {
+
+        PersistentSortedMap<String, Integer> map = PersistentSortedMap.empty();
+        for (final String key : Arrays.asList("e", "a", "d", "b", "c")) {
+            map = map.plus(key, 0);
+        }
+
+        assertEquals(Arrays.asList("a", "b"), map.keysAfter(null, 2));
+        assertEquals(Arrays.asList("c", "d"), map.keysAfter("b", 2));
+        assertEquals(Collections.singletonList("e"), map.keysAfter("d", 2));
+        assertEquals(Collections.<String>emptyList(), map.keysAfter("e", 2));
+        assertEquals(Arrays.asList("c", "d", "e"), map.keysAfter("bb", 10));
+
+        assertTrue(map.hasKeyAfter("d"));
+        assertFalse(map.hasKeyAfter("e"));
+    }
+
+    @Test
+    public void testListsAreEqualToRegularCollections() {
+
+        final List<String> keys = Arrays.asList("x", "y", "z");
+        PersistentSortedMap<String, Integer> map = PersistentSortedMap.empty();
+        for (final String key : keys) {
+            map = map.plus(key, key.length());
+        }
+
+        assertEquals(new HashSet<>(keys), map.keySet());
+    }
+}